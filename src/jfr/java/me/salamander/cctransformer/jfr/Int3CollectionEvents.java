@@ -0,0 +1,62 @@
+package me.salamander.cctransformer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+/**
+ * The periodic JFR event of {@code Int3CollectionStats}. See {@link TransformEvents} for why it is in this source set.
+ */
+public final class Int3CollectionEvents {
+    private Int3CollectionEvents() {
+    }
+
+    /**
+     * Registers the hook that runs every period of the event while a recording with it enabled is running. The hook should call
+     * {@link #emitStats} once per collection type
+     */
+    public static void registerPeriodic(Runnable hook) {
+        FlightRecorder.addPeriodicEvent(StatsEvent.class, hook);
+    }
+
+    public static void emitStats(String type, long instances, long tableBytes, long usedBuckets, long size, double loadFactor, long resizeCount, long peakSize) {
+        StatsEvent event = new StatsEvent();
+        event.type = type;
+        event.instances = instances;
+        event.tableBytes = tableBytes;
+        event.usedBuckets = usedBuckets;
+        event.size = size;
+        event.loadFactor = loadFactor;
+        event.resizeCount = resizeCount;
+        event.peakSize = peakSize;
+        event.commit();
+    }
+
+    @Name("cctransformer.Int3Collections")
+    @Label("Int3 Collection Statistics")
+    @Category("CC Transformer")
+    @Period("10 s")
+    @StackTrace(false)
+    static class StatsEvent extends Event {
+        @Label("Type")
+        String type;
+        @Label("Instances")
+        long instances;
+        @Label("Table Bytes")
+        long tableBytes;
+        @Label("Used Buckets")
+        long usedBuckets;
+        @Label("Size")
+        long size;
+        @Label("Load Factor")
+        double loadFactor;
+        @Label("Resize Count")
+        long resizeCount;
+        @Label("Peak Size")
+        long peakSize;
+    }
+}
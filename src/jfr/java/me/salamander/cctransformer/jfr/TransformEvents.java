@@ -0,0 +1,83 @@
+package me.salamander.cctransformer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The JFR events of {@code TransformMetrics}. They are in their own source set because subclasses of {@link Event} can't be compiled
+ * with {@code --release 16} on newer JDKs, so nothing outside of this source set may see the event classes.
+ */
+public final class TransformEvents {
+    private TransformEvents() {
+    }
+
+    /**
+     * Starts a phase event
+     * @return The started event, to be passed to {@link #commitPhase}, or null if phase events are disabled
+     */
+    public static Object beginPhase() {
+        PhaseEvent event = new PhaseEvent();
+        if(!event.isEnabled()){
+            return null;
+        }
+
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends and commits an event returned by {@link #beginPhase()}
+     */
+    public static void commitPhase(Object started, String className, String method, String phase, long allocatedBytes) {
+        PhaseEvent event = (PhaseEvent) started;
+        event.className = className;
+        event.method = method;
+        event.phase = phase;
+        event.allocatedBytes = allocatedBytes;
+        event.commit();
+    }
+
+    public static void count(String className, String method, String counter, long amount) {
+        CountEvent event = new CountEvent();
+        if(event.isEnabled()){
+            event.className = className;
+            event.method = method;
+            event.counter = counter;
+            event.amount = amount;
+            event.commit();
+        }
+    }
+
+    @Name("cctransformer.Phase")
+    @Label("Transform Phase")
+    @Category("CC Transformer")
+    @StackTrace(false)
+    static class PhaseEvent extends Event {
+        @Label("Class")
+        String className;
+        @Label("Method")
+        String method;
+        @Label("Phase")
+        String phase;
+        @Label("Allocated Bytes")
+        long allocatedBytes;
+    }
+
+    @Name("cctransformer.Count")
+    @Label("Transform Count")
+    @Category("CC Transformer")
+    @StackTrace(false)
+    static class CountEvent extends Event {
+        @Label("Class")
+        String className;
+        @Label("Method")
+        String method;
+        @Label("Counter")
+        String counter;
+        @Label("Amount")
+        long amount;
+    }
+}
@@ -0,0 +1,119 @@
+package me.salamander.cctransformer.benchmark;
+
+import me.salamander.cctransformer.transformer.config.HierarchyTree;
+import me.salamander.cctransformer.util.AncestorHashMap;
+import me.salamander.cctransformer.util.MethodID;
+import org.objectweb.asm.Type;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link AncestorHashMap} against {@link LegacyAncestorHashMap}. The hierarchy is a single chain of classes (each with a few interfaces)
+ * and methods are defined at random depths. Lookups are made on the deepest class, like the calls on subclasses seen during analysis.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AncestorHashMapBenchmark {
+    @Param({"8", "32"})
+    public int depth;
+
+    @Param({"64", "1024"})
+    public int entries;
+
+    //Fraction of lookups that don't resolve to anything
+    @Param({"0.5"})
+    public double missRate;
+
+    private static final int LOOKUPS = 1024;
+
+    private HierarchyTree hierarchy;
+    private MethodID[] keys;
+    private MethodID[] lookups;
+
+    private Map<MethodID, Integer> legacy;
+    private Map<MethodID, Integer> indexed;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1234);
+
+        hierarchy = new HierarchyTree();
+        Type[] classes = new Type[depth];
+        Type parent = Type.getObjectType("java/lang/Object");
+        hierarchy.addNode(parent, null);
+        for (int i = 0; i < depth; i++) {
+            classes[i] = Type.getObjectType("bench/Class" + i);
+            hierarchy.addNode(classes[i], parent);
+            for (int j = 0; j < 2; j++) {
+                hierarchy.addInterface(Type.getObjectType("bench/Interface" + i + "_" + j), classes[i]);
+            }
+            parent = classes[i];
+        }
+
+        Type leaf = classes[depth - 1];
+        Type desc = Type.getMethodType("(J)V");
+
+        keys = new MethodID[entries];
+        for (int i = 0; i < entries; i++) {
+            keys[i] = new MethodID(classes[random.nextInt(depth)], "method" + i, desc, MethodID.CallType.VIRTUAL);
+        }
+
+        lookups = new MethodID[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            String name = random.nextDouble() < missRate ? "missing" + i : "method" + random.nextInt(entries);
+            lookups[i] = new MethodID(leaf, name, desc, MethodID.CallType.VIRTUAL);
+        }
+
+        legacy = new LegacyAncestorHashMap<>(hierarchy);
+        indexed = new AncestorHashMap<>(hierarchy);
+        for (int i = 0; i < entries; i++) {
+            legacy.put(keys[i], i);
+            indexed.put(keys[i], i);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void getLegacy(Blackhole bh) {
+        for (MethodID lookup : lookups) {
+            bh.consume(legacy.get(lookup));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void getIndexed(Blackhole bh) {
+        for (MethodID lookup : lookups) {
+            bh.consume(indexed.get(lookup));
+        }
+    }
+
+    /**
+     * Measures filling a map, which is what happens while loading the config
+     */
+    @Benchmark
+    public Map<MethodID, Integer> putLegacy() {
+        Map<MethodID, Integer> map = new LegacyAncestorHashMap<>(hierarchy);
+        for (int i = 0; i < keys.length; i++) {
+            map.put(keys[i], i);
+        }
+        return map;
+    }
+
+    @Benchmark
+    public Map<MethodID, Integer> putIndexed() {
+        Map<MethodID, Integer> map = new AncestorHashMap<>(hierarchy);
+        for (int i = 0; i < keys.length; i++) {
+            map.put(keys[i], i);
+        }
+        return map;
+    }
+}
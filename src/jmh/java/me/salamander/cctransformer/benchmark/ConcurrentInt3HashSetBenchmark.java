@@ -0,0 +1,141 @@
+package me.salamander.cctransformer.benchmark;
+
+import me.salamander.cctransformer.util.ConcurrentInt3HashSet;
+import me.salamander.cctransformer.util.LinkedInt3HashSet;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ConcurrentInt3HashSet} under contention against a {@link LinkedInt3HashSet} behind a single lock, which is the simplest way
+ * to share the existing set. Each operation adds a random position near the thread's own area and polls one position, like a light propagation
+ * worker enqueuing a neighbour and dequeuing the next position. The areas of neighbouring threads overlap so some buckets are shared.
+ * <p>
+ * The suffix of each benchmark is the number of threads. Scores are per operation, so perfect scaling keeps them constant.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentInt3HashSetBenchmark {
+    //How far apart the areas of two threads are, each area is AREA_SIZE wide
+    private static final int AREA_SPACING = 48;
+    private static final int AREA_SIZE = 64;
+    //Positions added to the sets before measuring, so polls don't just find an empty set
+    private static final int PREFILL = 16384;
+
+    private ConcurrentInt3HashSet concurrent;
+    private LinkedInt3HashSet locked;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        concurrent = new ConcurrentInt3HashSet();
+        locked = new LinkedInt3HashSet();
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < PREFILL; i++) {
+            int x = random.nextInt(AREA_SPACING * 8 + AREA_SIZE);
+            int y = random.nextInt(AREA_SIZE);
+            int z = random.nextInt(AREA_SIZE);
+            concurrent.add(x, y, z);
+            locked.add(x, y, z);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        concurrent.close();
+        locked.close();
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadArea {
+        private static int nextArea = 0;
+
+        private int area;
+
+        @Setup
+        public void setup() {
+            synchronized (ThreadArea.class) {
+                area = nextArea++ & 7;
+            }
+        }
+
+        private int x(ThreadLocalRandom random) {
+            return area * AREA_SPACING + random.nextInt(AREA_SIZE);
+        }
+    }
+
+    private void concurrentOperation(ThreadArea area, Blackhole bh) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        concurrent.add(area.x(random), random.nextInt(AREA_SIZE), random.nextInt(AREA_SIZE));
+        concurrent.poll((x, y, z) -> bh.consume(x + y + z));
+    }
+
+    private void lockedOperation(ThreadArea area, Blackhole bh) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int x = area.x(random);
+        int y = random.nextInt(AREA_SIZE);
+        int z = random.nextInt(AREA_SIZE);
+
+        synchronized (locked) {
+            locked.add(x, y, z);
+            if (!locked.isEmpty()) {
+                bh.consume(locked.getFirstX() + locked.getFirstY() + locked.getFirstZ());
+                locked.removeFirstValue();
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void concurrent_1(ThreadArea area, Blackhole bh) {
+        concurrentOperation(area, bh);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public void concurrent_2(ThreadArea area, Blackhole bh) {
+        concurrentOperation(area, bh);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void concurrent_4(ThreadArea area, Blackhole bh) {
+        concurrentOperation(area, bh);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void concurrent_8(ThreadArea area, Blackhole bh) {
+        concurrentOperation(area, bh);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void singleLock_1(ThreadArea area, Blackhole bh) {
+        lockedOperation(area, bh);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public void singleLock_2(ThreadArea area, Blackhole bh) {
+        lockedOperation(area, bh);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void singleLock_4(ThreadArea area, Blackhole bh) {
+        lockedOperation(area, bh);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void singleLock_8(ThreadArea area, Blackhole bh) {
+        lockedOperation(area, bh);
+    }
+}
@@ -0,0 +1,97 @@
+package me.salamander.cctransformer.benchmark;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.core.BlockPos;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+/**
+ * Spatial access patterns used by the Int3 collection benchmarks. Positions are generated as a flat array of xyz triples.
+ */
+public enum Int3AccessPattern {
+    /**
+     * Every position in a cube, in x, y, z order. This is the best case for the bucketed collections since every bucket is full
+     */
+    DENSE_CUBE {
+        @Override
+        public int[] generate(int count, Random random) {
+            int side = (int) Math.ceil(Math.cbrt(count));
+            int[] positions = new int[count * 3];
+            int i = 0;
+            for (int x = 0; x < side && i < count; x++) {
+                for (int y = 0; y < side && i < count; y++) {
+                    for (int z = 0; z < side && i < count; z++) {
+                        positions[i * 3] = x;
+                        positions[i * 3 + 1] = y;
+                        positions[i * 3 + 2] = z;
+                        i++;
+                    }
+                }
+            }
+            return positions;
+        }
+    },
+    /**
+     * Positions spread randomly over the world. This is the worst case for the bucketed collections since every bucket holds a single position
+     */
+    SPARSE_RANDOM {
+        @Override
+        public int[] generate(int count, Random random) {
+            int[] positions = new int[count * 3];
+            for (int i = 0; i < count; i++) {
+                positions[i * 3] = random.nextInt(60_000_000) - 30_000_000;
+                positions[i * 3 + 1] = random.nextInt(256);
+                positions[i * 3 + 2] = random.nextInt(60_000_000) - 30_000_000;
+            }
+            return positions;
+        }
+    },
+    /**
+     * Positions in the order a breadth-first flood fill from a single position discovers them. This is what the light engines do
+     */
+    BFS_FRONTIER {
+        @Override
+        public int[] generate(int count, Random random) {
+            int[] positions = new int[count * 3];
+            LongOpenHashSet visited = new LongOpenHashSet();
+            ArrayDeque<int[]> queue = new ArrayDeque<>();
+            queue.add(new int[]{0, 128, 0});
+            visited.add(BlockPos.asLong(0, 128, 0));
+
+            int i = 0;
+            while (i < count) {
+                int[] pos = queue.poll();
+                positions[i * 3] = pos[0];
+                positions[i * 3 + 1] = pos[1];
+                positions[i * 3 + 2] = pos[2];
+                i++;
+
+                for (int[] offset : NEIGHBOURS) {
+                    int x = pos[0] + offset[0];
+                    int y = pos[1] + offset[1];
+                    int z = pos[2] + offset[2];
+                    if (visited.add(BlockPos.asLong(x, y, z))) {
+                        queue.add(new int[]{x, y, z});
+                    }
+                }
+            }
+            return positions;
+        }
+    };
+
+    private static final int[][] NEIGHBOURS = {{1, 0, 0}, {-1, 0, 0}, {0, 1, 0}, {0, -1, 0}, {0, 0, 1}, {0, 0, -1}};
+
+    public abstract int[] generate(int count, Random random);
+
+    /**
+     * @return The positions packed with {@link BlockPos#asLong(int, int, int)}, which is how the fastutil collections store them
+     */
+    public static long[] pack(int[] positions) {
+        long[] packed = new long[positions.length / 3];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = BlockPos.asLong(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2]);
+        }
+        return packed;
+    }
+}
@@ -0,0 +1,159 @@
+package me.salamander.cctransformer.benchmark;
+
+import me.salamander.cctransformer.util.Int3UByteLinkedHashMap;
+import me.salamander.cctransformer.util.LinkedInt3HashSet;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the box operations of {@link LinkedInt3HashSet} and {@link Int3UByteLinkedHashMap} against walking the whole collection or probing
+ * every position of the box. The collections hold half of the positions of a cube of {@code regionCubes}^3 16x16x16 cubes, and the box is the
+ * 16x16x16 cube in the middle of it, so the box stays the same size while the table grows.
+ * <br><br>
+ * The removal benchmarks add the removed positions back afterwards, see {@link #restoreOnly()} for the cost of that alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Int3BoxQueryBenchmark {
+    private static final int CUBE_SIZE = 16;
+
+    @Param({"2", "8"})
+    public int regionCubes;
+
+    private LinkedInt3HashSet set;
+    private Int3UByteLinkedHashMap map;
+
+    private int minX, minY, minZ, maxX, maxY, maxZ;
+    //The positions in the box, to put them back after removing them
+    private int[] boxPositions;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1234);
+        int side = regionCubes * CUBE_SIZE;
+
+        set = new LinkedInt3HashSet();
+        map = new Int3UByteLinkedHashMap();
+        for (int x = 0; x < side; x++) {
+            for (int y = 0; y < side; y++) {
+                for (int z = 0; z < side; z++) {
+                    if (random.nextBoolean()) {
+                        set.add(x, y, z);
+                        map.put(x, y, z, x & 0xFF);
+                    }
+                }
+            }
+        }
+
+        minX = minY = minZ = (regionCubes / 2) * CUBE_SIZE;
+        maxX = maxY = maxZ = minX + CUBE_SIZE - 1;
+
+        boxPositions = new int[(int) set.countInBox(minX, minY, minZ, maxX, maxY, maxZ) * 3];
+        int[] i = {0};
+        set.forEachInBox(minX, minY, minZ, maxX, maxY, maxZ, (x, y, z) -> {
+            boxPositions[i[0]++] = x;
+            boxPositions[i[0]++] = y;
+            boxPositions[i[0]++] = z;
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        set.close();
+        map.close();
+    }
+
+    private void restore() {
+        for (int i = 0; i < boxPositions.length; i += 3) {
+            set.add(boxPositions[i], boxPositions[i + 1], boxPositions[i + 2]);
+            map.put(boxPositions[i], boxPositions[i + 1], boxPositions[i + 2], boxPositions[i] & 0xFF);
+        }
+    }
+
+    @Benchmark
+    public long countInBox() {
+        return set.countInBox(minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    @Benchmark
+    public long countByProbing() {
+        long count = 0L;
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                for (int z = minZ; z <= maxZ; z++) {
+                    if (set.contains(x, y, z)) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long countByWalking() {
+        long[] count = {0L};
+        set.forEach((x, y, z) -> {
+            if (x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    @Benchmark
+    public long mapForEachInBox() {
+        long[] sum = {0L};
+        map.forEachInBox(minX, minY, minZ, maxX, maxY, maxZ, (x, y, z, value) -> sum[0] += value);
+        return sum[0];
+    }
+
+    @Benchmark
+    public long mapForEachByWalking() {
+        long[] sum = {0L};
+        map.forEach((x, y, z, value) -> {
+            if (x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ) {
+                sum[0] += value;
+            }
+        });
+        return sum[0];
+    }
+
+    @Benchmark
+    public long restoreOnly() {
+        restore();
+        return set.size() + map.longSize();
+    }
+
+    @Benchmark
+    public long removeInBox() {
+        long removed = set.removeInBox(minX, minY, minZ, maxX, maxY, maxZ) + map.removeInBox(minX, minY, minZ, maxX, maxY, maxZ);
+        restore();
+        return removed;
+    }
+
+    @Benchmark
+    public long removeByProbing() {
+        long removed = 0L;
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                for (int z = minZ; z <= maxZ; z++) {
+                    if (set.remove(x, y, z)) {
+                        removed++;
+                    }
+                    if (map.remove(x, y, z) != Int3UByteLinkedHashMap.DEFAULT_RETURN_VALUE) {
+                        removed++;
+                    }
+                }
+            }
+        }
+        restore();
+        return removed;
+    }
+}
@@ -0,0 +1,75 @@
+package me.salamander.cctransformer.benchmark;
+
+import me.salamander.cctransformer.util.Int3UByteLinkedHashMap;
+import me.salamander.cctransformer.util.LinkedInt3HashSet;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a {@link LinkedInt3HashSet} or {@link Int3UByteLinkedHashMap} used as a small work queue after it once held a burst of {@code burstCount}
+ * positions. Each invocation adds the first {@code count} positions of the pattern and then clears the collection again, which is how light update queues
+ * are used between bursts. A table which stays at the size of the burst makes every {@code clear()} zero all of it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Int3BurstRecoveryBenchmark {
+    @Param({"DENSE_CUBE", "SPARSE_RANDOM"})
+    public Int3AccessPattern pattern;
+
+    @Param({"1048576"})
+    public int burstCount;
+
+    @Param({"1024"})
+    public int count;
+
+    private int[] positions;
+
+    private LinkedInt3HashSet set;
+    private Int3UByteLinkedHashMap map;
+
+    @Setup
+    public void setup() {
+        positions = pattern.generate(Math.max(burstCount, count), new Random(1234));
+
+        set = new LinkedInt3HashSet();
+        map = new Int3UByteLinkedHashMap();
+        for (int i = 0; i < burstCount * 3; i += 3) {
+            set.add(positions[i], positions[i + 1], positions[i + 2]);
+            map.put(positions[i], positions[i + 1], positions[i + 2], positions[i] & 15);
+        }
+        set.clear();
+        map.clear();
+    }
+
+    @TearDown
+    public void tearDown() {
+        set.close();
+        map.close();
+    }
+
+    @Benchmark
+    public long setFillClear() {
+        for (int i = 0; i < count * 3; i += 3) {
+            set.add(positions[i], positions[i + 1], positions[i + 2]);
+        }
+        long size = set.size();
+        set.clear();
+        return size;
+    }
+
+    @Benchmark
+    public long mapFillClear() {
+        for (int i = 0; i < count * 3; i += 3) {
+            map.put(positions[i], positions[i + 1], positions[i + 2], positions[i] & 15);
+        }
+        long size = map.longSize();
+        map.clear();
+        return size;
+    }
+}
@@ -0,0 +1,139 @@
+package me.salamander.cctransformer.benchmark;
+
+import me.salamander.cctransformer.util.Int3List;
+import me.salamander.cctransformer.util.Int3UByteLinkedHashMap;
+import me.salamander.cctransformer.util.LinkedInt3HashSet;
+import me.salamander.cctransformer.util.XYZConsumer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares iterating with a reused {@link Int3UByteLinkedHashMap.Cursor} or {@link LinkedInt3HashSet.Cursor} against {@code forEach} with a lambda
+ * that captures a local, which is what the transformed code does. Every benchmark visits all the positions of the chosen pattern once, so scores are
+ * per {@code count} positions.
+ * <br><br>
+ * The removal benchmarks fill a map and remove every entry with a value below 8, either through the cursor or by collecting the positions with
+ * {@code forEach} first. Subtract {@link #fillOnly()} to get the cost of the removal.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Int3CursorBenchmark {
+    @Param({"DENSE_CUBE", "SPARSE_RANDOM", "BFS_FRONTIER"})
+    public Int3AccessPattern pattern;
+
+    @Param({"4096", "65536"})
+    public int count;
+
+    private int[] positions;
+    private byte[] values;
+
+    private Int3UByteLinkedHashMap filledMap;
+    private LinkedInt3HashSet filledSet;
+    private Int3UByteLinkedHashMap.Cursor mapCursor;
+    private LinkedInt3HashSet.Cursor setCursor;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1234);
+        positions = pattern.generate(count, random);
+
+        //Light levels
+        values = new byte[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = (byte) random.nextInt(16);
+        }
+
+        filledMap = fillMap();
+        filledSet = new LinkedInt3HashSet();
+        for (int i = 0; i < positions.length; i += 3) {
+            filledSet.add(positions[i], positions[i + 1], positions[i + 2]);
+        }
+
+        mapCursor = filledMap.cursor();
+        setCursor = filledSet.cursor();
+    }
+
+    @TearDown
+    public void tearDown() {
+        filledMap.close();
+        filledSet.close();
+    }
+
+    private Int3UByteLinkedHashMap fillMap() {
+        Int3UByteLinkedHashMap map = new Int3UByteLinkedHashMap();
+        for (int i = 0; i < count; i++) {
+            map.put(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2], values[i]);
+        }
+        return map;
+    }
+
+    @Benchmark
+    public long mapForEach() {
+        long[] sum = {0L};
+        filledMap.forEach((x, y, z, value) -> sum[0] += x + y + z + value);
+        return sum[0];
+    }
+
+    @Benchmark
+    public long mapCursor() {
+        long sum = 0L;
+        for (Int3UByteLinkedHashMap.Cursor cursor = mapCursor.reset(); cursor.next(); ) {
+            sum += cursor.x() + cursor.y() + cursor.z() + cursor.value();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long setForEach() {
+        long[] sum = {0L};
+        filledSet.forEach((x, y, z) -> sum[0] += x + y + z);
+        return sum[0];
+    }
+
+    @Benchmark
+    public long setCursor() {
+        long sum = 0L;
+        for (LinkedInt3HashSet.Cursor cursor = setCursor.reset(); cursor.next(); ) {
+            sum += cursor.x() + cursor.y() + cursor.z();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long fillOnly() {
+        try (Int3UByteLinkedHashMap map = fillMap()) {
+            return map.longSize();
+        }
+    }
+
+    @Benchmark
+    public long removeWithCursor() {
+        try (Int3UByteLinkedHashMap map = fillMap()) {
+            for (Int3UByteLinkedHashMap.Cursor cursor = map.cursor(); cursor.next(); ) {
+                if (cursor.value() < 8) {
+                    cursor.remove();
+                }
+            }
+            return map.longSize();
+        }
+    }
+
+    @Benchmark
+    public long removeAfterForEach() {
+        try (Int3UByteLinkedHashMap map = fillMap(); Int3List removed = new Int3List()) {
+            map.forEach((x, y, z, value) -> {
+                if (value < 8) {
+                    removed.add(x, y, z);
+                }
+            });
+            removed.forEach((XYZConsumer) map::remove);
+            return map.longSize();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package me.salamander.cctransformer.benchmark;
+
+import me.salamander.cctransformer.util.Int3UByteLinkedHashMap;
+import me.salamander.cctransformer.util.LinkedInt3HashSet;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares emptying a {@link LinkedInt3HashSet} or {@link Int3UByteLinkedHashMap} with {@code drainTo} against removing one position at a time with
+ * {@code getFirstX/Y/Z} and {@code removeFirstValue}, or with {@code poll}. Every benchmark fills the collection with {@code count} positions and then
+ * empties it, see {@link #fillSetOnly()} and {@link #fillMapOnly()} for the cost of filling alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Int3DrainBenchmark {
+    @Param({"DENSE_CUBE", "SPARSE_RANDOM", "BFS_FRONTIER"})
+    public Int3AccessPattern pattern;
+
+    @Param({"4096", "65536"})
+    public int count;
+
+    @Param({"256"})
+    public int batchSize;
+
+    private int[] positions;
+
+    private int[] xs;
+    private int[] ys;
+    private int[] zs;
+    private byte[] vals;
+
+    private LinkedInt3HashSet set;
+    private Int3UByteLinkedHashMap map;
+
+    private long pollSum;
+
+    @Setup
+    public void setup() {
+        positions = pattern.generate(count, new Random(1234));
+
+        xs = new int[batchSize];
+        ys = new int[batchSize];
+        zs = new int[batchSize];
+        vals = new byte[batchSize];
+
+        set = new LinkedInt3HashSet();
+        map = new Int3UByteLinkedHashMap();
+    }
+
+    @TearDown
+    public void tearDown() {
+        set.close();
+        map.close();
+    }
+
+    private void fillSet() {
+        for (int i = 0; i < positions.length; i += 3) {
+            set.add(positions[i], positions[i + 1], positions[i + 2]);
+        }
+    }
+
+    private void fillMap() {
+        for (int i = 0; i < positions.length; i += 3) {
+            map.put(positions[i], positions[i + 1], positions[i + 2], positions[i] & 15);
+        }
+    }
+
+    @Benchmark
+    public long fillSetOnly() {
+        fillSet();
+        long size = set.size();
+        set.clear();
+        return size;
+    }
+
+    @Benchmark
+    public long fillMapOnly() {
+        fillMap();
+        long size = map.longSize();
+        map.clear();
+        return size;
+    }
+
+    @Benchmark
+    public long setRemoveFirst() {
+        fillSet();
+        long sum = 0L;
+        while (!set.isEmpty()) {
+            sum += set.getFirstX() + set.getFirstY() + set.getFirstZ();
+            set.removeFirstValue();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long setDrainTo() {
+        fillSet();
+        long sum = 0L;
+        int n;
+        while ((n = set.drainTo(xs, ys, zs, batchSize)) != 0) {
+            for (int i = 0; i < n; i++) {
+                sum += xs[i] + ys[i] + zs[i];
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long mapPoll() {
+        fillMap();
+        pollSum = 0L;
+        while (map.poll((x, y, z, value) -> pollSum += x + y + z + value)) {
+        }
+        return pollSum;
+    }
+
+    @Benchmark
+    public long mapDrainTo() {
+        fillMap();
+        long sum = 0L;
+        int n;
+        while ((n = map.drainTo(xs, ys, zs, vals, batchSize)) != 0) {
+            for (int i = 0; i < n; i++) {
+                sum += xs[i] + ys[i] + zs[i] + (vals[i] & 0xFF);
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,131 @@
+package me.salamander.cctransformer.benchmark;
+
+import me.salamander.cctransformer.util.Int3LevelQueue;
+import me.salamander.cctransformer.util.LinkedInt3HashSet;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link Int3LevelQueue} against an array of one {@link LinkedInt3HashSet} per level with a {@code firstQueuedLevel} scan, which is how the
+ * transformed {@code DynamicGraphMinFixedPoint} keeps its queues. Each update benchmark queues every position of the chosen pattern at a random level,
+ * moves every other position to another level and then removes all positions lowest level first, so scores are per {@code count} positions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Int3LevelQueueBenchmark {
+    @Param({"DENSE_CUBE", "SPARSE_RANDOM", "BFS_FRONTIER"})
+    public Int3AccessPattern pattern;
+
+    @Param({"4096", "65536"})
+    public int count;
+
+    //16 is what the light engines use, 254 is the most DynamicGraphMinFixedPoint allows
+    @Param({"16", "254"})
+    public int levelCount;
+
+    private int[] positions;
+    private int[] levels;
+    private int[] newLevels;
+
+    private long pollSum;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1234);
+        positions = pattern.generate(count, random);
+
+        levels = new int[count];
+        newLevels = new int[count];
+        for (int i = 0; i < count; i++) {
+            levels[i] = random.nextInt(levelCount);
+            newLevels[i] = random.nextInt(levelCount);
+        }
+    }
+
+    @Benchmark
+    public long updateLevelQueue() {
+        try (Int3LevelQueue queue = new Int3LevelQueue(levelCount)) {
+            for (int i = 0; i < count; i++) {
+                queue.enqueue(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2], levels[i]);
+            }
+            for (int i = 0; i < count; i += 2) {
+                queue.changeLevel(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2], levels[i], newLevels[i]);
+            }
+
+            pollSum = 0L;
+            while (queue.poll((x, y, z, level) -> pollSum += x + y + z + level)) {
+            }
+            return pollSum;
+        }
+    }
+
+    @Benchmark
+    public long updateSetArray() {
+        LinkedInt3HashSet[] queues = new LinkedInt3HashSet[levelCount];
+        for (int level = 0; level < levelCount; level++) {
+            queues[level] = new LinkedInt3HashSet();
+        }
+        int firstQueuedLevel = levelCount;
+
+        for (int i = 0; i < count; i++) {
+            queues[levels[i]].add(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2]);
+            firstQueuedLevel = Math.min(firstQueuedLevel, levels[i]);
+        }
+        for (int i = 0; i < count; i += 2) {
+            //the old level would come from computedLevels
+            queues[levels[i]].remove(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2]);
+            queues[newLevels[i]].add(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2]);
+            firstQueuedLevel = Math.min(firstQueuedLevel, newLevels[i]);
+        }
+
+        long sum = 0L;
+        while (firstQueuedLevel < levelCount) {
+            LinkedInt3HashSet queue = queues[firstQueuedLevel];
+            if (queue.isEmpty()) {
+                firstQueuedLevel++;
+                continue;
+            }
+
+            sum += queue.getFirstX() + queue.getFirstY() + queue.getFirstZ() + firstQueuedLevel;
+            queue.removeFirstValue();
+        }
+
+        for (LinkedInt3HashSet queue : queues) {
+            queue.close();
+        }
+        return sum;
+    }
+
+    /**
+     * Creates and closes an empty queue, which the light engines do for every {@code DynamicGraphMinFixedPoint}
+     */
+    @Benchmark
+    public long createLevelQueue() {
+        try (Int3LevelQueue queue = new Int3LevelQueue(levelCount)) {
+            queue.enqueue(0, 0, 0, 0);
+            return queue.size();
+        }
+    }
+
+    @Benchmark
+    public int createSetArray() {
+        LinkedInt3HashSet[] queues = new LinkedInt3HashSet[levelCount];
+        for (int level = 0; level < levelCount; level++) {
+            queues[level] = new LinkedInt3HashSet();
+        }
+        queues[0].add(0, 0, 0);
+
+        int size = 0;
+        for (LinkedInt3HashSet queue : queues) {
+            size += (int) queue.size();
+            queue.close();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,106 @@
+package me.salamander.cctransformer.benchmark;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import me.salamander.cctransformer.util.Int3List;
+import net.minecraft.core.BlockPos;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link Int3List} against a {@link LongArrayList} of packed positions. Scores are per {@code count} operations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Int3ListBenchmark {
+    @Param({"DENSE_CUBE", "SPARSE_RANDOM", "BFS_FRONTIER"})
+    public Int3AccessPattern pattern;
+
+    @Param({"4096", "65536"})
+    public int count;
+
+    private int[] positions;
+    private long[] packed;
+
+    private Int3List filledInt3;
+    private LongArrayList filledFastutil;
+
+    @Setup
+    public void setup() {
+        positions = pattern.generate(count, new Random(1234));
+        packed = Int3AccessPattern.pack(positions);
+
+        filledInt3 = fillInt3();
+        filledFastutil = fillFastutil();
+    }
+
+    @TearDown
+    public void tearDown() {
+        filledInt3.close();
+    }
+
+    private Int3List fillInt3() {
+        Int3List list = new Int3List();
+        for (int i = 0; i < positions.length; i += 3) {
+            list.add(positions[i], positions[i + 1], positions[i + 2]);
+        }
+        return list;
+    }
+
+    private LongArrayList fillFastutil() {
+        LongArrayList list = new LongArrayList();
+        for (long pos : packed) {
+            list.add(pos);
+        }
+        return list;
+    }
+
+    @Benchmark
+    public int addInt3() {
+        try (Int3List list = fillInt3()) {
+            return list.size();
+        }
+    }
+
+    @Benchmark
+    public int addFastutil() {
+        return fillFastutil().size();
+    }
+
+    @Benchmark
+    public void getInt3(Blackhole bh) {
+        for (int i = 0; i < filledInt3.size(); i++) {
+            bh.consume(filledInt3.getX(i));
+            bh.consume(filledInt3.getY(i));
+            bh.consume(filledInt3.getZ(i));
+        }
+    }
+
+    @Benchmark
+    public void getFastutil(Blackhole bh) {
+        for (int i = 0; i < filledFastutil.size(); i++) {
+            long pos = filledFastutil.getLong(i);
+            bh.consume(BlockPos.getX(pos));
+            bh.consume(BlockPos.getY(pos));
+            bh.consume(BlockPos.getZ(pos));
+        }
+    }
+
+    /**
+     * Compare with {@link #getFastutil(Blackhole)}, since iterating a {@link LongArrayList} by index is already as fast as it gets
+     */
+    @Benchmark
+    public void forEachInt3(Blackhole bh) {
+        filledInt3.forEach((int x, int y, int z) -> {
+            bh.consume(x);
+            bh.consume(y);
+            bh.consume(z);
+        });
+    }
+}
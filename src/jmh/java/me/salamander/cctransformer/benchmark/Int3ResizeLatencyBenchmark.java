@@ -0,0 +1,87 @@
+package me.salamander.cctransformer.benchmark;
+
+import me.salamander.cctransformer.util.Int3UByteLinkedHashMap;
+import me.salamander.cctransformer.util.LinkedInt3HashSet;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the latency of single "ticks" of insertions into a growing {@link LinkedInt3HashSet} or {@link Int3UByteLinkedHashMap} with and without
+ * incremental resizing. Each invocation adds the next {@code tickSize} positions of the pattern, and the collections are recreated once all
+ * {@code count} positions have been added, so every iteration goes through all the resizes from an empty table up to {@code count} positions.
+ * <br><br>
+ * This runs in {@link Mode#SampleTime}, look at the percentiles and the maximum rather than the average: the average is about the same in both modes,
+ * incremental resizing only spreads the cost of a resize over many ticks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Int3ResizeLatencyBenchmark {
+    @Param({"SPARSE_RANDOM", "BFS_FRONTIER"})
+    public Int3AccessPattern pattern;
+
+    @Param({"1048576"})
+    public int count;
+
+    @Param({"256"})
+    public int tickSize;
+
+    @Param({"false", "true"})
+    public boolean incremental;
+
+    private int[] positions;
+    private int next;
+
+    private LinkedInt3HashSet set;
+    private Int3UByteLinkedHashMap map;
+
+    @Setup
+    public void setup() {
+        positions = pattern.generate(count, new Random(1234));
+        set = new LinkedInt3HashSet(0, incremental);
+        map = new Int3UByteLinkedHashMap(0, incremental);
+    }
+
+    @TearDown
+    public void tearDown() {
+        set.close();
+        map.close();
+    }
+
+    //not part of the measured time
+    @Setup(Level.Invocation)
+    public void startTick() {
+        if (next + tickSize > count) {
+            set.close();
+            map.close();
+            set = new LinkedInt3HashSet(0, incremental);
+            map = new Int3UByteLinkedHashMap(0, incremental);
+            next = 0;
+        }
+    }
+
+    @Benchmark
+    public long setTick() {
+        int i = next * 3;
+        next += tickSize;
+        for (int end = next * 3; i < end; i += 3) {
+            set.add(positions[i], positions[i + 1], positions[i + 2]);
+        }
+        return set.size();
+    }
+
+    @Benchmark
+    public long mapTick() {
+        int i = next * 3;
+        next += tickSize;
+        for (int end = next * 3; i < end; i += 3) {
+            map.put(positions[i], positions[i + 1], positions[i + 2], positions[i] & 15);
+        }
+        return map.longSize();
+    }
+}
@@ -0,0 +1,179 @@
+package me.salamander.cctransformer.benchmark;
+
+import it.unimi.dsi.fastutil.longs.Long2ByteLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ByteMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import me.salamander.cctransformer.util.Int3UByteLinkedHashMap;
+import net.minecraft.core.BlockPos;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link Int3UByteLinkedHashMap} against the {@link Long2ByteLinkedOpenHashMap} it replaces. Every benchmark processes all the
+ * positions of the chosen pattern once, so scores are per {@code count} operations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Int3UByteLinkedHashMapBenchmark {
+    @Param({"DENSE_CUBE", "SPARSE_RANDOM", "BFS_FRONTIER"})
+    public Int3AccessPattern pattern;
+
+    @Param({"4096", "65536"})
+    public int count;
+
+    private int[] positions;
+    private long[] packed;
+    private byte[] values;
+
+    //Filled maps for the read-only benchmarks
+    private Int3UByteLinkedHashMap filledInt3;
+    private Long2ByteLinkedOpenHashMap filledFastutil;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1234);
+        positions = pattern.generate(count, random);
+        packed = Int3AccessPattern.pack(positions);
+
+        //Light levels
+        values = new byte[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = (byte) random.nextInt(16);
+        }
+
+        filledInt3 = fillInt3();
+        filledFastutil = fillFastutil();
+    }
+
+    @TearDown
+    public void tearDown() {
+        filledInt3.close();
+    }
+
+    private Int3UByteLinkedHashMap fillInt3() {
+        Int3UByteLinkedHashMap map = new Int3UByteLinkedHashMap();
+        for (int i = 0; i < count; i++) {
+            map.put(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2], values[i]);
+        }
+        return map;
+    }
+
+    private Long2ByteLinkedOpenHashMap fillFastutil() {
+        Long2ByteLinkedOpenHashMap map = new Long2ByteLinkedOpenHashMap();
+        map.defaultReturnValue((byte) -1);
+        for (int i = 0; i < count; i++) {
+            map.put(packed[i], values[i]);
+        }
+        return map;
+    }
+
+    @Benchmark
+    public int putInt3() {
+        try (Int3UByteLinkedHashMap map = fillInt3()) {
+            return map.size();
+        }
+    }
+
+    @Benchmark
+    public int putFastutil() {
+        return fillFastutil().size();
+    }
+
+    @Benchmark
+    public int getInt3() {
+        int sum = 0;
+        for (int i = 0; i < positions.length; i += 3) {
+            sum += filledInt3.get(positions[i], positions[i + 1], positions[i + 2]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int getFastutil() {
+        int sum = 0;
+        for (long pos : packed) {
+            sum += filledFastutil.get(pos) & 0xFF;
+        }
+        return sum;
+    }
+
+    /**
+     * Fills a map and removes every position again in insertion order. Subtract {@link #putInt3()} to get the cost of removal
+     */
+    @Benchmark
+    public int putRemoveInt3() {
+        try (Int3UByteLinkedHashMap map = fillInt3()) {
+            for (int i = 0; i < positions.length; i += 3) {
+                map.remove(positions[i], positions[i + 1], positions[i + 2]);
+            }
+            return map.size();
+        }
+    }
+
+    @Benchmark
+    public int putRemoveFastutil() {
+        Long2ByteLinkedOpenHashMap map = fillFastutil();
+        for (long pos : packed) {
+            map.remove(pos);
+        }
+        return map.size();
+    }
+
+    /**
+     * Fills a map and then polls entries until it is empty
+     */
+    @Benchmark
+    public void putPollInt3(Blackhole bh) {
+        try (Int3UByteLinkedHashMap map = fillInt3()) {
+            Int3UByteLinkedHashMap.EntryConsumer consumer = (x, y, z, value) -> {
+                bh.consume(x);
+                bh.consume(y);
+                bh.consume(z);
+                bh.consume(value);
+            };
+            while (map.poll(consumer)) {
+            }
+        }
+    }
+
+    @Benchmark
+    public void putPollFastutil(Blackhole bh) {
+        Long2ByteLinkedOpenHashMap map = fillFastutil();
+        while (!map.isEmpty()) {
+            long pos = map.firstLongKey();
+            bh.consume(map.removeFirstByte());
+            bh.consume(BlockPos.getX(pos));
+            bh.consume(BlockPos.getY(pos));
+            bh.consume(BlockPos.getZ(pos));
+        }
+    }
+
+    @Benchmark
+    public void forEachInt3(Blackhole bh) {
+        filledInt3.forEach((x, y, z, value) -> {
+            bh.consume(x);
+            bh.consume(y);
+            bh.consume(z);
+            bh.consume(value);
+        });
+    }
+
+    @Benchmark
+    public void forEachFastutil(Blackhole bh) {
+        for (ObjectIterator<Long2ByteMap.Entry> it = filledFastutil.long2ByteEntrySet().fastIterator(); it.hasNext(); ) {
+            Long2ByteMap.Entry entry = it.next();
+            long pos = entry.getLongKey();
+            bh.consume(BlockPos.getX(pos));
+            bh.consume(BlockPos.getY(pos));
+            bh.consume(BlockPos.getZ(pos));
+            bh.consume(entry.getByteValue());
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package me.salamander.cctransformer.benchmark;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import me.salamander.cctransformer.util.Int3UByteLinkedHashMap;
+import me.salamander.cctransformer.util.Int3UByteSectionedHashMap;
+import net.minecraft.core.BlockPos;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link Int3UByteSectionedHashMap} against the flat {@link Int3UByteLinkedHashMap}. Every benchmark processes all the positions of the
+ * chosen pattern once, so scores are per {@code count} operations.
+ * <br><br>
+ * The section benchmarks fill a map and then remove every 16x16x16 section the pattern touches, one section at a time. Subtract the matching put
+ * benchmark to get the cost of the removal.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Int3UByteSectionedHashMapBenchmark {
+    @Param({"DENSE_CUBE", "SPARSE_RANDOM", "BFS_FRONTIER"})
+    public Int3AccessPattern pattern;
+
+    @Param({"4096", "65536"})
+    public int count;
+
+    private int[] positions;
+    private byte[] values;
+    //The section coordinates touched by the pattern, in the order they are first touched
+    private int[] sections;
+
+    //Filled maps for the read-only benchmarks
+    private Int3UByteLinkedHashMap filledFlat;
+    private Int3UByteSectionedHashMap filledSectioned;
+
+    private long pollSum;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1234);
+        positions = pattern.generate(count, random);
+
+        //Light levels
+        values = new byte[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = (byte) random.nextInt(16);
+        }
+
+        LongOpenHashSet touched = new LongOpenHashSet();
+        IntArrayList sectionList = new IntArrayList();
+        for (int i = 0; i < positions.length; i += 3) {
+            int sectionX = positions[i] >> 4;
+            int sectionY = positions[i + 1] >> 4;
+            int sectionZ = positions[i + 2] >> 4;
+            if (touched.add(BlockPos.asLong(sectionX, sectionY, sectionZ))) {
+                sectionList.add(sectionX);
+                sectionList.add(sectionY);
+                sectionList.add(sectionZ);
+            }
+        }
+        sections = sectionList.toIntArray();
+
+        filledFlat = fillFlat();
+        filledSectioned = fillSectioned();
+    }
+
+    @TearDown
+    public void tearDown() {
+        filledFlat.close();
+        filledSectioned.close();
+    }
+
+    private Int3UByteLinkedHashMap fillFlat() {
+        Int3UByteLinkedHashMap map = new Int3UByteLinkedHashMap();
+        for (int i = 0; i < count; i++) {
+            map.put(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2], values[i]);
+        }
+        return map;
+    }
+
+    private Int3UByteSectionedHashMap fillSectioned() {
+        Int3UByteSectionedHashMap map = new Int3UByteSectionedHashMap();
+        for (int i = 0; i < count; i++) {
+            map.put(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2], values[i]);
+        }
+        return map;
+    }
+
+    @Benchmark
+    public int putFlat() {
+        try (Int3UByteLinkedHashMap map = fillFlat()) {
+            return map.size();
+        }
+    }
+
+    @Benchmark
+    public int putSectioned() {
+        try (Int3UByteSectionedHashMap map = fillSectioned()) {
+            return map.size();
+        }
+    }
+
+    @Benchmark
+    public int getFlat() {
+        int sum = 0;
+        for (int i = 0; i < positions.length; i += 3) {
+            sum += filledFlat.get(positions[i], positions[i + 1], positions[i + 2]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int getSectioned() {
+        int sum = 0;
+        for (int i = 0; i < positions.length; i += 3) {
+            sum += filledSectioned.get(positions[i], positions[i + 1], positions[i + 2]);
+        }
+        return sum;
+    }
+
+    /**
+     * Fills a map and then polls entries until it is empty
+     */
+    @Benchmark
+    public long putPollFlat() {
+        pollSum = 0L;
+        try (Int3UByteLinkedHashMap map = fillFlat()) {
+            while (map.poll((x, y, z, value) -> pollSum += x + y + z + value)) {
+            }
+        }
+        return pollSum;
+    }
+
+    @Benchmark
+    public long putPollSectioned() {
+        pollSum = 0L;
+        try (Int3UByteSectionedHashMap map = fillSectioned()) {
+            while (map.poll((x, y, z, value) -> pollSum += x + y + z + value)) {
+            }
+        }
+        return pollSum;
+    }
+
+    @Benchmark
+    public long putRemoveSectionsFlat() {
+        long removed = 0L;
+        try (Int3UByteLinkedHashMap map = fillFlat()) {
+            for (int i = 0; i < sections.length; i += 3) {
+                int minX = sections[i] << 4;
+                int minY = sections[i + 1] << 4;
+                int minZ = sections[i + 2] << 4;
+                removed += map.removeInBox(minX, minY, minZ, minX + 15, minY + 15, minZ + 15);
+            }
+        }
+        return removed;
+    }
+
+    @Benchmark
+    public long putRemoveSectionsSectioned() {
+        long removed = 0L;
+        try (Int3UByteSectionedHashMap map = fillSectioned()) {
+            for (int i = 0; i < sections.length; i += 3) {
+                removed += map.removeSection(sections[i], sections[i + 1], sections[i + 2]);
+            }
+        }
+        return removed;
+    }
+}
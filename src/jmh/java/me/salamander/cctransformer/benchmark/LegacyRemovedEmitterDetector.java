@@ -0,0 +1,108 @@
+package me.salamander.cctransformer.benchmark;
+
+import me.salamander.cctransformer.transformer.analysis.TransformTrackingValue;
+import me.salamander.cctransformer.transformer.config.MethodParameterInfo;
+import me.salamander.cctransformer.util.ASMUtil;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.analysis.Frame;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The fixed point iteration used by {@link me.salamander.cctransformer.transformer.TypeTransformer} before {@link me.salamander.cctransformer.transformer.RemovedEmitterDetector}.
+ * Kept as a baseline for {@link RemovedEmitterDetectorBenchmark}
+ */
+public class LegacyRemovedEmitterDetector {
+    public static void detect(Frame<TransformTrackingValue>[] frames, AbstractInsnNode[] instructions, MethodParameterInfo[] methodInfos, Map<AbstractInsnNode, Integer> indexLookup, boolean[] removedEmitter) {
+        boolean[] prev;
+
+        //This code keeps trying to find new removed emitters until it can't find any more.
+
+        do{
+            //Keep detecting new ones until we don't find any more
+            prev = Arrays.copyOf(removedEmitter, removedEmitter.length);
+
+            for(int i = 0; i < removedEmitter.length; i++){
+                AbstractInsnNode instruction = instructions[i];
+                Frame<TransformTrackingValue> frame = frames[i];
+
+                int consumed = ASMUtil.stackConsumed(instruction);
+                int opcode = instruction.getOpcode();
+
+                if(instruction instanceof MethodInsnNode){
+                    MethodParameterInfo info = methodInfos[i];
+                    if(info != null){
+                        if(info.getReplacement().changeParameters()){
+                            //If any method parameters are changed we remove all of it's emitters
+                            for (int j = 0; j < consumed; j++) {
+                                TransformTrackingValue arg = frame.getStack(frame.getStackSize() - consumed + j);
+                                markRemoved(arg, indexLookup, removedEmitter);
+                            }
+                        }
+                    }
+                }else if(opcode == Opcodes.LCMP || opcode == Opcodes.FCMPL || opcode == Opcodes.FCMPG || opcode == Opcodes.DCMPL || opcode == Opcodes.DCMPG || opcode == Opcodes.IF_ICMPEQ || opcode == Opcodes.IF_ICMPNE || opcode == Opcodes.IF_ACMPEQ || opcode == Opcodes.IF_ACMPNE){
+                    //Get two values
+                    TransformTrackingValue left = frame.getStack(frame.getStackSize() - 2);
+                    TransformTrackingValue right = frame.getStack(frame.getStackSize() - 1);
+
+                    //We can assume the two transforms are the same. This check is just to make sure there isn't a bug in the analyzer
+                    if(!left.getTransform().equals(right.getTransform())){
+                        throw new RuntimeException("The two transforms should be the same");
+                    }
+
+                    //If the transform has more than one subType we will need to separate them so we must remove the emitter
+                    if(left.getTransform().transformedTypes(left.getType()).size() > 1){
+                        markRemoved(left, indexLookup, removedEmitter);
+                        markRemoved(right, indexLookup, removedEmitter);
+                    }
+                }
+
+                //If any of the values used by any instruction are removed we need to remove all the other values emitters
+                boolean remove = false;
+                for(int j = 0; j < consumed; j++){
+                    TransformTrackingValue arg = frame.getStack(frame.getStackSize() - consumed + j);
+                    if(isRemoved(arg, indexLookup, removedEmitter)){
+                        remove = true;
+                    }
+                }
+
+                if(remove){
+                    for(int j = 0; j < consumed; j++){
+                        TransformTrackingValue arg = frame.getStack(frame.getStackSize() - consumed + j);
+                        markRemoved(arg, indexLookup, removedEmitter);
+                    }
+                }
+            }
+        }while(!Arrays.equals(prev, removedEmitter));
+    }
+
+    private static boolean isRemoved(TransformTrackingValue value, Map<AbstractInsnNode, Integer> indexLookup, boolean[] removedEmitter){
+        boolean isAllRemoved = true;
+        boolean isAllPresent = true;
+
+        for(AbstractInsnNode source: value.getSource()){
+            int sourceIndex = indexLookup.get(source);
+            if(removedEmitter[sourceIndex]){
+                isAllPresent = false;
+            }else{
+                isAllRemoved = false;
+            }
+        }
+
+        if(!(isAllPresent || isAllRemoved)){
+            throw new IllegalStateException("Value is neither all present nor all removed");
+        }
+
+        return isAllRemoved;
+    }
+
+    private static void markRemoved(TransformTrackingValue value, Map<AbstractInsnNode, Integer> indexLookup, boolean[] removedEmitter){
+        for(AbstractInsnNode source: value.getSource()){
+            int sourceIndex = indexLookup.get(source);
+            removedEmitter[sourceIndex] = true;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package me.salamander.cctransformer.benchmark;
+
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import me.salamander.cctransformer.util.LinkedInt3HashSet;
+import net.minecraft.core.BlockPos;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link LinkedInt3HashSet} against the {@link LongLinkedOpenHashSet} it replaces. Every benchmark processes all the positions of
+ * the chosen pattern once, so scores are per {@code count} operations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinkedInt3HashSetBenchmark {
+    @Param({"DENSE_CUBE", "SPARSE_RANDOM", "BFS_FRONTIER"})
+    public Int3AccessPattern pattern;
+
+    @Param({"4096", "65536"})
+    public int count;
+
+    private int[] positions;
+    private long[] packed;
+
+    //Filled sets for the read-only benchmarks
+    private LinkedInt3HashSet filledInt3;
+    private LongLinkedOpenHashSet filledFastutil;
+
+    @Setup
+    public void setup() {
+        positions = pattern.generate(count, new Random(1234));
+        packed = Int3AccessPattern.pack(positions);
+
+        filledInt3 = fillInt3();
+        filledFastutil = fillFastutil();
+    }
+
+    @TearDown
+    public void tearDown() {
+        filledInt3.close();
+    }
+
+    private LinkedInt3HashSet fillInt3() {
+        LinkedInt3HashSet set = new LinkedInt3HashSet();
+        for (int i = 0; i < positions.length; i += 3) {
+            set.add(positions[i], positions[i + 1], positions[i + 2]);
+        }
+        return set;
+    }
+
+    private LongLinkedOpenHashSet fillFastutil() {
+        LongLinkedOpenHashSet set = new LongLinkedOpenHashSet();
+        for (long pos : packed) {
+            set.add(pos);
+        }
+        return set;
+    }
+
+    @Benchmark
+    public long addInt3() {
+        try (LinkedInt3HashSet set = fillInt3()) {
+            return set.size();
+        }
+    }
+
+    @Benchmark
+    public long addFastutil() {
+        return fillFastutil().size();
+    }
+
+    @Benchmark
+    public int containsInt3() {
+        int found = 0;
+        for (int i = 0; i < positions.length; i += 3) {
+            if (filledInt3.contains(positions[i], positions[i + 1], positions[i + 2])) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int containsFastutil() {
+        int found = 0;
+        for (long pos : packed) {
+            if (filledFastutil.contains(pos)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Fills a set and removes every position again in insertion order. Subtract {@link #addInt3()} to get the cost of removal
+     */
+    @Benchmark
+    public long addRemoveInt3() {
+        try (LinkedInt3HashSet set = fillInt3()) {
+            for (int i = 0; i < positions.length; i += 3) {
+                set.remove(positions[i], positions[i + 1], positions[i + 2]);
+            }
+            return set.size();
+        }
+    }
+
+    @Benchmark
+    public long addRemoveFastutil() {
+        LongLinkedOpenHashSet set = fillFastutil();
+        for (long pos : packed) {
+            set.remove(pos);
+        }
+        return set.size();
+    }
+
+    /**
+     * Fills a set and then uses it as a queue until it is empty, which is how the light engine queues are used
+     */
+    @Benchmark
+    public void addRemoveFirstInt3(Blackhole bh) {
+        try (LinkedInt3HashSet set = fillInt3()) {
+            while (!set.isEmpty()) {
+                bh.consume(set.getFirstX());
+                bh.consume(set.getFirstY());
+                bh.consume(set.getFirstZ());
+                set.removeFirstValue();
+            }
+        }
+    }
+
+    @Benchmark
+    public void addRemoveFirstFastutil(Blackhole bh) {
+        LongLinkedOpenHashSet set = fillFastutil();
+        while (!set.isEmpty()) {
+            long pos = set.removeFirstLong();
+            bh.consume(BlockPos.getX(pos));
+            bh.consume(BlockPos.getY(pos));
+            bh.consume(BlockPos.getZ(pos));
+        }
+    }
+
+    @Benchmark
+    public void forEachInt3(Blackhole bh) {
+        filledInt3.forEach((x, y, z) -> {
+            bh.consume(x);
+            bh.consume(y);
+            bh.consume(z);
+        });
+    }
+
+    @Benchmark
+    public void forEachFastutil(Blackhole bh) {
+        for (LongIterator it = filledFastutil.iterator(); it.hasNext(); ) {
+            long pos = it.nextLong();
+            bh.consume(BlockPos.getX(pos));
+            bh.consume(BlockPos.getY(pos));
+            bh.consume(BlockPos.getZ(pos));
+        }
+    }
+}
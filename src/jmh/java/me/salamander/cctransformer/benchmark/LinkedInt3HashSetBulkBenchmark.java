@@ -0,0 +1,162 @@
+package me.salamander.cctransformer.benchmark;
+
+import me.salamander.cctransformer.util.Int3UByteLinkedHashMap;
+import me.salamander.cctransformer.util.LinkedInt3HashSet;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the bulk operations of {@link LinkedInt3HashSet} against doing the same thing one position at a time. The second operand holds every
+ * other position of the pattern plus the pattern shifted by two along x, so it half overlaps the first one.
+ * <br><br>
+ * Every benchmark copies the first set before modifying it, see {@link #copy()} for the cost of that alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinkedInt3HashSetBulkBenchmark {
+    @Param({"DENSE_CUBE", "SPARSE_RANDOM", "BFS_FRONTIER"})
+    public Int3AccessPattern pattern;
+
+    @Param({"4096", "65536"})
+    public int count;
+
+    private LinkedInt3HashSet first;
+    private LinkedInt3HashSet second;
+    private Int3UByteLinkedHashMap secondMap;
+    //Same positions as first, so containsAll has to check every bucket
+    private LinkedInt3HashSet firstCopy;
+
+    @Setup
+    public void setup() {
+        int[] positions = pattern.generate(count, new Random(1234));
+
+        first = new LinkedInt3HashSet();
+        second = new LinkedInt3HashSet();
+        secondMap = new Int3UByteLinkedHashMap();
+        for (int i = 0; i < positions.length; i += 3) {
+            int x = positions[i];
+            int y = positions[i + 1];
+            int z = positions[i + 2];
+            first.add(x, y, z);
+
+            if ((i / 3 & 1) == 0) {
+                second.add(x, y, z);
+                secondMap.put(x, y, z, 0);
+            }
+            second.add(x + 2, y, z);
+            secondMap.put(x + 2, y, z, 0);
+        }
+        firstCopy = copyFirst();
+    }
+
+    @TearDown
+    public void tearDown() {
+        first.close();
+        second.close();
+        secondMap.close();
+        firstCopy.close();
+    }
+
+    private LinkedInt3HashSet copyFirst() {
+        LinkedInt3HashSet set = new LinkedInt3HashSet();
+        set.addAll(first);
+        return set;
+    }
+
+    @Benchmark
+    public long copy() {
+        try (LinkedInt3HashSet set = copyFirst()) {
+            return set.size();
+        }
+    }
+
+    @Benchmark
+    public long addAllBulk() {
+        try (LinkedInt3HashSet set = copyFirst()) {
+            set.addAll(second);
+            return set.size();
+        }
+    }
+
+    @Benchmark
+    public long addAllLoop() {
+        try (LinkedInt3HashSet set = copyFirst()) {
+            second.forEach(set::add);
+            return set.size();
+        }
+    }
+
+    @Benchmark
+    public long removeAllBulk() {
+        try (LinkedInt3HashSet set = copyFirst()) {
+            set.removeAll(second);
+            return set.size();
+        }
+    }
+
+    @Benchmark
+    public long removeAllLoop() {
+        try (LinkedInt3HashSet set = copyFirst()) {
+            second.forEach(set::remove);
+            return set.size();
+        }
+    }
+
+    @Benchmark
+    public long retainAllBulk() {
+        try (LinkedInt3HashSet set = copyFirst()) {
+            set.retainAll(second);
+            return set.size();
+        }
+    }
+
+    @Benchmark
+    public long retainAllLoop() {
+        try (LinkedInt3HashSet set = copyFirst()) {
+            first.forEach((x, y, z) -> {
+                if (!second.contains(x, y, z)) {
+                    set.remove(x, y, z);
+                }
+            });
+            return set.size();
+        }
+    }
+
+    @Benchmark
+    public long retainAllMapBulk() {
+        try (LinkedInt3HashSet set = copyFirst()) {
+            set.retainAll(secondMap);
+            return set.size();
+        }
+    }
+
+    @Benchmark
+    public long retainAllMapLoop() {
+        try (LinkedInt3HashSet set = copyFirst()) {
+            first.forEach((x, y, z) -> {
+                if (!secondMap.containsKey(x, y, z)) {
+                    set.remove(x, y, z);
+                }
+            });
+            return set.size();
+        }
+    }
+
+    @Benchmark
+    public boolean containsAllBulk() {
+        return first.containsAll(firstCopy);
+    }
+
+    @Benchmark
+    public boolean containsAllLoop() {
+        boolean[] result = {true};
+        firstCopy.forEach((x, y, z) -> result[0] &= first.contains(x, y, z));
+        return result[0];
+    }
+}
@@ -0,0 +1,114 @@
+package me.salamander.cctransformer.benchmark;
+
+import me.salamander.cctransformer.transformer.RemovedEmitterDetector;
+import me.salamander.cctransformer.transformer.TypeTransformer;
+import me.salamander.cctransformer.transformer.analysis.AnalysisResults;
+import me.salamander.cctransformer.transformer.analysis.TransformTrackingValue;
+import me.salamander.cctransformer.transformer.config.Config;
+import me.salamander.cctransformer.transformer.config.ConfigLoader;
+import me.salamander.cctransformer.transformer.config.MethodParameterInfo;
+import me.salamander.cctransformer.util.InsnIndexMap;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link RemovedEmitterDetector} against {@link LegacyRemovedEmitterDetector} on the largest methods of the light engine classes.
+ * The classes are analyzed once in the setup and the setup fails if the two don't find the same removed emitters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RemovedEmitterDetectorBenchmark {
+    @Param({"net.minecraft.world.level.lighting.DynamicGraphMinFixedPoint", "net.minecraft.world.level.lighting.BlockLightEngine"})
+    public String className;
+
+    //0 is the largest method of the class, 1 the second largest etc...
+    @Param({"0", "1", "2"})
+    public int methodRank;
+
+    private Frame<TransformTrackingValue>[] frames;
+    private AbstractInsnNode[] instructions;
+    private MethodParameterInfo[] methodInfos;
+    private Map<AbstractInsnNode, Integer> legacyIndexLookup;
+    private InsnIndexMap indexLookup;
+
+    @Setup
+    public void setup() throws IOException {
+        Config config;
+        try (InputStream is = RemovedEmitterDetectorBenchmark.class.getResourceAsStream("/type-transform.json")) {
+            config = ConfigLoader.loadConfig(is);
+        }
+
+        ClassNode classNode = new ClassNode();
+        try (InputStream is = ClassLoader.getSystemResourceAsStream(className.replace('.', '/') + ".class")) {
+            if (is == null) {
+                throw new IllegalStateException("Could not find class " + className);
+            }
+            new ClassReader(is.readAllBytes()).accept(classNode, 0);
+        }
+
+        //Loading the config might still print
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        TypeTransformer transformer = new TypeTransformer(config, classNode, false, false);
+        try {
+            transformer.analyzeAllMethods();
+        } finally {
+            System.setOut(out);
+        }
+
+        List<AnalysisResults> methods = new ArrayList<>(transformer.getAnalysisResults().values());
+        methods.removeIf(results -> results.methodNode().instructions.size() == 0);
+        methods.sort(Comparator.comparingInt((AnalysisResults results) -> results.methodNode().instructions.size()).reversed());
+        if (methodRank >= methods.size()) {
+            throw new IllegalStateException(className + " only has " + methods.size() + " methods with code");
+        }
+
+        AnalysisResults results = methods.get(methodRank);
+        frames = results.frames();
+        instructions = results.methodNode().instructions.toArray();
+        methodInfos = RemovedEmitterDetector.resolveMethodInfos(config, instructions, frames);
+        legacyIndexLookup = new IdentityHashMap<>();
+        indexLookup = new InsnIndexMap(instructions.length);
+        for (int i = 0; i < instructions.length; i++) {
+            legacyIndexLookup.put(instructions[i], i);
+            indexLookup.put(instructions[i], i);
+        }
+
+        if (!Arrays.equals(legacy(), worklist())) {
+            throw new IllegalStateException("Detectors disagree on " + className + "." + results.methodNode().name);
+        }
+    }
+
+    @Benchmark
+    public boolean[] legacy() {
+        boolean[] removedEmitter = new boolean[instructions.length];
+        LegacyRemovedEmitterDetector.detect(frames, instructions, methodInfos, legacyIndexLookup, removedEmitter);
+        return removedEmitter;
+    }
+
+    @Benchmark
+    public boolean[] worklist() {
+        boolean[] removedEmitter = new boolean[instructions.length];
+        RemovedEmitterDetector.detect(frames, instructions, methodInfos, indexLookup, removedEmitter);
+        return removedEmitter;
+    }
+}
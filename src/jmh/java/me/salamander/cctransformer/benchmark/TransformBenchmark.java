@@ -0,0 +1,193 @@
+package me.salamander.cctransformer.benchmark;
+
+import me.salamander.cctransformer.transformer.TransformMetrics;
+import me.salamander.cctransformer.transformer.TypeTransformer;
+import me.salamander.cctransformer.transformer.config.Config;
+import me.salamander.cctransformer.transformer.config.ConfigLoader;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs {@link TypeTransformer} end to end over a set of classes and reports the time and memory spent in each phase (see {@link TransformMetrics.Phase}).
+ * This isn't a JMH benchmark because JMH can only report a single score per benchmark.
+ * <br><br>
+ * Usage: {@code TransformBenchmark [-warmup <rounds>] [-rounds <rounds>] [-parallel] [-json <file>] [class names...]}. Run it with {@code gradlew transformBenchmark --args="..."}
+ * <br><br>
+ * With {@code -verify}, nothing is measured. Instead every class is transformed serially once and then in parallel {@code <rounds>} times,
+ * and the run fails unless every parallel result has exactly the same bytes as the serial one. Run it with {@code gradlew verifyParallelTransform}
+ */
+public class TransformBenchmark {
+    private static final String[] DEFAULT_CLASSES = {
+            "net.minecraft.world.level.lighting.DynamicGraphMinFixedPoint",
+            "net.minecraft.world.level.lighting.LayerLightEngine",
+            "net.minecraft.world.level.lighting.BlockLightEngine",
+            "net.minecraft.world.level.lighting.SkyLightEngine"
+    };
+
+    public static void main(String[] args) throws IOException {
+        int warmupRounds = 5;
+        int rounds = 10;
+        boolean parallel = false;
+        boolean verify = false;
+        String jsonOutput = null;
+        List<String> classNames = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-warmup" -> warmupRounds = Integer.parseInt(args[++i]);
+                case "-rounds" -> rounds = Integer.parseInt(args[++i]);
+                case "-parallel" -> parallel = true;
+                case "-verify" -> verify = true;
+                case "-json" -> jsonOutput = args[++i];
+                default -> classNames.add(args[i]);
+            }
+        }
+
+        if (classNames.isEmpty()) {
+            classNames.addAll(List.of(DEFAULT_CLASSES));
+        }
+
+        Config config;
+        try (InputStream is = TransformBenchmark.class.getResourceAsStream("/type-transform.json")) {
+            config = ConfigLoader.loadConfig(is);
+        }
+
+        Map<String, byte[]> corpus = new LinkedHashMap<>();
+        for (String className : classNames) {
+            try (InputStream is = ClassLoader.getSystemResourceAsStream(className.replace('.', '/') + ".class")) {
+                if (is == null) {
+                    System.err.println("Could not find class " + className + ", skipping it");
+                    continue;
+                }
+                corpus.put(className, is.readAllBytes());
+            }
+        }
+
+        if (verify) {
+            if (!verifyParallel(corpus, config, rounds)) {
+                System.exit(1);
+            }
+            return;
+        }
+
+        PrintStream out = System.out;
+        ForkJoinPool pool = parallel ? ForkJoinPool.commonPool() : null;
+
+        //The transformer doesn't print unless it is verbose, but the config and mapping code still might
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        TransformMetrics metrics = new TransformMetrics();
+        long totalNanos = 0;
+        try {
+            for (int round = 0; round < warmupRounds + rounds; round++) {
+                if (round == warmupRounds) {
+                    metrics.reset();
+                    totalNanos = 0;
+                }
+
+                long start = System.nanoTime();
+                for (Map.Entry<String, byte[]> entry : new ArrayList<>(corpus.entrySet())) {
+                    try {
+                        transform(entry.getValue(), config, metrics, pool);
+                    } catch (RuntimeException e) {
+                        out.println("Failed to transform " + entry.getKey() + ", removing it from the corpus: " + e);
+                        corpus.remove(entry.getKey());
+                    }
+                }
+                totalNanos += System.nanoTime() - start;
+            }
+        } finally {
+            System.setOut(out);
+        }
+
+        out.println("Transformed " + corpus.size() + " classes " + rounds + " times (" + warmupRounds + " warmup rounds" + (parallel ? ", parallel" : "") + ")");
+        out.printf("%-26s %12s %14s %10s%n", "Phase", "ms/round", "MB alloc/round", "runs/round");
+        TransformMetrics.Stats total = metrics.getTotal();
+        for (TransformMetrics.Phase phase : TransformMetrics.Phase.values()) {
+            out.printf("%-26s %12.3f %14.3f %10d%n",
+                    phase.getDisplayName(),
+                    total.getNanos(phase) / 1e6 / rounds,
+                    total.getAllocatedBytes(phase) / (1024.0 * 1024.0) / rounds,
+                    total.getRuns(phase) / rounds
+            );
+        }
+        out.printf("%-26s %12.3f%n", "total (wall)", totalNanos / 1e6 / rounds);
+
+        out.println();
+        out.printf("%-26s %12s%n", "Counter", "per round");
+        for (TransformMetrics.Counter counter : TransformMetrics.Counter.values()) {
+            out.printf("%-26s %12d%n", counter.getDisplayName(), total.getCount(counter) / rounds);
+        }
+
+        if (jsonOutput != null) {
+            metrics.writeJson(Path.of(jsonOutput));
+            out.println("Wrote metrics to " + jsonOutput);
+        }
+    }
+
+    /**
+     * Checks that transforming each class of the corpus in parallel gives the same bytes as transforming it serially
+     * @return Whether all the results were identical
+     */
+    private static boolean verifyParallel(Map<String, byte[]> corpus, Config config, int rounds) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        List<String> mismatches = new ArrayList<>();
+        try {
+            for (Map.Entry<String, byte[]> entry : corpus.entrySet()) {
+                byte[] serial = transform(entry.getValue(), config, new TransformMetrics(), null);
+                for (int round = 0; round < rounds; round++) {
+                    byte[] parallel = transform(entry.getValue(), config, new TransformMetrics(), ForkJoinPool.commonPool());
+                    if (!Arrays.equals(serial, parallel)) {
+                        mismatches.add(entry.getKey() + " (round " + round + ")");
+                        break;
+                    }
+                }
+            }
+        } finally {
+            System.setOut(out);
+        }
+
+        if (mismatches.isEmpty()) {
+            out.println("Parallel transforms of all " + corpus.size() + " classes matched the serial transforms over " + rounds + " rounds");
+            return true;
+        }
+
+        out.println("Parallel transforms differ from the serial transforms for " + mismatches.size() + " of " + corpus.size() + " classes:");
+        for (String mismatch : mismatches) {
+            out.println("  " + mismatch);
+        }
+        return false;
+    }
+
+    private static byte[] transform(byte[] bytes, Config config, TransformMetrics metrics, ForkJoinPool pool) {
+        ClassNode classNode = new ClassNode();
+        new ClassReader(bytes).accept(classNode, 0);
+
+        TypeTransformer transformer = new TypeTransformer(config, classNode, false, false);
+        transformer.setMetrics(metrics);
+
+        if (pool != null) {
+            transformer.analyzeAllMethods(pool);
+            transformer.transformAllMethods(pool);
+        } else {
+            transformer.analyzeAllMethods();
+            transformer.transformAllMethods();
+        }
+
+        return transformer.getTransformedBytes();
+    }
+}
@@ -1,5 +1,6 @@
 package me.salamander.cctransformer;
 
+import me.salamander.cctransformer.transformer.TransformCache;
 import me.salamander.cctransformer.transformer.TypeTransformer;
 import me.salamander.cctransformer.transformer.config.Config;
 import me.salamander.cctransformer.transformer.config.ConfigLoader;
@@ -10,25 +11,50 @@ import org.objectweb.asm.tree.*;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
+import java.nio.file.Path;
+import java.util.Map;
 
 public class CCTransformer {
+    //Transformed classes are cached here so that they don't need to be transformed on every launch
+    private static final Path CACHE_DIR = Path.of("run", "transform-cache");
+    //Created by the precompileDevConfig gradle task
+    private static final Path PRECOMPILED_CONFIG = Path.of("run", "type-transform.bin");
+
     public static void main(String[] args) {
-        Config config = getConfig();
+        byte[] configBytes = readResource("/type-transform.json");
+        TransformCache cache = new TransformCache(CACHE_DIR, configBytes, ConfigLoader.getRuntimeNamespace());
 
         //ClassNode testClass = loadClass(BlockLightEngine.class);
-        ClassNode testClass = loadClass("net.minecraft.world.level.lighting.DynamicGraphMinFixedPoint");
-        //ClassNode testClass = loadClass("net.minecraft.world.level.lighting.BlockLightEngine");
+        String className = "net.minecraft.world.level.lighting.DynamicGraphMinFixedPoint";
+        //String className = "net.minecraft.world.level.lighting.BlockLightEngine";
+        byte[] classBytes = readResource("/" + className.replace('.', '/') + ".class");
+
+        InsnList constructorCode = dynGraphConstructor();
+        byte[] settings = TransformCache.settings(false, false, Map.of("(III)V", constructorCode));
+
+        byte[] transformedBytes = cache.get(classBytes, settings);
+        if(transformedBytes == null) {
+            Config config = ConfigLoader.loadConfig(PRECOMPILED_CONFIG, configBytes);
 
-        TypeTransformer typeTransformer = new TypeTransformer(config, testClass, false, false);
+            ClassNode testClass = loadClass(classBytes);
 
-        typeTransformer.analyzeAllMethods();
+            TypeTransformer typeTransformer = new TypeTransformer(config, testClass, false, false);
+            typeTransformer.setVerbose(true);
 
-        typeTransformer.makeConstructor("(III)V", dynGraphConstructor());
+            typeTransformer.analyzeAllMethods();
 
-        typeTransformer.transformAllMethods();
+            typeTransformer.makeConstructor("(III)V", constructorCode);
+
+            typeTransformer.transformAllMethods();
+
+            typeTransformer.saveTransformedClass();
+            transformedBytes = typeTransformer.getTransformedBytes();
+            cache.put(classBytes, settings, transformedBytes);
+        }else{
+            System.out.println("Loaded " + className + " from transform cache");
+        }
 
-        typeTransformer.saveTransformedClass();
-        Class<?> clazz = typeTransformer.loadTransformedClass();
+        Class<?> clazz = TypeTransformer.loadClass(transformedBytes);
         try {
             Constructor<?>[] constructors = clazz.getConstructors();
             Constructor<?> constructor = constructors[0];
@@ -96,31 +122,25 @@ public class CCTransformer {
 
 
     private static ClassNode loadClass(Class<?> clazz) {
-        return loadClass(clazz.getName());
+        return loadClass(readResource("/" + clazz.getName().replace('.', '/') + ".class"));
     }
 
-    private static ClassNode loadClass(String name) {
+    private static ClassNode loadClass(byte[] bytes) {
         ClassNode classNode = new ClassNode();
-        try {
-            InputStream is = ClassLoader.getSystemResourceAsStream(name.replace('.', '/') + ".class");
-            ClassReader classReader = new ClassReader(is);
-            classReader.accept(classNode, 0);
-        }catch (IOException e) {
-            e.printStackTrace();
-            return null;
-        }
+        ClassReader classReader = new ClassReader(bytes);
+        classReader.accept(classNode, 0);
 
         return classNode;
     }
 
-    private static Config getConfig(){
-        InputStream is = CCTransformer.class.getResourceAsStream("/type-transform.json");
-        Config config = ConfigLoader.loadConfig(is);
-        try {
-            is.close();
+    private static byte[] readResource(String name){
+        try (InputStream is = CCTransformer.class.getResourceAsStream(name)) {
+            if(is == null){
+                throw new IllegalStateException("Could not find resource " + name);
+            }
+            return is.readAllBytes();
         }catch (IOException e) {
-            e.printStackTrace();
+            throw new RuntimeException("Failed to read resource " + name, e);
         }
-        return config;
     }
 }
@@ -0,0 +1,302 @@
+package me.salamander.cctransformer.transformer;
+
+import me.salamander.cctransformer.transformer.analysis.TransformTrackingValue;
+import me.salamander.cctransformer.transformer.config.Config;
+import me.salamander.cctransformer.transformer.config.MethodParameterInfo;
+import me.salamander.cctransformer.util.ASMUtil;
+import me.salamander.cctransformer.util.InsnIndexMap;
+import me.salamander.cctransformer.util.MethodID;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.analysis.Frame;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the emitters that need to be removed from a method. See {@link TypeTransformer#detectAllRemovedEmitters} for what that means.
+ * <br><br>
+ * An emitter is removed if
+ * <ul>
+ *     <li>it emits an argument of a method call whose parameters are changed by the transform</li>
+ *     <li>it emits a value compared by an instruction (LCMP, IF_ICMPEQ, ...) and that value is expanded into more than one value</li>
+ *     <li>it emits a value consumed by an instruction which also consumes a value whose emitters are all removed</li>
+ * </ul>
+ * The last rule is propagated with a worklist. Each instruction keeps, for every value it consumes, how many of the value's emitters are still present.
+ * When an emitter is removed only the values it emits are updated, so every (value, emitter) pair is visited once instead of re-scanning the whole method
+ * until nothing changes.
+ */
+public class RemovedEmitterDetector {
+    private final Frame<TransformTrackingValue>[] frames;
+    private final AbstractInsnNode[] instructions;
+    private final MethodParameterInfo[] methodInfos;
+    private final InsnIndexMap indexLookup;
+    private final boolean[] removedEmitter;
+
+    //Every value consumed by every instruction is an "argument". The arguments of instruction i are argStart[i] until argStart[i + 1]
+    private final int[] argStart;
+    //The index of the instruction consuming each argument
+    private final int[] argInstruction;
+    //The emitters of argument a are argSources[argSourceStart[a]] until argSources[argSourceStart[a + 1]]
+    private final int[] argSourceStart;
+    private int[] argSources;
+    //How many emitters of each argument are not removed
+    private final int[] remaining;
+
+    //The arguments emitted by emitter e are emittedArgs[emittedStart[e]] until emittedArgs[emittedStart[e + 1]]
+    private int[] emittedStart;
+    private int[] emittedArgs;
+
+    //Whether the third rule has been applied to an instruction
+    private final boolean[] propagated;
+
+    //Removed emitters whose arguments haven't been updated yet
+    private int[] worklist;
+    private int worklistSize = 0;
+
+    private RemovedEmitterDetector(Frame<TransformTrackingValue>[] frames, AbstractInsnNode[] instructions, MethodParameterInfo[] methodInfos, InsnIndexMap indexLookup, boolean[] removedEmitter) {
+        this.frames = frames;
+        this.instructions = instructions;
+        this.methodInfos = methodInfos;
+        this.indexLookup = indexLookup;
+        this.removedEmitter = removedEmitter;
+
+        int length = removedEmitter.length;
+        this.argStart = new int[length + 1];
+        for(int i = 0; i < length; i++){
+            argStart[i + 1] = argStart[i] + (frames[i] == null ? 0 : ASMUtil.stackConsumed(instructions[i]));
+        }
+
+        int argCount = argStart[length];
+        this.argInstruction = new int[argCount];
+        this.argSourceStart = new int[argCount + 1];
+        this.remaining = new int[argCount];
+        this.propagated = new boolean[length];
+        this.worklist = new int[Math.max(16, length)];
+    }
+
+    /**
+     * Marks all the emitters that need to be removed
+     * @param frames The frames of the original method
+     * @param instructions The instructions of the method. Index i must correspond to frames[i]
+     * @param methodInfos The transform of each method call, see {@link #resolveMethodInfos(Config, AbstractInsnNode[], Frame[])}
+     * @param indexLookup Maps the instructions of the original method to their index
+     * @param removedEmitter Where the result is stored. Emitters that are already marked as removed stay removed
+     */
+    public static void detect(Frame<TransformTrackingValue>[] frames, AbstractInsnNode[] instructions, MethodParameterInfo[] methodInfos, InsnIndexMap indexLookup, boolean[] removedEmitter) {
+        new RemovedEmitterDetector(frames, instructions, methodInfos, indexLookup, removedEmitter).run();
+    }
+
+    /**
+     * Finds the transform that applies to each method call
+     * @param config The config containing the method transforms
+     * @param instructions The instructions of the method
+     * @param frames The frames of the method. Index i must correspond to instructions[i]
+     * @return For each instruction, the transform of the method it calls or null if it isn't a method call or the method isn't transformed
+     */
+    public static MethodParameterInfo[] resolveMethodInfos(Config config, AbstractInsnNode[] instructions, Frame<TransformTrackingValue>[] frames) {
+        MethodParameterInfo[] methodInfos = new MethodParameterInfo[instructions.length];
+        for(int i = 0; i < instructions.length; i++){
+            AbstractInsnNode insn = instructions[i];
+            Frame<TransformTrackingValue> frame = frames[i];
+            if(insn instanceof MethodInsnNode methodCall){
+                MethodID calledMethod = MethodID.from(methodCall);
+
+                TransformTrackingValue returnValue = null;
+                if (calledMethod.getDescriptor().getReturnType() != Type.VOID_TYPE) {
+                    returnValue = ASMUtil.getTop(frames[i + 1]);
+                }
+
+                int argCount = ASMUtil.argumentCount(calledMethod.getDescriptor().getDescriptor(), calledMethod.isStatic());
+                TransformTrackingValue[] args = new TransformTrackingValue[argCount];
+                for (int j = 0; j < args.length; j++) {
+                    args[j] = frame.getStack(frame.getStackSize() - argCount + j);
+                }
+
+                //Lookup the possible method transforms
+                List<MethodParameterInfo> infos = config.getMethodParameterInfo().get(calledMethod);
+
+                if(infos != null) {
+                    //Check all possible transforms to see if any of them match
+                    for (MethodParameterInfo info : infos) {
+                        if (info.getTransformCondition().checkValidity(returnValue, args) == 1) {
+                            methodInfos[i] = info;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return methodInfos;
+    }
+
+    private void run() {
+        buildGraph();
+
+        //Emitters that were removed before this ran still need to be propagated
+        for(int i = 0; i < removedEmitter.length; i++){
+            if(removedEmitter[i]){
+                push(i);
+            }
+        }
+
+        for(int i = 0; i < removedEmitter.length; i++){
+            addInitialRemovals(i);
+
+            //A value without any emitters counts as removed
+            for(int arg = argStart[i]; arg < argStart[i + 1]; arg++){
+                if(remaining[arg] == 0){
+                    propagate(i);
+                    break;
+                }
+            }
+        }
+
+        while(worklistSize > 0){
+            int emitter = worklist[--worklistSize];
+
+            for(int j = emittedStart[emitter]; j < emittedStart[emitter + 1]; j++){
+                int arg = emittedArgs[j];
+                remaining[arg]--;
+                if(remaining[arg] == 0){
+                    propagate(argInstruction[arg]);
+                }
+            }
+        }
+
+        checkConsistency();
+    }
+
+    /**
+     * Finds the emitters of every argument and inverts that to get the arguments of every emitter
+     */
+    private void buildGraph() {
+        int length = removedEmitter.length;
+        int[] emittedCount = new int[length + 1];
+        argSources = new int[Math.max(16, argInstruction.length)];
+        int sourceCount = 0;
+
+        for(int i = 0; i < length; i++){
+            Frame<TransformTrackingValue> frame = frames[i];
+            int consumed = argStart[i + 1] - argStart[i];
+
+            for(int j = 0; j < consumed; j++){
+                int arg = argStart[i] + j;
+                argInstruction[arg] = i;
+                argSourceStart[arg] = sourceCount;
+
+                TransformTrackingValue value = frame.getStack(frame.getStackSize() - consumed + j);
+                for(AbstractInsnNode source: value.getSource()){
+                    int sourceIndex = indexLookup.get(source);
+
+                    //Both the original and new instructions can be in the source so make sure each emitter is only counted once
+                    boolean duplicate = false;
+                    for(int k = argSourceStart[arg]; k < sourceCount; k++){
+                        if(argSources[k] == sourceIndex){
+                            duplicate = true;
+                            break;
+                        }
+                    }
+                    if(duplicate) continue;
+
+                    if(sourceCount == argSources.length){
+                        argSources = Arrays.copyOf(argSources, sourceCount * 2);
+                    }
+                    argSources[sourceCount++] = sourceIndex;
+                    emittedCount[sourceIndex + 1]++;
+                }
+
+                remaining[arg] = sourceCount - argSourceStart[arg];
+            }
+        }
+        argSourceStart[argInstruction.length] = sourceCount;
+
+        //Prefix sum to get where the arguments of each emitter start
+        emittedStart = emittedCount;
+        for(int i = 0; i < length; i++){
+            emittedStart[i + 1] += emittedStart[i];
+        }
+
+        emittedArgs = new int[sourceCount];
+        int[] filled = new int[length];
+        for(int arg = 0; arg < argInstruction.length; arg++){
+            for(int k = argSourceStart[arg]; k < argSourceStart[arg + 1]; k++){
+                int emitter = argSources[k];
+                emittedArgs[emittedStart[emitter] + filled[emitter]++] = arg;
+            }
+        }
+    }
+
+    /**
+     * Applies the first two rules to an instruction
+     */
+    private void addInitialRemovals(int index) {
+        AbstractInsnNode instruction = instructions[index];
+        Frame<TransformTrackingValue> frame = frames[index];
+        int opcode = instruction.getOpcode();
+
+        if(instruction instanceof MethodInsnNode){
+            MethodParameterInfo info = methodInfos[index];
+            if(info != null && info.getReplacement().changeParameters()){
+                //If any method parameters are changed we remove all of it's emitters
+                removeArguments(index);
+            }
+        }else if(opcode == Opcodes.LCMP || opcode == Opcodes.FCMPL || opcode == Opcodes.FCMPG || opcode == Opcodes.DCMPL || opcode == Opcodes.DCMPG || opcode == Opcodes.IF_ICMPEQ || opcode == Opcodes.IF_ICMPNE || opcode == Opcodes.IF_ACMPEQ || opcode == Opcodes.IF_ACMPNE){
+            //Get two values
+            TransformTrackingValue left = frame.getStack(frame.getStackSize() - 2);
+            TransformTrackingValue right = frame.getStack(frame.getStackSize() - 1);
+
+            //We can assume the two transforms are the same. This check is just to make sure there isn't a bug in the analyzer
+            if(!left.getTransform().equals(right.getTransform())){
+                throw new RuntimeException("The two transforms should be the same");
+            }
+
+            //If the transform has more than one subType we will need to separate them so we must remove the emitter
+            if(left.getTransform().transformedTypes(left.getType()).size() > 1){
+                removeArguments(index);
+            }
+        }
+    }
+
+    /**
+     * Applies the third rule to an instruction: one of its arguments is removed so all of them are
+     */
+    private void propagate(int index) {
+        if(propagated[index]) return;
+        propagated[index] = true;
+
+        removeArguments(index);
+    }
+
+    private void removeArguments(int index) {
+        for(int arg = argStart[index]; arg < argStart[index + 1]; arg++){
+            for(int k = argSourceStart[arg]; k < argSourceStart[arg + 1]; k++){
+                int emitter = argSources[k];
+                if(!removedEmitter[emitter]){
+                    removedEmitter[emitter] = true;
+                    push(emitter);
+                }
+            }
+        }
+    }
+
+    private void push(int emitter) {
+        if(worklistSize == worklist.length){
+            worklist = Arrays.copyOf(worklist, worklistSize * 2);
+        }
+        worklist[worklistSize++] = emitter;
+    }
+
+    /**
+     * Every value must either have all or none of its emitters removed otherwise it can't be generated
+     */
+    private void checkConsistency() {
+        for(int arg = 0; arg < argInstruction.length; arg++){
+            if(remaining[arg] != 0 && remaining[arg] != argSourceStart[arg + 1] - argSourceStart[arg]){
+                throw new IllegalStateException("Value is neither all present nor all removed");
+            }
+        }
+    }
+}
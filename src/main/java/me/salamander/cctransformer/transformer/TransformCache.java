@@ -0,0 +1,286 @@
+package me.salamander.cctransformer.transformer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.InsnList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * A content-addressed on-disk cache of transformed classes. The key of an entry is a SHA-256 hash of the original class bytes, the config
+ * the class was transformed with, the runtime mapping namespace, the settings of the transformer (see {@link #settings}) and {@link #VERSION}.
+ * This means an entry can never be stale, it can only stop being used. Unused entries
+ * are evicted once they haven't been read for {@link #maxAge} or when there are more than {@link #maxEntries} entries.
+ * <br><br>
+ * Several JVMs may share the same cache directory. Entries are written to a temporary file and then atomically moved into place so a
+ * reader either sees a complete entry or no entry at all. An entry that disappears while being read (because another JVM evicted it) is a miss.
+ */
+public class TransformCache {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    //Should be incremented whenever a change to the transformer changes the output for the same input
+    public static final int VERSION = 1;
+
+    //Written at the start of every entry
+    private static final int ENTRY_MAGIC = 0xCC7C0DE5;
+    //Magic and length
+    private static final int ENTRY_HEADER_SIZE = 8;
+    private static final String ENTRY_EXTENSION = ".class";
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    private final Path directory;
+    //Hash of the config, namespace and version. Every key starts with this
+    private final byte[] configHash;
+    private final int maxEntries;
+    private final Duration maxAge;
+
+    /**
+     * @param directory The directory to store entries in. It will be created if it doesn't exist
+     * @param configBytes The raw contents of the config file (type-transform.json)
+     * @param namespace The runtime mapping namespace the config gets mapped to
+     * @param maxEntries The maximum number of entries kept on disk
+     * @param maxAge Entries that haven't been used for this long get evicted
+     */
+    public TransformCache(Path directory, byte[] configBytes, String namespace, int maxEntries, Duration maxAge) {
+        this.directory = directory;
+        this.maxEntries = maxEntries;
+        this.maxAge = maxAge;
+
+        MessageDigest digest = createDigest();
+        digest.update(ByteBuffer.allocate(4).putInt(VERSION).array());
+        digest.update(hash(configBytes));
+        digest.update(namespace.getBytes(StandardCharsets.UTF_8));
+        this.configHash = digest.digest();
+    }
+
+    public TransformCache(Path directory, byte[] configBytes, String namespace) {
+        this(directory, configBytes, namespace, 256, Duration.ofDays(30));
+    }
+
+    /**
+     * Describes everything given to a {@link TypeTransformer} besides the class and the config, so that it can be part of the key of an entry
+     * @param duplicateClass See {@link TypeTransformer#TypeTransformer}
+     * @param addSafety See {@link TypeTransformer#TypeTransformer}
+     * @param constructors The constructors added with {@link TypeTransformer#makeConstructor}, by descriptor
+     * @return The settings to pass to {@link #get} and {@link #put}
+     */
+    public static byte[] settings(boolean duplicateClass, boolean addSafety, Map<String, InsnList> constructors) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeBoolean(duplicateClass);
+            data.writeBoolean(addSafety);
+
+            data.writeInt(constructors.size());
+            for (Map.Entry<String, InsnList> constructor : new TreeMap<>(constructors).entrySet()) {
+                data.writeUTF(constructor.getKey());
+                data.write(hash(constructorBytes(constructor.getKey(), constructor.getValue())));
+            }
+            data.flush();
+
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write transform settings", e);
+        }
+    }
+
+    /**
+     * Looks up the transformed version of a class
+     * @param classBytes The bytes of the original class
+     * @param settings The settings of the transformer, see {@link #settings}
+     * @return The bytes of the transformed class or null if it isn't cached
+     */
+    public byte[] get(byte[] classBytes, byte[] settings) {
+        Path entry = directory.resolve(key(classBytes, settings) + ENTRY_EXTENSION);
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(entry))) {
+            if (in.readInt() != ENTRY_MAGIC) {
+                LOGGER.warn("Ignoring corrupted cache entry " + entry);
+                return null;
+            }
+
+            //Check the length before allocating so that a truncated or corrupted entry is a miss instead of an OutOfMemoryError
+            int length = in.readInt();
+            if (length < 0 || length != Files.size(entry) - ENTRY_HEADER_SIZE) {
+                LOGGER.warn("Ignoring corrupted cache entry " + entry);
+                return null;
+            }
+
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+
+            //Keeps the entry from being evicted
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+
+            return bytes;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read cache entry " + entry, e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the transformed version of a class. Failing to write the entry is not an error, it will just be transformed again next time.
+     * @param classBytes The bytes of the original class
+     * @param settings The settings of the transformer, see {@link #settings}
+     * @param transformedBytes The bytes of the transformed class
+     */
+    public void put(byte[] classBytes, byte[] settings, byte[] transformedBytes) {
+        String key = key(classBytes, settings);
+        Path temp = null;
+
+        try {
+            Files.createDirectories(directory);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(transformedBytes.length + ENTRY_HEADER_SIZE);
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(ENTRY_MAGIC);
+            data.writeInt(transformedBytes.length);
+            data.write(transformedBytes);
+            data.flush();
+
+            //Another JVM may be writing the same entry. Each writer has its own temporary file and the last move wins, which is fine since the contents are the same
+            temp = Files.createTempFile(directory, key, TEMP_EXTENSION);
+            Files.write(temp, out.toByteArray());
+
+            try {
+                Files.move(temp, directory.resolve(key + ENTRY_EXTENSION), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, directory.resolve(key + ENTRY_EXTENSION), StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write cache entry " + key, e);
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        evict();
+    }
+
+    /**
+     * Removes entries that are too old and, if there are still too many, the least recently used ones. Leftover temporary files from crashed
+     * JVMs are removed as well.
+     */
+    public void evict() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        List<Path> entries = new ArrayList<>();
+        List<Long> lastUsed = new ArrayList<>();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                boolean isEntry = name.endsWith(ENTRY_EXTENSION);
+                if (!isEntry && !name.endsWith(TEMP_EXTENSION)) {
+                    continue;
+                }
+
+                long modified;
+                try {
+                    modified = Files.getLastModifiedTime(file).toMillis();
+                } catch (NoSuchFileException e) {
+                    continue; //Evicted by someone else
+                }
+
+                if (now - modified > maxAge.toMillis()) {
+                    Files.deleteIfExists(file);
+                } else if (isEntry) {
+                    entries.add(file);
+                    lastUsed.add(modified);
+                }
+            }
+
+            if (entries.size() > maxEntries) {
+                Integer[] order = new Integer[entries.size()];
+                for (int i = 0; i < order.length; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, Comparator.comparingLong(lastUsed::get));
+
+                for (int i = 0; i < order.length - maxEntries; i++) {
+                    Files.deleteIfExists(entries.get(order[i]));
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to evict cache entries", e);
+        }
+    }
+
+    private String key(byte[] classBytes, byte[] settings) {
+        MessageDigest digest = createDigest();
+        digest.update(configHash);
+        digest.update(hash(settings));
+        digest.update(classBytes);
+
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes a constructor into a class so that it has a stable byte representation
+     */
+    private static byte[] constructorBytes(String desc, InsnList code) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V16, Opcodes.ACC_PUBLIC, "Constructor", null, "java/lang/Object", null);
+
+        MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", desc, null, null);
+        method.visitCode();
+        code.accept(method);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+
+        writer.visitEnd();
+        //The labels now belong to this writer
+        code.resetLabels();
+
+        return writer.toByteArray();
+    }
+
+    //Inputs of variable length are hashed before being added to a key so that two different inputs can't produce the same digest input
+    private static byte[] hash(byte[] bytes) {
+        return createDigest().digest(bytes);
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package me.salamander.cctransformer.transformer;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import me.salamander.cctransformer.jfr.TransformEvents;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects how much time and memory each phase of a transform takes along with some counters (see {@link Counter}). Everything is recorded
+ * in total, per class and per method. A single instance can be shared by several transformers and threads.
+ * <br><br>
+ * Memory is measured as the bytes allocated by the current thread, which is only available on HotSpot. Elsewhere it is always 0.
+ * <br><br>
+ * The results can be exported with {@link #toJson()}. Every timed phase and every count is also emitted as a JFR event
+ * ({@code cctransformer.Phase} and {@code cctransformer.Count}) when a recording with those events enabled is running. See {@link TransformEvents}.
+ */
+public class TransformMetrics {
+    //Doesn't record anything. Timing a phase with it is free
+    public static final TransformMetrics NONE = new TransformMetrics(false);
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = getThreadBean();
+
+    private final boolean enabled;
+    private final Stats total = new Stats();
+    private final Map<String, Stats> classes = new ConcurrentHashMap<>();
+    //Keys are "<class> <method name><method desc>"
+    private final Map<String, Stats> methods = new ConcurrentHashMap<>();
+
+    private final Timer noopTimer = new Timer(null, null, null, 0, 0, null);
+
+    public TransformMetrics() {
+        this(true);
+    }
+
+    private TransformMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Starts timing a phase. The phase ends when the returned timer is stopped, which should be done in a finally block
+     * @param phase The phase
+     * @param className The internal name of the class being transformed
+     * @param method The name and descriptor of the method being transformed or null if the phase is for the whole class
+     */
+    public Timer time(Phase phase, String className, String method) {
+        if(!enabled){
+            return noopTimer;
+        }
+
+        Object event = TransformEvents.beginPhase();
+        return new Timer(phase, className, method, currentAllocatedBytes(), System.nanoTime(), event);
+    }
+
+    /**
+     * Adds to a counter
+     * @param counter The counter
+     * @param className The internal name of the class being transformed
+     * @param method The name and descriptor of the method being transformed or null if the count is for the whole class
+     * @param amount How much to add
+     */
+    public void count(Counter counter, String className, String method, long amount) {
+        if(!enabled){
+            return;
+        }
+
+        total.counts[counter.ordinal()].add(amount);
+        classStats(className).counts[counter.ordinal()].add(amount);
+        if(method != null){
+            methodStats(className, method).counts[counter.ordinal()].add(amount);
+        }
+
+        TransformEvents.count(className, method, counter.getDisplayName(), amount);
+    }
+
+    public Stats getTotal() {
+        return total;
+    }
+
+    /**
+     * @return The stats of a class or null if nothing has been recorded for it
+     */
+    public Stats getClassStats(String className) {
+        return classes.get(className);
+    }
+
+    /**
+     * @return The stats of a method or null if nothing has been recorded for it
+     */
+    public Stats getMethodStats(String className, String method) {
+        return methods.get(className + " " + method);
+    }
+
+    public void reset() {
+        total.reset();
+        classes.clear();
+        methods.clear();
+    }
+
+    /**
+     * Exports everything recorded so far. Classes and methods are sorted by name
+     * <pre>
+     * {
+     *     "total": stats,
+     *     "classes": {
+     *         "class/Name": {
+     *             ...stats,
+     *             "methods": { "name(desc)": stats }
+     *         }
+     *     }
+     * }
+     * </pre>
+     * where {@code stats} is <code>{ "phases": { "analysis": { "nanos": n, "allocatedBytes": n, "runs": n }, ... }, "counters": { "framesAnalyzed": n, ... } }</code>
+     */
+    public JsonObject toJson() {
+        JsonObject root = new JsonObject();
+        root.add("total", total.toJson());
+
+        Map<String, JsonObject> classObjects = new TreeMap<>();
+        for(Map.Entry<String, Stats> entry: classes.entrySet()){
+            JsonObject classObject = entry.getValue().toJson();
+            classObject.add("methods", new JsonObject());
+            classObjects.put(entry.getKey(), classObject);
+        }
+
+        for(Map.Entry<String, Stats> entry: new TreeMap<>(methods).entrySet()){
+            int split = entry.getKey().indexOf(' ');
+            JsonObject classObject = classObjects.get(entry.getKey().substring(0, split));
+            classObject.getAsJsonObject("methods").add(entry.getKey().substring(split + 1), entry.getValue().toJson());
+        }
+
+        JsonObject classesObject = new JsonObject();
+        classObjects.forEach(classesObject::add);
+        root.add("classes", classesObject);
+
+        return root;
+    }
+
+    public void writeJson(Path path) {
+        try {
+            if(path.getParent() != null){
+                Files.createDirectories(path.getParent());
+            }
+            Files.writeString(path, new GsonBuilder().setPrettyPrinting().create().toJson(toJson()));
+        }catch (IOException e){
+            throw new RuntimeException("Failed to write metrics", e);
+        }
+    }
+
+    private Stats classStats(String className) {
+        return classes.computeIfAbsent(className, k -> new Stats());
+    }
+
+    private Stats methodStats(String className, String method) {
+        //Make sure the class exists so the method shows up in the JSON
+        classStats(className);
+        return methods.computeIfAbsent(className + " " + method, k -> new Stats());
+    }
+
+    private static long currentAllocatedBytes() {
+        return THREAD_BEAN == null ? 0 : THREAD_BEAN.getCurrentThreadAllocatedBytes();
+    }
+
+    private static com.sun.management.ThreadMXBean getThreadBean() {
+        try {
+            if(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean && bean.isThreadAllocatedMemorySupported()){
+                bean.setThreadAllocatedMemoryEnabled(true);
+                return bean;
+            }
+        }catch (UnsupportedOperationException | LinkageError e){
+            //Not on HotSpot
+        }
+        return null;
+    }
+
+    public enum Phase {
+        //Running the analyzer over a method
+        ANALYSIS("analysis"),
+        //See TypeTransformer#detectAllRemovedEmitters
+        DETECT_REMOVED_EMITTERS("detectAllRemovedEmitters"),
+        //See TypeTransformer#createEmitters
+        CREATE_EMITTERS("createEmitters"),
+        //See TypeTransformer#modifyCode
+        MODIFY_CODE("modifyCode"),
+        //Writing the transformed class with a ClassWriter which computes frames
+        WRITE_CLASS("writeClass");
+
+        private final String displayName;
+
+        Phase(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    public enum Counter {
+        //Frames produced by the analyzer (unreachable instructions have no frame)
+        FRAMES_ANALYZED("framesAnalyzed"),
+        //Instructions whose emitted values are replaced by synthetic emitters
+        EMITTERS_REMOVED("emittersRemoved"),
+        //New local variables allocated by VariableManager
+        VARIABLES_ALLOCATED("variablesAllocated"),
+        //How many more instructions the transformed method has than the original
+        INSTRUCTIONS_INSERTED("instructionsInserted"),
+        //Methods whose parallel analysis was thrown away and redone serially to match the serial results
+        ANALYSES_REPEATED("analysesRepeated");
+
+        private final String displayName;
+
+        Counter(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    public static class Stats {
+        private final LongAdder[] nanos = createAdders(Phase.values().length);
+        private final LongAdder[] allocatedBytes = createAdders(Phase.values().length);
+        private final LongAdder[] runs = createAdders(Phase.values().length);
+        private final LongAdder[] counts = createAdders(Counter.values().length);
+
+        public long getNanos(Phase phase) {
+            return nanos[phase.ordinal()].sum();
+        }
+
+        public long getAllocatedBytes(Phase phase) {
+            return allocatedBytes[phase.ordinal()].sum();
+        }
+
+        /**
+         * @return How many times the phase has been timed
+         */
+        public long getRuns(Phase phase) {
+            return runs[phase.ordinal()].sum();
+        }
+
+        public long getCount(Counter counter) {
+            return counts[counter.ordinal()].sum();
+        }
+
+        private void record(Phase phase, long elapsed, long allocated) {
+            nanos[phase.ordinal()].add(elapsed);
+            allocatedBytes[phase.ordinal()].add(allocated);
+            runs[phase.ordinal()].increment();
+        }
+
+        private void reset() {
+            for(LongAdder[] adders: new LongAdder[][]{nanos, allocatedBytes, runs, counts}){
+                for(LongAdder adder: adders){
+                    adder.reset();
+                }
+            }
+        }
+
+        private JsonObject toJson() {
+            JsonObject phases = new JsonObject();
+            for(Phase phase: Phase.values()){
+                if(getRuns(phase) == 0) continue;
+
+                JsonObject phaseObject = new JsonObject();
+                phaseObject.addProperty("nanos", getNanos(phase));
+                phaseObject.addProperty("allocatedBytes", getAllocatedBytes(phase));
+                phaseObject.addProperty("runs", getRuns(phase));
+                phases.add(phase.getDisplayName(), phaseObject);
+            }
+
+            JsonObject counters = new JsonObject();
+            for(Counter counter: Counter.values()){
+                counters.addProperty(counter.getDisplayName(), getCount(counter));
+            }
+
+            JsonObject object = new JsonObject();
+            object.add("phases", phases);
+            object.add("counters", counters);
+            return object;
+        }
+
+        private static LongAdder[] createAdders(int count) {
+            LongAdder[] adders = new LongAdder[count];
+            for(int i = 0; i < adders.length; i++){
+                adders[i] = new LongAdder();
+            }
+            return adders;
+        }
+    }
+
+    public class Timer {
+        private final Phase phase;
+        private final String className;
+        private final String method;
+        private final long startAllocated;
+        private final long startNanos;
+        //See TransformEvents#beginPhase
+        private final Object event;
+
+        private Timer(Phase phase, String className, String method, long startAllocated, long startNanos, Object event) {
+            this.phase = phase;
+            this.className = className;
+            this.method = method;
+            this.startAllocated = startAllocated;
+            this.startNanos = startNanos;
+            this.event = event;
+        }
+
+        /**
+         * Ends the phase and records it. Must only be called once
+         */
+        public void stop() {
+            if(phase == null){
+                return;
+            }
+
+            long elapsed = System.nanoTime() - startNanos;
+            long allocated = currentAllocatedBytes() - startAllocated;
+
+            total.record(phase, elapsed, allocated);
+            classStats(className).record(phase, elapsed, allocated);
+            if(method != null){
+                methodStats(className, method).record(phase, elapsed, allocated);
+            }
+
+            if(event != null){
+                TransformEvents.commitPhase(event, className, method, phase.getDisplayName(), allocated);
+            }
+        }
+    }
+}
@@ -7,9 +7,11 @@ import me.salamander.cctransformer.transformer.config.*;
 import me.salamander.cctransformer.util.ASMUtil;
 import me.salamander.cctransformer.util.AncestorHashMap;
 import me.salamander.cctransformer.util.FieldID;
+import me.salamander.cctransformer.util.InsnIndexMap;
 import me.salamander.cctransformer.util.MethodID;
 import org.objectweb.asm.*;
 import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.analysis.Analyzer;
 import org.objectweb.asm.tree.analysis.AnalyzerException;
 import org.objectweb.asm.tree.analysis.Frame;
 
@@ -17,6 +19,8 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.Supplier;
 
 /**
@@ -56,14 +60,19 @@ public class TypeTransformer {
     private boolean hasTransformedFields;
     //Whether safety checks/dispatches/warnings should be inserted into the code.
     private final boolean addSafety;
-    //Stores the lambdaTransformers that need to be added
-    private final Set<MethodNode> lambdaTransformers = new HashSet<>();
+    //Stores the lambdaTransformers that need to be added. Both sets keep insertion order so the output doesn't depend on identity hash codes
+    private final Set<MethodNode> lambdaTransformers = new LinkedHashSet<>();
     //Stores any other methods that need to be added. There really isn't much of a reason for these two to be separate.
-    private final Set<MethodNode> newMethods = new HashSet<>();
+    private final Set<MethodNode> newMethods = new LinkedHashSet<>();
 
     //If the class is being duplicated, this is the name of the new class.
     private final String renameTo;
 
+    //Where the time spent in each phase is recorded. See setMetrics
+    private TransformMetrics metrics = TransformMetrics.NONE;
+    //Whether progress and analysis results should be printed. See setVerbose
+    private boolean verbose = false;
+
     /**
      * Constructs a new TypeTransformer for a given class.
      * @param config The global configuration loaded by ConfigLoader
@@ -78,14 +87,10 @@ public class TypeTransformer {
 
         this.config = config;
         this.classNode = classNode;
-        this.fieldPseudoValues = new AncestorHashMap<>(config.getHierarchy());
         this.addSafety = addSafety;
 
         //Create field pseudo values
-        for(var field: classNode.fields){
-            TransformTrackingValue value = new TransformTrackingValue(Type.getType(field.desc), fieldPseudoValues);
-            fieldPseudoValues.put(new FieldID(Type.getObjectType(classNode.name), field.name, Type.getType(field.desc)), value);
-        }
+        this.fieldPseudoValues = createFieldPseudoValues();
 
         //Extract per-class config from the global config
         this.transformInfo = config.getClasses().get(Type.getObjectType(classNode.name));
@@ -106,6 +111,27 @@ public class TypeTransformer {
         }
     }
 
+    /**
+     * Sets where the time and memory used by each phase of the transform are recorded. Nothing is recorded by default.
+     */
+    public void setMetrics(TransformMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return The results of the analysis of every method analyzed so far
+     */
+    public Map<MethodID, AnalysisResults> getAnalysisResults() {
+        return Collections.unmodifiableMap(analysisResults);
+    }
+
+    /**
+     * Sets whether the time taken by each method and the results of the analysis should be printed. Nothing is printed by default.
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
     /**
      * Should be called after all transforms have been applied.
      */
@@ -128,7 +154,8 @@ public class TypeTransformer {
         }else{
             //Add methods that need to be added
 
-            classNode.methods.addAll(lambdaTransformers);
+            //Lambda transformers can be created by methods that are transformed in parallel, so they are added by name rather than in the order they were created
+            lambdaTransformers.stream().sorted(Comparator.comparing(m -> m.name)).forEach(classNode.methods::add);
             classNode.methods.addAll(newMethods);
         }
 
@@ -138,23 +165,37 @@ public class TypeTransformer {
         }
     }
 
+    /**
+     * Creates a pseudo value for every field of the class
+     * @return A map from field to pseudo value
+     */
+    private AncestorHashMap<FieldID, TransformTrackingValue> createFieldPseudoValues(){
+        AncestorHashMap<FieldID, TransformTrackingValue> pseudoValues = new AncestorHashMap<>(config.getHierarchy());
+
+        for(var field: classNode.fields){
+            TransformTrackingValue value = new TransformTrackingValue(Type.getType(field.desc), pseudoValues);
+            pseudoValues.put(new FieldID(Type.getObjectType(classNode.name), field.name, Type.getType(field.desc)), value);
+        }
+
+        return pseudoValues;
+    }
+
     /**
      * Creates a copy of the method and transforms it according to the config. This method then gets added to the necessary class.
      * The main goal of this method is to create the transform context. It then passes that on to the necessary methods. This method does not modify the method much.
      * @param methodNode The method to transform.
      */
     public void transformMethod(MethodNode methodNode) {
-        long start = System.currentTimeMillis();
-
-        //Look up the analysis results for this method
-        MethodID methodID = new MethodID(classNode.name, methodNode.name, methodNode.desc, MethodID.CallType.VIRTUAL); //Call subType doesn't matter much
-        AnalysisResults results = analysisResults.get(methodID);
-
-        if(results == null){
-            throw new RuntimeException("Method " + methodID + " not analyzed");
-        }
+        transformMethodCopy(methodNode, createTransformedCopy(methodNode));
+    }
 
-        //Create or get the new method node
+    /**
+     * Gets the method node that will hold the transformed code of a method. If the class is not being duplicated, a copy of the method is created and
+     * queued to be added to the class.
+     * @param methodNode The original method
+     * @return The method node which should be transformed
+     */
+    private MethodNode createTransformedCopy(MethodNode methodNode) {
         MethodNode newMethod;
 
         if(newClassNode != null) {
@@ -169,7 +210,26 @@ public class TypeTransformer {
         }
 
         if(newMethod == null){
-            throw new RuntimeException("Method " + methodID + " not found in new class");
+            throw new RuntimeException("Method " + methodNode.name + methodNode.desc + " not found in new class");
+        }
+
+        return newMethod;
+    }
+
+    /**
+     * Transforms the code of a method into the copy created by {@link #createTransformedCopy(MethodNode)}
+     * @param methodNode The original method
+     * @param newMethod The method to transform
+     */
+    private void transformMethodCopy(MethodNode methodNode, MethodNode newMethod) {
+        long start = System.currentTimeMillis();
+
+        //Look up the analysis results for this method
+        MethodID methodID = new MethodID(classNode.name, methodNode.name, methodNode.desc, MethodID.CallType.VIRTUAL); //Call subType doesn't matter much
+        AnalysisResults results = analysisResults.get(methodID);
+
+        if(results == null){
+            throw new RuntimeException("Method " + methodID + " not analyzed");
         }
 
         if((methodNode.access & Opcodes.ACC_ABSTRACT) != 0){
@@ -185,7 +245,7 @@ public class TypeTransformer {
 
             //Change descriptor
             newMethod.desc = MethodParameterInfo.getNewDesc(TransformSubtype.of(null), actualParameters, methodNode.desc);
-            System.out.println("Transformed method '" + methodID + "' in " + (System.currentTimeMillis() - start) + "ms");
+            if(verbose) System.out.println("Transformed method '" + methodID + "' in " + (System.currentTimeMillis() - start) + "ms");
 
             //Create the parameter name table
             if(newMethod.parameters != null) {
@@ -213,31 +273,14 @@ public class TypeTransformer {
         AbstractInsnNode[] insns = newMethod.instructions.toArray();
         boolean[] expandedEmitter = new boolean[insns.length];
         boolean[] expandedConsumer = new boolean[insns.length];
-        int[][] vars = new int[insns.length][methodNode.maxLocals];
-        TransformSubtype[][] varTypes = new TransformSubtype[insns.length][methodNode.maxLocals];
-
-        int maxLocals = 0;
 
         //Generate var table
-        //Note: This variable table might not work with obfuscated bytecode. It relies on variables being added and removed in a stack-like fashion
-        for(int i = 0; i < insns.length; i++){
-            Frame<TransformTrackingValue> frame = results.frames()[i];
-            if(frame == null) continue;
-            int newIndex = 0;
-            for(int j = 0; j < methodNode.maxLocals;){
-                vars[i][j] = newIndex;
-                varTypes[i][j] = frame.getLocal(j).getTransform();
-                newIndex += frame.getLocal(j).getTransformedSize();
-
-                j += frame.getLocal(j).getSize();
-            }
-            maxLocals = Math.max(maxLocals, newIndex);
-        }
+        VariableLookup varLookup = VariableLookup.create(results.frames(), methodNode.maxLocals);
 
-        VariableManager varCreator = new VariableManager(maxLocals, insns.length);
+        VariableManager varCreator = new VariableManager(varLookup.getTransformedMaxLocals(), insns.length);
 
         //Analysis results come from the original method, and we need to transform the new method, so we need to be able to get the new instructions that correspond to the old ones
-        Map<AbstractInsnNode, Integer> indexLookup = new HashMap<>();
+        InsnIndexMap indexLookup = new InsnIndexMap(insns.length * 2);
 
         AbstractInsnNode[] oldInsns = methodNode.instructions.toArray();
 
@@ -248,53 +291,39 @@ public class TypeTransformer {
 
         BytecodeFactory[][] syntheticEmitters = new BytecodeFactory[insns.length][];
 
-        AbstractInsnNode[] instructions = newMethod.instructions.toArray();
-        Frame<TransformTrackingValue>[] frames = results.frames();
-
         //Resolve the method parameter infos
-        MethodParameterInfo[] methodInfos = new MethodParameterInfo[insns.length];
-        for(int i = 0; i < insns.length; i++){
-            AbstractInsnNode insn = instructions[i];
-            Frame<TransformTrackingValue> frame = frames[i];
-            if(insn instanceof MethodInsnNode methodCall){
-                MethodID calledMethod = MethodID.from(methodCall);
+        MethodParameterInfo[] methodInfos = RemovedEmitterDetector.resolveMethodInfos(config, insns, results.frames());
 
-                TransformTrackingValue returnValue = null;
-                if (calledMethod.getDescriptor().getReturnType() != Type.VOID_TYPE) {
-                    returnValue = ASMUtil.getTop(frames[i + 1]);
-                }
-
-                int argCount = ASMUtil.argumentCount(calledMethod.getDescriptor().getDescriptor(), calledMethod.isStatic());
-                TransformTrackingValue[] args = new TransformTrackingValue[argCount];
-                for (int j = 0; j < args.length; j++) {
-                    args[j] = frame.getStack(frame.getStackSize() - argCount + j);
-                }
+        //Create context
+        TransformContext context = new TransformContext(newMethod, results, insns, expandedEmitter, expandedConsumer, new boolean[insns.length], syntheticEmitters, varLookup, varCreator, indexLookup, methodInfos);
 
-                //Lookup the possible method transforms
-                List<MethodParameterInfo> infos = config.getMethodParameterInfo().get(calledMethod);
+        String methodName = methodNode.name + methodNode.desc;
 
-                if(infos != null) {
-                    //Check all possible transforms to see if any of them match
-                    for (MethodParameterInfo info : infos) {
-                        if (info.getTransformCondition().checkValidity(returnValue, args) == 1) {
-                            methodInfos[i] = info;
-                            break;
-                        }
-                    }
-                }
-            }
+        TransformMetrics.Timer timer = metrics.time(TransformMetrics.Phase.DETECT_REMOVED_EMITTERS, classNode.name, methodName);
+        try {
+            detectAllRemovedEmitters(newMethod, context);
+        }finally {
+            timer.stop();
         }
 
-        //Create context
-        TransformContext context = new TransformContext(newMethod, results, instructions, expandedEmitter, expandedConsumer, new boolean[insns.length], syntheticEmitters, vars, varTypes, varCreator, indexLookup, methodInfos);
-
-        detectAllRemovedEmitters(newMethod, context);
-
-        createEmitters(context);
+        timer = metrics.time(TransformMetrics.Phase.CREATE_EMITTERS, classNode.name, methodName);
+        try {
+            createEmitters(context);
+        }finally {
+            timer.stop();
+        }
 
         transformMethod(methodNode, newMethod, context);
 
-        System.out.println("Transformed method '" + methodID + "' in " + (System.currentTimeMillis() - start) + "ms");
+        int removedEmitters = 0;
+        for(boolean removed: context.removedEmitter()){
+            if(removed) removedEmitters++;
+        }
+        metrics.count(TransformMetrics.Counter.EMITTERS_REMOVED, classNode.name, methodName, removedEmitters);
+        metrics.count(TransformMetrics.Counter.VARIABLES_ALLOCATED, classNode.name, methodName, varCreator.getAllocationCount());
+        metrics.count(TransformMetrics.Counter.INSTRUCTIONS_INSERTED, classNode.name, methodName, newMethod.instructions.size() - insns.length);
+
+        if(verbose) System.out.println("Transformed method '" + methodID + "' in " + (System.currentTimeMillis() - start) + "ms");
     }
 
     /**
@@ -306,72 +335,14 @@ public class TypeTransformer {
      * This means var1_x has to be loaded and then var2_x and then var1_y etc... This means we can't just expand the two emitters normally. That would leave the stack with
      * [var1_x, var1_y, var1_z, var2_x, var2_y, var2_z] and comparing that would need a lot of stack magic (DUP, SWAP, etc...). So what we do is remove these emitters from the code
      * and instead create BytecodeFactories that allow the values to be generated in any order that is needed.
+     * <br><br>
+     * The rules for which emitters get removed are described in {@link RemovedEmitterDetector}
      *
      * @param newMethod The method to transform
      * @param context The transform context
      */
     private void detectAllRemovedEmitters(MethodNode newMethod, TransformContext context) {
-        boolean[] prev;
-        Frame<TransformTrackingValue>[] frames = context.analysisResults().frames();
-
-        //This code keeps trying to find new removed emitters until it can't find any more.
-
-        do{
-            //Keep detecting new ones until we don't find any more
-            prev = Arrays.copyOf(context.removedEmitter(), context.removedEmitter().length);
-
-            for(int i = 0; i < context.removedEmitter().length; i++){
-                AbstractInsnNode instruction = context.instructions()[i];
-                Frame<TransformTrackingValue> frame = frames[i];
-
-                int consumed = ASMUtil.stackConsumed(instruction);
-                int opcode = instruction.getOpcode();
-
-                if(instruction instanceof MethodInsnNode methodCall){
-                    MethodParameterInfo info = context.methodInfos()[i];
-                    if(info != null){
-                        if(info.getReplacement().changeParameters()){
-                            //If any method parameters are changed we remove all of it's emitters
-                            for (int j = 0; j < consumed; j++) {
-                                TransformTrackingValue arg = frame.getStack(frame.getStackSize() - consumed + j);
-                                markRemoved(arg, context);
-                            }
-                        }
-                    }
-                }else if(opcode == Opcodes.LCMP || opcode == Opcodes.FCMPL || opcode == Opcodes.FCMPG || opcode == Opcodes.DCMPL || opcode == Opcodes.DCMPG || opcode == Opcodes.IF_ICMPEQ || opcode == Opcodes.IF_ICMPNE || opcode == Opcodes.IF_ACMPEQ || opcode == Opcodes.IF_ACMPNE){
-                    //Get two values
-                    TransformTrackingValue left = frame.getStack(frame.getStackSize() - 2);
-                    TransformTrackingValue right = frame.getStack(frame.getStackSize() - 1);
-
-                    //We can assume the two transforms are the same. This check is just to make sure there isn't a bug in the analyzer
-                    if(!left.getTransform().equals(right.getTransform())){
-                        throw new RuntimeException("The two transforms should be the same");
-                    }
-
-                    //If the transform has more than one subType we will need to separate them so we must remove the emitter
-                    if(left.getTransform().transformedTypes(left.getType()).size() > 1){
-                        markRemoved(left, context);
-                        markRemoved(right, context);
-                    }
-                }
-
-                //If any of the values used by any instruction are removed we need to remove all the other values emitters
-                boolean remove = false;
-                for(int j = 0; j < consumed; j++){
-                    TransformTrackingValue arg = frame.getStack(frame.getStackSize() - consumed + j);
-                    if(isRemoved(arg, context)){
-                        remove = true;
-                    }
-                }
-
-                if(remove){
-                    for(int j = 0; j < consumed; j++){
-                        TransformTrackingValue arg = frame.getStack(frame.getStackSize() - consumed + j);
-                        markRemoved(arg, context);
-                    }
-                }
-            }
-        }while(!Arrays.equals(prev, context.removedEmitter()));
+        RemovedEmitterDetector.detect(context.analysisResults().frames(), context.instructions(), context.methodInfos(), context.indexLookup(), context.removedEmitter());
     }
 
     /**
@@ -391,44 +362,6 @@ public class TypeTransformer {
         }
     }
 
-    /**
-     * Determine if the given value's emitters are removed
-     * @param value The value to check
-     * @param context Transform context
-     * @return True if the value's emitters are removed, false otherwise
-     */
-    private boolean isRemoved(TransformTrackingValue value, TransformContext context){
-        boolean isAllRemoved = true;
-        boolean isAllPresent = true;
-
-        for(AbstractInsnNode source: value.getSource()){
-            int sourceIndex = context.indexLookup().get(source);
-            if(context.removedEmitter()[sourceIndex]){
-                isAllPresent = false;
-            }else{
-                isAllRemoved = false;
-            }
-        }
-
-        if(!(isAllPresent || isAllRemoved)){
-            throw new IllegalStateException("Value is neither all present nor all removed");
-        }
-
-        return isAllRemoved;
-    }
-
-    /**
-     * Marks all the emitters of the given value as removed
-     * @param value The value whose emitters to mark as removed
-     * @param context Transform context
-     */
-    private void markRemoved(TransformTrackingValue value, TransformContext context){
-        for(AbstractInsnNode source: value.getSource()){
-            int sourceIndex = context.indexLookup().get(source);
-            context.removedEmitter()[sourceIndex] = true;
-        }
-    }
-
     /**
      * Actually modifies the method
      * @param oldMethod The original method, may be modified for safety checks
@@ -461,7 +394,12 @@ public class TypeTransformer {
         modifyVariableTable(methodNode, context);
 
         //Change the code
-        modifyCode(methodNode, context);
+        TransformMetrics.Timer timer = metrics.time(TransformMetrics.Phase.MODIFY_CODE, classNode.name, oldMethod.name + oldMethod.desc);
+        try {
+            modifyCode(methodNode, context);
+        }finally {
+            timer.stop();
+        }
 
         if(renamed){
             //If the method was renamed then we need to make sure that calls to the normal method end up calling the renamed method
@@ -510,15 +448,18 @@ public class TypeTransformer {
             //Push all the parameters onto the stack and transform them if needed
             dispatch.add(new VarInsnNode(Opcodes.ALOAD, 0));
             int index = 1;
-            for(Type arg: Type.getArgumentTypes(oldMethod.desc)){
-                TransformSubtype argType = context.varTypes[0][index];
-                int finalIndex = index;
-                dispatch.add(argType.convertToTransformed(() -> {
-                    InsnList load = new InsnList();
-                    load.add(new VarInsnNode(arg.getOpcode(Opcodes.ILOAD), finalIndex));
-                    return load;
-                }, lambdaTransformers, classNode.name));
-                index += arg.getSize();
+            //Methods may be transformed in parallel, and lambda transformers are shared by the whole class
+            synchronized (lambdaTransformers) {
+                for (Type arg : Type.getArgumentTypes(oldMethod.desc)) {
+                    TransformSubtype argType = context.varLookup().getType(0, index);
+                    int finalIndex = index;
+                    dispatch.add(argType.convertToTransformed(() -> {
+                        InsnList load = new InsnList();
+                        load.add(new VarInsnNode(arg.getOpcode(Opcodes.ILOAD), finalIndex));
+                        return load;
+                    }, lambdaTransformers, classNode.name));
+                    index += arg.getSize();
+                }
             }
 
             dispatch.add(new MethodInsnNode(Opcodes.INVOKESPECIAL, classNode.name, methodNode.name, methodNode.desc, false));
@@ -598,7 +539,7 @@ public class TypeTransformer {
 
                 //Get the shifted variable index
                 int originalVarIndex = varNode.var;
-                int newVarIndex = context.varLookup()[i][originalVarIndex];
+                int newVarIndex = context.varLookup().getNewIndex(i, originalVarIndex);
 
                 //Base opcode makes it easier to determine what kind of instruction we are dealing with
                 int baseOpcode = switch (varNode.getOpcode()){
@@ -608,7 +549,7 @@ public class TypeTransformer {
                 };
 
                 //If the variable is being loaded, it is in the current frame, if it is being stored, it will be in the next frame
-                TransformSubtype varType = context.varTypes()[i + (baseOpcode == Opcodes.ISTORE ? 1 : 0)][originalVarIndex];
+                TransformSubtype varType = context.varLookup().getType(i + (baseOpcode == Opcodes.ISTORE ? 1 : 0), originalVarIndex);
                 //Get the actual types that need to be stored or loaded
                 List<Type> types = varType.transformedTypes(ASMUtil.getType(varNode.getOpcode()));
 
@@ -661,7 +602,7 @@ public class TypeTransformer {
             }else if(instruction instanceof IincInsnNode iincNode){
                 //We just need to shift the index of the variable because incrementing transformed values is not supported
                 int originalVarIndex = iincNode.var;
-                int newVarIndex = context.varLookup()[i][originalVarIndex];
+                int newVarIndex = context.varLookup().getNewIndex(i, originalVarIndex);
                 iincNode.var = newVarIndex;
             }else if(ASMUtil.isConstant(instruction)){
                 //Check if value is transformed
@@ -1070,7 +1011,7 @@ public class TypeTransformer {
                 //TODO: This code is basically a duplicate of the code in the modifyCode that expands variable loads
                 List<Type> transformedTypes = arg.getTransform().transformedTypes(arg.getType());
                 ret = new BytecodeFactory[transformedTypes.size()];
-                int varIndex = context.varLookup()[index][varLoad.var];
+                int varIndex = context.varLookup().getNewIndex(index, varLoad.var);
                 context.target.instructions.remove(actualSource);
                 for(int i = 0; i < transformedTypes.size(); i++){
                     int finalI = i;
@@ -1190,7 +1131,7 @@ public class TypeTransformer {
 
             for (LocalVariableNode local : original) {
                 int codeIndex = context.indexLookup().get(local.start); //The index of the first frame with that variable
-                int newIndex = context.varLookup[codeIndex][local.index]; //codeIndex is used to get the newIndex from varLookup
+                int newIndex = context.varLookup.getNewIndex(codeIndex, local.index); //codeIndex is used to get the newIndex from varLookup
 
                 TransformTrackingValue value = context.analysisResults().frames()[codeIndex].getLocal(local.index); //Get the value of that variable, so we can get its transform
                 if (value.getTransformType() == null || value.getTransform().getSubtype() != TransformSubtype.SubType.NONE) {
@@ -1250,53 +1191,81 @@ public class TypeTransformer {
             }
 
             if((methodNode.access & Opcodes.ACC_ABSTRACT) != 0){
-                //We still want to infer the argument types of abstract methods so we create a single frame whose locals represent the arguments
-                Type[] args = Type.getArgumentTypes(methodNode.desc);
+                analyzeAbstractMethod(methodNode);
+                continue;
+            }
+            analyzeMethod(methodNode);
+        }
 
-                TransformSubtype[] argTypes = new TransformSubtype[args.length];
-                for(int i = 0; i < args.length; i++){
-                    argTypes[i] = TransformSubtype.of(null);
-                }
+        finishAnalysis(startTime);
+    }
 
-                Frame<TransformTrackingValue>[] frames = new Frame[1];
+    /**
+     * Analyzes every method (except {@code <init>} and {@code <clinit>}) in the class using the given pool and stores the results.
+     * The results are always the same as those of {@link #analyzeAllMethods()}.
+     * <br><br>
+     * Each method is first analyzed on its own with a fresh interpreter, its own field pseudo values and its own list of future bindings.
+     * The results are then merged one by one in the order the methods are declared in. An isolated analysis knows less than the serial
+     * one would have at that point, so it is only kept if it made exactly the decisions the serial analysis would have made:
+     * <ul>
+     *     <li>Every method transform check it ran is settled (see {@link TransformTrackingInterpreter.CheckOutcome#isSettled()}).
+     *     Deferred checks and checks accepted while a parameter had no type might have been decided differently with the types the serial analysis knew.</li>
+     *     <li>No check deferred by a previously merged method is still pending. Otherwise the order in which the merged bindings resolve
+     *     those checks could differ from the serial order.</li>
+     * </ul>
+     * Any other method is analyzed again, serially, against the merged state. This is counted as {@link TransformMetrics.Counter#ANALYSES_REPEATED}.
+     * @param pool The pool to run the analysis on
+     */
+    public void analyzeAllMethods(ForkJoinPool pool){
+        long startTime = System.currentTimeMillis();
 
-                int numLocals = 0;
-                if(!ASMUtil.isStatic(methodNode)){
-                    numLocals++;
-                }
-                for(Type argType: args){
-                    numLocals += argType.getSize();
-                }
-                frames[0] = new Frame<>(numLocals, 0);
+        //Fork off every concrete method. Null entries are merged serially
+        List<ForkJoinTask<IsolatedAnalysis>> tasks = new ArrayList<>(classNode.methods.size());
+        for(MethodNode methodNode: classNode.methods){
+            if((methodNode.access & Opcodes.ACC_NATIVE) != 0){
+                throw new IllegalStateException("Cannot analyze/transform native methods");
+            }
 
-                int varIndex = 0;
-                if(!ASMUtil.isStatic(methodNode)){
-                    frames[0].setLocal(varIndex, new TransformTrackingValue(Type.getObjectType(classNode.name), fieldPseudoValues));
-                    varIndex++;
-                }
+            if(methodNode.name.equals("<init>") || methodNode.name.equals("<clinit>") || (methodNode.access & Opcodes.ACC_ABSTRACT) != 0){
+                tasks.add(null);
+                continue;
+            }
 
-                for(Type argType: args){
-                    frames[0].setLocal(varIndex, new TransformTrackingValue(argType, fieldPseudoValues));
-                    varIndex += argType.getSize();
-                }
+            tasks.add(pool.submit(() -> analyzeIsolated(methodNode)));
+        }
 
-                AnalysisResults results = new AnalysisResults(methodNode, argTypes, frames);
+        //Merge in declaration order. Checks deferred by serially analyzed methods which haven't been resolved yet
+        List<UnresolvedMethodTransform> pendingChecks = new ArrayList<>();
+        for(int i = 0; i < tasks.size(); i++){
+            MethodNode methodNode = classNode.methods.get(i);
+            ForkJoinTask<IsolatedAnalysis> task = tasks.get(i);
 
-                MethodID methodID = new MethodID(classNode.name, methodNode.name, methodNode.desc, MethodID.CallType.VIRTUAL);
-                analysisResults.put(methodID, results);
+            if(task != null){
+                IsolatedAnalysis analysis = task.join();
+                pendingChecks.removeIf(check -> !check.isPending());
 
-                //Bind previous calls
-                for(FutureMethodBinding binding: futureMethodBindings.getOrDefault(methodID, List.of())){
-                    TransformTrackingInterpreter.bindValuesToMethod(results, binding.offset(), binding.parameters());
+                if(analysis.settled() && pendingChecks.isEmpty()){
+                    mergeIsolatedAnalysis(analysis);
+                }else{
+                    metrics.count(TransformMetrics.Counter.ANALYSES_REPEATED, classNode.name, methodNode.name + methodNode.desc, 1);
+                    analyzeMethod(methodNode);
+                    pendingChecks.addAll(config.getInterpreter().getDeferredChecks());
                 }
-
-                continue;
+            }else if((methodNode.access & Opcodes.ACC_ABSTRACT) != 0){
+                analyzeAbstractMethod(methodNode);
             }
-            analyzeMethod(methodNode);
         }
 
+        finishAnalysis(startTime);
+    }
+
+    private void finishAnalysis(long startTime){
         cleanUp();
 
+        if(!verbose){
+            return;
+        }
+
         for(AnalysisResults results: analysisResults.values()){
             results.print(System.out, false);
         }
@@ -1314,6 +1283,49 @@ public class TypeTransformer {
         System.out.println("Finished analysis of " + classNode.name + " in " + (System.currentTimeMillis() - startTime) + "ms");
     }
 
+    /**
+     * Stores the results for an abstract method.
+     * @param methodNode The abstract method
+     */
+    private void analyzeAbstractMethod(MethodNode methodNode){
+        //We still want to infer the argument types of abstract methods so we create a single frame whose locals represent the arguments
+        Type[] args = Type.getArgumentTypes(methodNode.desc);
+
+        TransformSubtype[] argTypes = new TransformSubtype[args.length];
+        for(int i = 0; i < args.length; i++){
+            argTypes[i] = TransformSubtype.of(null);
+        }
+
+        Frame<TransformTrackingValue>[] frames = new Frame[1];
+
+        int numLocals = 0;
+        if(!ASMUtil.isStatic(methodNode)){
+            numLocals++;
+        }
+        for(Type argType: args){
+            numLocals += argType.getSize();
+        }
+        frames[0] = new Frame<>(numLocals, 0);
+
+        int varIndex = 0;
+        if(!ASMUtil.isStatic(methodNode)){
+            frames[0].setLocal(varIndex, new TransformTrackingValue(Type.getObjectType(classNode.name), fieldPseudoValues));
+            varIndex++;
+        }
+
+        for(Type argType: args){
+            frames[0].setLocal(varIndex, new TransformTrackingValue(argType, fieldPseudoValues));
+            varIndex += argType.getSize();
+        }
+
+        AnalysisResults results = new AnalysisResults(methodNode, argTypes, frames);
+
+        MethodID methodID = new MethodID(classNode.name, methodNode.name, methodNode.desc, MethodID.CallType.VIRTUAL);
+        analysisResults.put(methodID, results);
+
+        bindFutureCalls(methodID, results);
+    }
+
     /**
      * Must be called after all analysis and before all transformations
      */
@@ -1480,14 +1492,87 @@ public class TypeTransformer {
      */
     public void analyzeMethod(MethodNode methodNode){
         long startTime = System.currentTimeMillis();
-        config.getInterpreter().reset(); //Clear all info stored about previous methods
-        config.getInterpreter().setResultLookup(analysisResults);
-        config.getInterpreter().setFutureBindings(futureMethodBindings);
-        config.getInterpreter().setCurrentClass(classNode);
-        config.getInterpreter().setFieldBindings(fieldPseudoValues);
+        TransformTrackingInterpreter interpreter = config.getInterpreter();
+        interpreter.reset(); //Clear all info stored about previous methods
+        interpreter.setResultLookup(analysisResults);
+        interpreter.setFutureBindings(futureMethodBindings);
+        interpreter.setCurrentClass(classNode);
+        interpreter.setFieldBindings(fieldPseudoValues);
 
         MethodID methodID = new MethodID(classNode.name, methodNode.name, methodNode.desc, null);
 
+        AnalysisResults results = runAnalysis(methodNode, methodID, interpreter, config.getAnalyzer());
+        analysisResults.put(methodID, results);
+
+        bindFutureCalls(methodID, results);
+
+        if(verbose) System.out.println("Analyzed method " + methodID + " in " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    /**
+     * Analyzes a single method without touching any state of this transformer. Every call to a method of this class is recorded as a future binding
+     * and every field access is bound to a pseudo value private to this analysis. Use {@link #mergeIsolatedAnalysis(IsolatedAnalysis)} to store the results.
+     * @param methodNode The method to analyze
+     * @return The results along with everything needed to merge them
+     */
+    private IsolatedAnalysis analyzeIsolated(MethodNode methodNode){
+        long startTime = System.currentTimeMillis();
+
+        AncestorHashMap<FieldID, TransformTrackingValue> localFieldValues = createFieldPseudoValues();
+        Map<MethodID, List<FutureMethodBinding>> localBindings = new LinkedHashMap<>(); //Keeps the order the calls were made in
+
+        TransformTrackingInterpreter interpreter = new TransformTrackingInterpreter(Opcodes.ASM9, config);
+        interpreter.setResultLookup(new HashMap<>()); //Nothing is known yet so every call becomes a future binding
+        interpreter.setFutureBindings(localBindings);
+        interpreter.setCurrentClass(classNode);
+        interpreter.setFieldBindings(localFieldValues);
+
+        MethodID methodID = new MethodID(classNode.name, methodNode.name, methodNode.desc, null);
+
+        AnalysisResults results = runAnalysis(methodNode, methodID, interpreter, new Analyzer<>(interpreter));
+
+        if(verbose) System.out.println("Analyzed method " + methodID + " in " + (System.currentTimeMillis() - startTime) + "ms");
+
+        boolean settled = true;
+        for(TransformTrackingInterpreter.CheckOutcome outcome: interpreter.getCheckOutcomes()){
+            if(!outcome.isSettled()){
+                settled = false;
+                break;
+            }
+        }
+
+        return new IsolatedAnalysis(methodID, results, localBindings, localFieldValues, settled);
+    }
+
+    /**
+     * Stores the results of an isolated analysis. The bindings are replayed in the same way {@link #analyzeMethod(MethodNode)} would have made them.
+     * This is only equivalent to {@link #analyzeMethod(MethodNode)} if neither the analysis nor the merged state has any pending transform checks
+     * @param analysis The analysis to merge
+     */
+    private void mergeIsolatedAnalysis(IsolatedAnalysis analysis){
+        //Fields are shared by the whole class
+        for(var entry: analysis.fieldValues().entrySet()){
+            TransformTrackingValue.setSameType(fieldPseudoValues.get(entry.getKey()), entry.getValue());
+        }
+
+        //Calls to methods that have already been merged get bound straight away. The rest wait for the target to be merged
+        for(var entry: analysis.futureBindings().entrySet()){
+            AnalysisResults target = analysisResults.get(entry.getKey());
+            for(FutureMethodBinding binding: entry.getValue()){
+                if(target != null){
+                    TransformTrackingInterpreter.bindValuesToMethod(target, binding.offset(), binding.parameters());
+                }else{
+                    futureMethodBindings.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(binding);
+                }
+            }
+        }
+
+        analysisResults.put(analysis.methodID(), analysis.results());
+
+        bindFutureCalls(analysis.methodID(), analysis.results());
+    }
+
+    private AnalysisResults runAnalysis(MethodNode methodNode, MethodID methodID, TransformTrackingInterpreter interpreter, Analyzer<TransformTrackingValue> analyzer){
         //Get any type hints for this method
         Map<Integer, TransformType> typeHints;
         if(transformInfo != null) {
@@ -1498,11 +1583,19 @@ public class TypeTransformer {
 
         if(typeHints != null){
             //Set the type hints
-            config.getInterpreter().setLocalVarOverrides(typeHints);
+            interpreter.setLocalVarOverrides(typeHints);
         }
 
+        String methodName = methodNode.name + methodNode.desc;
+        TransformMetrics.Timer timer = metrics.time(TransformMetrics.Phase.ANALYSIS, classNode.name, methodName);
         try {
-            var frames = config.getAnalyzer().analyze(classNode.name, methodNode);
+            var frames = analyzer.analyze(classNode.name, methodNode);
+
+            int analyzedFrames = 0;
+            for(Frame<TransformTrackingValue> frame: frames){
+                if(frame != null) analyzedFrames++;
+            }
+            metrics.count(TransformMetrics.Counter.FRAMES_ANALYZED, classNode.name, methodName, analyzedFrames);
             boolean isStatic = ASMUtil.isStatic(methodNode);
 
             TransformSubtype[] varTypes = new TransformSubtype[ASMUtil.argumentSize(methodNode.desc, isStatic)]; //Indices are local variable indices
@@ -1516,17 +1609,20 @@ public class TypeTransformer {
 
             ASMUtil.varIndicesToArgIndices(varTypes, argTypes, methodNode.desc, isStatic);
 
-            AnalysisResults results = new AnalysisResults(methodNode, argTypes, frames);
-            analysisResults.put(methodID, results);
-
-            //Bind previous calls
-            for(FutureMethodBinding binding: futureMethodBindings.getOrDefault(methodID, List.of())){
-                TransformTrackingInterpreter.bindValuesToMethod(results, binding.offset(), binding.parameters());
-            }
-
-            System.out.println("Analyzed method " + methodID + " in " + (System.currentTimeMillis() - startTime) + "ms");
+            return new AnalysisResults(methodNode, argTypes, frames);
         }catch (AnalyzerException e){
             throw new RuntimeException("Analysis failed for method " + methodNode.name, e);
+        }finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Binds all previous calls to a method which has just been analyzed
+     */
+    private void bindFutureCalls(MethodID methodID, AnalysisResults results){
+        for(FutureMethodBinding binding: futureMethodBindings.getOrDefault(methodID, List.of())){
+            TransformTrackingInterpreter.bindValuesToMethod(results, binding.offset(), binding.parameters());
         }
     }
 
@@ -1570,13 +1666,32 @@ public class TypeTransformer {
     }
 
     public Class<?> loadTransformedClass() {
-        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
-        getTransformed().accept(writer);
-        byte[] bytes = writer.toByteArray();
+        return loadClass(getTransformedBytes());
+    }
 
-        String targetName = getTransformed().name.replace('/', '.');
+    /**
+     * @return The bytes of the transformed class with frames computed. These can be stored in a {@link TransformCache}
+     */
+    public byte[] getTransformedBytes() {
+        TransformMetrics.Timer timer = metrics.time(TransformMetrics.Phase.WRITE_CLASS, classNode.name, null);
+        try {
+            ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+            getTransformed().accept(writer);
+            return writer.toByteArray();
+        }finally {
+            timer.stop();
+        }
+    }
 
-        ClassLoader classLoader = new ClassLoader(this.getClass().getClassLoader()) {
+    /**
+     * Defines a class in its own class loader. This doesn't need a transformer so it can be used for classes loaded from a {@link TransformCache}
+     * @param bytes The bytes of the class
+     * @return The loaded class
+     */
+    public static Class<?> loadClass(byte[] bytes) {
+        String targetName = new ClassReader(bytes).getClassName().replace('/', '.');
+
+        ClassLoader classLoader = new ClassLoader(TypeTransformer.class.getClassLoader()) {
             @Override
             public Class<?> loadClass(String name) throws ClassNotFoundException {
                 if(name.equals(targetName)) {
@@ -1618,6 +1733,36 @@ public class TypeTransformer {
         cleanUpTransform();
     }
 
+    /**
+     * Transforms every method (except {@code <init>} and {@code <clinit>}) using the given pool. The copies of the methods are created
+     * up front and in declaration order so that the resulting class is the same as with {@link #transformAllMethods()}.
+     * @param pool The pool to run the transformations on
+     */
+    public void transformAllMethods(ForkJoinPool pool) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+
+        int size = classNode.methods.size();
+        for (int i = 0; i < size; i++) {
+            MethodNode methodNode = classNode.methods.get(i);
+            if (!methodNode.name.equals("<init>") && !methodNode.name.equals("<clinit>")) {
+                MethodNode newMethod = createTransformedCopy(methodNode);
+                tasks.add(pool.submit(() -> {
+                    try {
+                        transformMethodCopy(methodNode, newMethod);
+                    } catch (Exception e) {
+                        throw new RuntimeException("Failed to transform method " + methodNode.name + methodNode.desc, e);
+                    }
+                }));
+            }
+        }
+
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+
+        cleanUpTransform();
+    }
+
     /**
      * Add a constructor to the class
      * @param desc The descriptor of the original constructor
@@ -1786,17 +1931,29 @@ public class TypeTransformer {
      * @param syntheticEmitters Stores code generators that will replicate the value of the instruction at the given index. For a given instruction index, there is an array of BytecodeFactories.
      *                          This is because, if the value transformed into multiple types, then each element in that array will generate code for each respective part of the type. For example if the value generated by some instruction
      *                          has transform type <code>long -> (int "x", int "y", int "z")</code> then the first element in the array will generate code for the int "x" and the second element will generate code for the int "y" and so on.
-     * @param varLookup Stores the new index of a variable. varLookup[insnIndex][oldVarIndex] gives the new var index.
+     * @param varLookup Stores the new index of a variable. varLookup.getNewIndex(insnIndex, oldVarIndex) gives the new var index.
      * @param variableManager The variable manager allows for the creation of new variables.
-     * @param indexLookup A map from instruction object to index in the instructions array. This map contains keys for the instructions of both the old and new methods. This is useful mainly because TransformTrackingValue.getSource() will return
+     * @param indexLookup A map from instruction object (by identity) to index in the instructions array. This map contains keys for the instructions of both the old and new methods. This is useful mainly because TransformTrackingValue.getSource() will return
      *                    instructions from the old method and to manipulate the InsnList of the new method (which is a linked list) we need an element which is in that InsnList.
      * @param methodInfos If an instruction is a method invocation, this will store information about how to transform it.
      */
-    private record TransformContext(MethodNode target, AnalysisResults analysisResults, AbstractInsnNode[] instructions, boolean[] expandedEmitter, boolean[] expandedConsumer, boolean[] removedEmitter, BytecodeFactory[][] syntheticEmitters, int[][] varLookup, TransformSubtype[][] varTypes, VariableManager variableManager, Map<AbstractInsnNode, Integer> indexLookup,
+    private record TransformContext(MethodNode target, AnalysisResults analysisResults, AbstractInsnNode[] instructions, boolean[] expandedEmitter, boolean[] expandedConsumer, boolean[] removedEmitter, BytecodeFactory[][] syntheticEmitters, VariableLookup varLookup, VariableManager variableManager, InsnIndexMap indexLookup,
                                     MethodParameterInfo[] methodInfos){
 
         <T extends AbstractInsnNode> T getActual(T node){
             return (T) instructions[indexLookup.get(node)];
         }
     }
+
+    /**
+     * The result of {@link #analyzeIsolated(MethodNode)}
+     * @param methodID The id of the analyzed method
+     * @param results The analysis results
+     * @param futureBindings Every call to a method of this class made by the analyzed method
+     * @param fieldValues The field pseudo values used by the analysis
+     * @param settled Whether every method transform check the analysis ran would be decided the same way by the serial analysis
+     */
+    private record IsolatedAnalysis(MethodID methodID, AnalysisResults results, Map<MethodID, List<FutureMethodBinding>> futureBindings,
+                                    AncestorHashMap<FieldID, TransformTrackingValue> fieldValues, boolean settled){
+    }
 }
@@ -0,0 +1,127 @@
+package me.salamander.cctransformer.transformer;
+
+import me.salamander.cctransformer.transformer.analysis.TransformSubtype;
+import me.salamander.cctransformer.transformer.analysis.TransformTrackingValue;
+import org.objectweb.asm.tree.analysis.Frame;
+
+import java.util.Arrays;
+
+/**
+ * Stores, for every instruction of a method, where each original local variable ends up after the transform and what its transform is.
+ * <br><br>
+ * Most instructions don't change the locals so consecutive frames whose locals are the same share a single row. Rows are stored in flat arrays
+ * instead of an {@code int[instructions][maxLocals]} matrix.
+ * <br><br>
+ * Note: This might not work with obfuscated bytecode. It relies on variables being added and removed in a stack-like fashion
+ */
+public class VariableLookup {
+    private final int maxLocals;
+    //The start of the row used by each instruction in newIndices and types or -1 if the instruction is unreachable
+    private final int[] rowStart;
+    private final int[] newIndices;
+    private final TransformSubtype[] types;
+    private final int transformedMaxLocals;
+
+    private VariableLookup(int maxLocals, int[] rowStart, int[] newIndices, TransformSubtype[] types, int transformedMaxLocals) {
+        this.maxLocals = maxLocals;
+        this.rowStart = rowStart;
+        this.newIndices = newIndices;
+        this.types = types;
+        this.transformedMaxLocals = transformedMaxLocals;
+    }
+
+    /**
+     * Creates the lookup for a method
+     * @param frames The frames of the original method
+     * @param maxLocals The max locals of the original method
+     */
+    public static VariableLookup create(Frame<TransformTrackingValue>[] frames, int maxLocals) {
+        int[] rowStart = new int[frames.length];
+        int[] newIndices = new int[Math.max(maxLocals, maxLocals * 16)];
+        TransformSubtype[] types = new TransformSubtype[newIndices.length];
+        int used = 0;
+        int lastRow = -1;
+
+        int[] rowIndices = new int[maxLocals];
+        TransformSubtype[] rowTypes = new TransformSubtype[maxLocals];
+
+        int transformedMaxLocals = 0;
+
+        for(int i = 0; i < frames.length; i++){
+            Frame<TransformTrackingValue> frame = frames[i];
+            if(frame == null){
+                rowStart[i] = -1;
+                continue;
+            }
+
+            Arrays.fill(rowTypes, null);
+            int newIndex = 0;
+            for(int j = 0; j < maxLocals;){
+                rowIndices[j] = newIndex;
+                rowTypes[j] = frame.getLocal(j).getTransform();
+                newIndex += frame.getLocal(j).getTransformedSize();
+
+                int size = frame.getLocal(j).getSize();
+                //The second slot of a long or double doesn't map to anything
+                if(size == 2 && j + 1 < maxLocals){
+                    rowIndices[j + 1] = 0;
+                }
+                j += size;
+            }
+            transformedMaxLocals = Math.max(transformedMaxLocals, newIndex);
+
+            if(lastRow != -1 && sameRow(newIndices, types, lastRow, rowIndices, rowTypes)){
+                rowStart[i] = lastRow;
+                continue;
+            }
+
+            if(used + maxLocals > newIndices.length){
+                newIndices = Arrays.copyOf(newIndices, newIndices.length * 2);
+                types = Arrays.copyOf(types, types.length * 2);
+            }
+
+            System.arraycopy(rowIndices, 0, newIndices, used, maxLocals);
+            System.arraycopy(rowTypes, 0, types, used, maxLocals);
+            rowStart[i] = lastRow = used;
+            used += maxLocals;
+        }
+
+        return new VariableLookup(maxLocals, rowStart, newIndices, types, transformedMaxLocals);
+    }
+
+    /**
+     * @param insnIndex The index of the instruction
+     * @param var The index of the variable in the original method
+     * @return The index of the variable in the transformed method. 0 if the instruction is unreachable
+     */
+    public int getNewIndex(int insnIndex, int var) {
+        int start = rowStart[insnIndex];
+        return start == -1 ? 0 : newIndices[start + var];
+    }
+
+    /**
+     * @param insnIndex The index of the instruction
+     * @param var The index of the variable in the original method
+     * @return The transform of the variable at that instruction. null if the instruction is unreachable or the index is the second half of a long or double
+     */
+    public TransformSubtype getType(int insnIndex, int var) {
+        int start = rowStart[insnIndex];
+        return start == -1 ? null : types[start + var];
+    }
+
+    /**
+     * @return The highest max locals of any frame in the transformed method, not including any variables created by a {@link VariableManager}
+     */
+    public int getTransformedMaxLocals() {
+        return transformedMaxLocals;
+    }
+
+    private static boolean sameRow(int[] newIndices, TransformSubtype[] types, int start, int[] rowIndices, TransformSubtype[] rowTypes) {
+        for(int j = 0; j < rowIndices.length; j++){
+            if(newIndices[start + j] != rowIndices[j] || types[start + j] != rowTypes[j]){
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -5,39 +5,39 @@ import org.objectweb.asm.Type;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Allocates new local variables for a method. Each variable is only needed for a range of instructions so a variable index is reused by any other variable
+ * whose range doesn't overlap it. New variables are placed after {@code maxLocals}, the lowest free index is always used.
+ * <br><br>
+ * For every variable index a bitset stores the instructions at which it is in use, so checking a range is done 64 instructions at a time.
+ */
 public class VariableManager {
     private final int baseline;
     private final int maxLength;
-    private final List<boolean[]> variables = new ArrayList<>();
+    //Bit i of variables.get(level) is set if the variable at index (baseline + level) is used at instruction i
+    private final List<long[]> variables = new ArrayList<>();
+    private int allocationCount = 0;
 
     public VariableManager(int maxLocals, int maxLength){
         this.baseline = maxLocals;
         this.maxLength = maxLength;
     }
 
+    /**
+     * Allocates a variable of size 1
+     * @param from The first instruction the variable is used at (inclusive)
+     * @param to The last instruction the variable is used at (exclusive)
+     * @return The index of the variable
+     */
     public int allocateSingle(int from, int to){
         int level = 0;
         while(true){
-            if(level >= variables.size()){
-                variables.add(new boolean[maxLength]);
-            }
-            boolean[] var = variables.get(level);
-
-            //Check that all of it is free
-            boolean free = true;
-            for(int i = from; i < to; i++){
-                if(var[i]){
-                    free = false;
-                    break;
-                }
-            }
+            long[] var = getLevel(level);
 
-            if(free){
-                //Mark it as used
-                for(int i = from; i < to; i++){
-                    var[i] = true;
-                }
+            if(isFree(var, from, to)){
+                markUsed(var, from, to);
 
+                allocationCount++;
                 return level + baseline;
             }
 
@@ -45,36 +45,33 @@ public class VariableManager {
         }
     }
 
+    /**
+     * Allocates a variable of size 2 (a long or a double)
+     * @param from The first instruction the variable is used at (inclusive)
+     * @param to The last instruction the variable is used at (exclusive)
+     * @return The index of the variable
+     */
     public int allocateDouble(int from, int to){
         int level = 0;
         while(true){
-            while(level + 1 >= variables.size()){
-                variables.add(new boolean[maxLength]);
+            long[] var1 = getLevel(level);
+            if(!isFree(var1, from, to)){
+                level++;
+                continue;
             }
 
-            boolean[] var1 = variables.get(level);
-            boolean[] var2 = variables.get(level + 1);
-
-            //Check that all of it is free
-            boolean free = true;
-            for(int i = from; i < to; i++){
-                if(var1[i] || var2[i]){
-                    free = false;
-                    break;
-                }
+            long[] var2 = getLevel(level + 1);
+            if(!isFree(var2, from, to)){
+                //var2 is busy so the next level that could work is the one after it
+                level += 2;
+                continue;
             }
 
-            if(free){
-                //Mark it as used
-                for(int i = from; i < to; i++){
-                    var1[i] = true;
-                    var2[i] = true;
-                }
+            markUsed(var1, from, to);
+            markUsed(var2, from, to);
 
-                return level + baseline;
-            }
-
-            level++;
+            allocationCount++;
+            return level + baseline;
         }
     }
 
@@ -85,4 +82,57 @@ public class VariableManager {
             return allocateSingle(minIndex, maxIndex);
         }
     }
+
+    /**
+     * @return How many variables have been allocated. Doubles and longs count as a single variable
+     */
+    public int getAllocationCount() {
+        return allocationCount;
+    }
+
+    private long[] getLevel(int level){
+        while(level >= variables.size()){
+            variables.add(new long[(maxLength + 63) >>> 6]);
+        }
+        return variables.get(level);
+    }
+
+    private static boolean isFree(long[] bits, int from, int to){
+        if(from >= to) return true;
+
+        int fromWord = from >>> 6;
+        int toWord = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+
+        if(fromWord == toWord){
+            return (bits[fromWord] & firstMask & lastMask) == 0;
+        }
+
+        if((bits[fromWord] & firstMask) != 0) return false;
+        for(int i = fromWord + 1; i < toWord; i++){
+            if(bits[i] != 0) return false;
+        }
+        return (bits[toWord] & lastMask) == 0;
+    }
+
+    private static void markUsed(long[] bits, int from, int to){
+        if(from >= to) return;
+
+        int fromWord = from >>> 6;
+        int toWord = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+
+        if(fromWord == toWord){
+            bits[fromWord] |= firstMask & lastMask;
+            return;
+        }
+
+        bits[fromWord] |= firstMask;
+        for(int i = fromWord + 1; i < toWord; i++){
+            bits[i] = -1L;
+        }
+        bits[toWord] |= lastMask;
+    }
 }
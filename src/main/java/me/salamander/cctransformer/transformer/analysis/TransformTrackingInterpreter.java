@@ -19,6 +19,7 @@ public class TransformTrackingInterpreter extends Interpreter<TransformTrackingV
     private final Config config;
     private final Map<Integer, TransformType> parameterOverrides = new HashMap<>();
     private final Set<TransformTrackingValue> returnValues = new HashSet<>();
+    private final List<CheckOutcome> checkOutcomes = new ArrayList<>();
 
     private Map<MethodID, AnalysisResults> resultLookup = new HashMap<>();
     private Map<MethodID, List<FutureMethodBinding>> futureMethodBindings;
@@ -39,6 +40,7 @@ public class TransformTrackingInterpreter extends Interpreter<TransformTrackingV
 
     public void reset(){
         parameterOverrides.clear();
+        checkOutcomes.clear();
     }
 
     @Override
@@ -407,6 +409,7 @@ public class TransformTrackingInterpreter extends Interpreter<TransformTrackingV
                     UnresolvedMethodTransform unresolvedTransform = new UnresolvedMethodTransform(info, returnValue, parameterValues);
 
                     int checkResult = unresolvedTransform.check();
+                    checkOutcomes.add(new CheckOutcome(unresolvedTransform, checkResult, hasUntypedValue(parameterValues)));
                     if (checkResult == 0) {
                         if (returnValue != null) {
                             returnValue.possibleTransformChecks.add(unresolvedTransform);
@@ -495,6 +498,36 @@ public class TransformTrackingInterpreter extends Interpreter<TransformTrackingV
         }
     }
 
+    private static boolean hasUntypedValue(TransformTrackingValue[] values){
+        for(TransformTrackingValue value: values){
+            if(value.getTransformType() == null){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Every method transform check which couldn't be decided when its call was interpreted, since the last {@link #reset()}.
+     * These are resolved later, when the values they depend on get a type
+     */
+    public List<UnresolvedMethodTransform> getDeferredChecks() {
+        List<UnresolvedMethodTransform> deferredChecks = new ArrayList<>();
+        for(CheckOutcome outcome: checkOutcomes){
+            if(outcome.result() == 0){
+                deferredChecks.add(outcome.check());
+            }
+        }
+        return deferredChecks;
+    }
+
+    /**
+     * @return The outcome of every method transform check run since the last {@link #reset()}, in the order they were run
+     */
+    public List<CheckOutcome> getCheckOutcomes() {
+        return checkOutcomes;
+    }
+
     public void setResultLookup(Map<MethodID, AnalysisResults> analysisResults) {
         this.resultLookup = analysisResults;
     }
@@ -510,4 +543,28 @@ public class TransformTrackingInterpreter extends Interpreter<TransformTrackingV
     public void setFieldBindings(AncestorHashMap<FieldID, TransformTrackingValue> fieldPseudoValues) {
         this.fieldBindings = fieldPseudoValues;
     }
+
+    /**
+     * The outcome of a method transform check at the moment its call was interpreted
+     * @param check The check
+     * @param result The result of {@link UnresolvedMethodTransform#check()}
+     * @param untypedParameters Whether any parameter value had no transform type when the check was run
+     */
+    public record CheckOutcome(UnresolvedMethodTransform check, int result, boolean untypedParameters){
+        /**
+         * Whether the check would be decided the same way if the values it was run on had more type information, like they would
+         * when other methods of the class have already been analyzed.
+         * <br><br>
+         * Types are only ever added to a value, never changed. A rejection comes from a value that already has a type which doesn't fit,
+         * so it stays a rejection. An accept only stays one if every parameter already had its type: an untyped value passes
+         * {@link MethodTransformChecker#checkValidity} no matter what it is compared to, and checks without minimums accept as soon as
+         * nothing is incompatible. The return value is left out since it is created for the check and can't have a type yet in any analysis.
+         */
+        public boolean isSettled(){
+            if(result == 0){
+                return false;
+            }
+            return result < 0 || !untypedParameters;
+        }
+    }
 }
@@ -10,6 +10,31 @@ public record UnresolvedMethodTransform(MethodParameterInfo transform, Transform
         return transform.getTransformCondition().checkValidity(returnValue, parameters);
     }
 
+    /**
+     * @return Whether this check is still waiting for more type information, meaning it has been neither accepted nor rejected
+     */
+    public boolean isPending(){
+        if(returnValue != null && isRegisteredOn(returnValue)){
+            return true;
+        }
+        for(TransformTrackingValue value: parameters){
+            if(isRegisteredOn(value)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isRegisteredOn(TransformTrackingValue value){
+        //The hash code of a check changes with the types of its values so a set lookup could miss it
+        for(UnresolvedMethodTransform check: value.possibleTransformChecks){
+            if(check == this){
+                return true;
+            }
+        }
+        return false;
+    }
+
     public void reject(){
         if(returnValue != null) {
             returnValue.possibleTransformChecks.remove(this);
@@ -11,22 +11,50 @@ import me.salamander.cctransformer.util.MethodID;
 import net.fabricmc.loader.api.FabricLoader;
 import net.fabricmc.loader.api.MappingResolver;
 import net.fabricmc.loader.impl.launch.MappingConfiguration;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.InsnList;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.file.Path;
 import java.util.*;
 
 public class ConfigLoader {
+    private static final Logger LOGGER = LogManager.getLogger();
+
     public static Config loadConfig(InputStream is){
         JsonParser parser = new JsonParser();
         JsonObject root = parser.parse(new InputStreamReader(is)).getAsJsonObject();
 
-        MappingResolver map = getMapper();
+        return loadConfig(root, getMapper());
+    }
+
+    /**
+     * Loads the config from a {@link PrecompiledConfig} if there is an up-to-date one, otherwise from the JSON
+     * @param precompiled Path of the precompiled config. It doesn't need to exist
+     * @param json Contents of the JSON config
+     */
+    public static Config loadConfig(Path precompiled, byte[] json){
+        PrecompiledConfig compiled = PrecompiledConfig.open(precompiled);
+        String namespace = getRuntimeNamespace();
+
+        if(compiled != null && compiled.isUpToDate(json, namespace)){
+            return loadConfig(compiled.getRoot(), compiled.getMappings());
+        }
 
+        if(compiled != null){
+            LOGGER.info("Precompiled config " + precompiled + " is stale. Loading JSON config");
+        }
+
+        return loadConfig(new ByteArrayInputStream(json));
+    }
+
+    static Config loadConfig(JsonObject root, MappingResolver map){
         HierarchyTree hierarchy = new HierarchyTree();
         loadHierarchy(hierarchy, root.get("hierarchy").getAsJsonObject(), map, null);
 
@@ -577,7 +605,18 @@ public class ConfigLoader {
         }
     }
 
-    private static MappingResolver getMapper() {
+    /**
+     * @return The namespace that the config gets mapped to. Doesn't load any mappings
+     */
+    public static String getRuntimeNamespace() {
+        try {
+            return FabricLoader.getInstance().getMappingResolver().getCurrentRuntimeNamespace();
+        } catch (NullPointerException e) {
+            return "named"; //Same as the fallback in getMapper
+        }
+    }
+
+    static MappingResolver getMapper() {
         try {
             return FabricLoader.getInstance().getMappingResolver();
         } catch (NullPointerException e) {
@@ -9,6 +9,9 @@ import java.util.*;
 public class HierarchyTree {
     private Node root;
     private Map<Type, Node> lookup = new HashMap<>();
+    //Incremented whenever the tree changes so that caches (see AncestorHashMap) know when to invalidate. Volatile because those caches are read
+    //from the parallel analysis threads. The tree itself is only ever changed by one thread
+    private volatile int version = 0;
 
     public void addNode(Type value, Type parent){
         Node node;
@@ -28,6 +31,7 @@ public class HierarchyTree {
             node.parent = parentNode;
         }
         lookup.put(value, node);
+        version++;
     }
 
     public Iterable<Type> ancestry(Type subType){
@@ -62,6 +66,11 @@ public class HierarchyTree {
             throw new IllegalStateException("Node not found");
         }
         node.interfaces.add(itf);
+        version++;
+    }
+
+    public int getVersion() {
+        return version;
     }
 
     public void add(Class<?> clazz){
@@ -106,10 +115,6 @@ public class HierarchyTree {
         public int getDepth() {
             return depth;
         }
-
-        public void addInterface(Type subType){
-            interfaces.add(subType);
-        }
     }
 
     private static class AncestorIterable implements Iterable<Type> {
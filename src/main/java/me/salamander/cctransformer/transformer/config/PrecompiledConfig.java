@@ -0,0 +1,475 @@
+package me.salamander.cctransformer.transformer.config;
+
+import com.google.gson.*;
+import com.google.gson.internal.LazilyParsedNumber;
+import net.fabricmc.loader.api.MappingResolver;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * A binary version of the config which is created at build time (see {@link #main(String[])}). It contains the config tree along with
+ * every mapping lookup that {@link ConfigLoader} made while loading it, so loading it requires neither parsing JSON nor loading mappings.
+ * <br><br>
+ * The file is memory-mapped and only the header is read when it is opened. The tree and mappings are decoded the first time they are needed.
+ * A precompiled config is only used if it was created from the exact same JSON and for the current runtime namespace. Otherwise
+ * {@link ConfigLoader#loadConfig(Path, byte[])} falls back to the JSON.
+ * <br><br>
+ * <b>Layout:</b> (All numbers are big-endian ints)
+ * <ul>Header: magic, format version, SHA-256 of the JSON (32 bytes), target namespace, offset of the mapping section</ul>
+ * <ul>String table: count followed by length-prefixed UTF-8 strings. Everything else refers to strings by index</ul>
+ * <ul>Tree: a tagged encoding of the JSON tree. Object entries keep their order</ul>
+ * <ul>Mappings: one section per kind of lookup, in the order of {@link LookupKind}. Each is a count followed by the lookups. A lookup is
+ * its arguments followed by its result (see {@link LookupKind#arity}). A result of -1 is null</ul>
+ */
+public class PrecompiledConfig {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final int MAGIC = 0xCC7C0F16;
+    //Must be incremented whenever the layout changes
+    private static final int FORMAT_VERSION = 2;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_OBJECT = 1;
+    private static final byte TAG_ARRAY = 2;
+    private static final byte TAG_STRING = 3;
+    private static final byte TAG_NUMBER = 4;
+    private static final byte TAG_TRUE = 5;
+    private static final byte TAG_FALSE = 6;
+
+    private final ByteBuffer buffer;
+    private final byte[] sourceHash;
+    private final String namespace;
+    private final int stringTableOffset;
+    private final int mappingOffset;
+
+    private String[] strings;
+    private JsonObject root;
+    private MappingResolver mappings;
+
+    private PrecompiledConfig(ByteBuffer buffer) {
+        this.buffer = buffer;
+
+        if(buffer.getInt(0) != MAGIC){
+            throw new IllegalArgumentException("Not a precompiled config");
+        }
+
+        if(buffer.getInt(4) != FORMAT_VERSION){
+            throw new IllegalArgumentException("Unsupported precompiled config version " + buffer.getInt(4));
+        }
+
+        sourceHash = new byte[32];
+        buffer.get(8, sourceHash);
+
+        int namespaceLength = buffer.getInt(40);
+        byte[] namespaceBytes = new byte[namespaceLength];
+        buffer.get(44, namespaceBytes);
+        namespace = new String(namespaceBytes, StandardCharsets.UTF_8);
+
+        mappingOffset = buffer.getInt(44 + namespaceLength);
+        stringTableOffset = 48 + namespaceLength;
+    }
+
+    /**
+     * Memory-maps a precompiled config. Only the header is read.
+     * @param path The file to open
+     * @return The precompiled config or null if the file doesn't exist or isn't valid
+     */
+    public static PrecompiledConfig open(Path path) {
+        if(!Files.isRegularFile(path)){
+            return null;
+        }
+
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            //The mapping stays valid after the channel is closed
+            return new PrecompiledConfig(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }catch (IOException | IllegalArgumentException | IndexOutOfBoundsException e){
+            LOGGER.warn("Failed to open precompiled config " + path, e);
+            return null;
+        }
+    }
+
+    /**
+     * @param json The contents of the JSON config
+     * @param namespace The namespace the config will be used in
+     * @return Whether this was created from the given JSON for the given namespace
+     */
+    public boolean isUpToDate(byte[] json, String namespace) {
+        return this.namespace.equals(namespace) && Arrays.equals(sourceHash, hash(json));
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public JsonObject getRoot() {
+        if(root == null){
+            ByteBuffer data = buffer.duplicate();
+            data.position(stringTableOffset);
+            readStrings(data);
+            root = readElement(data).getAsJsonObject();
+        }
+        return root;
+    }
+
+    /**
+     * @return A mapping resolver which answers every lookup that was made while precompiling
+     */
+    public MappingResolver getMappings() {
+        if(mappings == null){
+            ByteBuffer data = buffer.duplicate();
+            data.position(stringTableOffset);
+            readStrings(data);
+            data.position(mappingOffset);
+
+            Map<String, String> lookups = new HashMap<>();
+            for(LookupKind kind : LookupKind.values()){
+                int count = data.getInt();
+                String[] arguments = new String[kind.arity];
+                for(int i = 0; i < count; i++){
+                    for(int j = 0; j < arguments.length; j++){
+                        arguments[j] = string(data.getInt());
+                    }
+                    lookups.put(kind.key(arguments), string(data.getInt()));
+                }
+            }
+
+            mappings = new RecordedMappingResolver(namespace, lookups);
+        }
+        return mappings;
+    }
+
+    private void readStrings(ByteBuffer data) {
+        if(strings != null){
+            int count = data.getInt();
+            for(int i = 0; i < count; i++){
+                int length = data.getInt();
+                data.position(data.position() + length);
+            }
+            return;
+        }
+
+        strings = new String[data.getInt()];
+        for(int i = 0; i < strings.length; i++){
+            byte[] bytes = new byte[data.getInt()];
+            data.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private String string(int index) {
+        return index == -1 ? null : strings[index];
+    }
+
+    private JsonElement readElement(ByteBuffer data) {
+        byte tag = data.get();
+        switch (tag){
+            case TAG_NULL: return JsonNull.INSTANCE;
+            case TAG_OBJECT: {
+                JsonObject object = new JsonObject();
+                int size = data.getInt();
+                for(int i = 0; i < size; i++){
+                    String key = strings[data.getInt()];
+                    object.add(key, readElement(data));
+                }
+                return object;
+            }
+            case TAG_ARRAY: {
+                int size = data.getInt();
+                JsonArray array = new JsonArray();
+                for(int i = 0; i < size; i++){
+                    array.add(readElement(data));
+                }
+                return array;
+            }
+            case TAG_STRING: return new JsonPrimitive(strings[data.getInt()]);
+            //Numbers are kept as text because ConfigLoader looks at how they were written
+            case TAG_NUMBER: return new JsonPrimitive(new LazilyParsedNumber(strings[data.getInt()]));
+            case TAG_TRUE: return new JsonPrimitive(true);
+            case TAG_FALSE: return new JsonPrimitive(false);
+            default: throw new IllegalStateException("Invalid tag " + tag + " in precompiled config");
+        }
+    }
+
+    /**
+     * Precompiles a JSON config
+     * @param json The contents of the JSON config
+     * @param namespace The namespace the config will be used in
+     * @return The contents of the precompiled config
+     */
+    public static byte[] compile(byte[] json, String namespace) {
+        JsonObject root = JsonParser.parseReader(new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8)).getAsJsonObject();
+
+        //Loading the config is the easiest way to find every lookup that will be made
+        MappingResolver base = namespace.equals("intermediary") ? new RecordedMappingResolver(namespace, Map.of()) : ConfigLoader.getMapper();
+        RecordingMappingResolver recorder = new RecordingMappingResolver(base);
+        ConfigLoader.loadConfig(root, recorder);
+
+        StringTable table = new StringTable();
+        ByteArrayOutputStream treeBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream mappingBytes = new ByteArrayOutputStream();
+
+        try {
+            writeElement(new DataOutputStream(treeBytes), root, table);
+
+            DataOutputStream mappingOut = new DataOutputStream(mappingBytes);
+            for(LookupKind kind : LookupKind.values()){
+                List<String[]> lookups = recorder.lookups.get(kind);
+                mappingOut.writeInt(lookups.size());
+                for(String[] lookup : lookups){
+                    for(String s : lookup){
+                        mappingOut.writeInt(table.indexOf(s));
+                    }
+                }
+            }
+
+            ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+            DataOutputStream stringOut = new DataOutputStream(stringBytes);
+            stringOut.writeInt(table.strings.size());
+            for(String s : table.strings){
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                stringOut.writeInt(bytes.length);
+                stringOut.write(bytes);
+            }
+
+            byte[] namespaceBytes = namespace.getBytes(StandardCharsets.UTF_8);
+            int headerSize = 48 + namespaceBytes.length;
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(MAGIC);
+            data.writeInt(FORMAT_VERSION);
+            data.write(hash(json));
+            data.writeInt(namespaceBytes.length);
+            data.write(namespaceBytes);
+            data.writeInt(headerSize + stringBytes.size() + treeBytes.size());
+            stringBytes.writeTo(data);
+            treeBytes.writeTo(data);
+            mappingBytes.writeTo(data);
+            data.flush();
+
+            return out.toByteArray();
+        }catch (IOException e){
+            throw new RuntimeException("Failed to precompile config", e);
+        }
+    }
+
+    private static void writeElement(DataOutputStream out, JsonElement element, StringTable table) throws IOException {
+        if(element.isJsonNull()){
+            out.writeByte(TAG_NULL);
+        }else if(element.isJsonObject()){
+            out.writeByte(TAG_OBJECT);
+            out.writeInt(element.getAsJsonObject().size());
+            for(Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()){
+                out.writeInt(table.indexOf(entry.getKey()));
+                writeElement(out, entry.getValue(), table);
+            }
+        }else if(element.isJsonArray()){
+            out.writeByte(TAG_ARRAY);
+            out.writeInt(element.getAsJsonArray().size());
+            for(JsonElement child : element.getAsJsonArray()){
+                writeElement(out, child, table);
+            }
+        }else{
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if(primitive.isBoolean()){
+                out.writeByte(primitive.getAsBoolean() ? TAG_TRUE : TAG_FALSE);
+            }else if(primitive.isNumber()){
+                out.writeByte(TAG_NUMBER);
+                out.writeInt(table.indexOf(primitive.getAsNumber().toString()));
+            }else{
+                out.writeByte(TAG_STRING);
+                out.writeInt(table.indexOf(primitive.getAsString()));
+            }
+        }
+    }
+
+    static byte[] hash(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        }catch (NoSuchAlgorithmException e){
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Build step. Usage: {@code PrecompiledConfig <input json> <output file> <namespace>}
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length != 3){
+            throw new IllegalArgumentException("Usage: PrecompiledConfig <input json> <output file> <namespace>");
+        }
+
+        byte[] json = Files.readAllBytes(Path.of(args[0]));
+        byte[] compiled = compile(json, args[2]);
+
+        Path output = Path.of(args[1]);
+        if(output.getParent() != null){
+            Files.createDirectories(output.getParent());
+        }
+        Files.write(output, compiled);
+
+        LOGGER.info("Precompiled config " + args[0] + " for namespace " + args[2] + " (" + json.length + " -> " + compiled.length + " bytes)");
+    }
+
+    private static class StringTable {
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> indices = new HashMap<>();
+
+        int indexOf(String s) {
+            if(s == null){
+                return -1;
+            }
+
+            return indices.computeIfAbsent(s, k -> {
+                strings.add(k);
+                return strings.size() - 1;
+            });
+        }
+    }
+
+    /**
+     * The lookups of a {@link MappingResolver} that can be precompiled
+     */
+    private enum LookupKind {
+        //namespace, name
+        MAP_CLASS(2),
+        //namespace, name
+        UNMAP_CLASS(2),
+        //namespace, owner, name, descriptor
+        MAP_FIELD(4),
+        //namespace, owner, name, descriptor
+        MAP_METHOD(4);
+
+        //How many arguments the lookup has
+        private final int arity;
+
+        LookupKind(int arity) {
+            this.arity = arity;
+        }
+
+        String key(String... arguments) {
+            return ordinal() + " " + String.join(" ", arguments);
+        }
+    }
+
+    /**
+     * Passes lookups on to another resolver and remembers them
+     */
+    private static class RecordingMappingResolver implements MappingResolver {
+        private final MappingResolver delegate;
+        //Each lookup is stored as its arguments followed by the result
+        private final Map<LookupKind, List<String[]>> lookups = new EnumMap<>(LookupKind.class);
+        private final Set<String> seen = new HashSet<>();
+
+        RecordingMappingResolver(MappingResolver delegate) {
+            this.delegate = delegate;
+            for(LookupKind kind : LookupKind.values()){
+                lookups.put(kind, new ArrayList<>());
+            }
+        }
+
+        @Override
+        public Collection<String> getNamespaces() {
+            return delegate.getNamespaces();
+        }
+
+        @Override
+        public String getCurrentRuntimeNamespace() {
+            return delegate.getCurrentRuntimeNamespace();
+        }
+
+        @Override
+        public String mapClassName(String namespace, String className) {
+            return record(LookupKind.MAP_CLASS, delegate.mapClassName(namespace, className), namespace, className);
+        }
+
+        @Override
+        public String unmapClassName(String namespace, String className) {
+            return record(LookupKind.UNMAP_CLASS, delegate.unmapClassName(namespace, className), namespace, className);
+        }
+
+        @Override
+        public String mapFieldName(String namespace, String owner, String name, String descriptor) {
+            return record(LookupKind.MAP_FIELD, delegate.mapFieldName(namespace, owner, name, descriptor), namespace, owner, name, descriptor);
+        }
+
+        @Override
+        public String mapMethodName(String namespace, String owner, String name, String descriptor) {
+            return record(LookupKind.MAP_METHOD, delegate.mapMethodName(namespace, owner, name, descriptor), namespace, owner, name, descriptor);
+        }
+
+        private String record(LookupKind kind, String result, String... arguments) {
+            if(seen.add(kind.key(arguments))){
+                String[] lookup = Arrays.copyOf(arguments, arguments.length + 1);
+                lookup[arguments.length] = result;
+                lookups.get(kind).add(lookup);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Answers lookups from a table. Lookups which aren't in the table are left unchanged, which is also what happens when the
+     * target namespace is the same as the source namespace.
+     */
+    private static class RecordedMappingResolver implements MappingResolver {
+        private final String namespace;
+        //See LookupKind#key
+        private final Map<String, String> lookups;
+
+        RecordedMappingResolver(String namespace, Map<String, String> lookups) {
+            this.namespace = namespace;
+            this.lookups = lookups;
+        }
+
+        @Override
+        public Collection<String> getNamespaces() {
+            return Set.of("intermediary", namespace);
+        }
+
+        @Override
+        public String getCurrentRuntimeNamespace() {
+            return namespace;
+        }
+
+        @Override
+        public String mapClassName(String namespace, String className) {
+            return lookup(LookupKind.MAP_CLASS, className, namespace, className);
+        }
+
+        @Override
+        public String unmapClassName(String namespace, String className) {
+            return lookup(LookupKind.UNMAP_CLASS, className, namespace, className);
+        }
+
+        @Override
+        public String mapFieldName(String namespace, String owner, String name, String descriptor) {
+            return lookup(LookupKind.MAP_FIELD, name, namespace, owner, name, descriptor);
+        }
+
+        @Override
+        public String mapMethodName(String namespace, String owner, String name, String descriptor) {
+            return lookup(LookupKind.MAP_METHOD, name, namespace, owner, name, descriptor);
+        }
+
+        private String lookup(LookupKind kind, String unchanged, String... arguments) {
+            String key = kind.key(arguments);
+            return lookups.containsKey(key) ? lookups.get(key) : unchanged;
+        }
+    }
+}
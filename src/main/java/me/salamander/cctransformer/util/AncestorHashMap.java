@@ -6,13 +6,31 @@ import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Type;
 
 import java.util.*;
-
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A map whose lookups also find entries stored under an ancestor of the key's type (see {@link HierarchyTree#ancestry(Type)}).
+ * <br><br>
+ * Entries are indexed by their key with the type erased, so resolving a key only has to check the entries with the same name and descriptor
+ * instead of creating a copy of the key for every ancestor. Resolved values are cached per concrete key which makes repeated lookups a single
+ * hash lookup that doesn't allocate. The cache is cleared whenever the map or the hierarchy is modified, and when it holds more than
+ * {@link #MAX_RESOLVED} keys so that a long-lived map queried with many distinct keys doesn't grow without bound.
+ */
 public class AncestorHashMap<U extends Ancestralizable<U>, T> implements Map<U, T> {
+    private static final int MAX_RESOLVED = 4096;
+
     private final Map<U, T> map = new HashMap<>();
+    //Every stored key grouped by its key with the type erased (see erase)
+    private final Map<U, List<U>> erasedIndex = new HashMap<>();
+    //Resolved values per concrete key. Lookups can happen from several threads at once (e.g. parallel analysis) so this needs to be concurrent.
+    //Keys that don't resolve to anything map to an empty optional since ConcurrentHashMap can't hold null
+    private final Map<U, Optional<T>> resolved = new ConcurrentHashMap<>();
     private final HierarchyTree hierarchy;
+    private volatile int hierarchyVersion;
 
     public AncestorHashMap(HierarchyTree hierarchy) {
         this.hierarchy = hierarchy;
+        this.hierarchyVersion = hierarchy.getVersion();
     }
 
     @Override
@@ -27,13 +45,9 @@ public class AncestorHashMap<U extends Ancestralizable<U>, T> implements Map<U,
 
     @Override
     public boolean containsKey(Object key) {
-        if(key instanceof Ancestralizable method){
-            for(Type subType: hierarchy.ancestry(method.getAssociatedType())){
-                Ancestralizable id = method.withType(subType);
-                if(map.containsKey(id)){
-                    return true;
-                }
-            }
+        if(key instanceof Ancestralizable<?> method){
+            //Keys whose hierarchy is unknown are never contained
+            return hierarchy.getNode(method.getAssociatedType()) != null && get(key) != null;
         }
 
         return false;
@@ -46,91 +60,96 @@ public class AncestorHashMap<U extends Ancestralizable<U>, T> implements Map<U,
 
     @Override
     public T get(Object key) {
-        if(key instanceof Ancestralizable method){
-            if(hierarchy.getNode(method.getAssociatedType()) == null){
-                //System.err.println("Warning: Hierarchy of " + method.getAssociatedType() + " is not known!");
-                return map.get(method);
-            }
+        if(!(key instanceof Ancestralizable<?> method)){
+            return null;
+        }
 
-            for(Type subType: hierarchy.ancestry(method.getAssociatedType())){
-                Ancestralizable id = method.withType(subType);
-                T value = map.get(id);
-                if(value != null){
-                    return value;
-                }
-            }
+        if(hierarchyVersion != hierarchy.getVersion()){
+            resolved.clear();
+            hierarchyVersion = hierarchy.getVersion();
         }
 
-        return null;
-    }
+        U typedKey = asKey(method);
+        Optional<T> value = resolved.get(typedKey);
+        if(value == null){
+            U resolvedKey = resolveKey(typedKey);
+            value = Optional.ofNullable(resolvedKey == null ? null : map.get(resolvedKey));
 
-    @Nullable
-    @Override
-    public T put(U key, T value) {
-        HierarchyTree.Node current = hierarchy.getNode(key.getAssociatedType());
-
-        HierarchyTree.Node[] nodes = keySet()
-                .stream()
-                .filter(val -> val.equalsWithoutType(key) && get(val).equals(value))
-                .map(val -> hierarchy.getNode(val.getAssociatedType()))
-                .toArray(HierarchyTree.Node[]::new);
+            if(resolved.size() >= MAX_RESOLVED){
+                resolved.clear();
+            }
+            resolved.put(typedKey, value);
+        }
 
-        /*if(nodes.length == 0){
-            return map.put(key, value);
-        }else{
-            //Get common ancestor. (This isn't the most efficient method (far from it), but it's the easiest to implement)
-            for (int i = 0; i < nodes.length; i++) {
-                HierarchyTree.Node second = nodes[i];
+        return value.orElse(null);
+    }
 
-                int minDepth = Math.min(current.getDepth(), second.getDepth());
+    /**
+     * Finds the stored key that a key resolves to
+     * @return The stored key or null if there is none
+     */
+    private U resolveKey(U key) {
+        if(hierarchy.getNode(key.getAssociatedType()) == null){
+            return map.containsKey(key) ? key : null;
+        }
 
-                while (current.getDepth() != minDepth) {
-                    current = current.getParent();
-                }
+        List<U> candidates = erasedIndex.get(erase(key));
+        if(candidates == null){
+            return null;
+        }
 
-                while (second.getDepth() != minDepth) {
-                    second = second.getParent();
+        for(Type subType: hierarchy.ancestry(key.getAssociatedType())){
+            for(U candidate: candidates){
+                if(candidate.getAssociatedType().equals(subType)){
+                    return candidate;
                 }
+            }
+        }
 
-                while (current != second) {
-                    current = current.getParent();
-                    second = second.getParent();
-                }
+        return null;
+    }
 
-                if(current.getDepth() != 0) {
-                    U prev = key.withType(nodes[i].getValue());
-                    T v = map.remove(prev);
-                    map.put(key.withType(current.getValue()), value);
-                    return v;
-                }
-            }
-        }*/
+    private U erase(U key) {
+        return key.withType(Type.VOID_TYPE);
+    }
 
-        return map.put(key, value);
+    //A key of another Ancestralizable type is never equal to a stored key, so treating it as a U just makes it resolve to nothing
+    @SuppressWarnings("unchecked")
+    private U asKey(Ancestralizable<?> key) {
+        return (U) key;
     }
 
-    /**
-     * Checks if all the objects' <em>identities</em> are the same
-     */
-    private static boolean areAllEqual(Object a, Object... others){
-        for(Object o: others){
-            if(a != o){
-                return false;
+    @Nullable
+    @Override
+    public T put(U key, T value) {
+        T previous = map.put(key, value);
+        if(previous == null){
+            List<U> candidates = erasedIndex.computeIfAbsent(erase(key), k -> new ArrayList<>(1));
+            if(!candidates.contains(key)){
+                candidates.add(key);
             }
         }
-        return true;
+
+        resolved.clear();
+        return previous;
     }
 
     @Override
     public T remove(Object key) {
-        if(key instanceof Ancestralizable method){
-            for(Type subType: hierarchy.ancestry(method.getAssociatedType())){
-                Ancestralizable<?> id = method.withType(subType);
-                T value = map.remove(key);
-                if(value != null){
-                    return value;
-                }
+        if(key instanceof Ancestralizable<?> method){
+            U resolvedKey = resolveKey(asKey(method));
+            if(resolvedKey == null){
+                return null;
             }
+
+            List<U> candidates = erasedIndex.get(erase(resolvedKey));
+            candidates.remove(resolvedKey);
+            if(candidates.isEmpty()){
+                erasedIndex.remove(erase(resolvedKey));
+            }
+
+            resolved.clear();
+            return map.remove(resolvedKey);
         }
 
         return null;
@@ -138,29 +157,35 @@ public class AncestorHashMap<U extends Ancestralizable<U>, T> implements Map<U,
 
     @Override
     public void putAll(@NotNull Map<? extends U, ? extends T> m) {
-        map.putAll(m);
+        for(Entry<? extends U, ? extends T> entry: m.entrySet()){
+            put(entry.getKey(), entry.getValue());
+        }
     }
 
     @Override
     public void clear() {
         map.clear();
+        erasedIndex.clear();
+        resolved.clear();
     }
 
+    //The views are unmodifiable since changes made through them would not update the index
+
     @NotNull
     @Override
     public Set<U> keySet() {
-        return map.keySet();
+        return Collections.unmodifiableSet(map.keySet());
     }
 
     @NotNull
     @Override
     public Collection<T> values() {
-        return map.values();
+        return Collections.unmodifiableCollection(map.values());
     }
 
     @NotNull
     @Override
     public Set<Entry<U, T>> entrySet() {
-        return map.entrySet();
+        return Collections.unmodifiableSet(map.entrySet());
     }
 }
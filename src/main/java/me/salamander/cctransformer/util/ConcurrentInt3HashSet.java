@@ -0,0 +1,258 @@
+package me.salamander.cctransformer.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread-safe set of 3-dimensional {@code int} vectors with the same API as {@link LinkedInt3HashSet}.
+ * <p>
+ * The set is split into segments, each of which is a {@link LinkedInt3HashSet} guarded by its own lock. Positions are assigned to segments by
+ * their bucket (see {@link LinkedInt3HashSet#BUCKET_AXIS_BITS}), so positions close to each other share a segment while threads working on
+ * different areas rarely contend. Every operation only locks the one segment it needs, reads included: the tables are off-heap and may be
+ * freed by a resize at any time, so reading one without the lock could crash the JVM.
+ * <p>
+ * Unlike {@link LinkedInt3HashSet} there is no global insertion order. {@link #poll(XYZConsumer)} returns the oldest position of some
+ * non-empty segment, so positions are handed out in insertion order within a segment only.
+ *
+ * @author Salamander
+ */
+public class ConcurrentInt3HashSet implements AutoCloseable {
+    protected static final int DEFAULT_SEGMENTS = 64;
+
+    protected final Segment[] segments;
+    protected final int segmentMask;
+    protected final LongAdder size = new LongAdder();
+
+    public ConcurrentInt3HashSet() {
+        this(DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * @param concurrencyLevel the expected number of threads using the set at the same time. The number of segments is this rounded up to a power
+     *                         of two
+     */
+    public ConcurrentInt3HashSet(int concurrencyLevel) {
+        int segmentCount = 1 << (Integer.SIZE - Integer.numberOfLeadingZeros(Math.max(concurrencyLevel, 1) - 1));
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            this.segments[i] = new Segment();
+        }
+        this.segmentMask = segmentCount - 1;
+    }
+
+    protected Segment segmentFor(int x, int y, int z) {
+        //the table index inside of the segment uses the low bits of the same hash, so use the high bits here
+        long hash = LinkedInt3HashSet.hashPosition(x >> LinkedInt3HashSet.BUCKET_AXIS_BITS, y >> LinkedInt3HashSet.BUCKET_AXIS_BITS, z >> LinkedInt3HashSet.BUCKET_AXIS_BITS);
+        return this.segments[(int) (hash >>> 40) & this.segmentMask];
+    }
+
+    /**
+     * Adds the given position to this set.
+     *
+     * @return whether or not the position was added (i.e. was previously absent)
+     *
+     * @see LinkedInt3HashSet#add(int, int, int)
+     */
+    public boolean add(int x, int y, int z) {
+        Segment segment = this.segmentFor(x, y, z);
+        boolean added;
+
+        segment.lock.lock();
+        try {
+            added = segment.add(x, y, z);
+        } finally {
+            segment.lock.unlock();
+        }
+
+        if (added) {
+            this.size.increment();
+        }
+        return added;
+    }
+
+    /**
+     * Checks whether or not the given position is present in this set.
+     *
+     * @see LinkedInt3HashSet#contains(int, int, int)
+     */
+    public boolean contains(int x, int y, int z) {
+        Segment segment = this.segmentFor(x, y, z);
+
+        segment.lock.lock();
+        try {
+            return segment.contains(x, y, z);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the given position from this set.
+     *
+     * @return whether or not the position was removed (i.e. was previously present)
+     *
+     * @see LinkedInt3HashSet#remove(int, int, int)
+     */
+    public boolean remove(int x, int y, int z) {
+        Segment segment = this.segmentFor(x, y, z);
+        boolean removed;
+
+        segment.lock.lock();
+        try {
+            removed = segment.remove(x, y, z);
+        } finally {
+            segment.lock.unlock();
+        }
+
+        if (removed) {
+            this.size.decrement();
+        }
+        return removed;
+    }
+
+    /**
+     * Removes a position from this set and passes it to the given function. The function is run after the segment has been unlocked, so it may
+     * use this set.
+     * <p>
+     * Each thread starts searching at a random segment, so threads polling at the same time usually don't contend.
+     *
+     * @param action the function to run on the removed position
+     *
+     * @return whether or not a position was removed. This may be false if positions were being added at the same time
+     */
+    public boolean poll(XYZConsumer action) {
+        int start = ThreadLocalRandom.current().nextInt();
+
+        for (int i = 0; i <= this.segmentMask; i++) {
+            Segment segment = this.segments[(start + i) & this.segmentMask];
+            if (segment.isEmpty()) { //unsynchronized read, this is only a hint
+                continue;
+            }
+
+            int x, y, z;
+            segment.lock.lock();
+            try {
+                if (segment.isEmpty()) {
+                    continue;
+                }
+
+                x = segment.getFirstX();
+                y = segment.getFirstY();
+                z = segment.getFirstZ();
+                segment.removeFirstValue();
+            } finally {
+                segment.lock.unlock();
+            }
+
+            this.size.decrement();
+            action.accept(x, y, z);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Removes up to {@code max} positions from a single segment of this set and writes their coordinates into the given arrays, starting at index 0.
+     * The segment is only locked once, so this is much cheaper per position than {@link #poll(XYZConsumer)}.
+     * <p>
+     * Segments are chosen the same way as in {@link #poll(XYZConsumer)}. Fewer than {@code max} positions may be returned even if other segments
+     * still have positions left.
+     *
+     * @param xs the array to write the X coordinates into
+     * @param ys the array to write the Y coordinates into
+     * @param zs the array to write the Z coordinates into
+     * @param max the maximum number of positions to remove. Must not be greater than the length of any of the arrays
+     *
+     * @return the number of positions which were removed. This may be 0 if positions were being added at the same time
+     *
+     * @see LinkedInt3HashSet#drainTo(int[], int[], int[], int)
+     */
+    public int drainTo(int[] xs, int[] ys, int[] zs, int max) {
+        LinkedInt3HashSet.checkDrainArgs(xs, ys, zs, max);
+        int start = ThreadLocalRandom.current().nextInt();
+
+        for (int i = 0; i <= this.segmentMask; i++) {
+            Segment segment = this.segments[(start + i) & this.segmentMask];
+            if (segment.isEmpty()) { //unsynchronized read, this is only a hint
+                continue;
+            }
+
+            int count;
+            segment.lock.lock();
+            try {
+                count = segment.drainTo(xs, ys, zs, max);
+            } finally {
+                segment.lock.unlock();
+            }
+
+            if (count != 0) {
+                this.size.add(-count);
+                return count;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Runs the given function on every position in this set. Segments are locked one at a time, so positions added or removed by other threads while
+     * this is running may or may not be visited.
+     * <p>
+     * The function runs while its position's segment is locked and must not modify this set.
+     *
+     * @param action the function to run
+     */
+    public void forEach(XYZConsumer action) {
+        for (Segment segment : this.segments) {
+            segment.lock.lock();
+            try {
+                segment.forEach(action);
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes every position from this set. Positions added by other threads while this is running may or may not be removed.
+     */
+    public void clear() {
+        for (Segment segment : this.segments) {
+            segment.lock.lock();
+            try {
+                long removed = segment.size();
+                segment.clear();
+                this.size.add(-removed);
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return the number of positions in this set. This is only exact if no other thread is modifying the set
+     */
+    public long size() {
+        return this.size.sum();
+    }
+
+    public boolean isEmpty() {
+        return this.size() == 0L;
+    }
+
+    /**
+     * Irrevocably releases the resources claimed by this instance. No other thread may be using the set while this is running.
+     */
+    @Override
+    public void close() {
+        for (Segment segment : this.segments) {
+            segment.close();
+        }
+    }
+
+    protected static class Segment extends LinkedInt3HashSet {
+        protected final ReentrantLock lock = new ReentrantLock();
+    }
+}
@@ -0,0 +1,91 @@
+package me.salamander.cctransformer.util;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+
+/**
+ * Maps instructions to an int index by identity. This is an open addressing hash table with linear probing, so unlike a
+ * {@code HashMap<AbstractInsnNode, Integer>} it doesn't allocate an entry and a boxed index for every instruction.
+ * <br><br>
+ * Instructions can't be removed and an instruction can only be mapped to one index.
+ */
+public class InsnIndexMap {
+    private AbstractInsnNode[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    /**
+     * @param expectedSize How many instructions will be added. The table never has to grow if this is correct
+     */
+    public InsnIndexMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        this.keys = new AbstractInsnNode[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public void put(AbstractInsnNode insn, int index) {
+        int pos = find(insn);
+        if(keys[pos] == null){
+            keys[pos] = insn;
+            size++;
+        }
+        values[pos] = index;
+
+        if(size * 2 > keys.length){
+            rehash(keys.length * 2);
+        }
+    }
+
+    /**
+     * @return The index of the instruction
+     * @throws IllegalArgumentException If the instruction has not been added
+     */
+    public int get(AbstractInsnNode insn) {
+        int pos = find(insn);
+        if(keys[pos] == null){
+            throw new IllegalArgumentException("Instruction " + insn + " (opcode " + insn.getOpcode() + ") is not in the map");
+        }
+        return values[pos];
+    }
+
+    public boolean contains(AbstractInsnNode insn) {
+        return keys[find(insn)] != null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int find(AbstractInsnNode insn) {
+        int pos = hash(insn) & mask;
+        AbstractInsnNode key;
+        while((key = keys[pos]) != null && key != insn){
+            pos = (pos + 1) & mask;
+        }
+        return pos;
+    }
+
+    private void rehash(int capacity) {
+        AbstractInsnNode[] oldKeys = keys;
+        int[] oldValues = values;
+
+        keys = new AbstractInsnNode[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+
+        for(int i = 0; i < oldKeys.length; i++){
+            if(oldKeys[i] != null){
+                int pos = find(oldKeys[i]);
+                keys[pos] = oldKeys[i];
+                values[pos] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(AbstractInsnNode insn) {
+        //Spread the identity hash code so that linear probing doesn't cluster
+        int h = System.identityHashCode(insn) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
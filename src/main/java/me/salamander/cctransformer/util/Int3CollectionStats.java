@@ -0,0 +1,234 @@
+package me.salamander.cctransformer.util;
+
+import me.salamander.cctransformer.jfr.Int3CollectionEvents;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A snapshot of the table statistics of a {@link LinkedInt3HashSet} or {@link Int3UByteLinkedHashMap}, or of all of them together.
+ * <br><br>
+ * The statistics of a single collection are available from its {@code getStats()} method. Table bytes and resize counts are always recorded.
+ * Everything else that needs bookkeeping (the peak size and the global instance sums) is only recorded when the JVM is started with
+ * {@code -Dcctransformer.collectionStats=true}, since the flag is a constant the JIT removes the bookkeeping entirely otherwise. Statistics
+ * that weren't recorded are -1.
+ * <br><br>
+ * When enabled, the global statistics of each collection type are also exported as the {@code me.salamander.cctransformer:type=Int3Collections}
+ * MXBean and as the periodic JFR event {@code cctransformer.Int3Collections}.
+ * <br><br>
+ * Global statistics are read from the collections without synchronization while other threads may be using them, so they are approximate.
+ */
+public final class Int3CollectionStats {
+    public static final String ENABLED_PROPERTY = "cctransformer.collectionStats";
+    public static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+
+    private static final Set<Tracked> LIVE = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    private static final Map<Class<?>, LongAdder> RESIZES = new ConcurrentHashMap<>();
+    //The highest peak of every closed collection of a type
+    private static final Map<Class<?>, AtomicLong> CLOSED_PEAKS = new ConcurrentHashMap<>();
+
+    static {
+        if(ENABLED){
+            registerMBean();
+            Int3CollectionEvents.registerPeriodic(Int3CollectionStats::emitEvents);
+        }
+    }
+
+    private final String type;
+    private final long instances;
+    private final long tableBytes;
+    private final long tableSize;
+    private final long usedBuckets;
+    private final long size;
+    private final long resizeCount;
+    private final long peakSize;
+
+    Int3CollectionStats(String type, long instances, long tableBytes, long tableSize, long usedBuckets, long size, long resizeCount, long peakSize) {
+        this.type = type;
+        this.instances = instances;
+        this.tableBytes = tableBytes;
+        this.tableSize = tableSize;
+        this.usedBuckets = usedBuckets;
+        this.size = size;
+        this.resizeCount = resizeCount;
+        this.peakSize = peakSize;
+    }
+
+    /**
+     * @return The simple name of the collection class
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return How many collections these statistics cover. 1 for a single collection, otherwise the number of open collections
+     */
+    public long getInstances() {
+        return instances;
+    }
+
+    /**
+     * @return The off-heap bytes of the tables
+     */
+    public long getTableBytes() {
+        return tableBytes;
+    }
+
+    /**
+     * @return The number of buckets in the tables, used or not
+     */
+    public long getTableSize() {
+        return tableSize;
+    }
+
+    public long getUsedBuckets() {
+        return usedBuckets;
+    }
+
+    /**
+     * @return The number of positions or entries
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return The fraction of buckets which are used
+     */
+    public double getLoadFactor() {
+        return tableSize <= 0L ? 0.0d : (double) usedBuckets / tableSize;
+    }
+
+    /**
+     * @return How many times the tables were resized. For global statistics this includes collections which no longer exist
+     */
+    public long getResizeCount() {
+        return resizeCount;
+    }
+
+    /**
+     * @return The highest size reached. For global statistics this is the highest of any single collection
+     */
+    public long getPeakSize() {
+        return peakSize;
+    }
+
+    @Override
+    public String toString() {
+        return type + "{instances=" + instances + ", tableBytes=" + tableBytes + ", tableSize=" + tableSize + ", usedBuckets=" + usedBuckets + ", size=" + size
+            + ", loadFactor=" + getLoadFactor() + ", resizeCount=" + resizeCount + ", peakSize=" + peakSize + "}";
+    }
+
+    /**
+     * Aggregates the statistics of every open collection of a type
+     * @param type {@code LinkedInt3HashSet.class} or {@code Int3UByteLinkedHashMap.class}
+     */
+    public static Int3CollectionStats getGlobal(Class<?> type) {
+        long resizes = RESIZES.containsKey(type) ? RESIZES.get(type).sum() : 0L;
+        long tableBytes = OffHeapMemory.getLiveBytes(type);
+
+        if(!ENABLED){
+            return new Int3CollectionStats(type.getSimpleName(), -1L, tableBytes, -1L, -1L, -1L, resizes, -1L);
+        }
+
+        List<Tracked> live;
+        synchronized (LIVE) {
+            live = new ArrayList<>(LIVE);
+        }
+
+        long instances = 0L, tableSize = 0L, usedBuckets = 0L, size = 0L;
+        AtomicLong closedPeak = CLOSED_PEAKS.get(type);
+        long peakSize = closedPeak == null ? 0L : closedPeak.get();
+        for(Tracked collection: live){
+            Int3CollectionStats stats = collection.getStats();
+            if(!stats.type.equals(type.getSimpleName())) continue;
+
+            instances++;
+            tableSize += stats.tableSize;
+            usedBuckets += stats.usedBuckets;
+            size += stats.size;
+            peakSize = Math.max(peakSize, stats.peakSize);
+        }
+
+        return new Int3CollectionStats(type.getSimpleName(), instances, tableBytes, tableSize, usedBuckets, size, resizes, peakSize);
+    }
+
+    static void track(Tracked collection) {
+        LIVE.add(collection);
+    }
+
+    /**
+     * Called when a collection is closed
+     */
+    static void untrack(Tracked collection, Class<?> type, long peakSize) {
+        LIVE.remove(collection);
+        CLOSED_PEAKS.computeIfAbsent(type, k -> new AtomicLong()).accumulateAndGet(peakSize, Math::max);
+    }
+
+    static void recordResize(Class<?> type) {
+        RESIZES.computeIfAbsent(type, k -> new LongAdder()).increment();
+    }
+
+    private static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MXBeanImpl(), new ObjectName("me.salamander.cctransformer:type=Int3Collections"));
+        }catch (JMException e){
+            throw new RuntimeException("Failed to register Int3 collection statistics MXBean", e);
+        }
+    }
+
+    private static void emitEvents() {
+        for(Class<?> type: new Class<?>[]{LinkedInt3HashSet.class, Int3UByteLinkedHashMap.class}){
+            Int3CollectionStats stats = getGlobal(type);
+
+            Int3CollectionEvents.emitStats(stats.type, stats.instances, stats.tableBytes, stats.usedBuckets, stats.size, stats.getLoadFactor(),
+                stats.resizeCount, stats.peakSize);
+        }
+    }
+
+    /**
+     * A collection whose statistics are included in the global statistics
+     */
+    interface Tracked {
+        Int3CollectionStats getStats();
+    }
+
+    public interface Int3CollectionsMXBean {
+        Int3CollectionStats getLinkedInt3HashSetStats();
+
+        Int3CollectionStats getInt3UByteLinkedHashMapStats();
+
+        /**
+         * @return The off-heap bytes of every collection type, see {@link OffHeapMemory#getLiveBytes()}
+         */
+        Map<String, Long> getLiveOffHeapBytes();
+    }
+
+    private static class MXBeanImpl implements Int3CollectionsMXBean {
+        @Override
+        public Int3CollectionStats getLinkedInt3HashSetStats() {
+            return getGlobal(LinkedInt3HashSet.class);
+        }
+
+        @Override
+        public Int3CollectionStats getInt3UByteLinkedHashMapStats() {
+            return getGlobal(Int3UByteLinkedHashMap.class);
+        }
+
+        @Override
+        public Map<String, Long> getLiveOffHeapBytes() {
+            return OffHeapMemory.getLiveBytes();
+        }
+    }
+}
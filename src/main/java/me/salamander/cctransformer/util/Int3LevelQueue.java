@@ -0,0 +1,562 @@
+package me.salamander.cctransformer.util;
+
+import io.netty.util.internal.PlatformDependent;
+
+import java.util.Arrays;
+
+/**
+ * A set of 3-dimensional vectors with {@code int} components for each of {@code levelCount} levels. It replaces the array of one
+ * {@link LinkedInt3HashSet} per level that {@code DynamicGraphMinFixedPoint} keeps as its {@code queues}, along with the scan for
+ * {@code firstQueuedLevel}.
+ * <p>
+ * All levels share a single open-addressing hash table in off-heap memory. Like {@link LinkedInt3HashSet}, positions are grouped into buckets of
+ * 4x4x4, but a bucket is keyed by its coordinates and its level, so every level has its own buckets. The buckets of each level form a doubly linked list,
+ * so positions come out of a level in the same order they would come out of a {@link LinkedInt3HashSet}. A bitmap of the non-empty levels finds the
+ * lowest queued level with a few {@link Long#numberOfTrailingZeros(long)}. Enqueueing, dequeueing and moving a position to another level are all
+ * O(1) (amortized, since the table may have to grow).
+ * <p>
+ * Like the array of sets, a position may be queued at more than one level and the caller has to know which level a position is at to remove it.
+ * {@code DynamicGraphMinFixedPoint} gets that from {@code computedLevels}.
+ * <p>
+ * Not thread-safe. Attempting to use this concurrently from multiple threads will likely have catastrophic results (read: JVM crashes).
+ *
+ * @author Salamander
+ */
+public class Int3LevelQueue implements AutoCloseable {
+    protected static final int BUCKET_AXIS_BITS = 2; //the number of bits per axis which are used inside of the bucket rather than identifying the bucket
+    protected static final int BUCKET_AXIS_MASK = (1 << BUCKET_AXIS_BITS) - 1;
+
+    /*
+     * struct bucket_t {
+     *   int x;
+     *   int y;
+     *   int z;
+     *   int level;
+     *   long flags; //0 if the bucket is unused
+     *   int prevIndex; //-1 if this is the first bucket of its level
+     *   int nextIndex; //-1 if this is the last bucket of its level
+     * };
+     */
+
+    protected static final long BUCKET_X_OFFSET = 0L;
+    protected static final long BUCKET_Y_OFFSET = BUCKET_X_OFFSET + Integer.BYTES;
+    protected static final long BUCKET_Z_OFFSET = BUCKET_Y_OFFSET + Integer.BYTES;
+    protected static final long BUCKET_LEVEL_OFFSET = BUCKET_Z_OFFSET + Integer.BYTES;
+    protected static final long BUCKET_FLAGS_OFFSET = BUCKET_LEVEL_OFFSET + Integer.BYTES;
+    protected static final long BUCKET_PREVINDEX_OFFSET = BUCKET_FLAGS_OFFSET + Long.BYTES;
+    protected static final long BUCKET_NEXTINDEX_OFFSET = BUCKET_PREVINDEX_OFFSET + Integer.BYTES;
+    protected static final long BUCKET_BYTES = BUCKET_NEXTINDEX_OFFSET + Integer.BYTES;
+
+    protected static final int DEFAULT_TABLE_SIZE = 16;
+    protected static final int MAX_TABLE_SIZE = 1 << 30;
+
+    static {
+        if (!PlatformDependent.isUnaligned()) {
+            throw new AssertionError("your CPU doesn't support unaligned memory access!");
+        }
+    }
+
+    protected final OffHeapMemory memory = OffHeapMemory.create(this, Int3LevelQueue.class); //owns the table, frees it if this queue is never closed
+    protected long tableAddr = 0L; //the address of the table in memory
+    protected int tableSize = 0; //the physical size of the table (in buckets). always a non-zero power of two
+    protected int resizeThreshold = 0;
+    protected int usedBuckets = 0;
+    protected long resizeCount = 0L;
+
+    protected final int levelCount;
+    protected final int[] firstIndices; //the index of the first bucket of each level, -1 if the level is empty
+    protected final int[] lastIndices; //the index of the last bucket of each level, -1 if the level is empty
+    protected final int[] levelSizes;
+    protected final long[] queuedLevels; //bit i is set if level i isn't empty
+
+    protected long size = 0L; //the number of positions queued at all levels
+
+    protected boolean closed = false;
+
+    /**
+     * @param levelCount the number of levels. Positions can be queued at levels 0 to {@code levelCount - 1}
+     */
+    public Int3LevelQueue(int levelCount) {
+        this(levelCount, 0);
+    }
+
+    /**
+     * @param levelCount      the number of levels. Positions can be queued at levels 0 to {@code levelCount - 1}
+     * @param initialCapacity the number of buckets which can be used before the table has to grow
+     */
+    public Int3LevelQueue(int levelCount, int initialCapacity) {
+        if (levelCount <= 0) {
+            throw new IllegalArgumentException("Level count must be positive: " + levelCount);
+        }
+
+        this.levelCount = levelCount;
+        this.firstIndices = new int[levelCount];
+        this.lastIndices = new int[levelCount];
+        this.levelSizes = new int[levelCount];
+        this.queuedLevels = new long[(levelCount + Long.SIZE - 1) >> 6];
+        Arrays.fill(this.firstIndices, -1);
+        Arrays.fill(this.lastIndices, -1);
+
+        initialCapacity = (int) Math.min(Math.ceil(initialCapacity * (1.0d / 0.75d)), MAX_TABLE_SIZE); //scale according to resize threshold
+        initialCapacity = 1 << (Integer.SIZE - Integer.numberOfLeadingZeros(initialCapacity - 1)); //round up to next power of two
+        this.setTableSize(Math.max(initialCapacity, DEFAULT_TABLE_SIZE));
+    }
+
+    protected static int hashBucket(int x, int y, int z, int level) {
+        long hash = x * 1403638657883916319L //some random prime numbers
+            + y * 4408464607732138253L
+            + z * 2587306874955016303L
+            + level * 5351689163524285661L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    protected static long positionFlag(int x, int y, int z) {
+        return 1L << (((x & BUCKET_AXIS_MASK) << (BUCKET_AXIS_BITS * 2)) | ((y & BUCKET_AXIS_MASK) << BUCKET_AXIS_BITS) | (z & BUCKET_AXIS_MASK));
+    }
+
+    protected long allocateTable(int tableSize) {
+        long size = tableSize * BUCKET_BYTES;
+        long addr = this.memory.allocate(size); //allocate
+        PlatformDependent.setMemory(addr, size, (byte) 0); //clear
+        return addr;
+    }
+
+    protected void setTableSize(int tableSize) {
+        this.tableSize = tableSize;
+        this.resizeThreshold = (tableSize >> 1) + (tableSize >> 2); //count * 0.75
+    }
+
+    protected void checkLevel(int level) {
+        if (level < 0 || level >= this.levelCount) {
+            throw new IllegalArgumentException("Level " + level + " is out of range [0, " + this.levelCount + ")");
+        }
+    }
+
+    /**
+     * Queues the given position at the given level.
+     *
+     * @return whether or not the position was added (i.e. wasn't already queued at that level)
+     */
+    public boolean enqueue(int x, int y, int z, int level) {
+        this.checkLevel(level);
+
+        long flag = positionFlag(x, y, z);
+        int index = this.findBucket(x >> BUCKET_AXIS_BITS, y >> BUCKET_AXIS_BITS, z >> BUCKET_AXIS_BITS, level, true);
+        long bucketAddr = this.tableAddr + index * BUCKET_BYTES;
+
+        long flags = PlatformDependent.getLong(bucketAddr + BUCKET_FLAGS_OFFSET);
+        if ((flags & flag) != 0L) { //already queued
+            return false;
+        } else if (flags == 0L) { //the bucket is new
+            this.link(index, level);
+        }
+
+        PlatformDependent.putLong(bucketAddr + BUCKET_FLAGS_OFFSET, flags | flag);
+        this.levelSizes[level]++;
+        this.size++;
+        return true;
+    }
+
+    /**
+     * Removes the given position from the given level.
+     *
+     * @return whether or not the position was removed (i.e. was queued at that level)
+     */
+    public boolean dequeue(int x, int y, int z, int level) {
+        this.checkLevel(level);
+
+        int index = this.findBucket(x >> BUCKET_AXIS_BITS, y >> BUCKET_AXIS_BITS, z >> BUCKET_AXIS_BITS, level, false);
+        long flag = positionFlag(x, y, z);
+        if (index < 0 || (PlatformDependent.getLong(this.tableAddr + index * BUCKET_BYTES + BUCKET_FLAGS_OFFSET) & flag) == 0L) {
+            return false;
+        }
+
+        this.removeFlag(index, level, flag);
+        return true;
+    }
+
+    /**
+     * Moves the given position from one level to another. If it was already queued at the new level it is only removed from the old one.
+     *
+     * @return whether or not the position was queued at the old level. Nothing changes if it wasn't
+     */
+    public boolean changeLevel(int x, int y, int z, int oldLevel, int newLevel) {
+        if (oldLevel == newLevel) {
+            this.checkLevel(oldLevel);
+            return this.contains(x, y, z, oldLevel);
+        }
+
+        if (this.dequeue(x, y, z, oldLevel)) {
+            this.enqueue(x, y, z, newLevel);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether or not the given position is queued at the given level
+     */
+    public boolean contains(int x, int y, int z, int level) {
+        this.checkLevel(level);
+
+        int index = this.findBucket(x >> BUCKET_AXIS_BITS, y >> BUCKET_AXIS_BITS, z >> BUCKET_AXIS_BITS, level, false);
+        return index >= 0 && (PlatformDependent.getLong(this.tableAddr + index * BUCKET_BYTES + BUCKET_FLAGS_OFFSET) & positionFlag(x, y, z)) != 0L;
+    }
+
+    /**
+     * Removes the first position of the given level and passes it to the given callback function.
+     * <p>
+     * The callback function is allowed to modify this queue.
+     *
+     * @return whether or not the callback function was invoked. {@code false} if the level was empty
+     */
+    public boolean poll(int level, XYZConsumer action) {
+        this.checkLevel(level);
+
+        int index = this.firstIndices[level];
+        if (index < 0) {
+            return false;
+        }
+
+        long bucketAddr = this.tableAddr + index * BUCKET_BYTES;
+        int bit = Long.numberOfTrailingZeros(PlatformDependent.getLong(bucketAddr + BUCKET_FLAGS_OFFSET));
+        int x = (PlatformDependent.getInt(bucketAddr + BUCKET_X_OFFSET) << BUCKET_AXIS_BITS) + (bit >> (BUCKET_AXIS_BITS * 2));
+        int y = (PlatformDependent.getInt(bucketAddr + BUCKET_Y_OFFSET) << BUCKET_AXIS_BITS) + ((bit >> BUCKET_AXIS_BITS) & BUCKET_AXIS_MASK);
+        int z = (PlatformDependent.getInt(bucketAddr + BUCKET_Z_OFFSET) << BUCKET_AXIS_BITS) + (bit & BUCKET_AXIS_MASK);
+        this.removeFlag(index, level, 1L << bit);
+
+        action.accept(x, y, z);
+        return true;
+    }
+
+    /**
+     * Removes the first position of the lowest non-empty level and passes it to the given callback function, along with its level as the value.
+     * <p>
+     * The callback function is allowed to modify this queue.
+     *
+     * @return whether or not the callback function was invoked. {@code false} if the queue was empty
+     */
+    public boolean poll(Int3UByteLinkedHashMap.EntryConsumer action) {
+        int level = this.firstQueuedLevel();
+        if (level == this.levelCount) {
+            return false;
+        }
+
+        long bucketAddr = this.tableAddr + this.firstIndices[level] * BUCKET_BYTES;
+        int bit = Long.numberOfTrailingZeros(PlatformDependent.getLong(bucketAddr + BUCKET_FLAGS_OFFSET));
+        int x = (PlatformDependent.getInt(bucketAddr + BUCKET_X_OFFSET) << BUCKET_AXIS_BITS) + (bit >> (BUCKET_AXIS_BITS * 2));
+        int y = (PlatformDependent.getInt(bucketAddr + BUCKET_Y_OFFSET) << BUCKET_AXIS_BITS) + ((bit >> BUCKET_AXIS_BITS) & BUCKET_AXIS_MASK);
+        int z = (PlatformDependent.getInt(bucketAddr + BUCKET_Z_OFFSET) << BUCKET_AXIS_BITS) + (bit & BUCKET_AXIS_MASK);
+        this.removeFlag(this.firstIndices[level], level, 1L << bit);
+
+        action.accept(x, y, z, level);
+        return true;
+    }
+
+    /**
+     * @return the lowest level with at least one queued position, or the level count if the queue is empty. This is the same as
+     * {@code DynamicGraphMinFixedPoint}'s {@code firstQueuedLevel}
+     */
+    public int firstQueuedLevel() {
+        long[] queuedLevels = this.queuedLevels;
+        for (int i = 0; i < queuedLevels.length; i++) {
+            if (queuedLevels[i] != 0L) {
+                return (i << 6) | Long.numberOfTrailingZeros(queuedLevels[i]);
+            }
+        }
+        return this.levelCount;
+    }
+
+    /**
+     * @return the lowest level which is at least {@code fromLevel} and has at least one queued position, or the level count if there is none
+     */
+    public int nextQueuedLevel(int fromLevel) {
+        if (fromLevel >= this.levelCount) {
+            return this.levelCount;
+        }
+
+        long[] queuedLevels = this.queuedLevels;
+        int i = fromLevel >> 6;
+        long word = queuedLevels[i] & (-1L << fromLevel); //shifts only use the low 6 bits
+        while (word == 0L) {
+            if (++i == queuedLevels.length) {
+                return this.levelCount;
+            }
+            word = queuedLevels[i];
+        }
+        return (i << 6) | Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Runs the given function on every position queued at the given level, in the order {@link #poll(int, XYZConsumer)} would return them.
+     * <p>
+     * The function must not modify this queue.
+     */
+    public void forEach(int level, XYZConsumer action) {
+        this.checkLevel(level);
+
+        for (int index = this.firstIndices[level]; index >= 0; ) {
+            long bucketAddr = this.tableAddr + index * BUCKET_BYTES;
+            int bucketX = PlatformDependent.getInt(bucketAddr + BUCKET_X_OFFSET);
+            int bucketY = PlatformDependent.getInt(bucketAddr + BUCKET_Y_OFFSET);
+            int bucketZ = PlatformDependent.getInt(bucketAddr + BUCKET_Z_OFFSET);
+
+            for (long flags = PlatformDependent.getLong(bucketAddr + BUCKET_FLAGS_OFFSET); flags != 0L; flags &= flags - 1L) {
+                int bit = Long.numberOfTrailingZeros(flags);
+                action.accept((bucketX << BUCKET_AXIS_BITS) + (bit >> (BUCKET_AXIS_BITS * 2)), (bucketY << BUCKET_AXIS_BITS) + ((bit >> BUCKET_AXIS_BITS) & BUCKET_AXIS_MASK),
+                    (bucketZ << BUCKET_AXIS_BITS) + (bit & BUCKET_AXIS_MASK));
+            }
+
+            index = PlatformDependent.getInt(bucketAddr + BUCKET_NEXTINDEX_OFFSET);
+        }
+    }
+
+    /**
+     * @return the number of positions queued at the given level
+     */
+    public int levelSize(int level) {
+        this.checkLevel(level);
+        return this.levelSizes[level];
+    }
+
+    public boolean isLevelEmpty(int level) {
+        return this.levelSize(level) == 0;
+    }
+
+    public int levelCount() {
+        return this.levelCount;
+    }
+
+    /**
+     * @return the number of positions queued at all levels. A position queued at two levels is counted twice
+     */
+    public long size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0L;
+    }
+
+    /**
+     * Removes every position from every level.
+     */
+    public void clear() {
+        if (this.isEmpty()) {
+            return;
+        }
+
+        PlatformDependent.setMemory(this.tableAddr, this.tableSize * BUCKET_BYTES, (byte) 0);
+        Arrays.fill(this.firstIndices, -1);
+        Arrays.fill(this.lastIndices, -1);
+        Arrays.fill(this.levelSizes, 0);
+        Arrays.fill(this.queuedLevels, 0L);
+        this.usedBuckets = 0;
+        this.size = 0L;
+    }
+
+    /**
+     * @return the index of the given bucket. If it doesn't exist, the index of the unused bucket it would go in if {@code createIfAbsent} is set,
+     * otherwise -1
+     */
+    protected int findBucket(int x, int y, int z, int level, boolean createIfAbsent) {
+        long tableAddr = this.tableAddr;
+        if (tableAddr == 0L) {
+            if (createIfAbsent) { //the table hasn't been allocated yet - let's make a new one!
+                this.tableAddr = tableAddr = this.allocateTable(this.tableSize);
+            } else { //the table isn't even allocated yet, so the bucket clearly isn't present
+                return -1;
+            }
+        }
+
+        int mask = this.tableSize - 1;
+        for (int index = hashBucket(x, y, z, level) & mask; ; index = (index + 1) & mask) {
+            long bucketAddr = tableAddr + index * BUCKET_BYTES;
+            if (PlatformDependent.getLong(bucketAddr + BUCKET_FLAGS_OFFSET) == 0L) { //unused bucket, there won't be anything else later on
+                if (!createIfAbsent) {
+                    return -1;
+                } else if (this.usedBuckets >= this.resizeThreshold) { //grow the table before using a bucket to avoid overfilling it
+                    this.resize();
+                    return this.findBucket(x, y, z, level, true);
+                }
+
+                PlatformDependent.putInt(bucketAddr + BUCKET_X_OFFSET, x);
+                PlatformDependent.putInt(bucketAddr + BUCKET_Y_OFFSET, y);
+                PlatformDependent.putInt(bucketAddr + BUCKET_Z_OFFSET, z);
+                PlatformDependent.putInt(bucketAddr + BUCKET_LEVEL_OFFSET, level);
+                return index;
+            }
+
+            if (PlatformDependent.getInt(bucketAddr + BUCKET_X_OFFSET) == x
+                && PlatformDependent.getInt(bucketAddr + BUCKET_Y_OFFSET) == y
+                && PlatformDependent.getInt(bucketAddr + BUCKET_Z_OFFSET) == z
+                && PlatformDependent.getInt(bucketAddr + BUCKET_LEVEL_OFFSET) == level) {
+                return index;
+            }
+        }
+    }
+
+    /**
+     * Appends a new bucket to the end of its level's list. Its flags must be set right after this, since a bucket without flags counts as unused
+     */
+    protected void link(int index, int level) {
+        long tableAddr = this.tableAddr;
+        long bucketAddr = tableAddr + index * BUCKET_BYTES;
+
+        int last = this.lastIndices[level];
+        PlatformDependent.putInt(bucketAddr + BUCKET_PREVINDEX_OFFSET, last);
+        PlatformDependent.putInt(bucketAddr + BUCKET_NEXTINDEX_OFFSET, -1);
+
+        if (last < 0) { //the level was empty
+            this.firstIndices[level] = index;
+            this.queuedLevels[level >> 6] |= 1L << level;
+        } else {
+            PlatformDependent.putInt(tableAddr + last * BUCKET_BYTES + BUCKET_NEXTINDEX_OFFSET, index);
+        }
+        this.lastIndices[level] = index;
+        this.usedBuckets++;
+    }
+
+    /**
+     * Removes a position which is present in the given bucket, deleting the bucket if it was the only one
+     */
+    protected void removeFlag(int index, int level, long flag) {
+        long tableAddr = this.tableAddr;
+        long bucketAddr = tableAddr + index * BUCKET_BYTES;
+
+        this.size--;
+        if (--this.levelSizes[level] == 0) {
+            this.queuedLevels[level >> 6] &= ~(1L << level);
+        }
+
+        long flags = PlatformDependent.getLong(bucketAddr + BUCKET_FLAGS_OFFSET) & ~flag;
+        if (flags != 0L) {
+            PlatformDependent.putLong(bucketAddr + BUCKET_FLAGS_OFFSET, flags);
+            return;
+        }
+
+        //the bucket is empty, unlink and delete it
+        int prev = PlatformDependent.getInt(bucketAddr + BUCKET_PREVINDEX_OFFSET);
+        int next = PlatformDependent.getInt(bucketAddr + BUCKET_NEXTINDEX_OFFSET);
+        if (prev < 0) {
+            this.firstIndices[level] = next;
+        } else {
+            PlatformDependent.putInt(tableAddr + prev * BUCKET_BYTES + BUCKET_NEXTINDEX_OFFSET, next);
+        }
+        if (next < 0) {
+            this.lastIndices[level] = prev;
+        } else {
+            PlatformDependent.putInt(tableAddr + next * BUCKET_BYTES + BUCKET_PREVINDEX_OFFSET, prev);
+        }
+
+        this.usedBuckets--;
+        this.shiftBuckets(index);
+    }
+
+    //adapted from it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap#shiftKeys(int)
+    protected void shiftBuckets(int pos) {
+        long tableAddr = this.tableAddr;
+        int mask = this.tableSize - 1;
+
+        while (true) {
+            int last = pos;
+            long currAddr;
+            for (pos = (pos + 1) & mask; ; pos = (pos + 1) & mask) {
+                currAddr = tableAddr + pos * BUCKET_BYTES;
+                if (PlatformDependent.getLong(currAddr + BUCKET_FLAGS_OFFSET) == 0L) { //reached an unused bucket, clear the one at last
+                    PlatformDependent.setMemory(tableAddr + last * BUCKET_BYTES, BUCKET_BYTES, (byte) 0);
+                    return;
+                }
+
+                int slot = hashBucket(PlatformDependent.getInt(currAddr + BUCKET_X_OFFSET), PlatformDependent.getInt(currAddr + BUCKET_Y_OFFSET),
+                    PlatformDependent.getInt(currAddr + BUCKET_Z_OFFSET), PlatformDependent.getInt(currAddr + BUCKET_LEVEL_OFFSET)) & mask;
+                if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos) {
+                    break;
+                }
+            }
+
+            //move the bucket at pos into the hole at last, pointing its neighbors at the new index
+            int level = PlatformDependent.getInt(currAddr + BUCKET_LEVEL_OFFSET);
+            int prev = PlatformDependent.getInt(currAddr + BUCKET_PREVINDEX_OFFSET);
+            int next = PlatformDependent.getInt(currAddr + BUCKET_NEXTINDEX_OFFSET);
+            if (prev < 0) {
+                this.firstIndices[level] = last;
+            } else {
+                PlatformDependent.putInt(tableAddr + prev * BUCKET_BYTES + BUCKET_NEXTINDEX_OFFSET, last);
+            }
+            if (next < 0) {
+                this.lastIndices[level] = last;
+            } else {
+                PlatformDependent.putInt(tableAddr + next * BUCKET_BYTES + BUCKET_PREVINDEX_OFFSET, last);
+            }
+
+            Int3UByteLinkedHashMap.memcpy(currAddr, tableAddr + last * BUCKET_BYTES, BUCKET_BYTES);
+        }
+    }
+
+    /**
+     * Doubles the size of the table. Every level is copied in order, so the order of the positions in each level is kept
+     */
+    protected void resize() {
+        int oldTableSize = this.tableSize;
+        long oldTableAddr = this.tableAddr;
+        if (oldTableSize == MAX_TABLE_SIZE) {
+            throw new IllegalStateException("Table is already at its maximum size");
+        }
+
+        //allocate new table
+        int newTableSize = oldTableSize << 1;
+        this.setTableSize(newTableSize);
+        this.resizeCount++;
+        long newTableAddr = this.tableAddr = this.allocateTable(newTableSize);
+        int newMask = newTableSize - 1;
+
+        for (int level = 0; level < this.levelCount; level++) {
+            int prevIndex = -1;
+            for (int oldIndex = this.firstIndices[level]; oldIndex >= 0; ) {
+                long oldAddr = oldTableAddr + oldIndex * BUCKET_BYTES;
+
+                int index = hashBucket(PlatformDependent.getInt(oldAddr + BUCKET_X_OFFSET), PlatformDependent.getInt(oldAddr + BUCKET_Y_OFFSET),
+                    PlatformDependent.getInt(oldAddr + BUCKET_Z_OFFSET), level) & newMask;
+                while (PlatformDependent.getLong(newTableAddr + index * BUCKET_BYTES + BUCKET_FLAGS_OFFSET) != 0L) {
+                    index = (index + 1) & newMask;
+                }
+
+                long newAddr = newTableAddr + index * BUCKET_BYTES;
+                Int3UByteLinkedHashMap.memcpy(oldAddr, newAddr, BUCKET_BYTES);
+                PlatformDependent.putInt(newAddr + BUCKET_PREVINDEX_OFFSET, prevIndex);
+                PlatformDependent.putInt(newAddr + BUCKET_NEXTINDEX_OFFSET, -1);
+
+                if (prevIndex < 0) {
+                    this.firstIndices[level] = index;
+                } else {
+                    PlatformDependent.putInt(newTableAddr + prevIndex * BUCKET_BYTES + BUCKET_NEXTINDEX_OFFSET, index);
+                }
+                this.lastIndices[level] = index;
+
+                prevIndex = index;
+                oldIndex = PlatformDependent.getInt(oldAddr + BUCKET_NEXTINDEX_OFFSET);
+            }
+        }
+
+        //delete old table
+        this.memory.free(oldTableAddr, oldTableSize * BUCKET_BYTES);
+    }
+
+    /**
+     * Irrevocably releases the resources claimed by this instance.
+     * <p>
+     * Once this method has been calls, all methods in this class will produce undefined behavior.
+     */
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+
+        //actually release memory
+        this.memory.release();
+        this.tableAddr = 0L;
+    }
+}
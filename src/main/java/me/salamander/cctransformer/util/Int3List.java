@@ -4,6 +4,9 @@ import io.netty.util.internal.PlatformDependent;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Vec3i;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.function.LongConsumer;
@@ -23,6 +26,7 @@ public class Int3List implements AutoCloseable{
         }
     }
 
+    protected final OffHeapMemory memory = OffHeapMemory.create(this, Int3List.class); //owns the array, frees it if this list is never closed
     protected long arrayAddr = 0;
     protected boolean closed = false;
 
@@ -250,7 +254,7 @@ public class Int3List implements AutoCloseable{
 
     private long resizeToFit(int capacity){
         this.capacity = capacity;
-        return this.arrayAddr = PlatformDependent.reallocateMemory(this.arrayAddr, capacity * VALUE_SIZE);
+        return this.arrayAddr = this.memory.reallocate(capacity * VALUE_SIZE);
     }
 
     private void resizeAndInsert(int index, int x, int y, int z) {
@@ -258,12 +262,13 @@ public class Int3List implements AutoCloseable{
             this.capacity <<= 1;
         }
 
+        long oldBytes = this.memory.getBytes();
         long newArrayAddr = allocateTable(this.capacity);
 
         PlatformDependent.copyMemory(this.arrayAddr, newArrayAddr, index * VALUE_SIZE);
         PlatformDependent.copyMemory(this.arrayAddr + index * VALUE_SIZE, newArrayAddr + (index + 1) * VALUE_SIZE, (size - index) * VALUE_SIZE);
 
-        PlatformDependent.freeMemory(this.arrayAddr);
+        this.memory.free(this.arrayAddr, oldBytes);
         this.arrayAddr = newArrayAddr;
 
         this.size++;
@@ -275,29 +280,86 @@ public class Int3List implements AutoCloseable{
             this.capacity <<= 1;
         }
 
-        return this.arrayAddr = PlatformDependent.reallocateMemory(this.arrayAddr, this.capacity * VALUE_SIZE);
+        return this.arrayAddr = this.memory.reallocate(this.capacity * VALUE_SIZE);
     }
 
-    protected static long allocateTable(int capacity) {
-        long addr = PlatformDependent.allocateMemory(capacity * VALUE_SIZE);
+    protected long allocateTable(int capacity) {
+        long addr = this.memory.allocate(capacity * VALUE_SIZE);
         PlatformDependent.setMemory(addr, capacity * VALUE_SIZE, (byte) 0);
         return addr;
     }
 
-    @Override
-    public void close(){
-        if(closed) return;
+    /**
+     * @return The number of bytes {@link #writeTo(ByteBuffer)} writes
+     */
+    public long serializedBytes(){
+        return Int3Serialization.HEADER_BYTES + serializationHeader().dataBytes();
+    }
 
-        closed = true;
-        if(arrayAddr != 0L){
-            PlatformDependent.freeMemory(arrayAddr);
+    /**
+     * Writes the positions in this list to the given buffer with a single bulk copy
+     * @param buffer The buffer to write to. Its position is advanced by {@link #serializedBytes()}
+     * @throws java.nio.BufferOverflowException If the buffer doesn't have enough space left. Nothing is written in that case
+     */
+    public void writeTo(ByteBuffer buffer){
+        Int3Serialization.write(buffer, serializationHeader(), arrayAddr);
+    }
+
+    /**
+     * Writes the positions in this list to the given channel at its current position
+     */
+    public void writeTo(FileChannel channel) throws IOException {
+        Int3Serialization.write(channel, serializationHeader(), arrayAddr);
+    }
+
+    protected Int3Serialization.Header serializationHeader(){
+        int size = arrayAddr == 0 ? 0 : this.size;
+        return new Int3Serialization.Header(Int3Serialization.TYPE_LIST, VALUE_SIZE, size, size, 0L, -1L, -1L, 0L, size * VALUE_SIZE);
+    }
+
+    /**
+     * Reads a list written by {@link #writeTo(ByteBuffer)}
+     * @param buffer The buffer to read from. Its position is advanced past the list
+     * @throws IllegalArgumentException If the buffer doesn't contain a valid list
+     */
+    public static Int3List readFrom(ByteBuffer buffer){
+        Int3Serialization.Header header = Int3Serialization.readHeader(buffer, Int3Serialization.TYPE_LIST, VALUE_SIZE);
+        if(header.size() != header.tableSize() || header.size() > Integer.MAX_VALUE / VALUE_SIZE){
+            throw new IllegalArgumentException("Corrupt Int3List: invalid size " + header.size());
         }
+
+        Int3List list = new Int3List();
+        if(header.size() == 0){
+            return list;
+        }
+
+        list.capacity = Math.max((int) header.size(), DEFAULT_CAPACITY);
+        list.arrayAddr = list.memory.allocate(list.capacity * VALUE_SIZE); //everything past size is written before it is read, so it isn't cleared
+        Int3Serialization.copyFromBuffer(buffer, list.arrayAddr, header.dataBytes());
+        list.size = (int) header.size();
+
+        if(header.swapped()){
+            Int3Serialization.swapInts(list.arrayAddr, list.size * 3);
+        }
+
+        return list;
+    }
+
+    /**
+     * Reads a list written by {@link #writeTo(FileChannel)} from the channel's current position. The file is memory-mapped and the positions are
+     * copied straight out of the mapping
+     */
+    public static Int3List readFrom(FileChannel channel) throws IOException {
+        return Int3Serialization.read(channel, Int3List::readFrom);
     }
 
     @Override
-    @SuppressWarnings("deprecation")
-    protected void finalize(){
-        close();
+    public void close(){
+        if(closed) return;
+
+        closed = true;
+        memory.release();
+        arrayAddr = 0L;
     }
 
     public void clear() {
@@ -0,0 +1,238 @@
+package me.salamander.cctransformer.util;
+
+import io.netty.util.internal.PlatformDependent;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A bounded multi-producer single-consumer queue of 3-dimensional {@code int} vectors, each with an optional {@code int} value. It is meant for
+ * handing positions from the threads that produce light updates to the worker that processes them without packing them into {@code long}s or
+ * allocating anything.
+ * <p>
+ * The queue is a ring of slots in off-heap memory. Every slot holds a sequence number followed by the x, y, z and value, 20 bytes in total. This
+ * is the bounded queue algorithm by Dmitry Vyukov: producers claim a slot by incrementing the tail with a CAS, write it, and publish it by setting
+ * its sequence number. The consumer reads published slots in order and hands them back by advancing their sequence number by the capacity.
+ * <p>
+ * Any number of threads may call {@link #offer(int, int, int, int)} at the same time, but only one thread may poll or drain at a time.
+ *
+ * @author Salamander
+ */
+public class Int3MpscQueue implements AutoCloseable {
+    protected static final long SEQUENCE_OFFSET = 0L;
+    protected static final long X_OFFSET = SEQUENCE_OFFSET + Integer.BYTES;
+    protected static final long Y_OFFSET = X_OFFSET + Integer.BYTES;
+    protected static final long Z_OFFSET = Y_OFFSET + Integer.BYTES;
+    protected static final long VALUE_OFFSET = Z_OFFSET + Integer.BYTES;
+    protected static final long SLOT_BYTES = VALUE_OFFSET + Integer.BYTES;
+
+    protected static final VarHandle TAIL;
+
+    static {
+        try {
+            TAIL = MethodHandles.lookup().findVarHandle(Int3MpscQueue.class, "tail", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected final OffHeapMemory memory = OffHeapMemory.create(this, Int3MpscQueue.class); //owns the ring, frees it if this queue is never closed
+    protected final long ringAddr;
+    protected final int capacity;
+    protected final int mask;
+
+    protected volatile long tail = 0L; //the index of the next slot to be claimed by a producer. updated through TAIL
+    protected long head = 0L; //the index of the next slot to be read by the consumer. only accessed by the consumer
+
+    protected boolean closed = false;
+
+    /**
+     * @param capacity the maximum number of positions in the queue. Rounded up to a power of two, and to at least 2: with a single slot the sequence
+     *                 number that publishes index {@code i} would be the one that marks index {@code i + 1} as free
+     */
+    public Int3MpscQueue(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30: " + capacity);
+        }
+
+        this.capacity = Math.max(2, 1 << (Integer.SIZE - Integer.numberOfLeadingZeros(capacity - 1)));
+        this.mask = this.capacity - 1;
+        this.ringAddr = this.memory.allocate(this.capacity * SLOT_BYTES);
+
+        for (int i = 0; i < this.capacity; i++) {
+            PlatformDependent.putInt(this.slotAddr(i) + SEQUENCE_OFFSET, i);
+        }
+        VarHandle.releaseFence(); //make the initial sequence numbers visible to producers on other threads
+    }
+
+    protected long slotAddr(long index) {
+        return this.ringAddr + (index & this.mask) * SLOT_BYTES;
+    }
+
+    /**
+     * Adds a position with a value of 0.
+     *
+     * @return whether or not the position was added. False if the queue is full
+     */
+    public boolean offer(int x, int y, int z) {
+        return this.offer(x, y, z, 0);
+    }
+
+    /**
+     * Adds a position. Safe to call from any thread.
+     *
+     * @return whether or not the position was added. False if the queue is full
+     */
+    public boolean offer(int x, int y, int z, int value) {
+        long index = this.tail;
+        while (true) {
+            long slot = this.slotAddr(index);
+            int sequence = PlatformDependent.getInt(slot + SEQUENCE_OFFSET);
+            VarHandle.acquireFence();
+
+            int difference = sequence - (int) index;
+            if (difference == 0) { //the slot is free, try to claim it
+                if (TAIL.compareAndSet(this, index, index + 1L)) {
+                    PlatformDependent.putInt(slot + X_OFFSET, x);
+                    PlatformDependent.putInt(slot + Y_OFFSET, y);
+                    PlatformDependent.putInt(slot + Z_OFFSET, z);
+                    PlatformDependent.putInt(slot + VALUE_OFFSET, value);
+
+                    VarHandle.releaseFence(); //publish the slot
+                    PlatformDependent.putInt(slot + SEQUENCE_OFFSET, (int) (index + 1L));
+                    return true;
+                }
+                index = this.tail; //another producer claimed it first
+            } else if (difference < 0) { //the consumer hasn't read this slot yet, so the queue is full
+                return false;
+            } else { //another producer has already claimed this slot, the tail must have moved
+                index = this.tail;
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest position and passes it to the given function. Must only be called by the consumer thread.
+     *
+     * @return whether or not a position was removed. False if the queue is empty or the next position hasn't been fully written yet
+     */
+    public boolean poll(Int3UByteLinkedHashMap.EntryConsumer action) {
+        long index = this.head;
+        long slot = this.slotAddr(index);
+        if (!this.isPublished(slot, index)) {
+            return false;
+        }
+
+        int x = PlatformDependent.getInt(slot + X_OFFSET);
+        int y = PlatformDependent.getInt(slot + Y_OFFSET);
+        int z = PlatformDependent.getInt(slot + Z_OFFSET);
+        int value = PlatformDependent.getInt(slot + VALUE_OFFSET);
+        this.release(slot, index);
+
+        action.accept(x, y, z, value);
+        return true;
+    }
+
+    /**
+     * Removes up to {@code max} positions in the order they were added and passes them to the given function. Must only be called by the consumer
+     * thread.
+     *
+     * @return the number of positions removed
+     */
+    public int drain(Int3UByteLinkedHashMap.EntryConsumer action, int max) {
+        long index = this.head;
+        int count = 0;
+
+        for (; count < max; count++, index++) {
+            long slot = this.slotAddr(index);
+            if (!this.isPublished(slot, index)) {
+                break;
+            }
+
+            int x = PlatformDependent.getInt(slot + X_OFFSET);
+            int y = PlatformDependent.getInt(slot + Y_OFFSET);
+            int z = PlatformDependent.getInt(slot + Z_OFFSET);
+            int value = PlatformDependent.getInt(slot + VALUE_OFFSET);
+            this.release(slot, index);
+
+            action.accept(x, y, z, value);
+        }
+
+        return count;
+    }
+
+    /**
+     * Moves up to {@code max} positions into a set. Values are ignored.
+     *
+     * @return the number of positions removed from this queue
+     */
+    public int drainTo(LinkedInt3HashSet set, int max) {
+        return this.drain((x, y, z, value) -> set.add(x, y, z), max);
+    }
+
+    /**
+     * Moves up to {@code max} positions and their values into a map. Values must be unsigned {@code byte}s. A position which is already in the map gets
+     * the queued value.
+     *
+     * @return the number of positions removed from this queue
+     */
+    public int drainTo(Int3UByteLinkedHashMap map, int max) {
+        return this.drain(map::put, max);
+    }
+
+    /**
+     * Appends up to {@code max} positions to a list. Values are ignored.
+     *
+     * @return the number of positions removed from this queue
+     */
+    public int drainTo(Int3List list, int max) {
+        return this.drain((x, y, z, value) -> list.add(x, y, z), max);
+    }
+
+    protected boolean isPublished(long slot, long index) {
+        int sequence = PlatformDependent.getInt(slot + SEQUENCE_OFFSET);
+        VarHandle.acquireFence();
+        return sequence == (int) (index + 1L);
+    }
+
+    /**
+     * Hands a slot which has been read back to the producers
+     */
+    protected void release(long slot, long index) {
+        VarHandle.releaseFence();
+        PlatformDependent.putInt(slot + SEQUENCE_OFFSET, (int) (index + this.capacity));
+        this.head = index + 1L;
+    }
+
+    /**
+     * @return the number of positions in this queue. Only exact if no producer is adding positions at the same time
+     */
+    public int size() {
+        long size = this.tail - this.head;
+        return (int) Math.max(0L, Math.min(size, this.capacity));
+    }
+
+    /**
+     * @return whether or not this queue is empty. Must only be called by the consumer thread
+     */
+    public boolean isEmpty() {
+        return !this.isPublished(this.slotAddr(this.head), this.head);
+    }
+
+    public int capacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Irrevocably releases the resources claimed by this instance. No other thread may be using the queue while this is running.
+     */
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+
+        this.memory.release();
+    }
+}
@@ -0,0 +1,235 @@
+package me.salamander.cctransformer.util;
+
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel;
+import java.util.function.Function;
+
+/**
+ * The binary format shared by {@link LinkedInt3HashSet}, {@link Int3UByteLinkedHashMap} and {@link Int3List}.
+ * <br><br>
+ * A serialized collection is a fixed size header followed by the collection's off-heap memory exactly as it is laid out in memory: the whole
+ * hash table for the set and the map, the used part of the array for the list. Loading allocates the table and fills it with a single bulk copy,
+ * nothing is rehashed. The header and the data are in the byte order of the machine that wrote them. Loading data written on a machine with the
+ * other byte order still works but has to swap every used bucket.
+ * <br><br>
+ * <pre>
+ * struct header_t {
+ *   int magic;        //MAGIC
+ *   int type;         //TYPE_SET, TYPE_MAP or TYPE_LIST
+ *   int version;      //VERSION
+ *   int elementBytes; //the size of a bucket or list element, to detect layout changes
+ *   long tableSize;   //the number of buckets or list elements in the data
+ *   long size;
+ *   long usedBuckets;
+ *   long first;       //the index of the first bucket in the linked list, -1 if none
+ *   long last;        //the index of the last bucket in the linked list, -1 if none
+ *   long base;        //the address the table had when it was written. LinkedInt3HashSet links its buckets by address
+ *   long dataBytes;   //the number of bytes following the header
+ * };
+ * </pre>
+ */
+final class Int3Serialization {
+    static final int MAGIC = 0x49334353; //"I3CS"
+    static final int VERSION = 1;
+
+    static final int TYPE_SET = 1;
+    static final int TYPE_MAP = 2;
+    static final int TYPE_LIST = 3;
+
+    static final int HEADER_BYTES = 4 * Integer.BYTES + 7 * Long.BYTES;
+
+    //How many bytes are copied at once when a buffer or channel can't be accessed directly
+    private static final int CHUNK_BYTES = 1 << 16;
+
+    private Int3Serialization() {
+    }
+
+    /**
+     * @param swapped Whether or not the data was written with the other byte order. Only set when reading
+     */
+    record Header(int type, long elementBytes, long tableSize, long size, long usedBuckets, long first, long last, long base, long dataBytes, boolean swapped) {
+        Header(int type, long elementBytes, long tableSize, long size, long usedBuckets, long first, long last, long base, long dataBytes) {
+            this(type, elementBytes, tableSize, size, usedBuckets, first, last, base, dataBytes, false);
+        }
+    }
+
+    /**
+     * Writes a header followed by {@code header.dataBytes()} bytes starting at {@code addr}, and advances the buffer's position past them
+     * @throws BufferOverflowException If there isn't enough space left in the buffer. Nothing is written in that case
+     */
+    static void write(ByteBuffer buffer, Header header, long addr) {
+        if (buffer.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+        if (buffer.remaining() < HEADER_BYTES + header.dataBytes()) {
+            throw new BufferOverflowException();
+        }
+
+        putHeader(buffer, header);
+        copyToBuffer(addr, buffer, header.dataBytes());
+    }
+
+    private static void putHeader(ByteBuffer buffer, Header header) {
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.nativeOrder())
+            .putInt(MAGIC)
+            .putInt(header.type())
+            .putInt(VERSION)
+            .putInt((int) header.elementBytes())
+            .putLong(header.tableSize())
+            .putLong(header.size())
+            .putLong(header.usedBuckets())
+            .putLong(header.first())
+            .putLong(header.last())
+            .putLong(header.base())
+            .putLong(header.dataBytes());
+        buffer.order(order);
+    }
+
+    /**
+     * Reads a header and advances the buffer's position past it
+     * @throws IllegalArgumentException If the buffer doesn't contain a collection of the expected type written by this version
+     */
+    static Header readHeader(ByteBuffer buffer, int type, long elementBytes) {
+        if (buffer.remaining() < HEADER_BYTES) {
+            throw new BufferUnderflowException();
+        }
+
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.nativeOrder());
+        try {
+            int magic = buffer.getInt();
+            boolean swapped = magic == Integer.reverseBytes(MAGIC);
+            if (swapped) {
+                buffer.order(ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+            } else if (magic != MAGIC) {
+                throw new IllegalArgumentException("Not a serialized Int3 collection");
+            }
+
+            int actualType = buffer.getInt();
+            if (actualType != type) {
+                throw new IllegalArgumentException("Expected a serialized collection of type " + type + " but found type " + actualType);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported version " + version);
+            }
+            int actualElementBytes = buffer.getInt();
+            if (actualElementBytes != elementBytes) {
+                throw new IllegalArgumentException("Expected " + elementBytes + " bytes per element but found " + actualElementBytes);
+            }
+
+            Header header = new Header(type, elementBytes, buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong(),
+                buffer.getLong(), swapped);
+            if (header.dataBytes() < 0L || header.dataBytes() != header.tableSize() * elementBytes || header.size() < 0L || header.usedBuckets() < 0L) {
+                throw new IllegalArgumentException("Corrupt header: " + header);
+            }
+            if (buffer.remaining() < header.dataBytes()) {
+                throw new BufferUnderflowException();
+            }
+            return header;
+        } finally {
+            buffer.order(order);
+        }
+    }
+
+    /**
+     * Copies {@code bytes} bytes from the buffer's position to {@code addr}, and advances the buffer's position past them
+     */
+    static void copyFromBuffer(ByteBuffer buffer, long addr, long bytes) {
+        int position = buffer.position();
+        if (buffer.isDirect()) {
+            PlatformDependent.copyMemory(PlatformDependent.directBufferAddress(buffer) + position, addr, bytes);
+            buffer.position(position + (int) bytes);
+        } else if (buffer.hasArray()) {
+            PlatformDependent.copyMemory(buffer.array(), buffer.arrayOffset() + position, addr, bytes);
+            buffer.position(position + (int) bytes);
+        } else { //read-only heap buffer, the array can't be accessed
+            byte[] chunk = new byte[(int) Math.min(bytes, CHUNK_BYTES)];
+            for (long offset = 0L; offset < bytes; offset += chunk.length) {
+                int length = (int) Math.min(bytes - offset, chunk.length);
+                buffer.get(chunk, 0, length);
+                PlatformDependent.copyMemory(chunk, 0, addr + offset, length);
+            }
+        }
+    }
+
+    /**
+     * Copies {@code bytes} bytes from {@code addr} to the buffer's position, and advances the buffer's position past them
+     */
+    static void copyToBuffer(long addr, ByteBuffer buffer, long bytes) {
+        int position = buffer.position();
+        if (buffer.isDirect()) {
+            PlatformDependent.copyMemory(addr, PlatformDependent.directBufferAddress(buffer) + position, bytes);
+        } else {
+            PlatformDependent.copyMemory(addr, buffer.array(), buffer.arrayOffset() + position, bytes);
+        }
+        buffer.position(position + (int) bytes);
+    }
+
+    /**
+     * Writes a header followed by {@code header.dataBytes()} bytes starting at {@code addr} at the channel's position
+     */
+    static void write(FileChannel channel, Header header, long addr) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.min(HEADER_BYTES + header.dataBytes(), CHUNK_BYTES));
+        putHeader(buffer, header);
+
+        for (long offset = 0L; offset < header.dataBytes(); ) { //fill the rest of the buffer with data, write it, repeat
+            int length = (int) Math.min(header.dataBytes() - offset, buffer.remaining());
+            copyToBuffer(addr + offset, buffer, length);
+            offset += length;
+
+            if (!buffer.hasRemaining()) {
+                writeFully(channel, buffer.flip());
+                buffer.clear();
+            }
+        }
+        writeFully(channel, buffer.flip());
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Maps the channel from its position to its end and reads a collection from the mapping. The data is copied straight from the mapped pages
+     * into the collection's table. The channel's position is advanced past the collection
+     */
+    static <T> T read(FileChannel channel, Function<ByteBuffer, T> reader) throws IOException {
+        long position = channel.position();
+        long length = Math.min(channel.size() - position, Integer.MAX_VALUE);
+        MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+        T collection = reader.apply(mapping);
+        channel.position(position + mapping.position());
+        return collection;
+    }
+
+    /**
+     * Swaps the byte order of {@code count} consecutive {@code int}s in place
+     */
+    static void swapInts(long addr, int count) {
+        for (int i = 0; i < count; i++, addr += Integer.BYTES) {
+            PlatformDependent.putInt(addr, Integer.reverseBytes(PlatformDependent.getInt(addr)));
+        }
+    }
+
+    /**
+     * Swaps the byte order of {@code count} consecutive {@code long}s in place
+     */
+    static void swapLongs(long addr, int count) {
+        for (int i = 0; i < count; i++, addr += Long.BYTES) {
+            PlatformDependent.putLong(addr, Long.reverseBytes(PlatformDependent.getLong(addr)));
+        }
+    }
+}
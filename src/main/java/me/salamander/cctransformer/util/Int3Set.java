@@ -0,0 +1,73 @@
+package me.salamander.cctransformer.util;
+
+/**
+ * A read-only set of 3-dimensional vectors with {@code int} components. Implemented by {@link LinkedInt3HashSet} and by the
+ * {@link Int3UByteLinkedHashMap#keySet() key set} of an {@link Int3UByteLinkedHashMap}.
+ * <p>
+ * Implementations group positions into the same 4x4x4 buckets, with one flag bit per position, so bulk operations such as
+ * {@link LinkedInt3HashSet#addAll(Int3Set)} can work on whole buckets of any set.
+ *
+ * @author Salamander
+ */
+public interface Int3Set {
+    /**
+     * @return whether or not the given position is present in this set
+     *
+     * @see java.util.Set#contains(Object)
+     */
+    boolean contains(int x, int y, int z);
+
+    /**
+     * @return the number of positions in this set
+     */
+    long size();
+
+    /**
+     * @return whether or not this set is empty (contains no positions)
+     */
+    boolean isEmpty();
+
+    /**
+     * Runs the given function on every position in this set. The function must not modify this set.
+     *
+     * @see java.util.Set#forEach(java.util.function.Consumer)
+     */
+    void forEach(XYZConsumer action);
+
+    /**
+     * Runs the given function on every position in this set which is inside of the given box (inclusive). The function must not modify this set.
+     */
+    void forEachInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, XYZConsumer action);
+
+    /**
+     * @return the number of positions in this set which are inside of the given box (inclusive)
+     */
+    long countInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ);
+
+    /**
+     * @return whether or not any position in this set is inside of the given box (inclusive)
+     */
+    boolean containsAnyInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ);
+
+    /**
+     * Visits every non-empty bucket in this set, in iteration order. The visitor must not modify this set.
+     */
+    void forEachBucket(BucketVisitor visitor);
+
+    /**
+     * @return the flags of the bucket with the given bucket coordinates, or 0 if there is no such bucket
+     */
+    long getBucketFlags(int bucketX, int bucketY, int bucketZ);
+
+    /**
+     * Receives a bucket's coordinates (the position's coordinates shifted right by 2) and its flags. The flag of a position is
+     * {@code 1L << ((dx << 4) | (dy << 2) | dz)}, where {@code dx}, {@code dy} and {@code dz} are the position's coordinates inside of the bucket.
+     */
+    @FunctionalInterface
+    interface BucketVisitor {
+        /**
+         * @return whether or not to keep visiting buckets
+         */
+        boolean visit(int bucketX, int bucketY, int bucketZ, long flags);
+    }
+}
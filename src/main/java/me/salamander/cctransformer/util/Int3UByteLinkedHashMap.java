@@ -1,9 +1,18 @@
 package me.salamander.cctransformer.util;
 
 import io.netty.util.internal.PlatformDependent;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.longs.*;
 import net.minecraft.core.BlockPos;
 
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -18,7 +27,7 @@ import java.util.NoSuchElementException;
  *
  * @author DaPorkchop_
  */
-public class Int3UByteLinkedHashMap implements AutoCloseable {
+public class Int3UByteLinkedHashMap implements AutoCloseable, Int3CollectionStats.Tracked {
     public static final int DEFAULT_RETURN_VALUE = -1;
 
     protected static final int BUCKET_AXIS_BITS = 2; //the number of bits per axis which are used inside of the bucket rather than identifying the bucket
@@ -66,16 +75,23 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
 
     protected static final long DEFAULT_TABLE_SIZE = 16L;
 
+    protected static final int PAGE_SHIFT = 4; //the table is split into pages of 2^PAGE_SHIFT buckets for snapshots. must not be larger than DEFAULT_TABLE_SIZE
+    protected static final long PAGE_BYTES = BUCKET_BYTES << PAGE_SHIFT;
+
     static {
         if (!PlatformDependent.isUnaligned()) {
             throw new AssertionError("your CPU doesn't support unaligned memory access!");
         }
     }
 
+    protected final OffHeapMemory memory = OffHeapMemory.create(this, Int3UByteLinkedHashMap.class); //owns the table, frees it if this map is never closed
     protected long tableAddr = 0L; //the address of the table in memory
     protected long tableSize = 0L; //the physical size of the table (in buckets). always a non-zero power of two
     protected long resizeThreshold = 0L;
     protected long usedBuckets = 0L;
+    protected long resizeCount = 0L;
+    protected long peakSize = 0L; //only tracked if Int3CollectionStats.ENABLED
+    protected long minTableSize = DEFAULT_TABLE_SIZE; //the table is never shrunk below this automatically, see shrinkIfSparse()
 
     protected long size = 0L; //the number of values stored in the set
 
@@ -84,29 +100,76 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
 
     protected boolean closed = false;
 
+    protected KeySetView keySetView; //created by the first call to keySet()
+
+    protected List<Snapshot> snapshots = null; //snapshots which still read pages from the current table, null if there are none
+    protected long[] preservedPages; //bit i is set if page i has already been copied into every snapshot in snapshots
+
+    protected final boolean incrementalResize;
+    protected long nextTableAddr = 0L; //the table which an incremental resize is clearing before moving buckets into it, 0 if there is none
+    protected long clearedSlots = 0L; //the number of slots of the next table which have been cleared
+    protected long clearedAtBuckets = 0L; //the number of used buckets when the next table was last cleared
+    protected long oldTableAddr = 0L; //the table which an incremental resize is moving buckets out of, 0 if there is none
+    protected long oldTableSize = 0L;
+    protected long oldFirstBucketIndex = -1L; //the buckets still in the old table have a list of their own, since indices can't refer to the other table
+    protected long oldLastBucketIndex = -1L;
+    protected long migrationStart = 0L; //the index of an empty slot in the old table. slots are moved in order, starting with the one after it
+    protected long migratedSlots = 0L; //the number of slots of the old table which have been moved
+
     public Int3UByteLinkedHashMap() {
+        this.incrementalResize = LinkedInt3HashSet.INCREMENTAL_RESIZE_DEFAULT;
         this.setTableSize(DEFAULT_TABLE_SIZE);
+
+        if (Int3CollectionStats.ENABLED) {
+            Int3CollectionStats.track(this);
+        }
     }
 
     public Int3UByteLinkedHashMap(int initialCapacity) {
+        this(initialCapacity, LinkedInt3HashSet.INCREMENTAL_RESIZE_DEFAULT);
+    }
+
+    /**
+     * @param initialCapacity the number of entries which can be added before the table has to be resized, if they are all in different buckets
+     * @param incrementalResize whether or not to resize incrementally. An incremental resize keeps the old table around and moves a few of its buckets
+     *                          into the new table on every insertion, instead of moving all of them at once. This bounds the time a single
+     *                          {@link #put(int, int, int, int)} can take, at the cost of lookups checking both tables until the resize is finished
+     *
+     * @see LinkedInt3HashSet#INCREMENTAL_RESIZE_PROPERTY
+     */
+    public Int3UByteLinkedHashMap(int initialCapacity, boolean incrementalResize) {
+        this.incrementalResize = incrementalResize;
         initialCapacity = (int) Math.ceil(initialCapacity * (1.0d / 0.75d)); //scale according to resize threshold
         initialCapacity = 1 << (Integer.SIZE - Integer.numberOfLeadingZeros(initialCapacity - 1)); //round up to next power of two
-        this.setTableSize(Math.max(initialCapacity, DEFAULT_TABLE_SIZE));
+        this.minTableSize = Math.max(initialCapacity, DEFAULT_TABLE_SIZE);
+        this.setTableSize(this.minTableSize);
+
+        if (Int3CollectionStats.ENABLED) {
+            Int3CollectionStats.track(this);
+        }
     }
 
     protected Int3UByteLinkedHashMap(Int3UByteLinkedHashMap src) {
+        src.finishMigration(); //only the current table is copied
+        this.incrementalResize = src.incrementalResize;
+
         if (src.tableAddr != 0L) { //source table is allocated, let's copy it
             long tableSizeBytes = src.tableSize * BUCKET_BYTES;
-            this.tableAddr = PlatformDependent.allocateMemory(tableSizeBytes);
+            this.tableAddr = this.memory.allocate(tableSizeBytes);
             PlatformDependent.copyMemory(src.tableAddr, this.tableAddr, tableSizeBytes);
         }
 
-        this.tableSize = src.tableSize;
-        this.resizeThreshold = src.resizeThreshold;
+        this.setTableSize(src.tableSize); //not the resize threshold, since it is raised while an incremental resize clears the next table
+        this.minTableSize = src.minTableSize;
         this.usedBuckets = src.usedBuckets;
         this.size = src.size;
         this.firstBucketIndex = src.firstBucketIndex;
         this.lastBucketIndex = src.lastBucketIndex;
+
+        if (Int3CollectionStats.ENABLED) {
+            this.peakSize = src.size;
+            Int3CollectionStats.track(this);
+        }
     }
 
     /**
@@ -150,9 +213,9 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
         return 1L << positionIndex(x, y, z);
     }
 
-    protected static long allocateTable(long tableSize) {
+    protected long allocateTable(long tableSize) {
         long size = tableSize * BUCKET_BYTES;
-        long addr = PlatformDependent.allocateMemory(size); //allocate
+        long addr = this.memory.allocate(size); //allocate
         PlatformDependent.setMemory(addr, size, (byte) 0); //clear
         return addr;
     }
@@ -179,10 +242,12 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
         long bucket = this.findBucket(x >> BUCKET_AXIS_BITS, y >> BUCKET_AXIS_BITS, z >> BUCKET_AXIS_BITS, true);
 
         int oldValue;
+        this.beforeWrite(bucket);
         long flags = PlatformDependent.getLong(bucket + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET);
         if ((flags & flag) == 0L) { //flag wasn't previously set
             PlatformDependent.putLong(bucket + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET, flags | flag);
             this.size++; //the position was newly added, so we need to increment the total size
+            this.updatePeakSize();
             oldValue = DEFAULT_RETURN_VALUE;
         } else { //the flag was already set
             oldValue = PlatformDependent.getByte(bucket + BUCKET_VALUE_OFFSET + VALUE_VALS_OFFSET + index * Byte.BYTES) & 0xFF;
@@ -214,10 +279,12 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
         long flag = positionFlag(x, y, z);
         long bucket = this.findBucket(x >> BUCKET_AXIS_BITS, y >> BUCKET_AXIS_BITS, z >> BUCKET_AXIS_BITS, true);
 
+        this.beforeWrite(bucket);
         long flags = PlatformDependent.getLong(bucket + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET);
         if ((flags & flag) == 0L) { //flag wasn't previously set
             PlatformDependent.putLong(bucket + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET, flags | flag);
             this.size++; //the position was newly added, so we need to increment the total size
+            this.updatePeakSize();
             PlatformDependent.putByte(bucket + BUCKET_VALUE_OFFSET + VALUE_VALS_OFFSET + index * Byte.BYTES, (byte) value);
             return DEFAULT_RETURN_VALUE;
         } else { //the flag was already set
@@ -269,6 +336,24 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
     }
 
     protected long findBucket(int x, int y, int z, boolean createIfAbsent) {
+        if (this.nextTableAddr != 0L && createIfAbsent && this.usedBuckets > this.clearedAtBuckets) {
+            //an incremental resize is still clearing the next table. only added buckets use up the room left by the raised threshold, so the table is
+            // cleared in proportion to them
+            this.clearNextTable((this.usedBuckets - this.clearedAtBuckets) * LinkedInt3HashSet.INCREMENTAL_CLEAR_STEP);
+        }
+        if (this.oldTableAddr != 0L) { //an incremental resize is in progress, so the bucket may still be in the old table
+            if (createIfAbsent) {
+                this.migrateBuckets(LinkedInt3HashSet.INCREMENTAL_RESIZE_STEP);
+            }
+
+            if (this.oldTableAddr != 0L) {
+                long oldBucketIndex = this.findOldBucketIndex(x, y, z);
+                if (oldBucketIndex >= 0L) {
+                    return this.oldTableAddr + oldBucketIndex * BUCKET_BYTES;
+                }
+            }
+        }
+
         long tableSize = this.tableSize;
         long tableAddr = this.tableAddr;
         if (tableAddr == 0L) {
@@ -290,6 +375,7 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
                 if (createIfAbsent) {
                     if (this.usedBuckets < this.resizeThreshold) { //let's assign the bucket to our current position
                         this.usedBuckets++;
+                        this.beforeWrite(bucketAddr);
                         PlatformDependent.putInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_X_OFFSET, x);
                         PlatformDependent.putInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_Y_OFFSET, y);
                         PlatformDependent.putInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_Z_OFFSET, z);
@@ -303,6 +389,7 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
                             prevBucketIndex = this.lastBucketIndex;
 
                             long prevBucketAddr = tableAddr + prevBucketIndex * BUCKET_BYTES;
+                            this.beforeWrite(prevBucketAddr);
                             PlatformDependent.putLong(prevBucketAddr + BUCKET_NEXTINDEX_OFFSET, bucketIndex);
                         }
                         PlatformDependent.putLong(bucketAddr + BUCKET_PREVINDEX_OFFSET, prevBucketIndex);
@@ -332,13 +419,51 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
         }
     }
 
+    //only used to search the old table during an incremental resize, since buckets are never added to it
+    protected long findOldBucketIndex(int x, int y, int z) {
+        long oldTableAddr = this.oldTableAddr;
+        long oldMask = this.oldTableSize - 1L;
+
+        for (long hash = hashPosition(x, y, z), i = 0L; ; i++) {
+            long bucketIndex = (hash + i) & oldMask;
+            long bucketAddr = oldTableAddr + bucketIndex * BUCKET_BYTES;
+
+            if (PlatformDependent.getLong(bucketAddr + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET) == 0L) { //empty bucket, abort search
+                return -1L;
+            } else if (PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_X_OFFSET) == x
+                && PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_Y_OFFSET) == y
+                && PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_Z_OFFSET) == z) {
+                return bucketIndex;
+            }
+        }
+    }
+
     protected void resize() {
+        if (this.oldTableAddr != 0L) { //the previous incremental resize has to be finished before the table can be replaced again
+            this.finishResize();
+        }
+        if (this.incrementalResize) {
+            this.startIncrementalResize();
+            return;
+        }
+
+        this.rehash(this.tableSize << 1L);
+    }
+
+    /**
+     * Moves every bucket into a new table of the given size at once. The table must be allocated, and every used bucket must fit into the new table without
+     * going over the resize threshold.
+     */
+    protected void rehash(long newTableSize) {
+        this.detachSnapshots(); //the old table is about to be freed
+
         long oldTableSize = this.tableSize;
         long oldTableAddr = this.tableAddr;
 
         //allocate new table
-        long newTableSize = oldTableSize << 1L;
         this.setTableSize(newTableSize);
+        this.resizeCount++;
+        Int3CollectionStats.recordResize(Int3UByteLinkedHashMap.class);
         long newTableAddr = this.tableAddr = allocateTable(newTableSize);
         long newMask = newTableSize - 1L;
 
@@ -373,7 +498,7 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
         }
 
         //delete old table
-        PlatformDependent.freeMemory(oldTableAddr);
+        this.memory.free(oldTableAddr, oldTableSize * BUCKET_BYTES);
 
         //iterate through every bucket in the new table and append non-empty buckets to the new linked list
         long prevBucketIndex = -1L;
@@ -397,6 +522,231 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
         this.lastBucketIndex = prevBucketIndex;
     }
 
+    /**
+     * Allocates the next table without clearing it and keeps adding buckets to the current table while the next table is cleared by
+     * {@link #clearNextTable(long)}. The resize threshold is raised by 1/8 of the table size until then.
+     *
+     * @see LinkedInt3HashSet#startIncrementalResize()
+     */
+    protected void startIncrementalResize() {
+        if (this.nextTableAddr != 0L) { //the raised threshold was reached, so the rest of the next table has to be cleared now
+            this.clearNextTable(Long.MAX_VALUE);
+            return;
+        }
+
+        this.resizeCount++;
+        Int3CollectionStats.recordResize(Int3UByteLinkedHashMap.class);
+        this.nextTableAddr = this.memory.allocateKeepingPrevious((this.tableSize << 1L) * BUCKET_BYTES);
+        this.clearedSlots = 0L;
+        this.clearedAtBuckets = this.usedBuckets;
+        this.resizeThreshold += this.tableSize >> 3L;
+    }
+
+    /**
+     * Clears up to {@code maxSlots} more slots of the next table. Once all of it is cleared, it replaces the current table and the buckets start being
+     * moved by {@link #migrateBuckets(long)}. The buckets in the old table keep their list, and the new table starts a new one.
+     * <p>
+     * Buckets are never added to the old table, and a run of occupied slots in it is always moved all at once, so every bucket which hasn't been moved
+     * yet can still be found by searching the old table as usual.
+     */
+    protected void clearNextTable(long maxSlots) {
+        long newTableSize = this.tableSize << 1L;
+        long slots = Math.min(maxSlots, newTableSize - this.clearedSlots);
+        PlatformDependent.setMemory(this.nextTableAddr + this.clearedSlots * BUCKET_BYTES, slots * BUCKET_BYTES, (byte) 0);
+        this.clearedSlots += slots;
+        this.clearedAtBuckets = this.usedBuckets;
+        if (this.clearedSlots != newTableSize) {
+            return;
+        }
+
+        this.detachSnapshots(); //the snapshots only know about one table
+
+        long oldTableSize = this.tableSize;
+        long oldTableAddr = this.tableAddr;
+        this.setTableSize(newTableSize);
+        this.tableAddr = this.nextTableAddr;
+        this.nextTableAddr = 0L;
+        this.clearedSlots = 0L;
+
+        //the old table is never completely full, so there's always an empty slot to start after
+        long start = 0L;
+        while (PlatformDependent.getLong(oldTableAddr + start * BUCKET_BYTES + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET) != 0L) {
+            start++;
+        }
+
+        this.oldTableAddr = oldTableAddr;
+        this.oldTableSize = oldTableSize;
+        this.oldFirstBucketIndex = this.firstBucketIndex;
+        this.oldLastBucketIndex = this.lastBucketIndex;
+        this.firstBucketIndex = -1L;
+        this.lastBucketIndex = -1L;
+        this.migrationStart = start;
+        this.migratedSlots = 0L;
+    }
+
+    /**
+     * Moves at least {@code minSlots} slots of the old table into the current table, continuing until the end of the run of occupied slots the last one
+     * belongs to. Moved buckets are appended to the current table's list. The old table is freed once every slot has been moved.
+     */
+    protected void migrateBuckets(long minSlots) {
+        long oldTableAddr = this.oldTableAddr;
+        long oldTableSize = this.oldTableSize;
+        long oldMask = oldTableSize - 1L;
+        long tableAddr = this.tableAddr;
+        long mask = this.tableSize - 1L;
+
+        long slot = this.migratedSlots;
+        long end = slot + minSlots;
+        while (slot < oldTableSize) {
+            long oldBucketAddr = oldTableAddr + ((this.migrationStart + 1L + slot++) & oldMask) * BUCKET_BYTES;
+
+            if (PlatformDependent.getLong(oldBucketAddr + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET) == 0L) { //the slot is empty, so this is the end of a run
+                if (slot >= end) {
+                    break;
+                }
+                continue;
+            }
+
+            //remove the bucket from the old table's list
+            long prevBucketIndex = PlatformDependent.getLong(oldBucketAddr + BUCKET_PREVINDEX_OFFSET);
+            long nextBucketIndex = PlatformDependent.getLong(oldBucketAddr + BUCKET_NEXTINDEX_OFFSET);
+            if (prevBucketIndex < 0L) {
+                this.oldFirstBucketIndex = nextBucketIndex;
+            } else {
+                PlatformDependent.putLong(oldTableAddr + prevBucketIndex * BUCKET_BYTES + BUCKET_NEXTINDEX_OFFSET, nextBucketIndex);
+            }
+            if (nextBucketIndex < 0L) {
+                this.oldLastBucketIndex = prevBucketIndex;
+            } else {
+                PlatformDependent.putLong(oldTableAddr + nextBucketIndex * BUCKET_BYTES + BUCKET_PREVINDEX_OFFSET, prevBucketIndex);
+            }
+
+            long hash = hashPosition(
+                PlatformDependent.getInt(oldBucketAddr + BUCKET_KEY_OFFSET + KEY_X_OFFSET),
+                PlatformDependent.getInt(oldBucketAddr + BUCKET_KEY_OFFSET + KEY_Y_OFFSET),
+                PlatformDependent.getInt(oldBucketAddr + BUCKET_KEY_OFFSET + KEY_Z_OFFSET));
+            for (long j = 0L; ; j++) {
+                long bucketIndex = (hash + j) & mask;
+                long bucketAddr = tableAddr + bucketIndex * BUCKET_BYTES;
+
+                if (PlatformDependent.getLong(bucketAddr + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET) == 0L) {
+                    memcpy(oldBucketAddr, bucketAddr, BUCKET_PREVINDEX_OFFSET); //the key and value
+
+                    //append the bucket to the current table's list
+                    long lastBucketIndex = this.lastBucketIndex;
+                    if (lastBucketIndex < 0L) {
+                        this.firstBucketIndex = bucketIndex;
+                    } else {
+                        PlatformDependent.putLong(tableAddr + lastBucketIndex * BUCKET_BYTES + BUCKET_NEXTINDEX_OFFSET, bucketIndex);
+                    }
+                    PlatformDependent.putLong(bucketAddr + BUCKET_PREVINDEX_OFFSET, lastBucketIndex);
+                    PlatformDependent.putLong(bucketAddr + BUCKET_NEXTINDEX_OFFSET, -1L);
+                    this.lastBucketIndex = bucketIndex;
+                    break;
+                }
+            }
+
+            //mark the old slot as empty
+            PlatformDependent.putLong(oldBucketAddr + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET, 0L);
+        }
+        this.migratedSlots = slot;
+
+        if (slot == oldTableSize) { //every bucket has been moved
+            this.memory.freePrevious();
+            this.oldTableAddr = 0L;
+            this.oldTableSize = 0L;
+        }
+    }
+
+    /**
+     * Shrinks the table to the smallest size which can hold the buckets currently in use without having to be resized.
+     *
+     * @return whether or not the table was shrunk
+     *
+     * @see #trim(int)
+     */
+    public boolean trim() {
+        return this.trim(0);
+    }
+
+    /**
+     * Shrinks the table to the smallest size which can hold the buckets currently in use or {@code expected} buckets, whichever is more, without having to
+     * be resized. The table is never grown by this.
+     * <p>
+     * The table also shrinks by itself once it is mostly empty, but never below its initial size. This lowers that limit to the new size, so that the
+     * table can shrink back down after it has grown again.
+     *
+     * @param expected the number of entries which are expected to be in this map, if they are all in different buckets
+     *
+     * @return whether or not the table was shrunk
+     *
+     * @see LinkedInt3HashSet#trim(int)
+     */
+    public boolean trim(int expected) {
+        if (expected < 0) {
+            throw new IllegalArgumentException("Expected size must not be negative: " + expected);
+        }
+
+        this.finishResize(); //rehash() only replaces the current table
+
+        long newTableSize = LinkedInt3HashSet.tableSizeFor(Math.max(this.usedBuckets, expected));
+        this.minTableSize = Math.min(this.minTableSize, newTableSize);
+        if (newTableSize >= this.tableSize) {
+            return false;
+        }
+
+        if (this.tableAddr == 0L) { //the table isn't even allocated yet, it'll simply be allocated with the new size
+            this.setTableSize(newTableSize);
+        } else {
+            this.rehash(newTableSize);
+        }
+        return true;
+    }
+
+    /**
+     * Shrinks the table once less than 1/8 of it is used, to a size where 3/16 to 3/8 of it is used.
+     * <p>
+     * Must only be called when no bucket addresses or indices are held, since every bucket may be moved. Removing entries through a {@link Cursor} never
+     * shrinks the table.
+     *
+     * @see LinkedInt3HashSet#shrinkIfSparse()
+     */
+    protected void shrinkIfSparse() {
+        if (this.usedBuckets < (this.tableSize >> 3L) && this.tableSize > this.minTableSize && this.tableAddr != 0L) {
+            this.finishResize();
+            this.rehash(this.shrunkTableSize());
+        }
+    }
+
+    protected long shrunkTableSize() {
+        return Math.max(LinkedInt3HashSet.tableSizeFor(this.usedBuckets << 1L), this.minTableSize);
+    }
+
+    /**
+     * Finishes an incremental resize which is in progress by clearing the rest of the new table and moving all the remaining buckets at once. Does nothing
+     * if there is none.
+     * <p>
+     * This can be used to move the cost of finishing the resize to a convenient time, such as the end of a tick. Methods other than the ones which
+     * access a single entry, {@link #poll(EntryConsumer)} and {@link #drainTo(int[], int[], int[], byte[], int)} move the remaining buckets first, but
+     * only serialization also clears the new table.
+     */
+    public void finishResize() {
+        if (this.nextTableAddr != 0L) {
+            this.clearNextTable(Long.MAX_VALUE);
+        }
+        this.finishMigration();
+    }
+
+    /**
+     * Moves all the buckets which are still in the old table, so that every bucket is in the current table. Unlike {@link #finishResize()} this leaves
+     * a next table which is still being cleared alone, since nothing reads it before it becomes the current table.
+     */
+    protected void finishMigration() {
+        if (this.oldTableAddr != 0L) {
+            this.migrateBuckets(this.oldTableSize);
+        }
+    }
+
     /**
      * Runs the given callback function on every entry in this map.
      * <p>
@@ -407,6 +757,7 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
      * @see java.util.Map#forEach(java.util.function.BiConsumer)
      */
     public void forEach(EntryConsumer action) {
+        this.finishMigration();
         if (this.tableAddr == 0L //table hasn't even been allocated
             || this.isEmpty()) { //no entries are present
             return; //there's nothing to iterate over...
@@ -437,11 +788,17 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
     }
 
     protected void forEachInBucket(EntryConsumer action, long bucketAddr) {
-        //read the bucket's key and flags into registers
+        this.forEachInBucket(action, bucketAddr, PlatformDependent.getLong(bucketAddr + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET));
+    }
+
+    /**
+     * Runs the given callback function on the entries in a bucket whose flags are set in {@code flags}
+     */
+    protected void forEachInBucket(EntryConsumer action, long bucketAddr, long flags) {
+        //read the bucket's key into registers
         int bucketX = PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_X_OFFSET);
         int bucketY = PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_Y_OFFSET);
         int bucketZ = PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_Z_OFFSET);
-        long flags = PlatformDependent.getLong(bucketAddr + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET);
 
         while (flags != 0L) {
             //this is intrinsic and compiles into TZCNT, which has a latency of 3 cycles - much faster than iterating through all 64 bits
@@ -459,6 +816,162 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
         }
     }
 
+    /**
+     * Creates a cursor over the entries of this map, which visits them in the same order as {@link #poll(EntryConsumer)} would return them.
+     * <p>
+     * Unlike {@link #forEach(EntryConsumer)}, iterating with a cursor doesn't need a callback function, so a hot loop doesn't allocate a capturing lambda and
+     * stays monomorphic. A cursor can be {@link Cursor#reset() reset} and used again.
+     *
+     * @return a new cursor, positioned before the first entry
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A reusable cursor over the entries of an {@link Int3UByteLinkedHashMap}:
+     * <pre>{@code
+     * Int3UByteLinkedHashMap.Cursor cursor = map.cursor();
+     * while (cursor.next()) {
+     *     if (cursor.value() == 0) {
+     *         cursor.remove();
+     *     }
+     * }
+     * }</pre>
+     * The map must not be modified while iterating, except through {@link #remove()}.
+     */
+    public class Cursor {
+        protected long bucketIndex; //the bucket of the current entry
+        protected long nextBucketIndex; //the bucket to continue with once the current one has no entries left, -1 if there is none
+        protected long remaining; //the entries of the current bucket which haven't been visited yet
+        protected int index; //the index of the current entry in its bucket, -1 if there is no current entry
+
+        protected int baseX; //the position of the current bucket's first entry
+        protected int baseY;
+        protected int baseZ;
+
+        protected int x;
+        protected int y;
+        protected int z;
+        protected int value;
+
+        protected Cursor() {
+            this.rewind();
+        }
+
+        /**
+         * Moves this cursor back before the first entry of the map.
+         *
+         * @return this cursor
+         */
+        public Cursor reset() {
+            this.rewind();
+            return this;
+        }
+
+        private void rewind() {
+            Int3UByteLinkedHashMap.this.finishMigration();
+            this.bucketIndex = -1L;
+            this.nextBucketIndex = Int3UByteLinkedHashMap.this.tableAddr == 0L ? -1L : Int3UByteLinkedHashMap.this.firstBucketIndex;
+            this.remaining = 0L;
+            this.index = -1;
+        }
+
+        /**
+         * Moves to the next entry.
+         *
+         * @return whether or not there was another entry. If there wasn't, this cursor has no current entry until it is reset
+         */
+        public boolean next() {
+            long tableAddr = Int3UByteLinkedHashMap.this.tableAddr;
+            long bucketAddr = tableAddr + this.bucketIndex * BUCKET_BYTES;
+
+            while (this.remaining == 0L) { //move on to the next bucket
+                if (this.nextBucketIndex < 0L) {
+                    this.index = -1;
+                    return false;
+                }
+
+                this.bucketIndex = this.nextBucketIndex;
+                bucketAddr = tableAddr + this.bucketIndex * BUCKET_BYTES;
+                this.remaining = PlatformDependent.getLong(bucketAddr + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET);
+                this.nextBucketIndex = PlatformDependent.getLong(bucketAddr + BUCKET_NEXTINDEX_OFFSET);
+                this.baseX = PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_X_OFFSET) << BUCKET_AXIS_BITS;
+                this.baseY = PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_Y_OFFSET) << BUCKET_AXIS_BITS;
+                this.baseZ = PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_Z_OFFSET) << BUCKET_AXIS_BITS;
+            }
+
+            int index = this.index = Long.numberOfTrailingZeros(this.remaining);
+            this.remaining &= this.remaining - 1L;
+
+            this.x = this.baseX + (index >> (BUCKET_AXIS_BITS * 2));
+            this.y = this.baseY + ((index >> BUCKET_AXIS_BITS) & BUCKET_AXIS_MASK);
+            this.z = this.baseZ + (index & BUCKET_AXIS_MASK);
+            this.value = PlatformDependent.getByte(bucketAddr + BUCKET_VALUE_OFFSET + VALUE_VALS_OFFSET + index * Byte.BYTES) & 0xFF;
+            return true;
+        }
+
+        /**
+         * @return the current entry's X coordinate. Still valid after the entry was removed
+         */
+        public int x() {
+            return this.x;
+        }
+
+        /**
+         * @return the current entry's Y coordinate. Still valid after the entry was removed
+         */
+        public int y() {
+            return this.y;
+        }
+
+        /**
+         * @return the current entry's Z coordinate. Still valid after the entry was removed
+         */
+        public int z() {
+            return this.z;
+        }
+
+        /**
+         * @return the current entry's value. Still valid after the entry was removed
+         */
+        public int value() {
+            return this.value;
+        }
+
+        /**
+         * Removes the current entry from the map. The rest of the entries are still visited in order.
+         *
+         * @throws IllegalStateException if there is no current entry, or it has already been removed
+         */
+        public void remove() {
+            if (this.index < 0) {
+                throw new IllegalStateException("No current entry");
+            }
+
+            long tableAddr = Int3UByteLinkedHashMap.this.tableAddr;
+            long mask = Int3UByteLinkedHashMap.this.tableSize - 1L;
+            long bucketAddr = tableAddr + this.bucketIndex * BUCKET_BYTES;
+            long flags = PlatformDependent.getLong(bucketAddr + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET);
+            long flag = 1L << this.index;
+            this.index = -1;
+
+            if (flags == flag && this.nextBucketIndex >= 0L) {
+                //the bucket is about to be deleted, and deleting it may shift the next bucket into a different slot. remember the next bucket's key
+                // to find it again afterwards
+                long nextBucketAddr = tableAddr + this.nextBucketIndex * BUCKET_BYTES;
+                int nextX = PlatformDependent.getInt(nextBucketAddr + BUCKET_KEY_OFFSET + KEY_X_OFFSET);
+                int nextY = PlatformDependent.getInt(nextBucketAddr + BUCKET_KEY_OFFSET + KEY_Y_OFFSET);
+                int nextZ = PlatformDependent.getInt(nextBucketAddr + BUCKET_KEY_OFFSET + KEY_Z_OFFSET);
+
+                Int3UByteLinkedHashMap.this.removeEntry(tableAddr, mask, this.bucketIndex, bucketAddr, flags, flag);
+                this.nextBucketIndex = (Int3UByteLinkedHashMap.this.findBucket(nextX, nextY, nextZ, false) - tableAddr) / BUCKET_BYTES;
+            } else {
+                Int3UByteLinkedHashMap.this.removeEntry(tableAddr, mask, this.bucketIndex, bucketAddr, flags, flag);
+            }
+        }
+    }
+
     /**
      * Removes the entry at the given position from this map.
      *
@@ -482,8 +995,24 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
         int searchBucketX = x >> BUCKET_AXIS_BITS;
         int searchBucketY = y >> BUCKET_AXIS_BITS;
         int searchBucketZ = z >> BUCKET_AXIS_BITS;
-        long hash = hashPosition(searchBucketX, searchBucketY, searchBucketZ);
 
+        if (this.oldTableAddr != 0L) { //an incremental resize is in progress, so the bucket may still be in the old table
+            long oldBucketIndex = this.findOldBucketIndex(searchBucketX, searchBucketY, searchBucketZ);
+            if (oldBucketIndex >= 0L) {
+                long bucketAddr = this.oldTableAddr + oldBucketIndex * BUCKET_BYTES;
+                long flags = PlatformDependent.getLong(bucketAddr + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET);
+                if ((flags & flag) == 0L) {
+                    return DEFAULT_RETURN_VALUE;
+                }
+
+                int oldVal = PlatformDependent.getByte(bucketAddr + BUCKET_VALUE_OFFSET + VALUE_VALS_OFFSET + positionIndex(x, y, z) * Byte.BYTES) & 0xFF;
+                this.removeEntry(this.oldTableAddr, this.oldTableSize - 1L, oldBucketIndex, bucketAddr, flags, flag);
+                this.shrinkIfSparse();
+                return oldVal;
+            }
+        }
+
+        long hash = hashPosition(searchBucketX, searchBucketY, searchBucketZ);
         for (long i = 0L; ; i++) {
             long bucketIndex = (hash + i) & mask;
             long bucketAddr = tableAddr + bucketIndex * BUCKET_BYTES;
@@ -506,6 +1035,7 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
 
             //remove entry from map
             this.removeEntry(tableAddr, mask, bucketIndex, bucketAddr, flags, flag);
+            this.shrinkIfSparse();
 
             return oldVal;
         }
@@ -521,9 +1051,16 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
      * @return whether or not the callback function was invoked. A return value of {@code false} indicates that the map was already empty
      */
     public boolean poll(EntryConsumer action) {
+        long tableAddr = this.tableAddr;
+        long mask = this.tableSize - 1L;
         long bucketIndex = this.firstBucketIndex;
+        if (this.oldFirstBucketIndex >= 0L) { //an incremental resize is in progress, the buckets which haven't been moved yet come first
+            tableAddr = this.oldTableAddr;
+            mask = this.oldTableSize - 1L;
+            bucketIndex = this.oldFirstBucketIndex;
+        }
+
         if (bucketIndex >= 0L) {
-            long tableAddr = this.tableAddr;
             long bucketAddr = tableAddr + bucketIndex * BUCKET_BYTES;
 
             //read the bucket's key and flags into registers
@@ -545,7 +1082,8 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
             int val = PlatformDependent.getByte(bucketAddr + BUCKET_VALUE_OFFSET + VALUE_VALS_OFFSET + index * Byte.BYTES) & 0xFF;
 
             //remove entry from bucket
-            this.removeEntry(tableAddr, this.tableSize - 1L, bucketIndex, bucketAddr, flags, 1L << index);
+            this.removeEntry(tableAddr, mask, bucketIndex, bucketAddr, flags, 1L << index);
+            this.shrinkIfSparse();
 
             //run the callback
             action.accept((bucketX << BUCKET_AXIS_BITS) + dx, (bucketY << BUCKET_AXIS_BITS) + dy, (bucketZ << BUCKET_AXIS_BITS) + dz, val);
@@ -555,13 +1093,85 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
         }
     }
 
-    //assumes that the entry is present in the bucket
+    /**
+     * Removes up to {@code max} entries from the front of this map and writes their positions and values into the given arrays, starting at index 0.
+     * <p>
+     * Entries are removed in the same order as repeated calls to {@link #poll(EntryConsumer)} would remove them, but each bucket is only read once
+     * and is emptied in a single write.
+     *
+     * @param xs the array to write the X coordinates into
+     * @param ys the array to write the Y coordinates into
+     * @param zs the array to write the Z coordinates into
+     * @param vals the array to write the values into, or {@code null} if the values aren't needed. Values are stored as raw bytes, use
+     *             {@code vals[i] & 0xFF} to get them back
+     * @param max the maximum number of entries to remove. Must not be greater than the length of any of the arrays
+     *
+     * @return the number of entries which were removed. A return value of {@code 0} indicates that the map was empty (or that {@code max} was 0)
+     */
+    public int drainTo(int[] xs, int[] ys, int[] zs, byte[] vals, int max) {
+        LinkedInt3HashSet.checkDrainArgs(xs, ys, zs, max);
+        if (vals != null && max > vals.length) {
+            throw new IllegalArgumentException("Cannot drain " + max + " values into an array of length " + vals.length);
+        }
+
+        int count = 0;
+        while (count < max) {
+            long tableAddr = this.tableAddr;
+            long mask = this.tableSize - 1L;
+            long bucketIndex = this.firstBucketIndex;
+            if (this.oldFirstBucketIndex >= 0L) { //an incremental resize is in progress, the buckets which haven't been moved yet come first
+                tableAddr = this.oldTableAddr;
+                mask = this.oldTableSize - 1L;
+                bucketIndex = this.oldFirstBucketIndex;
+            } else if (bucketIndex < 0L) { //the map is empty
+                break;
+            }
+            long bucketAddr = tableAddr + bucketIndex * BUCKET_BYTES;
+
+            int baseX = PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_X_OFFSET) << BUCKET_AXIS_BITS;
+            int baseY = PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_Y_OFFSET) << BUCKET_AXIS_BITS;
+            int baseZ = PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_Z_OFFSET) << BUCKET_AXIS_BITS;
+            long flags = PlatformDependent.getLong(bucketAddr + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET);
+
+            long remaining = flags;
+            do {
+                int index = Long.numberOfTrailingZeros(remaining);
+                xs[count] = baseX + (index >> (BUCKET_AXIS_BITS * 2));
+                ys[count] = baseY + ((index >> BUCKET_AXIS_BITS) & BUCKET_AXIS_MASK);
+                zs[count] = baseZ + (index & BUCKET_AXIS_MASK);
+                if (vals != null) {
+                    vals[count] = PlatformDependent.getByte(bucketAddr + BUCKET_VALUE_OFFSET + VALUE_VALS_OFFSET + index * Byte.BYTES);
+                }
+                count++;
+
+                remaining &= remaining - 1L; //clear the lowest set bit
+            } while (remaining != 0L && count < max);
+
+            //remove all of the drained entries from the bucket at once
+            this.removeEntry(tableAddr, mask, bucketIndex, bucketAddr, flags, flags & ~remaining);
+        }
+        this.shrinkIfSparse();
+        return count;
+    }
+
+    /**
+     * Removes up to {@code max} entries from the front of this map and writes their positions into the given arrays, discarding the values.
+     *
+     * @see #drainTo(int[], int[], int[], byte[], int)
+     */
+    public int drainTo(int[] xs, int[] ys, int[] zs, int max) {
+        return this.drainTo(xs, ys, zs, null, max);
+    }
+
+    //assumes that the entry is present in the bucket. flag may have more than one bit set to remove several entries of the bucket at once. never shrinks
+    // the table, so that callers can keep using tableAddr. they should call shrinkIfSparse() once they are done
     protected void removeEntry(long tableAddr, long mask, long bucketIndex, long bucketAddr, long flags, long flag) {
         //the bucket that we found contains the position, so now we remove it from the set
-        this.size--;
+        this.size -= Long.bitCount(flag);
 
         //update bucket flags
         flags &= ~flag;
+        this.beforeWrite(bucketAddr);
         PlatformDependent.putLong(bucketAddr + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET, flags);
 
         if (flags == 0L) { //this position was the only position in the bucket, so we need to delete the bucket
@@ -572,15 +1182,17 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
             long nextBucketIndex = PlatformDependent.getLong(bucketAddr + BUCKET_NEXTINDEX_OFFSET);
 
             if (prevBucketIndex < 0L) { //previous bucket is nullptr, meaning the current bucket used to be at the front
-                this.firstBucketIndex = nextBucketIndex;
+                this.setFirstBucketIndex(tableAddr, nextBucketIndex);
             } else {
                 long prevBucketAddr = tableAddr + prevBucketIndex * BUCKET_BYTES;
+                this.beforeWrite(prevBucketAddr);
                 PlatformDependent.putLong(prevBucketAddr + BUCKET_NEXTINDEX_OFFSET, nextBucketIndex);
             }
             if (nextBucketIndex < 0L) { //next bucket is nullptr, meaning the current bucket used to be at the back
-                this.lastBucketIndex = prevBucketIndex;
+                this.setLastBucketIndex(tableAddr, prevBucketIndex);
             } else {
                 long nextBucketAddr = tableAddr + nextBucketIndex * BUCKET_BYTES;
+                this.beforeWrite(nextBucketAddr);
                 PlatformDependent.putLong(nextBucketAddr + BUCKET_PREVINDEX_OFFSET, prevBucketIndex);
             }
 
@@ -589,6 +1201,23 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
         }
     }
 
+    //the old table of an incremental resize has a list of its own
+    protected void setFirstBucketIndex(long tableAddr, long bucketIndex) {
+        if (tableAddr == this.tableAddr) {
+            this.firstBucketIndex = bucketIndex;
+        } else {
+            this.oldFirstBucketIndex = bucketIndex;
+        }
+    }
+
+    protected void setLastBucketIndex(long tableAddr, long bucketIndex) {
+        if (tableAddr == this.tableAddr) {
+            this.lastBucketIndex = bucketIndex;
+        } else {
+            this.oldLastBucketIndex = bucketIndex;
+        }
+    }
+
     //adapted from it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap#shiftKeys(int)
     protected void shiftBuckets(long tableAddr, long pos, long mask) {
         long last;
@@ -614,6 +1243,8 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
                     long newAddr = tableAddr + last * BUCKET_BYTES;
 
                     //copy bucket to new address
+                    this.beforeWrite(newAddr);
+                    this.beforeWrite(currAddr);
                     memcpy(currAddr, newAddr, BUCKET_BYTES);
 
                     //clear flags in bucket's old position to mark it as empty
@@ -623,15 +1254,17 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
                     long prevBucketIndex = PlatformDependent.getLong(currAddr + BUCKET_PREVINDEX_OFFSET);
                     long nextBucketIndex = PlatformDependent.getLong(currAddr + BUCKET_NEXTINDEX_OFFSET);
                     if (prevBucketIndex < 0L) { //previous bucket is nullptr, meaning the current bucket used to be at the front
-                        this.firstBucketIndex = last;
+                        this.setFirstBucketIndex(tableAddr, last);
                     } else {
                         long prevBucketAddr = tableAddr + prevBucketIndex * BUCKET_BYTES;
+                        this.beforeWrite(prevBucketAddr);
                         PlatformDependent.putLong(prevBucketAddr + BUCKET_NEXTINDEX_OFFSET, last);
                     }
                     if (nextBucketIndex < 0L) { //next bucket is nullptr, meaning the current bucket used to be at the back
-                        this.lastBucketIndex = last;
+                        this.setLastBucketIndex(tableAddr, last);
                     } else {
                         long nextBucketAddr = tableAddr + nextBucketIndex * BUCKET_BYTES;
+                        this.beforeWrite(nextBucketAddr);
                         PlatformDependent.putLong(nextBucketAddr + BUCKET_PREVINDEX_OFFSET, last);
                     }
 
@@ -641,19 +1274,196 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
         }
     }
 
+    /**
+     * Runs the given callback function on every entry in this map whose position is inside of the given box. The cost depends on the size of the box, or
+     * on the number of used buckets if that is smaller, but not on the size of the table.
+     * <p>
+     * Entries are visited bucket by bucket in no particular order. The callback function must not modify this map.
+     *
+     * @param minX the box's lowest X coordinate (inclusive)
+     * @param minY the box's lowest Y coordinate (inclusive)
+     * @param minZ the box's lowest Z coordinate (inclusive)
+     * @param maxX the box's highest X coordinate (inclusive)
+     * @param maxY the box's highest Y coordinate (inclusive)
+     * @param maxZ the box's highest Z coordinate (inclusive)
+     * @param action the callback function
+     */
+    public void forEachInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, EntryConsumer action) {
+        this.forEachBucketInBox(minX, minY, minZ, maxX, maxY, maxZ, (bucketAddr, flags) -> {
+            this.forEachInBucket(action, bucketAddr, flags);
+            return true;
+        });
+    }
+
+    /**
+     * @return the number of entries in this map whose position is inside of the given box (inclusive)
+     *
+     * @see #forEachInBox(int, int, int, int, int, int, EntryConsumer)
+     */
+    public long countInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        long[] count = {0L};
+        this.forEachBucketInBox(minX, minY, minZ, maxX, maxY, maxZ, (bucketAddr, flags) -> {
+            count[0] += Long.bitCount(flags);
+            return true;
+        });
+        return count[0];
+    }
+
+    /**
+     * @return whether or not any entry in this map has a position inside of the given box (inclusive). Stops at the first bucket with such an entry
+     *
+     * @see #forEachInBox(int, int, int, int, int, int, EntryConsumer)
+     */
+    public boolean containsAnyInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        boolean[] found = {false};
+        this.forEachBucketInBox(minX, minY, minZ, maxX, maxY, maxZ, (bucketAddr, flags) -> {
+            found[0] = true;
+            return false;
+        });
+        return found[0];
+    }
+
+    /**
+     * Removes every entry in this map whose position is inside of the given box (inclusive). This works on whole buckets at a time.
+     *
+     * @return the number of entries removed
+     *
+     * @see #forEachInBox(int, int, int, int, int, int, EntryConsumer)
+     */
+    public long removeInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        //buckets can't be deleted while visiting them because deleting shifts the other buckets around, so they are stored and deleted afterwards
+        IntArrayList keys = new IntArrayList();
+        LongArrayList removed = new LongArrayList();
+        this.forEachBucketInBox(minX, minY, minZ, maxX, maxY, maxZ, (bucketAddr, flags) -> {
+            keys.add(PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_X_OFFSET));
+            keys.add(PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_Y_OFFSET));
+            keys.add(PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_Z_OFFSET));
+            removed.add(flags);
+            return true;
+        });
+
+        long oldSize = this.size;
+        long tableAddr = this.tableAddr;
+        long mask = this.tableSize - 1L;
+        for (int i = 0; i < removed.size(); i++) {
+            long bucketAddr = this.findBucket(keys.getInt(i * 3), keys.getInt(i * 3 + 1), keys.getInt(i * 3 + 2), false);
+            long flags = PlatformDependent.getLong(bucketAddr + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET);
+            this.removeEntry(tableAddr, mask, (bucketAddr - tableAddr) / BUCKET_BYTES, bucketAddr, flags, removed.getLong(i));
+        }
+        if (!removed.isEmpty()) {
+            this.shrinkIfSparse();
+        }
+        return oldSize - this.size;
+    }
+
+    /**
+     * Visits every bucket which has entries inside of the given box (inclusive), with its flags masked to only those entries. If the box covers fewer
+     * buckets than are used, each of them is looked up, otherwise the whole list is walked. The visitor must not modify this map.
+     */
+    protected void forEachBucketInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BucketAddressVisitor visitor) {
+        this.finishMigration();
+        if (this.tableAddr == 0L || this.isEmpty() || minX > maxX || minY > maxY || minZ > maxZ) {
+            return;
+        }
+
+        int minBucketX = minX >> BUCKET_AXIS_BITS;
+        int minBucketY = minY >> BUCKET_AXIS_BITS;
+        int minBucketZ = minZ >> BUCKET_AXIS_BITS;
+        int maxBucketX = maxX >> BUCKET_AXIS_BITS;
+        int maxBucketY = maxY >> BUCKET_AXIS_BITS;
+        int maxBucketZ = maxZ >> BUCKET_AXIS_BITS;
+
+        if (LinkedInt3HashSet.isSmallBox(minX, minY, minZ, maxX, maxY, maxZ, this.usedBuckets)) {
+            for (int bucketX = minBucketX; bucketX <= maxBucketX; bucketX++) {
+                for (int bucketY = minBucketY; bucketY <= maxBucketY; bucketY++) {
+                    for (int bucketZ = minBucketZ; bucketZ <= maxBucketZ; bucketZ++) {
+                        long bucketAddr = this.findBucket(bucketX, bucketY, bucketZ, false);
+                        if (bucketAddr == 0L) {
+                            continue;
+                        }
+
+                        long flags = PlatformDependent.getLong(bucketAddr + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET)
+                                     & LinkedInt3HashSet.boxFlags(bucketX, bucketY, bucketZ, minX, minY, minZ, maxX, maxY, maxZ);
+                        if (flags != 0L && !visitor.visit(bucketAddr, flags)) {
+                            return;
+                        }
+                    }
+                }
+            }
+        } else {
+            long tableAddr = this.tableAddr;
+            for (long bucketIndex = this.firstBucketIndex, bucketAddr = tableAddr + bucketIndex * BUCKET_BYTES;
+                 bucketIndex >= 0L;
+                 bucketIndex = PlatformDependent.getLong(bucketAddr + BUCKET_NEXTINDEX_OFFSET), bucketAddr = tableAddr + bucketIndex * BUCKET_BYTES) {
+                int bucketX = PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_X_OFFSET);
+                int bucketY = PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_Y_OFFSET);
+                int bucketZ = PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_Z_OFFSET);
+                if (bucketX < minBucketX || bucketX > maxBucketX || bucketY < minBucketY || bucketY > maxBucketY || bucketZ < minBucketZ || bucketZ > maxBucketZ) {
+                    continue;
+                }
+
+                long flags = PlatformDependent.getLong(bucketAddr + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET)
+                             & LinkedInt3HashSet.boxFlags(bucketX, bucketY, bucketZ, minX, minY, minZ, maxX, maxY, maxZ);
+                if (flags != 0L && !visitor.visit(bucketAddr, flags)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Receives the address of a bucket and some of its flags.
+     */
+    @FunctionalInterface
+    protected interface BucketAddressVisitor {
+        /**
+         * @return whether or not to keep visiting buckets
+         */
+        boolean visit(long bucketAddr, long flags);
+    }
+
     /**
      * Removes every entry from this set.
      *
      * @see java.util.Map#clear()
      */
     public void clear() {
-        if (this.isEmpty()) { //if the set is empty, there's nothing to clear
-            return;
+        if (this.nextTableAddr != 0L) { //the next table of an incremental resize which hasn't started moving buckets isn't needed anymore
+            this.memory.restorePrevious();
+            this.nextTableAddr = 0L;
+            this.clearedSlots = 0L;
+            this.setTableSize(this.tableSize); //undo the raised resize threshold
+        }
+        if (this.oldTableAddr != 0L) { //the old table of an unfinished incremental resize isn't needed anymore
+            this.memory.freePrevious();
+            this.oldTableAddr = 0L;
+            this.oldTableSize = 0L;
+            this.oldFirstBucketIndex = -1L;
+            this.oldLastBucketIndex = -1L;
         }
 
-        //fill the entire table with zeroes
-        // (since the table isn't empty, we can be sure that the table has been allocated so there's no reason to check for it)
-        PlatformDependent.setMemory(this.tableAddr, this.tableSize * BUCKET_BYTES, (byte) 0);
+        if (this.tableAddr != 0L && this.usedBuckets < (this.tableSize >> 3L) && this.tableSize > this.minTableSize) {
+            //the table was mostly empty even before clearing it, so replace it with a smaller one instead of zeroing all of it. otherwise a map which is
+            // filled and cleared over and over would keep the table from its largest fill forever
+            this.detachSnapshots();
+
+            long oldTableAddr = this.tableAddr;
+            long oldTableSize = this.tableSize;
+            long newTableSize = this.shrunkTableSize();
+            this.setTableSize(newTableSize);
+            this.resizeCount++;
+            Int3CollectionStats.recordResize(Int3UByteLinkedHashMap.class);
+            this.tableAddr = allocateTable(newTableSize);
+            this.memory.free(oldTableAddr, oldTableSize * BUCKET_BYTES);
+        } else if (this.isEmpty()) { //if the set is empty, there's nothing to clear
+            return;
+        } else {
+            this.detachSnapshots();
+
+            //fill the entire table with zeroes
+            // (since the table isn't empty, we can be sure that the table has been allocated so there's no reason to check for it)
+            PlatformDependent.setMemory(this.tableAddr, this.tableSize * BUCKET_BYTES, (byte) 0);
+        }
 
         //reset all size counters
         this.usedBuckets = 0L;
@@ -699,25 +1509,408 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
             return;
         }
         this.closed = true;
+        this.detachSnapshots();
 
         //actually release memory
-        if (this.tableAddr != 0L) {
-            PlatformDependent.freeMemory(this.tableAddr);
+        this.memory.release();
+        this.tableAddr = 0L;
+        this.nextTableAddr = 0L;
+        this.oldTableAddr = 0L;
+
+        if (Int3CollectionStats.ENABLED) {
+            Int3CollectionStats.untrack(this, Int3UByteLinkedHashMap.class, this.peakSize);
+        }
+    }
+
+    /**
+     * Takes a snapshot of this map. The snapshot is an immutable view of the map as it is now which other threads can read while this map keeps
+     * being modified.
+     * <p>
+     * Nothing is copied up front. The table is split into pages of {@code 2^PAGE_SHIFT} buckets, and the first time a page is modified after the
+     * snapshot was taken, it is copied into the snapshot before the modification. A page which is never modified is read from this map's table. Resizing,
+     * clearing or closing this map copies every page which hasn't been copied yet, since those would otherwise free or overwrite the whole table.
+     * <p>
+     * The snapshot must be closed once it isn't needed anymore. Until then every page modified by this map is copied.
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        this.finishMigration(); //the snapshot only reads the current table
+        if (this.size == 0L) { //an empty snapshot never needs to read the table
+            return new Snapshot(null, 0L, 0L, 0L, -1L);
+        }
+
+        Snapshot snapshot = new Snapshot(this, this.tableAddr, this.tableSize, this.size, this.firstBucketIndex);
+        if (this.snapshots == null) {
+            this.snapshots = new ArrayList<>();
+        }
+        this.snapshots.add(snapshot);
+
+        //the new snapshot doesn't have any pages yet, so every page must be preserved again
+        this.preservedPages = new long[(int) (((this.tableSize >>> PAGE_SHIFT) + 63L) >>> 6)];
+        return snapshot;
+    }
+
+    /**
+     * Must be called before modifying a bucket. Copies the bucket's page into all snapshots which still read it from the table
+     *
+     * @param bucketAddr the address of the bucket
+     */
+    protected void beforeWrite(long bucketAddr) {
+        if (this.snapshots != null) {
+            this.preservePage((bucketAddr - this.tableAddr) / PAGE_BYTES);
+        }
+    }
+
+    protected void preservePage(long page) {
+        long bit = 1L << page;
+        int word = (int) (page >>> 6);
+        if ((this.preservedPages[word] & bit) != 0L) {
+            return;
+        }
+
+        for (Iterator<Snapshot> itr = this.snapshots.iterator(); itr.hasNext(); ) {
+            if (!itr.next().preserve(page)) { //the snapshot was closed
+                itr.remove();
+            }
+        }
+        this.preservedPages[word] |= bit;
+
+        if (this.snapshots.isEmpty()) {
+            this.snapshots = null;
+        }
+    }
+
+    /**
+     * Copies every remaining page into all snapshots so that none of them reads from the current table anymore
+     */
+    protected void detachSnapshots() {
+        if (this.snapshots == null) {
+            return;
+        }
+
+        for (Snapshot snapshot : this.snapshots) {
+            snapshot.preserveAll();
         }
+        this.snapshots = null;
+        this.preservedPages = null;
     }
 
+    /**
+     * @return the statistics of this map's table
+     */
     @Override
-    @SuppressWarnings("deprecation")
-    protected void finalize() {
-        //using a finalizer is bad, i know. however, there's no other reasonable way for me to clean up the memory without pulling in PorkLib:unsafe or
-        // using sun.misc.Cleaner directly...
-        this.close();
+    public Int3CollectionStats getStats() {
+        return new Int3CollectionStats(Int3UByteLinkedHashMap.class.getSimpleName(), 1L, this.memory.getBytes(), this.tableAddr == 0L ? 0L : this.tableSize, this.usedBuckets, this.size,
+            this.resizeCount, Int3CollectionStats.ENABLED ? Math.max(this.peakSize, this.size) : -1L);
+    }
+
+    protected void updatePeakSize() {
+        if (Int3CollectionStats.ENABLED && this.size > this.peakSize) {
+            this.peakSize = this.size;
+        }
+    }
+
+    /**
+     * @return the number of bytes {@link #writeTo(ByteBuffer)} writes
+     */
+    public long serializedBytes() {
+        return Int3Serialization.HEADER_BYTES + this.serializationHeader().dataBytes();
+    }
+
+    /**
+     * Writes this map to the given buffer. The table is copied as it is, so this is a single bulk copy, and so is loading it again with {@link #readFrom(ByteBuffer)}.
+     *
+     * @param buffer the buffer to write to. Its position is advanced by {@link #serializedBytes()}
+     *
+     * @throws java.nio.BufferOverflowException if the buffer doesn't have enough space left. Nothing is written in that case
+     */
+    public void writeTo(ByteBuffer buffer) {
+        Int3Serialization.write(buffer, this.serializationHeader(), this.tableAddr);
+    }
+
+    /**
+     * Writes this map to the given channel at its current position.
+     *
+     * @see #writeTo(ByteBuffer)
+     */
+    public void writeTo(FileChannel channel) throws IOException {
+        Int3Serialization.write(channel, this.serializationHeader(), this.tableAddr);
+    }
+
+    protected Int3Serialization.Header serializationHeader() {
+        //the table is written as it is, so every bucket must be in it. while the next table is still being cleared the resize threshold is raised,
+        // so the whole resize is finished: otherwise the written table could hold more buckets than load() accepts for its size
+        this.finishResize();
+        long tableSize = this.tableAddr == 0L ? 0L : this.tableSize;
+        return new Int3Serialization.Header(Int3Serialization.TYPE_MAP, BUCKET_BYTES, tableSize, this.size, this.usedBuckets, this.firstBucketIndex, this.lastBucketIndex, 0L,
+            tableSize * BUCKET_BYTES);
+    }
+
+    /**
+     * Reads a map written by {@link #writeTo(ByteBuffer)}. The buckets are linked by their indices, so the table is used exactly as it was copied
+     * out of the buffer.
+     *
+     * @param buffer the buffer to read from. Its position is advanced past the map
+     *
+     * @return a new map with the same entries in the same order
+     *
+     * @throws IllegalArgumentException if the buffer doesn't contain a valid map
+     */
+    public static Int3UByteLinkedHashMap readFrom(ByteBuffer buffer) {
+        Int3UByteLinkedHashMap map = new Int3UByteLinkedHashMap();
+        try {
+            map.load(buffer);
+        } catch (RuntimeException e) {
+            map.close();
+            throw e;
+        }
+        return map;
+    }
+
+    /**
+     * Reads a map written by {@link #writeTo(FileChannel)} from the channel's current position. The file is memory-mapped and the table is copied
+     * straight out of the mapping.
+     *
+     * @see #readFrom(ByteBuffer)
+     */
+    public static Int3UByteLinkedHashMap readFrom(FileChannel channel) throws IOException {
+        return Int3Serialization.read(channel, Int3UByteLinkedHashMap::readFrom);
+    }
+
+    /**
+     * Replaces this map's contents, which must be empty, with the map in the given buffer
+     */
+    protected void load(ByteBuffer buffer) {
+        Int3Serialization.Header header = Int3Serialization.readHeader(buffer, Int3Serialization.TYPE_MAP, BUCKET_BYTES);
+        if (header.dataBytes() == 0L) { //the table was never allocated, so the map was empty
+            return;
+        }
+
+        long tableSize = header.tableSize();
+        if (tableSize < DEFAULT_TABLE_SIZE || (tableSize & (tableSize - 1L)) != 0L) {
+            throw new IllegalArgumentException("Corrupt Int3UByteLinkedHashMap: table size " + tableSize + " isn't a power of two");
+        }
+        this.setTableSize(tableSize);
+        if (header.usedBuckets() > this.resizeThreshold) {
+            throw new IllegalArgumentException("Corrupt Int3UByteLinkedHashMap: too many buckets");
+        }
+
+        long tableAddr = this.tableAddr = this.memory.allocate(header.dataBytes());
+        Int3Serialization.copyFromBuffer(buffer, tableAddr, header.dataBytes());
+
+        //walk the list to check it, a broken link would crash the JVM later
+        long buckets = 0L;
+        long size = 0L;
+        long prevIndex = -1L;
+        for (long bucketIndex = header.first(); bucketIndex >= 0L; ) {
+            if (++buckets > header.usedBuckets() || bucketIndex >= tableSize) {
+                throw new IllegalArgumentException("Corrupt Int3UByteLinkedHashMap: broken bucket list");
+            }
+
+            long bucketAddr = tableAddr + bucketIndex * BUCKET_BYTES;
+            if (header.swapped()) {
+                Int3Serialization.swapInts(bucketAddr + BUCKET_KEY_OFFSET, 3);
+                Int3Serialization.swapLongs(bucketAddr + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET, 1);
+                Int3Serialization.swapLongs(bucketAddr + BUCKET_PREVINDEX_OFFSET, 2); //both links
+            }
+
+            long flags = PlatformDependent.getLong(bucketAddr + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET);
+            if (flags == 0L || PlatformDependent.getLong(bucketAddr + BUCKET_PREVINDEX_OFFSET) != prevIndex) {
+                throw new IllegalArgumentException("Corrupt Int3UByteLinkedHashMap: broken bucket list");
+            }
+            size += Long.bitCount(flags);
+
+            prevIndex = bucketIndex;
+            bucketIndex = PlatformDependent.getLong(bucketAddr + BUCKET_NEXTINDEX_OFFSET);
+        }
+
+        if (buckets != header.usedBuckets() || size != header.size() || prevIndex != header.last()) {
+            throw new IllegalArgumentException("Corrupt Int3UByteLinkedHashMap: the bucket list doesn't match the header");
+        }
+
+        this.usedBuckets = buckets;
+        this.size = size;
+        this.firstBucketIndex = header.first() < 0L ? -1L : header.first();
+        this.lastBucketIndex = prevIndex;
+        this.updatePeakSize();
     }
 
     public Int3KeySet int3KeySet(){
         return new Int3KeySet();
     }
 
+    /**
+     * An immutable view of an {@link Int3UByteLinkedHashMap} at the time {@link #snapshot()} was called. It is safe to read a snapshot from any number of
+     * threads while the map is being modified by its own thread.
+     * <p>
+     * A snapshot has a copy of the table which is filled one page at a time: either by the map right before it modifies a page or by a reader which
+     * finds the page hasn't been copied yet. Once a page has been copied it is read without any synchronization.
+     * <p>
+     * Until every page has been copied the snapshot keeps the map reachable, so that the map's table isn't freed by its cleaner while the snapshot
+     * still needs to read from it.
+     */
+    public static class Snapshot implements AutoCloseable {
+        protected static final VarHandle PRESERVED = MethodHandles.arrayElementVarHandle(long[].class);
+
+        protected final OffHeapMemory memory = OffHeapMemory.create(this, Snapshot.class); //owns the copy of the table
+        protected final long tableAddr; //the map's table, only read while holding this snapshot's lock
+        protected final long copyAddr; //the copy of the table. only pages whose bit is set in preserved have been copied
+        protected final long tableSize;
+        protected final long size;
+        protected final long firstBucketIndex;
+        protected final long[] preserved;
+
+        protected Int3UByteLinkedHashMap owner; //the map whose table is read. null once every page has been copied or this snapshot is closed
+        protected long remainingPages; //the number of pages which haven't been copied yet
+        protected boolean closed = false;
+
+        protected Snapshot(Int3UByteLinkedHashMap owner, long tableAddr, long tableSize, long size, long firstBucketIndex) {
+            this.owner = owner;
+            this.remainingPages = tableSize >>> PAGE_SHIFT;
+            this.tableAddr = tableAddr;
+            this.tableSize = tableSize;
+            this.size = size;
+            this.firstBucketIndex = firstBucketIndex;
+
+            //the copy is allocated but not written, so pages that are never copied usually don't take up any physical memory
+            this.copyAddr = tableSize == 0L ? 0L : this.memory.allocate(tableSize * BUCKET_BYTES);
+            this.preserved = new long[(int) (((tableSize >>> PAGE_SHIFT) + 63L) >>> 6)];
+        }
+
+        /**
+         * Copies a page from the map's table if it hasn't been copied yet
+         *
+         * @return false if this snapshot has been closed
+         */
+        protected synchronized boolean preserve(long page) {
+            if (this.closed) {
+                return false;
+            }
+
+            int word = (int) (page >>> 6);
+            long bit = 1L << page;
+            if ((this.preserved[word] & bit) == 0L) {
+                PlatformDependent.copyMemory(this.tableAddr + page * PAGE_BYTES, this.copyAddr + page * PAGE_BYTES, PAGE_BYTES);
+                PRESERVED.setVolatile(this.preserved, word, this.preserved[word] | bit);
+                if (--this.remainingPages == 0L) { //the table is never read again
+                    this.owner = null;
+                }
+            }
+            return true;
+        }
+
+        protected void preserveAll() {
+            for (long page = 0L, pages = this.tableSize >>> PAGE_SHIFT; page < pages; page++) {
+                if (!this.preserve(page)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return the address of a bucket in the copy of the table, copying its page first if necessary
+         */
+        protected long bucketAddr(long bucketIndex) {
+            long page = bucketIndex >>> PAGE_SHIFT;
+            if (((long) PRESERVED.getVolatile(this.preserved, (int) (page >>> 6)) & (1L << page)) == 0L) {
+                this.preserve(page);
+            }
+            return this.copyAddr + bucketIndex * BUCKET_BYTES;
+        }
+
+        protected long findBucket(int x, int y, int z) {
+            if (this.size == 0L) {
+                return 0L;
+            }
+
+            long mask = this.tableSize - 1L;
+            long hash = hashPosition(x, y, z);
+            for (long i = 0L; ; i++) {
+                long bucketAddr = this.bucketAddr((hash + i) & mask);
+
+                if (PlatformDependent.getLong(bucketAddr + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET) == 0L) { //the bucket is unset, so the position isn't present
+                    return 0L;
+                } else if (PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_X_OFFSET) == x
+                           && PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_Y_OFFSET) == y
+                           && PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_Z_OFFSET) == z) {
+                    return bucketAddr;
+                }
+            }
+        }
+
+        /**
+         * @return the value of the given position, or {@link #DEFAULT_RETURN_VALUE} if it wasn't present
+         *
+         * @see Int3UByteLinkedHashMap#get(int, int, int)
+         */
+        public int get(int x, int y, int z) {
+            int index = positionIndex(x, y, z);
+            long bucketAddr = this.findBucket(x >> BUCKET_AXIS_BITS, y >> BUCKET_AXIS_BITS, z >> BUCKET_AXIS_BITS);
+
+            if (bucketAddr != 0L && (PlatformDependent.getLong(bucketAddr + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET) & (1L << index)) != 0L) {
+                return PlatformDependent.getByte(bucketAddr + BUCKET_VALUE_OFFSET + VALUE_VALS_OFFSET + index * Byte.BYTES) & 0xFF;
+            } else {
+                return DEFAULT_RETURN_VALUE;
+            }
+        }
+
+        /**
+         * @see Int3UByteLinkedHashMap#containsKey(int, int, int)
+         */
+        public boolean containsKey(int x, int y, int z) {
+            return this.get(x, y, z) != DEFAULT_RETURN_VALUE;
+        }
+
+        /**
+         * Runs the given callback function on every entry in this snapshot, bucket by bucket in the order the map's buckets were created.
+         *
+         * @see Int3UByteLinkedHashMap#forEach(EntryConsumer)
+         */
+        public void forEach(EntryConsumer action) {
+            for (long bucketIndex = this.firstBucketIndex; bucketIndex >= 0L; ) {
+                long bucketAddr = this.bucketAddr(bucketIndex);
+
+                int bucketX = PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_X_OFFSET) << BUCKET_AXIS_BITS;
+                int bucketY = PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_Y_OFFSET) << BUCKET_AXIS_BITS;
+                int bucketZ = PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_Z_OFFSET) << BUCKET_AXIS_BITS;
+                long flags = PlatformDependent.getLong(bucketAddr + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET);
+
+                while (flags != 0L) {
+                    int index = Long.numberOfTrailingZeros(flags);
+                    flags &= flags - 1L;
+
+                    action.accept(bucketX + (index >> (BUCKET_AXIS_BITS * 2)), bucketY + ((index >> BUCKET_AXIS_BITS) & BUCKET_AXIS_MASK), bucketZ + (index & BUCKET_AXIS_MASK),
+                        PlatformDependent.getByte(bucketAddr + BUCKET_VALUE_OFFSET + VALUE_VALS_OFFSET + index * Byte.BYTES) & 0xFF);
+                }
+
+                bucketIndex = PlatformDependent.getLong(bucketAddr + BUCKET_NEXTINDEX_OFFSET);
+            }
+        }
+
+        public long size() {
+            return this.size;
+        }
+
+        public boolean isEmpty() {
+            return this.size == 0L;
+        }
+
+        /**
+         * Releases the copy of the table. No other thread may be reading this snapshot while this is running
+         */
+        @Override
+        public synchronized void close() {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.owner = null;
+
+            this.memory.release();
+        }
+    }
+
     /**
      * A function which accepts a map entry (consisting of 3 {@code int}s for the key and 1 {@code int} for the value) as a parameter.
      */
@@ -750,6 +1943,7 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
         int offset = -1;
 
         public LongKeyIterator(){
+            finishMigration();
             if(tableAddr == 0){
                 bucketIndex = -1;
                 currentValue = 0;
@@ -841,6 +2035,7 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
         public long firstLong() {
             if (size == 0)
                 throw new NoSuchElementException();
+            finishMigration();
 
             long bucketAddr = tableAddr + firstBucketIndex * BUCKET_BYTES;
 
@@ -862,6 +2057,7 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
         public long lastLong() {
             if (size == 0)
                 throw new NoSuchElementException();
+            finishMigration();
 
             long bucketAddr = tableAddr + lastBucketIndex * BUCKET_BYTES;
 
@@ -884,16 +2080,21 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
     public class Int3KeySet{
         //This is the only method that ever gets called on it
         public void forEach(XYZConsumer action){
-            if (tableAddr == 0L //table hasn't even been allocated
-                || isEmpty()) { //no entries are present
-                return; //there's nothing to iterate over...
-            }
+            forEachKey(action);
+        }
+    }
 
-            if (usedBuckets >= (tableSize >> 1L)) { //table is at least half-full
-                forEachKeyFull(action);
-            } else {
-                forEachKeySparse(action);
-            }
+    private void forEachKey(XYZConsumer action) {
+        this.finishMigration();
+        if (this.tableAddr == 0L //table hasn't even been allocated
+            || this.isEmpty()) { //no entries are present
+            return; //there's nothing to iterate over...
+        }
+
+        if (this.usedBuckets >= (this.tableSize >> 1L)) { //table is at least half-full
+            this.forEachKeyFull(action);
+        } else {
+            this.forEachKeySparse(action);
         }
     }
 
@@ -935,12 +2136,92 @@ public class Int3UByteLinkedHashMap implements AutoCloseable {
         }
     }
 
-    //TODO: Make this more efficient
-    public LinkedInt3HashSet keySet(){
-        LinkedInt3HashSet set = new LinkedInt3HashSet();
-        this.forEach((x, y, z, __) -> {
-            set.add(x, y, z);
-        });
-        return set;
+    /**
+     * Gets a view of the keys in this map. The view reads the map's buckets directly so it never copies anything and always reflects the current
+     * contents of this map.
+     * <p>
+     * The view is read-only, positions can't be added or removed through it. It can be passed to the bulk operations of {@link LinkedInt3HashSet},
+     * such as {@link LinkedInt3HashSet#addAll(Int3Set)}.
+     *
+     * @return the key set view. The same instance is returned every time
+     *
+     * @see java.util.Map#keySet()
+     */
+    public Int3Set keySet(){
+        KeySetView view = this.keySetView;
+        if (view == null) {
+            this.keySetView = view = new KeySetView();
+        }
+        return view;
+    }
+
+    /**
+     * An {@link Int3Set} which reads the keys of the enclosing map.
+     */
+    protected class KeySetView implements Int3Set {
+        @Override
+        public boolean contains(int x, int y, int z) {
+            return Int3UByteLinkedHashMap.this.containsKey(x, y, z);
+        }
+
+        @Override
+        public long size() {
+            return Int3UByteLinkedHashMap.this.size;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return Int3UByteLinkedHashMap.this.isEmpty();
+        }
+
+        @Override
+        public void forEach(XYZConsumer action) {
+            Int3UByteLinkedHashMap.this.forEachKey(action);
+        }
+
+        @Override
+        public void forEachInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, XYZConsumer action) {
+            Int3UByteLinkedHashMap.this.forEachInBox(minX, minY, minZ, maxX, maxY, maxZ, (x, y, z, value) -> action.accept(x, y, z));
+        }
+
+        @Override
+        public long countInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+            return Int3UByteLinkedHashMap.this.countInBox(minX, minY, minZ, maxX, maxY, maxZ);
+        }
+
+        @Override
+        public boolean containsAnyInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+            return Int3UByteLinkedHashMap.this.containsAnyInBox(minX, minY, minZ, maxX, maxY, maxZ);
+        }
+
+        @Override
+        public void forEachBucket(BucketVisitor visitor) {
+            Int3UByteLinkedHashMap.this.finishMigration();
+            long tableAddr = Int3UByteLinkedHashMap.this.tableAddr;
+            if (tableAddr == 0L) {
+                return;
+            }
+
+            for (long bucketIndex = Int3UByteLinkedHashMap.this.firstBucketIndex; bucketIndex >= 0L; ) {
+                long bucketAddr = tableAddr + bucketIndex * BUCKET_BYTES;
+                boolean keepGoing = visitor.visit(
+                    PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_X_OFFSET),
+                    PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_Y_OFFSET),
+                    PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_Z_OFFSET),
+                    PlatformDependent.getLong(bucketAddr + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET)
+                );
+
+                if (!keepGoing) {
+                    return;
+                }
+                bucketIndex = PlatformDependent.getLong(bucketAddr + BUCKET_NEXTINDEX_OFFSET);
+            }
+        }
+
+        @Override
+        public long getBucketFlags(int bucketX, int bucketY, int bucketZ) {
+            long bucketAddr = Int3UByteLinkedHashMap.this.findBucket(bucketX, bucketY, bucketZ, false);
+            return bucketAddr == 0L ? 0L : PlatformDependent.getLong(bucketAddr + BUCKET_VALUE_OFFSET + VALUE_FLAGS_OFFSET);
+        }
     }
 }
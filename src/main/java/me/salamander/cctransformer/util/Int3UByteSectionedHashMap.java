@@ -0,0 +1,758 @@
+package me.salamander.cctransformer.util;
+
+import net.minecraft.core.BlockPos;
+
+import java.util.Arrays;
+
+/**
+ * A hash-map for 3-dimensional vectors with {@code int} components, mapped to unsigned {@code byte} values, with the same API as
+ * {@link Int3UByteLinkedHashMap} but organized by 16x16x16 section.
+ * <p>
+ * The map has two levels. The section index is a hash table of {@link Section}s keyed by section coordinates. Every section has its own small hash table of
+ * the same 4x4x4 buckets {@link Int3UByteLinkedHashMap} uses. A section's table starts with room for a few buckets and grows up to all 64 buckets of the
+ * section. A bucket's home slot is its index inside of the section, so at that size every bucket is in its home slot and the table is a dense array.
+ * <p>
+ * Compared to the flat map:
+ * <ul>
+ *     <li>the entries of a section are stored together, so propagating through a section only touches a few kilobytes</li>
+ *     <li>a whole section can be dropped in O(1) with {@link #removeSection(int, int, int)}</li>
+ *     <li>growing only ever rehashes a single section's table, which has at most 64 buckets, or the section index, which rehashes one reference per
+ *     section but doesn't move any entries</li>
+ * </ul>
+ * {@link #poll(Int3UByteLinkedHashMap.EntryConsumer)} returns entries section by section, in the order the sections were created.
+ * <p>
+ * The sections are Java arrays rather than off-heap memory, so a dropped section is simply left to the garbage collector. Empty sections are dropped
+ * automatically.
+ * <p>
+ * Not thread-safe.
+ *
+ * @author Salamander
+ */
+public class Int3UByteSectionedHashMap implements AutoCloseable {
+    public static final int DEFAULT_RETURN_VALUE = -1;
+
+    protected static final int BUCKET_AXIS_BITS = 2; //the number of bits per axis which are used inside of the bucket rather than identifying the bucket
+    protected static final int BUCKET_AXIS_MASK = (1 << BUCKET_AXIS_BITS) - 1;
+    protected static final int BUCKET_SIZE = 1 << (BUCKET_AXIS_BITS * 3); //the number of entries per bucket
+
+    protected static final int SECTION_AXIS_BITS = 4; //the number of bits per axis which are used inside of the section rather than identifying the section
+    protected static final int SECTION_BUCKET_AXIS_BITS = SECTION_AXIS_BITS - BUCKET_AXIS_BITS;
+    protected static final int SECTION_BUCKET_AXIS_MASK = (1 << SECTION_BUCKET_AXIS_BITS) - 1;
+    protected static final int SECTION_BUCKETS = 1 << (SECTION_BUCKET_AXIS_BITS * 3); //the number of buckets per section. must not be more than 64
+
+    protected static final int DEFAULT_SECTION_CAPACITY = 4; //the number of buckets a new section has room for
+    protected static final int DEFAULT_INDEX_SIZE = 16;
+
+    protected static int bucketIndex(int x, int y, int z) { //the index of a position's bucket inside of its section
+        return (((x >> BUCKET_AXIS_BITS) & SECTION_BUCKET_AXIS_MASK) << (SECTION_BUCKET_AXIS_BITS * 2))
+            | (((y >> BUCKET_AXIS_BITS) & SECTION_BUCKET_AXIS_MASK) << SECTION_BUCKET_AXIS_BITS)
+            | ((z >> BUCKET_AXIS_BITS) & SECTION_BUCKET_AXIS_MASK);
+    }
+
+    protected static int positionIndex(int x, int y, int z) { //the index of a position inside of its bucket
+        return ((x & BUCKET_AXIS_MASK) << (BUCKET_AXIS_BITS * 2)) | ((y & BUCKET_AXIS_MASK) << BUCKET_AXIS_BITS) | (z & BUCKET_AXIS_MASK);
+    }
+
+    protected static int indexHash(int sectionX, int sectionY, int sectionZ, int mask) {
+        return (int) LinkedInt3HashSet.hashPosition(sectionX, sectionY, sectionZ) & mask;
+    }
+
+    protected Section[] index = new Section[DEFAULT_INDEX_SIZE]; //open addressing with linear probing, null slots are empty
+    protected int indexResizeThreshold = (DEFAULT_INDEX_SIZE >> 1) + (DEFAULT_INDEX_SIZE >> 2);
+    protected int sectionCount = 0;
+
+    protected Section firstSection; //the sections in the order they were created
+    protected Section lastSection;
+    protected Section lastAccessed; //the section found by the last lookup, checked before the index since lookups tend to stay in one section
+
+    protected long size = 0L; //the number of entries stored in the map
+
+    /**
+     * Inserts an entry into this map at the given position with the given value.
+     * <p>
+     * If an entry with the given position is already present in this map, it will be replaced.
+     *
+     * @param value the value to insert. Must be an unsigned {@code byte}
+     *
+     * @return the previous entry's value, or {@link #DEFAULT_RETURN_VALUE} if no such entry was present
+     *
+     * @see Int3UByteLinkedHashMap#put(int, int, int, int)
+     */
+    public int put(int x, int y, int z, int value) {
+        Section section = this.findSection(x >> SECTION_AXIS_BITS, y >> SECTION_AXIS_BITS, z >> SECTION_AXIS_BITS, true);
+        int slot = section.findSlot(bucketIndex(x, y, z), true);
+        int index = positionIndex(x, y, z);
+        long flag = 1L << index;
+
+        int valueIndex = slot * BUCKET_SIZE + index;
+        long flags = section.flags[slot];
+        if ((flags & flag) == 0L) { //the entry is new
+            section.flags[slot] = flags | flag;
+            section.values[valueIndex] = (byte) value;
+            section.size++;
+            this.size++;
+            return DEFAULT_RETURN_VALUE;
+        } else {
+            int oldValue = section.values[valueIndex] & 0xFF;
+            section.values[valueIndex] = (byte) value;
+            return oldValue;
+        }
+    }
+
+    /**
+     * Inserts an entry into this map at the given position with the given value, unless an entry with the given position is already present.
+     *
+     * @param value the value to insert. Must be an unsigned {@code byte}
+     *
+     * @return the existing entry's value, or {@link #DEFAULT_RETURN_VALUE} if no such entry was present and the new one was inserted
+     *
+     * @see Int3UByteLinkedHashMap#putIfAbsent(int, int, int, int)
+     */
+    public int putIfAbsent(int x, int y, int z, int value) {
+        Section section = this.findSection(x >> SECTION_AXIS_BITS, y >> SECTION_AXIS_BITS, z >> SECTION_AXIS_BITS, true);
+        int slot = section.findSlot(bucketIndex(x, y, z), true);
+        int index = positionIndex(x, y, z);
+        long flag = 1L << index;
+
+        long flags = section.flags[slot];
+        if ((flags & flag) == 0L) {
+            section.flags[slot] = flags | flag;
+            section.values[slot * BUCKET_SIZE + index] = (byte) value;
+            section.size++;
+            this.size++;
+            return DEFAULT_RETURN_VALUE;
+        } else {
+            return section.values[slot * BUCKET_SIZE + index] & 0xFF;
+        }
+    }
+
+    /**
+     * Checks whether or not this map contains an entry at the given position.
+     *
+     * @see Int3UByteLinkedHashMap#containsKey(int, int, int)
+     */
+    public boolean containsKey(int x, int y, int z) {
+        return this.get(x, y, z) != DEFAULT_RETURN_VALUE;
+    }
+
+    /**
+     * Gets the value of the entry at the given position.
+     *
+     * @return the entry's value, or {@link #DEFAULT_RETURN_VALUE} if no such entry was present
+     *
+     * @see Int3UByteLinkedHashMap#get(int, int, int)
+     */
+    public int get(int x, int y, int z) {
+        Section section = this.findSection(x >> SECTION_AXIS_BITS, y >> SECTION_AXIS_BITS, z >> SECTION_AXIS_BITS, false);
+        if (section == null) {
+            return DEFAULT_RETURN_VALUE;
+        }
+
+        int slot = section.findSlot(bucketIndex(x, y, z), false);
+        int index = positionIndex(x, y, z);
+        if (slot < 0 || (section.flags[slot] & (1L << index)) == 0L) {
+            return DEFAULT_RETURN_VALUE;
+        }
+        return section.values[slot * BUCKET_SIZE + index] & 0xFF;
+    }
+
+    /**
+     * Removes the entry at the given position from this map.
+     *
+     * @return the old value at the given position, or {@link #DEFAULT_RETURN_VALUE} if the position wasn't present
+     *
+     * @see Int3UByteLinkedHashMap#remove(int, int, int)
+     */
+    public int remove(int x, int y, int z) {
+        Section section = this.findSection(x >> SECTION_AXIS_BITS, y >> SECTION_AXIS_BITS, z >> SECTION_AXIS_BITS, false);
+        if (section == null) {
+            return DEFAULT_RETURN_VALUE;
+        }
+
+        int slot = section.findSlot(bucketIndex(x, y, z), false);
+        int index = positionIndex(x, y, z);
+        long flag = 1L << index;
+        if (slot < 0 || (section.flags[slot] & flag) == 0L) {
+            return DEFAULT_RETURN_VALUE;
+        }
+
+        int oldValue = section.values[slot * BUCKET_SIZE + index] & 0xFF;
+        this.removeEntries(section, slot, flag);
+        return oldValue;
+    }
+
+    /**
+     * Gets and removes an entry from this map, then passes it to the given callback function. Entries are removed section by section, starting with the
+     * oldest section.
+     * <p>
+     * The callback function is allowed to modify this map.
+     *
+     * @param action the callback function
+     *
+     * @return whether or not the callback function was invoked. A return value of {@code false} indicates that the map was already empty
+     *
+     * @see Int3UByteLinkedHashMap#poll(Int3UByteLinkedHashMap.EntryConsumer)
+     */
+    public boolean poll(Int3UByteLinkedHashMap.EntryConsumer action) {
+        Section section = this.firstSection;
+        if (section == null) {
+            return false;
+        }
+
+        int slot = Long.numberOfTrailingZeros(section.occupied);
+        int index = Long.numberOfTrailingZeros(section.flags[slot]);
+        int bucket = section.keys[slot];
+        int value = section.values[slot * BUCKET_SIZE + index] & 0xFF;
+
+        int x = section.bucketX(bucket) << BUCKET_AXIS_BITS | index >> (BUCKET_AXIS_BITS * 2);
+        int y = section.bucketY(bucket) << BUCKET_AXIS_BITS | (index >> BUCKET_AXIS_BITS) & BUCKET_AXIS_MASK;
+        int z = section.bucketZ(bucket) << BUCKET_AXIS_BITS | index & BUCKET_AXIS_MASK;
+
+        this.removeEntries(section, slot, 1L << index);
+
+        action.accept(x, y, z, value);
+        return true;
+    }
+
+    /**
+     * Runs the given callback function on every entry in this map, section by section.
+     * <p>
+     * The callback function must not modify this map.
+     *
+     * @see Int3UByteLinkedHashMap#forEach(Int3UByteLinkedHashMap.EntryConsumer)
+     */
+    public void forEach(Int3UByteLinkedHashMap.EntryConsumer action) {
+        for (Section section = this.firstSection; section != null; section = section.next) {
+            for (long occupied = section.occupied; occupied != 0L; occupied &= occupied - 1L) {
+                int slot = Long.numberOfTrailingZeros(occupied);
+                section.forEachInSlot(slot, section.flags[slot], action);
+            }
+        }
+    }
+
+    /**
+     * Runs the given callback function on every entry in this map whose position is inside of the given box (inclusive). Only the sections the box covers
+     * are visited, or every section if that is fewer.
+     * <p>
+     * The callback function must not modify this map.
+     *
+     * @see Int3UByteLinkedHashMap#forEachInBox(int, int, int, int, int, int, Int3UByteLinkedHashMap.EntryConsumer)
+     */
+    public void forEachInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, Int3UByteLinkedHashMap.EntryConsumer action) {
+        this.forEachSlotInBox(minX, minY, minZ, maxX, maxY, maxZ, (section, slot, flags) -> {
+            section.forEachInSlot(slot, flags, action);
+            return true;
+        });
+    }
+
+    /**
+     * @return the number of entries in this map whose position is inside of the given box (inclusive)
+     */
+    public long countInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        long[] count = {0L};
+        this.forEachSlotInBox(minX, minY, minZ, maxX, maxY, maxZ, (section, slot, flags) -> {
+            count[0] += Long.bitCount(flags);
+            return true;
+        });
+        return count[0];
+    }
+
+    /**
+     * @return whether or not any entry in this map has a position inside of the given box (inclusive)
+     */
+    public boolean containsAnyInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        boolean[] found = {false};
+        this.forEachSlotInBox(minX, minY, minZ, maxX, maxY, maxZ, (section, slot, flags) -> {
+            found[0] = true;
+            return false;
+        });
+        return found[0];
+    }
+
+    /**
+     * Removes every entry in this map whose position is inside of the given box (inclusive). Every slot of every section the box touches is visited,
+     * even for sections which are completely inside of the box. Sections that end up empty are then dropped instead of having their slots removed one
+     * by one. Use {@link #removeSection(int, int, int)} to drop a whole section without visiting it.
+     *
+     * @return the number of entries removed
+     */
+    public long removeInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        long oldSize = this.size;
+
+        //slots can't be deleted while visiting them because deleting shifts the other slots of the section around, so the flags are cleared first and
+        // the emptied slots are deleted once the section is done
+        Section[] current = {null};
+        this.forEachSlotInBox(minX, minY, minZ, maxX, maxY, maxZ, (section, slot, flags) -> {
+            if (section != current[0]) {
+                if (current[0] != null) {
+                    this.removeEmptySlots(current[0]);
+                }
+                current[0] = section;
+            }
+
+            int removed = Long.bitCount(flags);
+            section.flags[slot] &= ~flags;
+            section.size -= removed;
+            this.size -= removed;
+            return true;
+        });
+        if (current[0] != null) {
+            this.removeEmptySlots(current[0]);
+        }
+
+        return oldSize - this.size;
+    }
+
+    /**
+     * Removes every entry in the section with the given section coordinates (the position's coordinates shifted right by {@link #SECTION_AXIS_BITS}).
+     * This doesn't depend on the number of entries in the section.
+     *
+     * @return the number of entries removed
+     */
+    public int removeSection(int sectionX, int sectionY, int sectionZ) {
+        Section section = this.findSection(sectionX, sectionY, sectionZ, false);
+        if (section == null) {
+            return 0;
+        }
+
+        int removed = section.size;
+        this.dropSection(section);
+        return removed;
+    }
+
+    /**
+     * @return the number of entries in the section with the given section coordinates
+     */
+    public int sectionSize(int sectionX, int sectionY, int sectionZ) {
+        Section section = this.findSection(sectionX, sectionY, sectionZ, false);
+        return section == null ? 0 : section.size;
+    }
+
+    /**
+     * Removes every entry from this map.
+     */
+    public void clear() {
+        Arrays.fill(this.index, null);
+        this.sectionCount = 0;
+        this.firstSection = null;
+        this.lastSection = null;
+        this.lastAccessed = null;
+        this.size = 0L;
+    }
+
+    /**
+     * @return the number of entries stored in this map
+     */
+    public long longSize() {
+        return this.size;
+    }
+
+    public int size() {
+        return (int) this.size;
+    }
+
+    /**
+     * @return whether or not this map is empty (contains no entries)
+     */
+    public boolean isEmpty() {
+        return this.size == 0L;
+    }
+
+    /**
+     * @return the number of sections with at least one entry
+     */
+    public int sectionCount() {
+        return this.sectionCount;
+    }
+
+    /**
+     * Removes every entry. Nothing is stored off-heap, so this only exists to be interchangeable with {@link Int3UByteLinkedHashMap}.
+     */
+    @Override
+    public void close() {
+        this.clear();
+    }
+
+    protected Section findSection(int sectionX, int sectionY, int sectionZ, boolean createIfAbsent) {
+        Section section = this.lastAccessed;
+        if (section != null && section.x == sectionX && section.y == sectionY && section.z == sectionZ) {
+            return section;
+        }
+
+        Section[] index = this.index;
+        int mask = index.length - 1;
+        for (int i = indexHash(sectionX, sectionY, sectionZ, mask); ; i = (i + 1) & mask) {
+            section = index[i];
+            if (section == null) {
+                if (!createIfAbsent) {
+                    return null;
+                }
+
+                if (this.sectionCount >= this.indexResizeThreshold) { //grow the index before adding a section to avoid overfilling it
+                    this.resizeIndex();
+                    return this.findSection(sectionX, sectionY, sectionZ, true);
+                }
+
+                section = index[i] = new Section(sectionX, sectionY, sectionZ);
+                this.sectionCount++;
+
+                //append the new section to the list
+                section.prev = this.lastSection;
+                if (this.lastSection == null) {
+                    this.firstSection = section;
+                } else {
+                    this.lastSection.next = section;
+                }
+                this.lastSection = section;
+
+                return this.lastAccessed = section;
+            } else if (section.x == sectionX && section.y == sectionY && section.z == sectionZ) {
+                return this.lastAccessed = section;
+            }
+        }
+    }
+
+    /**
+     * Doubles the size of the section index and rehashes every section into it. The entries of the sections aren't touched
+     */
+    protected void resizeIndex() {
+        Section[] index = new Section[this.index.length << 1];
+        int mask = index.length - 1;
+        for (Section section = this.firstSection; section != null; section = section.next) {
+            int i = indexHash(section.x, section.y, section.z, mask);
+            while (index[i] != null) {
+                i = (i + 1) & mask;
+            }
+            index[i] = section;
+        }
+
+        this.index = index;
+        this.indexResizeThreshold = (index.length >> 1) + (index.length >> 2); //count * 0.75
+    }
+
+    /**
+     * Removes a section from the index and the list, along with all of its entries
+     */
+    protected void dropSection(Section section) {
+        this.size -= section.size;
+        this.sectionCount--;
+        if (this.lastAccessed == section) {
+            this.lastAccessed = null;
+        }
+
+        if (section.prev == null) {
+            this.firstSection = section.next;
+        } else {
+            section.prev.next = section.next;
+        }
+        if (section.next == null) {
+            this.lastSection = section.prev;
+        } else {
+            section.next.prev = section.prev;
+        }
+
+        //adapted from it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap#shiftKeys(int)
+        Section[] index = this.index;
+        int mask = index.length - 1;
+        int pos = indexHash(section.x, section.y, section.z, mask);
+        while (index[pos] != section) {
+            pos = (pos + 1) & mask;
+        }
+
+        while (true) {
+            int last = pos;
+            Section curr;
+            for (pos = (pos + 1) & mask; ; pos = (pos + 1) & mask) {
+                if ((curr = index[pos]) == null) {
+                    index[last] = null;
+                    return;
+                }
+
+                int slot = indexHash(curr.x, curr.y, curr.z, mask);
+                if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos) {
+                    break;
+                }
+            }
+            index[last] = curr;
+        }
+    }
+
+    /**
+     * Removes the entries whose flags are set in {@code removed} from a slot, which must all be present. Deletes the slot or the whole section if they become empty
+     */
+    protected void removeEntries(Section section, int slot, long removed) {
+        int count = Long.bitCount(removed);
+        section.size -= count;
+        this.size -= count;
+
+        if ((section.flags[slot] &= ~removed) == 0L) {
+            if (section.size == 0) {
+                this.dropSection(section);
+            } else {
+                section.removeSlot(slot);
+            }
+        }
+    }
+
+    protected void removeEmptySlots(Section section) {
+        if (section.size == 0) {
+            this.dropSection(section);
+            return;
+        }
+
+        for (long empty = section.emptySlots(); empty != 0L; empty = section.emptySlots()) {
+            section.removeSlot(Long.numberOfTrailingZeros(empty));
+        }
+    }
+
+    /**
+     * Visits every slot which has entries inside of the given box (inclusive), with its flags masked to only those entries. If the box covers fewer sections
+     * than there are, each of them is looked up, otherwise every section is checked. The visitor must not modify this map, but all the slots of a section
+     * are visited one after the other.
+     */
+    protected void forEachSlotInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, SlotVisitor visitor) {
+        if (this.isEmpty() || minX > maxX || minY > maxY || minZ > maxZ) {
+            return;
+        }
+
+        int minSectionX = minX >> SECTION_AXIS_BITS;
+        int minSectionY = minY >> SECTION_AXIS_BITS;
+        int minSectionZ = minZ >> SECTION_AXIS_BITS;
+        int maxSectionX = maxX >> SECTION_AXIS_BITS;
+        int maxSectionY = maxY >> SECTION_AXIS_BITS;
+        int maxSectionZ = maxZ >> SECTION_AXIS_BITS;
+
+        //doubles, since the product of three spans can overflow a long
+        if ((double) (maxSectionX - minSectionX + 1L) * (maxSectionY - minSectionY + 1L) * (maxSectionZ - minSectionZ + 1L) <= this.sectionCount) {
+            for (int sectionX = minSectionX; sectionX <= maxSectionX; sectionX++) {
+                for (int sectionY = minSectionY; sectionY <= maxSectionY; sectionY++) {
+                    for (int sectionZ = minSectionZ; sectionZ <= maxSectionZ; sectionZ++) {
+                        Section section = this.findSection(sectionX, sectionY, sectionZ, false);
+                        if (section != null && !section.forEachSlotInBox(minX, minY, minZ, maxX, maxY, maxZ, visitor)) {
+                            return;
+                        }
+                    }
+                }
+            }
+        } else {
+            for (Section section = this.firstSection, next; section != null; section = next) {
+                next = section.next; //the visitor may drop the section through removeInBox
+
+                if (section.x >= minSectionX && section.x <= maxSectionX && section.y >= minSectionY && section.y <= maxSectionY
+                    && section.z >= minSectionZ && section.z <= maxSectionZ
+                    && !section.forEachSlotInBox(minX, minY, minZ, maxX, maxY, maxZ, visitor)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    protected interface SlotVisitor {
+        /**
+         * @return whether or not to keep visiting slots
+         */
+        boolean visit(Section section, int slot, long flags);
+    }
+
+    //Methods for vanilla compatibility
+
+    public byte get(long l) {
+        return (byte) this.get(BlockPos.getX(l), BlockPos.getY(l), BlockPos.getZ(l));
+    }
+
+    public byte remove(long l) {
+        return (byte) this.remove(BlockPos.getX(l), BlockPos.getY(l), BlockPos.getZ(l));
+    }
+
+    public byte put(long l, byte value) {
+        return (byte) this.put(BlockPos.getX(l), BlockPos.getY(l), BlockPos.getZ(l), value);
+    }
+
+    /**
+     * The buckets of one 16x16x16 section, in a hash table of up to {@link #SECTION_BUCKETS} slots. A bucket's home slot is its index inside of the section,
+     * masked to the table size.
+     */
+    protected static class Section {
+        protected final int x;
+        protected final int y;
+        protected final int z;
+
+        protected Section prev;
+        protected Section next;
+
+        protected int size = 0; //the number of entries in this section
+        protected int usedBuckets = 0;
+        protected long occupied = 0L; //bit i is set if slot i holds a bucket. a bucket's flags may be 0 for a moment while entries are removed
+
+        protected byte[] keys = new byte[DEFAULT_SECTION_CAPACITY]; //the bucket index of each slot
+        protected long[] flags = new long[DEFAULT_SECTION_CAPACITY];
+        protected byte[] values = new byte[DEFAULT_SECTION_CAPACITY * BUCKET_SIZE];
+
+        protected Section(int x, int y, int z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        protected static int resizeThreshold(int capacity) {
+            //with every bucket in its home slot a full table can't overflow, so only smaller tables have to keep free slots for probing
+            return capacity == SECTION_BUCKETS ? capacity : (capacity >> 1) + (capacity >> 2); //count * 0.75
+        }
+
+        protected int bucketX(int bucket) {
+            return this.x << SECTION_BUCKET_AXIS_BITS | bucket >> (SECTION_BUCKET_AXIS_BITS * 2);
+        }
+
+        protected int bucketY(int bucket) {
+            return this.y << SECTION_BUCKET_AXIS_BITS | (bucket >> SECTION_BUCKET_AXIS_BITS) & SECTION_BUCKET_AXIS_MASK;
+        }
+
+        protected int bucketZ(int bucket) {
+            return this.z << SECTION_BUCKET_AXIS_BITS | bucket & SECTION_BUCKET_AXIS_MASK;
+        }
+
+        /**
+         * @return the slot of the bucket with the given bucket index, or -1 if it doesn't exist and {@code createIfAbsent} is false
+         */
+        protected int findSlot(int bucket, boolean createIfAbsent) {
+            int mask = this.keys.length - 1;
+            int slot = bucket & mask;
+            for (; (this.occupied & (1L << slot)) != 0L; slot = (slot + 1) & mask) {
+                if (this.keys[slot] == bucket) {
+                    return slot;
+                }
+            }
+
+            if (!createIfAbsent) {
+                return -1;
+            }
+
+            if (this.usedBuckets >= resizeThreshold(this.keys.length)) {
+                this.resize();
+                return this.findSlot(bucket, true);
+            }
+
+            this.usedBuckets++;
+            this.occupied |= 1L << slot;
+            this.keys[slot] = (byte) bucket;
+            this.flags[slot] = 0L;
+            return slot;
+        }
+
+        /**
+         * Doubles the size of this section's table
+         */
+        protected void resize() {
+            byte[] oldKeys = this.keys;
+            long[] oldFlags = this.flags;
+            byte[] oldValues = this.values;
+            long oldOccupied = this.occupied;
+
+            int capacity = oldKeys.length << 1;
+            int mask = capacity - 1;
+            this.keys = new byte[capacity];
+            this.flags = new long[capacity];
+            this.values = new byte[capacity * BUCKET_SIZE];
+            this.occupied = 0L;
+
+            for (; oldOccupied != 0L; oldOccupied &= oldOccupied - 1L) {
+                int oldSlot = Long.numberOfTrailingZeros(oldOccupied);
+                int slot = oldKeys[oldSlot] & mask;
+                while ((this.occupied & (1L << slot)) != 0L) {
+                    slot = (slot + 1) & mask;
+                }
+
+                this.occupied |= 1L << slot;
+                this.keys[slot] = oldKeys[oldSlot];
+                this.flags[slot] = oldFlags[oldSlot];
+                System.arraycopy(oldValues, oldSlot * BUCKET_SIZE, this.values, slot * BUCKET_SIZE, BUCKET_SIZE);
+            }
+        }
+
+        //adapted from it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap#shiftKeys(int)
+        protected void removeSlot(int pos) {
+            this.usedBuckets--;
+            this.occupied &= ~(1L << pos);
+            this.flags[pos] = 0L;
+
+            int mask = this.keys.length - 1;
+            if (this.keys.length == SECTION_BUCKETS) { //every bucket is in its home slot, nothing has to move
+                return;
+            }
+
+            while (true) {
+                int last = pos;
+                for (pos = (pos + 1) & mask; ; pos = (pos + 1) & mask) {
+                    if ((this.occupied & (1L << pos)) == 0L) { //reached an empty slot, last stays empty
+                        return;
+                    }
+
+                    int slot = this.keys[pos] & mask;
+                    if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos) {
+                        break;
+                    }
+                }
+
+                //move the bucket at pos into the empty slot, which leaves pos empty
+                this.keys[last] = this.keys[pos];
+                this.flags[last] = this.flags[pos];
+                System.arraycopy(this.values, pos * BUCKET_SIZE, this.values, last * BUCKET_SIZE, BUCKET_SIZE);
+                this.occupied = (this.occupied | (1L << last)) & ~(1L << pos);
+                this.flags[pos] = 0L;
+            }
+        }
+
+        /**
+         * @return the slots which hold a bucket without any entries
+         */
+        protected long emptySlots() {
+            long empty = 0L;
+            for (long occupied = this.occupied; occupied != 0L; occupied &= occupied - 1L) {
+                int slot = Long.numberOfTrailingZeros(occupied);
+                if (this.flags[slot] == 0L) {
+                    empty |= 1L << slot;
+                }
+            }
+            return empty;
+        }
+
+        protected void forEachInSlot(int slot, long flags, Int3UByteLinkedHashMap.EntryConsumer action) {
+            int bucket = this.keys[slot];
+            int baseX = this.bucketX(bucket) << BUCKET_AXIS_BITS;
+            int baseY = this.bucketY(bucket) << BUCKET_AXIS_BITS;
+            int baseZ = this.bucketZ(bucket) << BUCKET_AXIS_BITS;
+
+            while (flags != 0L) {
+                int index = Long.numberOfTrailingZeros(flags);
+                flags &= flags - 1L;
+
+                action.accept(baseX | index >> (BUCKET_AXIS_BITS * 2), baseY | (index >> BUCKET_AXIS_BITS) & BUCKET_AXIS_MASK, baseZ | index & BUCKET_AXIS_MASK,
+                    this.values[slot * BUCKET_SIZE + index] & 0xFF);
+            }
+        }
+
+        /**
+         * @return false if the visitor asked to stop
+         */
+        protected boolean forEachSlotInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, SlotVisitor visitor) {
+            for (long occupied = this.occupied; occupied != 0L; occupied &= occupied - 1L) {
+                int slot = Long.numberOfTrailingZeros(occupied);
+                int bucket = this.keys[slot];
+                int bucketX = this.bucketX(bucket);
+                int bucketY = this.bucketY(bucket);
+                int bucketZ = this.bucketZ(bucket);
+                if (bucketX < minX >> BUCKET_AXIS_BITS || bucketX > maxX >> BUCKET_AXIS_BITS || bucketY < minY >> BUCKET_AXIS_BITS
+                    || bucketY > maxY >> BUCKET_AXIS_BITS || bucketZ < minZ >> BUCKET_AXIS_BITS || bucketZ > maxZ >> BUCKET_AXIS_BITS) {
+                    continue;
+                }
+
+                long flags = this.flags[slot] & LinkedInt3HashSet.boxFlags(bucketX, bucketY, bucketZ, minX, minY, minZ, maxX, maxY, maxZ);
+                if (flags != 0L && !visitor.visit(this, slot, flags)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package me.salamander.cctransformer.util;
 
 import io.netty.util.internal.PlatformDependent;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import net.minecraft.core.BlockPos;
 import org.apache.commons.lang3.mutable.MutableInt;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 
 /**
@@ -20,7 +26,7 @@ import java.util.NoSuchElementException;
  *
  * @author DaPorkchop_ & Salamander
  */
-public class LinkedInt3HashSet implements AutoCloseable{
+public class LinkedInt3HashSet implements AutoCloseable, Int3CollectionStats.Tracked, Int3Set {
     protected static final long KEY_X_OFFSET = 0L;
     protected static final long KEY_Y_OFFSET = KEY_X_OFFSET + Integer.BYTES;
     protected static final long KEY_Z_OFFSET = KEY_Y_OFFSET + Integer.BYTES;
@@ -38,6 +44,17 @@ public class LinkedInt3HashSet implements AutoCloseable{
 
     protected static final long DEFAULT_TABLE_SIZE = 16L;
 
+    /**
+     * Set this system property to true to make sets and maps created without an explicit resize mode resize incrementally, see
+     * {@link #LinkedInt3HashSet(int, boolean)}
+     */
+    public static final String INCREMENTAL_RESIZE_PROPERTY = "cctransformer.incrementalResize";
+    protected static final boolean INCREMENTAL_RESIZE_DEFAULT = Boolean.getBoolean(INCREMENTAL_RESIZE_PROPERTY);
+    protected static final long INCREMENTAL_RESIZE_STEP = 16L; //the minimum number of old table slots moved by each insertion during an incremental resize
+    //the number of next table slots cleared for each bucket added before an incremental resize starts moving buckets. this has to be more than 16, since
+    // the next table has twice as many slots as the current one and has to be cleared before 1/8 of the current table's slots worth of buckets are added
+    protected static final long INCREMENTAL_CLEAR_STEP = 32L;
+
     protected static final int BUCKET_AXIS_BITS = 2; //the number of bits per axis which are used inside of the bucket rather than identifying the bucket
     protected static final int BUCKET_AXIS_MASK = (1 << BUCKET_AXIS_BITS) - 1;
     protected static final int BUCKET_SIZE = (BUCKET_AXIS_MASK << (BUCKET_AXIS_BITS * 2)) | (BUCKET_AXIS_MASK << BUCKET_AXIS_BITS) | BUCKET_AXIS_MASK;
@@ -52,17 +69,65 @@ public class LinkedInt3HashSet implements AutoCloseable{
         return 1L << (((x & BUCKET_AXIS_MASK) << (BUCKET_AXIS_BITS * 2)) | ((y & BUCKET_AXIS_MASK) << BUCKET_AXIS_BITS) | (z & BUCKET_AXIS_MASK));
     }
 
-    protected static long allocateTable(long tableSize) {
+    //the flags of every position in a bucket whose local coordinate on an axis is between lo and hi (inclusive), indexed by (lo << BUCKET_AXIS_BITS) | hi.
+    // the units are the flags of the positions with a local coordinate of 0, they assume BUCKET_AXIS_BITS is 2
+    private static final long[] X_RANGE_FLAGS = rangeFlags(0x000000000000FFFFL, BUCKET_AXIS_BITS * 2);
+    private static final long[] Y_RANGE_FLAGS = rangeFlags(0x000F000F000F000FL, BUCKET_AXIS_BITS);
+    private static final long[] Z_RANGE_FLAGS = rangeFlags(0x1111111111111111L, 0);
+
+    private static long[] rangeFlags(long unit, int shift) {
+        long[] flags = new long[1 << (BUCKET_AXIS_BITS * 2)];
+        for (int lo = 0; lo <= BUCKET_AXIS_MASK; lo++) {
+            for (int hi = lo; hi <= BUCKET_AXIS_MASK; hi++) {
+                for (int i = lo; i <= hi; i++) {
+                    flags[(lo << BUCKET_AXIS_BITS) | hi] |= unit << (i << shift);
+                }
+            }
+        }
+        return flags;
+    }
+
+    /**
+     * Gets the flags of the positions in a bucket which are inside of a box. {@link Int3UByteLinkedHashMap} uses the same layout, so this works for its buckets too.
+     *
+     * @return the flags of every position in the bucket with the given bucket coordinates which is inside of the box (inclusive)
+     */
+    protected static long boxFlags(int bucketX, int bucketY, int bucketZ, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        int loX = bucketX == minX >> BUCKET_AXIS_BITS ? minX & BUCKET_AXIS_MASK : 0;
+        int hiX = bucketX == maxX >> BUCKET_AXIS_BITS ? maxX & BUCKET_AXIS_MASK : BUCKET_AXIS_MASK;
+        int loY = bucketY == minY >> BUCKET_AXIS_BITS ? minY & BUCKET_AXIS_MASK : 0;
+        int hiY = bucketY == maxY >> BUCKET_AXIS_BITS ? maxY & BUCKET_AXIS_MASK : BUCKET_AXIS_MASK;
+        int loZ = bucketZ == minZ >> BUCKET_AXIS_BITS ? minZ & BUCKET_AXIS_MASK : 0;
+        int hiZ = bucketZ == maxZ >> BUCKET_AXIS_BITS ? maxZ & BUCKET_AXIS_MASK : BUCKET_AXIS_MASK;
+        return X_RANGE_FLAGS[(loX << BUCKET_AXIS_BITS) | hiX] & Y_RANGE_FLAGS[(loY << BUCKET_AXIS_BITS) | hiY] & Z_RANGE_FLAGS[(loZ << BUCKET_AXIS_BITS) | hiZ];
+    }
+
+    /**
+     * @return whether or not a box covers at most the given number of buckets, in which case looking up each of them is cheaper than walking
+     * through every bucket in the table
+     */
+    protected static boolean isSmallBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, long buckets) {
+        //doubles, since the product of three spans can overflow a long
+        return (double) ((maxX >> BUCKET_AXIS_BITS) - (minX >> BUCKET_AXIS_BITS) + 1L)
+               * ((maxY >> BUCKET_AXIS_BITS) - (minY >> BUCKET_AXIS_BITS) + 1L)
+               * ((maxZ >> BUCKET_AXIS_BITS) - (minZ >> BUCKET_AXIS_BITS) + 1L) <= buckets;
+    }
+
+    protected long allocateTable(long tableSize) {
         long size = tableSize * BUCKET_BYTES;
-        long addr = PlatformDependent.allocateMemory(size); //allocate
+        long addr = this.memory.allocate(size); //allocate
         PlatformDependent.setMemory(addr, size, (byte) 0); //clear
         return addr;
     }
 
+    protected final OffHeapMemory memory = OffHeapMemory.create(this, LinkedInt3HashSet.class); //owns the table, frees it if this set is never closed
     protected long tableAddr = 0L; //the address of the table in memory
     protected long tableSize = 0L; //the physical size of the table (in buckets). always a non-zero power of two
     protected long resizeThreshold = 0L;
     protected long usedBuckets = 0L;
+    protected long resizeCount = 0L;
+    protected long peakSize = 0L; //only tracked if Int3CollectionStats.ENABLED
+    protected long minTableSize = DEFAULT_TABLE_SIZE; //the table is never shrunk below this automatically, see shrinkIfSparse()
 
     protected long size = 0L; //the number of values stored in the set
 
@@ -71,14 +136,45 @@ public class LinkedInt3HashSet implements AutoCloseable{
     protected long first = 0;
     protected long last = 0;
 
+    protected final boolean incrementalResize;
+    protected long nextTableAddr = 0L; //the table which an incremental resize is clearing before moving buckets into it, 0 if there is none
+    protected long clearedSlots = 0L; //the number of slots of the next table which have been cleared
+    protected long clearedAtBuckets = 0L; //the number of used buckets when the next table was last cleared
+    protected long oldTableAddr = 0L; //the table which an incremental resize is moving buckets out of, 0 if there is none
+    protected long oldTableSize = 0L;
+    protected long migrationStart = 0L; //the index of an empty slot in the old table. slots are moved in order, starting with the one after it
+    protected long migratedSlots = 0L; //the number of slots of the old table which have been moved
+
     public LinkedInt3HashSet() {
+        this.incrementalResize = INCREMENTAL_RESIZE_DEFAULT;
         this.setTableSize(DEFAULT_TABLE_SIZE);
+
+        if (Int3CollectionStats.ENABLED) {
+            Int3CollectionStats.track(this);
+        }
     }
 
     public LinkedInt3HashSet(int initialCapacity) {
+        this(initialCapacity, INCREMENTAL_RESIZE_DEFAULT);
+    }
+
+    /**
+     * @param initialCapacity the number of positions which can be added before the table has to be resized, if they are all in different buckets
+     * @param incrementalResize whether or not to resize incrementally. An incremental resize clears the new table a few slots at a time, then keeps the
+     *                          old table around and moves a few of its buckets into the new table on every insertion, instead of doing all of it at
+     *                          once. This bounds the time a single
+     *                          {@link #add(int, int, int)} can take, at the cost of lookups checking both tables until the resize is finished
+     */
+    public LinkedInt3HashSet(int initialCapacity, boolean incrementalResize) {
+        this.incrementalResize = incrementalResize;
         initialCapacity = (int) Math.ceil(initialCapacity * (1.0d / 0.75d)); //scale according to resize threshold
         initialCapacity = 1 << (Integer.SIZE - Integer.numberOfLeadingZeros(initialCapacity - 1)); //round up to next power of two
-        this.setTableSize(Math.max(initialCapacity, DEFAULT_TABLE_SIZE));
+        this.minTableSize = Math.max(initialCapacity, DEFAULT_TABLE_SIZE);
+        this.setTableSize(this.minTableSize);
+
+        if (Int3CollectionStats.ENABLED) {
+            Int3CollectionStats.track(this);
+        }
     }
 
     /**
@@ -100,6 +196,7 @@ public class LinkedInt3HashSet implements AutoCloseable{
         if ((value & flag) == 0L) { //flag wasn't previously set
             PlatformDependent.putLong(bucket + BUCKET_VALUE_OFFSET, value | flag);
             this.size++; //the position was newly added, so we need to increment the total size
+            this.updatePeakSize();
             return true;
         } else { //flag was already set
             return false;
@@ -126,6 +223,25 @@ public class LinkedInt3HashSet implements AutoCloseable{
     }
 
     protected long findBucket(int x, int y, int z, boolean createIfAbsent) {
+        if (this.nextTableAddr != 0L && createIfAbsent && this.usedBuckets > this.clearedAtBuckets) {
+            //an incremental resize is still clearing the next table. only added buckets use up the room left by the raised threshold, so the table is
+            // cleared in proportion to them
+            this.clearNextTable((this.usedBuckets - this.clearedAtBuckets) * INCREMENTAL_CLEAR_STEP);
+        }
+        if (this.oldTableAddr != 0L) { //an incremental resize is in progress, so the bucket may still be in the old table
+            if (createIfAbsent) {
+                this.migrateBuckets(INCREMENTAL_RESIZE_STEP);
+            }
+
+            long oldTableAddr = this.oldTableAddr;
+            if (oldTableAddr != 0L) {
+                long bucket = findBucketIn(oldTableAddr, this.oldTableSize - 1L, x, y, z);
+                if (bucket != 0L) {
+                    return bucket;
+                }
+            }
+        }
+
         long tableSize = this.tableSize;
         long tableAddr = this.tableAddr;
         if (tableAddr == 0L) {
@@ -185,15 +301,47 @@ public class LinkedInt3HashSet implements AutoCloseable{
         }
     }
 
+    //only used to search the old table during an incremental resize, since buckets are never added to it
+    protected static long findBucketIn(long tableAddr, long mask, int x, int y, int z) {
+        for (long hash = hashPosition(x, y, z), i = 0L; ; i++) {
+            long bucketAddr = tableAddr + ((hash + i) & mask) * BUCKET_BYTES;
+
+            if (PlatformDependent.getLong(bucketAddr + BUCKET_VALUE_OFFSET) == 0L) { //empty bucket, abort search
+                return 0L;
+            } else if (PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_X_OFFSET) == x
+                && PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_Y_OFFSET) == y
+                && PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_Z_OFFSET) == z) {
+                return bucketAddr;
+            }
+        }
+    }
+
     protected void resize() {
+        if (this.oldTableAddr != 0L) { //the previous incremental resize has to be finished before the table can be replaced again
+            this.finishResize();
+        }
+        if (this.incrementalResize) {
+            this.startIncrementalResize();
+            return;
+        }
+
+        this.rehash(this.tableSize << 1L);
+    }
+
+    /**
+     * Moves every bucket into a new table of the given size at once, keeping their order. The table must be allocated, and every used bucket must fit into
+     * the new table without going over the resize threshold.
+     */
+    protected void rehash(long newTableSize) {
         this.cachedIndex = -1; //Invalidate cached index
 
         long oldTableSize = this.tableSize;
         long oldTableAddr = this.tableAddr;
 
         //allocate new table
-        long newTableSize = oldTableSize << 1L;
         this.setTableSize(newTableSize);
+        this.resizeCount++;
+        Int3CollectionStats.recordResize(LinkedInt3HashSet.class);
         long newTableAddr = this.tableAddr = allocateTable(newTableSize);
         long newMask = newTableSize - 1L;
 
@@ -235,7 +383,212 @@ public class LinkedInt3HashSet implements AutoCloseable{
         }
 
         //delete old table
-        PlatformDependent.freeMemory(oldTableAddr);
+        this.memory.free(oldTableAddr, oldTableSize * BUCKET_BYTES);
+    }
+
+    /**
+     * Allocates the next table without clearing it and keeps adding buckets to the current table while the next table is cleared by
+     * {@link #clearNextTable(long)}. The resize threshold is raised by 1/8 of the table size until then, which leaves enough room for the buckets added in
+     * the meantime, since {@link #INCREMENTAL_CLEAR_STEP} slots are cleared for each of them.
+     */
+    protected void startIncrementalResize() {
+        if (this.nextTableAddr != 0L) { //the raised threshold was reached, so the rest of the next table has to be cleared now
+            this.clearNextTable(Long.MAX_VALUE);
+            return;
+        }
+
+        this.resizeCount++;
+        Int3CollectionStats.recordResize(LinkedInt3HashSet.class);
+        this.nextTableAddr = this.memory.allocateKeepingPrevious((this.tableSize << 1L) * BUCKET_BYTES);
+        this.clearedSlots = 0L;
+        this.clearedAtBuckets = this.usedBuckets;
+        this.resizeThreshold += this.tableSize >> 3L;
+    }
+
+    /**
+     * Clears up to {@code maxSlots} more slots of the next table. Once all of it is cleared, it replaces the current table and the buckets start being
+     * moved by {@link #migrateBuckets(long)}.
+     * <p>
+     * Buckets are never added to the old table, and a run of occupied slots in it is always moved all at once, so every bucket which hasn't been moved
+     * yet can still be found by searching the old table as usual.
+     */
+    protected void clearNextTable(long maxSlots) {
+        long newTableSize = this.tableSize << 1L;
+        long slots = Math.min(maxSlots, newTableSize - this.clearedSlots);
+        PlatformDependent.setMemory(this.nextTableAddr + this.clearedSlots * BUCKET_BYTES, slots * BUCKET_BYTES, (byte) 0);
+        this.clearedSlots += slots;
+        this.clearedAtBuckets = this.usedBuckets;
+        if (this.clearedSlots != newTableSize) {
+            return;
+        }
+
+        long oldTableSize = this.tableSize;
+        long oldTableAddr = this.tableAddr;
+        this.setTableSize(newTableSize);
+        this.tableAddr = this.nextTableAddr;
+        this.nextTableAddr = 0L;
+        this.clearedSlots = 0L;
+
+        //the old table is never completely full, so there's always an empty slot to start after
+        long start = 0L;
+        while (PlatformDependent.getLong(oldTableAddr + start * BUCKET_BYTES + BUCKET_VALUE_OFFSET) != 0L) {
+            start++;
+        }
+
+        this.oldTableAddr = oldTableAddr;
+        this.oldTableSize = oldTableSize;
+        this.migrationStart = start;
+        this.migratedSlots = 0L;
+    }
+
+    /**
+     * Moves at least {@code minSlots} slots of the old table into the current table, continuing until the end of the run of occupied slots the last one
+     * belongs to. Buckets keep their place in the list. The old table is freed once every slot has been moved.
+     */
+    protected void migrateBuckets(long minSlots) {
+        long oldTableAddr = this.oldTableAddr;
+        long oldTableSize = this.oldTableSize;
+        long oldMask = oldTableSize - 1L;
+        long tableAddr = this.tableAddr;
+        long mask = this.tableSize - 1L;
+
+        long slot = this.migratedSlots;
+        long end = slot + minSlots;
+        while (slot < oldTableSize) {
+            long oldBucketAddr = oldTableAddr + ((this.migrationStart + 1L + slot++) & oldMask) * BUCKET_BYTES;
+
+            long value = PlatformDependent.getLong(oldBucketAddr + BUCKET_VALUE_OFFSET);
+            if (value == 0L) { //the slot is empty, so this is the end of a run
+                if (slot >= end) {
+                    break;
+                }
+                continue;
+            }
+
+            int x = PlatformDependent.getInt(oldBucketAddr + BUCKET_KEY_OFFSET + KEY_X_OFFSET);
+            int y = PlatformDependent.getInt(oldBucketAddr + BUCKET_KEY_OFFSET + KEY_Y_OFFSET);
+            int z = PlatformDependent.getInt(oldBucketAddr + BUCKET_KEY_OFFSET + KEY_Z_OFFSET);
+
+            for (long hash = hashPosition(x, y, z), j = 0L; ; j++) {
+                long newBucketAddr = tableAddr + ((hash + j) & mask) * BUCKET_BYTES;
+
+                if (PlatformDependent.getLong(newBucketAddr + BUCKET_VALUE_OFFSET) == 0L) {
+                    this.patchMove(oldBucketAddr, newBucketAddr);
+
+                    PlatformDependent.putInt(newBucketAddr + BUCKET_KEY_OFFSET + KEY_X_OFFSET, x);
+                    PlatformDependent.putInt(newBucketAddr + BUCKET_KEY_OFFSET + KEY_Y_OFFSET, y);
+                    PlatformDependent.putInt(newBucketAddr + BUCKET_KEY_OFFSET + KEY_Z_OFFSET, z);
+                    PlatformDependent.putLong(newBucketAddr + BUCKET_VALUE_OFFSET, value);
+                    PlatformDependent.putLong(newBucketAddr + NEXT_VALUE_OFFSET, PlatformDependent.getLong(oldBucketAddr + NEXT_VALUE_OFFSET));
+                    PlatformDependent.putLong(newBucketAddr + PREV_VALUE_OFFSET, PlatformDependent.getLong(oldBucketAddr + PREV_VALUE_OFFSET));
+                    break;
+                }
+            }
+
+            //mark the old slot as empty
+            PlatformDependent.putLong(oldBucketAddr + BUCKET_VALUE_OFFSET, 0L);
+        }
+        this.migratedSlots = slot;
+
+        if (slot == oldTableSize) { //every bucket has been moved
+            this.memory.freePrevious();
+            this.oldTableAddr = 0L;
+            this.oldTableSize = 0L;
+        }
+    }
+
+    /**
+     * Finishes an incremental resize which is in progress by clearing the rest of the new table and moving all the remaining buckets at once. Does nothing
+     * if there is none.
+     * <p>
+     * This can be used to move the cost of finishing the resize to a convenient time, such as the end of a tick.
+     */
+    public void finishResize() {
+        if (this.nextTableAddr != 0L) {
+            this.clearNextTable(Long.MAX_VALUE);
+        }
+        this.finishMigration();
+    }
+
+    /**
+     * Moves all the buckets which are still in the old table, so that every bucket is in the current table. Unlike {@link #finishResize()} this leaves
+     * a next table which is still being cleared alone, since nothing reads it before it becomes the current table.
+     */
+    protected void finishMigration() {
+        if (this.oldTableAddr != 0L) {
+            this.migrateBuckets(this.oldTableSize);
+        }
+    }
+
+    /**
+     * Shrinks the table to the smallest size which can hold the buckets currently in use without having to be resized.
+     *
+     * @return whether or not the table was shrunk
+     *
+     * @see #trim(int)
+     */
+    public boolean trim() {
+        return this.trim(0);
+    }
+
+    /**
+     * Shrinks the table to the smallest size which can hold the buckets currently in use or {@code expected} buckets, whichever is more, without having to
+     * be resized. The table is never grown by this.
+     * <p>
+     * The table also shrinks by itself once it is mostly empty, but never below its initial size. This lowers that limit to the new size, so that the
+     * table can shrink back down after it has grown again.
+     *
+     * @param expected the number of positions which are expected to be in this set, if they are all in different buckets
+     *
+     * @return whether or not the table was shrunk
+     */
+    public boolean trim(int expected) {
+        if (expected < 0) {
+            throw new IllegalArgumentException("Expected size must not be negative: " + expected);
+        }
+
+        this.finishResize(); //rehash() only replaces the current table
+
+        long newTableSize = tableSizeFor(Math.max(this.usedBuckets, expected));
+        this.minTableSize = Math.min(this.minTableSize, newTableSize);
+        if (newTableSize >= this.tableSize) {
+            return false;
+        }
+
+        if (this.tableAddr == 0L) { //the table isn't even allocated yet, it'll simply be allocated with the new size
+            this.setTableSize(newTableSize);
+        } else {
+            this.rehash(newTableSize);
+        }
+        return true;
+    }
+
+    /**
+     * Shrinks the table once less than 1/8 of it is used, to a size where 3/16 to 3/8 of it is used. The gap between these and the resize threshold keeps
+     * a set whose size goes up and down a little from being resized over and over again.
+     * <p>
+     * Must only be called when the table is allocated and no bucket addresses are held, since every bucket may be moved.
+     */
+    protected void shrinkIfSparse() {
+        if (this.usedBuckets < (this.tableSize >> 3L) && this.tableSize > this.minTableSize) {
+            this.finishResize();
+            this.rehash(this.shrunkTableSize());
+        }
+    }
+
+    protected long shrunkTableSize() {
+        return Math.max(tableSizeFor(this.usedBuckets << 1L), this.minTableSize);
+    }
+
+    /**
+     * @return the smallest table size which can hold the given number of buckets without going over the resize threshold
+     */
+    protected static long tableSizeFor(long buckets) {
+        long tableSize = DEFAULT_TABLE_SIZE;
+        while ((tableSize >> 1L) + (tableSize >> 2L) < buckets) {
+            tableSize <<= 1L;
+        }
+        return tableSize;
     }
 
     /**
@@ -274,6 +627,152 @@ public class LinkedInt3HashSet implements AutoCloseable{
         }
     }
 
+    /**
+     * Creates a cursor over the positions in this set, which visits them in the same order as {@link #forEach(XYZConsumer)}.
+     * <p>
+     * Unlike {@link #forEach(XYZConsumer)}, iterating with a cursor doesn't need a callback function, so a hot loop doesn't allocate a capturing lambda and
+     * stays monomorphic. A cursor can be {@link Cursor#reset() reset} and used again.
+     *
+     * @return a new cursor, positioned before the first position
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A reusable cursor over the positions in a {@link LinkedInt3HashSet}:
+     * <pre>{@code
+     * LinkedInt3HashSet.Cursor cursor = set.cursor();
+     * while (cursor.next()) {
+     *     if (cursor.y() < 0) {
+     *         cursor.remove();
+     *     }
+     * }
+     * }</pre>
+     * The set must not be modified while iterating, except through {@link #remove()}.
+     */
+    public class Cursor {
+        protected long bucket; //the address of the current position's bucket
+        protected long nextBucket; //the address of the bucket to continue with once the current one has no positions left, 0 if there is none
+        protected long remaining; //the positions of the current bucket which haven't been visited yet
+        protected int index; //the index of the current position in its bucket, -1 if there is no current position
+
+        protected int baseX; //the first position of the current bucket
+        protected int baseY;
+        protected int baseZ;
+
+        protected int x;
+        protected int y;
+        protected int z;
+
+        protected Cursor() {
+            this.rewind();
+        }
+
+        /**
+         * Moves this cursor back before the first position of the set.
+         *
+         * @return this cursor
+         */
+        public Cursor reset() {
+            this.rewind();
+            return this;
+        }
+
+        private void rewind() {
+            this.bucket = 0L;
+            this.nextBucket = LinkedInt3HashSet.this.first;
+            this.remaining = 0L;
+            this.index = -1;
+        }
+
+        /**
+         * Moves to the next position.
+         *
+         * @return whether or not there was another position. If there wasn't, this cursor has no current position until it is reset
+         */
+        public boolean next() {
+            while (this.remaining == 0L) { //move on to the next bucket
+                if (this.nextBucket == 0L) {
+                    this.index = -1;
+                    return false;
+                }
+
+                long bucket = this.bucket = this.nextBucket;
+                this.remaining = PlatformDependent.getLong(bucket + BUCKET_VALUE_OFFSET);
+                this.nextBucket = PlatformDependent.getLong(bucket + NEXT_VALUE_OFFSET);
+                this.baseX = PlatformDependent.getInt(bucket + BUCKET_KEY_OFFSET + KEY_X_OFFSET) << BUCKET_AXIS_BITS;
+                this.baseY = PlatformDependent.getInt(bucket + BUCKET_KEY_OFFSET + KEY_Y_OFFSET) << BUCKET_AXIS_BITS;
+                this.baseZ = PlatformDependent.getInt(bucket + BUCKET_KEY_OFFSET + KEY_Z_OFFSET) << BUCKET_AXIS_BITS;
+            }
+
+            int index = this.index = Long.numberOfTrailingZeros(this.remaining);
+            this.remaining &= this.remaining - 1L;
+
+            this.x = this.baseX + (index >> (BUCKET_AXIS_BITS * 2));
+            this.y = this.baseY + ((index >> BUCKET_AXIS_BITS) & BUCKET_AXIS_MASK);
+            this.z = this.baseZ + (index & BUCKET_AXIS_MASK);
+            return true;
+        }
+
+        /**
+         * @return the current position's X coordinate. Still valid after the position was removed
+         */
+        public int x() {
+            return this.x;
+        }
+
+        /**
+         * @return the current position's Y coordinate. Still valid after the position was removed
+         */
+        public int y() {
+            return this.y;
+        }
+
+        /**
+         * @return the current position's Z coordinate. Still valid after the position was removed
+         */
+        public int z() {
+            return this.z;
+        }
+
+        /**
+         * Removes the current position from the set. The rest of the positions are still visited in order.
+         *
+         * @throws IllegalStateException if there is no current position, or it has already been removed
+         */
+        public void remove() {
+            if (this.index < 0) {
+                throw new IllegalStateException("No current position");
+            }
+
+            long flag = 1L << this.index;
+            this.index = -1;
+            LinkedInt3HashSet.this.cachedIndex = -1;
+            LinkedInt3HashSet.this.size--;
+
+            long bucket = this.bucket;
+            long value = PlatformDependent.getLong(bucket + BUCKET_VALUE_OFFSET);
+            if (value != flag) {
+                PlatformDependent.putLong(bucket + BUCKET_VALUE_OFFSET, value & ~flag);
+                return;
+            }
+
+            //the bucket is about to be deleted, and deleting it may shift the next bucket into a different slot. remember the next bucket's key to find it
+            // again afterwards
+            long nextBucket = this.nextBucket;
+            int nextX = nextBucket == 0L ? 0 : PlatformDependent.getInt(nextBucket + BUCKET_KEY_OFFSET + KEY_X_OFFSET);
+            int nextY = nextBucket == 0L ? 0 : PlatformDependent.getInt(nextBucket + BUCKET_KEY_OFFSET + KEY_Y_OFFSET);
+            int nextZ = nextBucket == 0L ? 0 : PlatformDependent.getInt(nextBucket + BUCKET_KEY_OFFSET + KEY_Z_OFFSET);
+
+            LinkedInt3HashSet.this.deleteBucket(bucket);
+
+            if (nextBucket != 0L) {
+                this.nextBucket = LinkedInt3HashSet.this.findBucket(nextX, nextY, nextZ, false);
+            }
+        }
+    }
+
     /**
      * Removes the given position from this set.
      *
@@ -289,6 +788,9 @@ public class LinkedInt3HashSet implements AutoCloseable{
         long tableAddr = this.tableAddr;
         if (tableAddr == 0L) { //the table isn't even allocated yet, there's nothing to remove...
             return false;
+        } else if (this.oldTableAddr != 0L) { //an incremental resize is in progress, so the position may be in either table
+            long flag = positionFlag(x, y, z);
+            return this.removeFlags(x >> BUCKET_AXIS_BITS, y >> BUCKET_AXIS_BITS, z >> BUCKET_AXIS_BITS, flag) != 0L;
         }
 
         cachedIndex = -1;
@@ -325,6 +827,7 @@ public class LinkedInt3HashSet implements AutoCloseable{
 
                 //shifting the buckets IS expensive, yes, but it'll only happen when the entire bucket is deleted, which won't happen on every removal
                 this.shiftBuckets(tableAddr, (hash + i) & mask, mask);
+                this.shrinkIfSparse();
             } else { //update bucket value with this position removed
                 PlatformDependent.putLong(bucketAddr + BUCKET_VALUE_OFFSET, value & ~flag);
             }
@@ -333,6 +836,24 @@ public class LinkedInt3HashSet implements AutoCloseable{
         }
     }
 
+    /**
+     * Unlinks an empty bucket and deletes it from whichever table it is in, then shrinks the table if it has become mostly empty. The addresses of other
+     * buckets are not valid anymore afterwards.
+     */
+    protected void deleteBucket(long bucketAddr) {
+        removeBucket(bucketAddr);
+
+        long oldTableAddr = this.oldTableAddr;
+        if (oldTableAddr != 0L && bucketAddr >= oldTableAddr && bucketAddr < oldTableAddr + this.oldTableSize * BUCKET_BYTES) { //the bucket hasn't been moved yet
+            this.shiftBuckets(oldTableAddr, (bucketAddr - oldTableAddr) / BUCKET_BYTES, this.oldTableSize - 1L);
+        } else {
+            long tableAddr = this.tableAddr;
+            this.shiftBuckets(tableAddr, (bucketAddr - tableAddr) / BUCKET_BYTES, this.tableSize - 1L);
+        }
+
+        this.shrinkIfSparse();
+    }
+
     protected void removeBucket(long bucketAddr){
         this.usedBuckets--;
 
@@ -436,19 +957,394 @@ public class LinkedInt3HashSet implements AutoCloseable{
         }
     }
 
+    /**
+     * Adds every position of another set to this set. This works on whole buckets at a time, so it is much faster than adding each position
+     * individually when the positions are close to each other. New buckets are appended to the end of the list in the order of the other set.
+     *
+     * @param other the set whose positions to add. May be a {@link Int3UByteLinkedHashMap#keySet() map's key set}
+     *
+     * @return whether or not this set changed
+     *
+     * @see java.util.Set#addAll(java.util.Collection)
+     */
+    public boolean addAll(Int3Set other) {
+        if (other == this) {
+            return false;
+        }
+
+        long oldSize = this.size;
+        this.cachedIndex = -1;
+
+        other.forEachBucket((bucketX, bucketY, bucketZ, flags) -> {
+            long bucket = this.findBucket(bucketX, bucketY, bucketZ, true);
+            long value = PlatformDependent.getLong(bucket + BUCKET_VALUE_OFFSET);
+            long added = flags & ~value;
+            if (added != 0L) {
+                PlatformDependent.putLong(bucket + BUCKET_VALUE_OFFSET, value | added);
+                this.size += Long.bitCount(added);
+                this.updatePeakSize();
+            }
+            return true;
+        });
+
+        return this.size != oldSize;
+    }
+
+    public boolean addAll(Int3UByteLinkedHashMap map) {
+        return this.addAll(map.keySet());
+    }
+
+    /**
+     * Removes every position of another set from this set. This works on whole buckets at a time.
+     *
+     * @param other the set whose positions to remove. May be a {@link Int3UByteLinkedHashMap#keySet() map's key set}
+     *
+     * @return whether or not this set changed
+     *
+     * @see java.util.Set#removeAll(java.util.Collection)
+     */
+    public boolean removeAll(Int3Set other) {
+        if (other == this) {
+            boolean changed = !this.isEmpty();
+            this.clear();
+            return changed;
+        }
+
+        if (this.tableAddr == 0L) { //the table isn't even allocated yet, there's nothing to remove...
+            return false;
+        }
+
+        long oldSize = this.size;
+        this.cachedIndex = -1;
+
+        other.forEachBucket((bucketX, bucketY, bucketZ, flags) -> {
+            this.removeFlags(bucketX, bucketY, bucketZ, flags);
+            return !this.isEmpty();
+        });
+
+        return this.size != oldSize;
+    }
+
+    public boolean removeAll(Int3UByteLinkedHashMap map) {
+        return this.removeAll(map.keySet());
+    }
+
+    /**
+     * Removes every position which isn't in another set from this set. This works on whole buckets at a time. The order of the remaining positions
+     * doesn't change.
+     *
+     * @param other the set whose positions to keep. May be a {@link Int3UByteLinkedHashMap#keySet() map's key set}
+     *
+     * @return whether or not this set changed
+     *
+     * @see java.util.Set#retainAll(java.util.Collection)
+     */
+    public boolean retainAll(Int3Set other) {
+        if (other == this || this.isEmpty()) {
+            return false;
+        }
+
+        long oldSize = this.size;
+        this.cachedIndex = -1;
+
+        //buckets can't be deleted while iterating through the list because deleting shifts the other buckets around, so the keys of buckets that
+        // become empty are stored and deleted afterwards
+        int[] emptied = null;
+        int emptiedCount = 0;
+
+        for (long bucket = this.first; bucket != 0L; bucket = PlatformDependent.getLong(bucket + NEXT_VALUE_OFFSET)) {
+            int bucketX = PlatformDependent.getInt(bucket + BUCKET_KEY_OFFSET + KEY_X_OFFSET);
+            int bucketY = PlatformDependent.getInt(bucket + BUCKET_KEY_OFFSET + KEY_Y_OFFSET);
+            int bucketZ = PlatformDependent.getInt(bucket + BUCKET_KEY_OFFSET + KEY_Z_OFFSET);
+            long value = PlatformDependent.getLong(bucket + BUCKET_VALUE_OFFSET);
+
+            long retained = value & other.getBucketFlags(bucketX, bucketY, bucketZ);
+            if (retained == value) {
+                continue;
+            }
+
+            if (retained != 0L) {
+                PlatformDependent.putLong(bucket + BUCKET_VALUE_OFFSET, retained);
+                this.size -= Long.bitCount(value & ~retained);
+            } else {
+                if (emptied == null) {
+                    emptied = new int[3 * 16];
+                } else if (emptiedCount * 3 == emptied.length) {
+                    emptied = Arrays.copyOf(emptied, emptied.length * 2);
+                }
+                emptied[emptiedCount * 3] = bucketX;
+                emptied[emptiedCount * 3 + 1] = bucketY;
+                emptied[emptiedCount * 3 + 2] = bucketZ;
+                emptiedCount++;
+            }
+        }
+
+        for (int i = 0; i < emptiedCount; i++) {
+            this.removeFlags(emptied[i * 3], emptied[i * 3 + 1], emptied[i * 3 + 2], -1L);
+        }
+
+        return this.size != oldSize;
+    }
+
+    public boolean retainAll(Int3UByteLinkedHashMap map) {
+        return this.retainAll(map.keySet());
+    }
+
+    /**
+     * Checks whether every position of another set is in this set. This works on whole buckets at a time.
+     *
+     * @param other the set whose positions to check. May be a {@link Int3UByteLinkedHashMap#keySet() map's key set}
+     *
+     * @return whether or not every position of the other set is present
+     *
+     * @see java.util.Set#containsAll(java.util.Collection)
+     */
+    public boolean containsAll(Int3Set other) {
+        if (other == this) {
+            return true;
+        }
+
+        if (other.size() > this.size()) {
+            return false;
+        }
+
+        boolean[] result = {true};
+        other.forEachBucket((bucketX, bucketY, bucketZ, flags) -> {
+            if ((this.getBucketFlags(bucketX, bucketY, bucketZ) & flags) != flags) {
+                result[0] = false;
+            }
+            return result[0];
+        });
+        return result[0];
+    }
+
+    public boolean containsAll(Int3UByteLinkedHashMap map) {
+        return this.containsAll(map.keySet());
+    }
+
+    @Override
+    public void forEachBucket(BucketVisitor visitor) {
+        for (long bucket = this.first; bucket != 0L; bucket = PlatformDependent.getLong(bucket + NEXT_VALUE_OFFSET)) {
+            boolean keepGoing = visitor.visit(
+                PlatformDependent.getInt(bucket + BUCKET_KEY_OFFSET + KEY_X_OFFSET),
+                PlatformDependent.getInt(bucket + BUCKET_KEY_OFFSET + KEY_Y_OFFSET),
+                PlatformDependent.getInt(bucket + BUCKET_KEY_OFFSET + KEY_Z_OFFSET),
+                PlatformDependent.getLong(bucket + BUCKET_VALUE_OFFSET)
+            );
+
+            if (!keepGoing) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public long getBucketFlags(int bucketX, int bucketY, int bucketZ) {
+        long bucket = this.findBucket(bucketX, bucketY, bucketZ, false);
+        return bucket == 0L ? 0L : PlatformDependent.getLong(bucket + BUCKET_VALUE_OFFSET);
+    }
+
+    /**
+     * Removes all the positions whose flags are set from the bucket with the given bucket coordinates, deleting the bucket if it becomes empty.
+     *
+     * @return the flags of the positions which were removed
+     */
+    protected long removeFlags(int bucketX, int bucketY, int bucketZ, long flags) {
+        long bucket = this.findBucket(bucketX, bucketY, bucketZ, false);
+        if (bucket == 0L) {
+            return 0L;
+        }
+
+        long value = PlatformDependent.getLong(bucket + BUCKET_VALUE_OFFSET);
+        long removed = value & flags;
+        if (removed == 0L) {
+            return 0L;
+        }
+
+        this.size -= Long.bitCount(removed);
+        this.cachedIndex = -1;
+
+        if (removed == value) { //every position in the bucket was removed, so we need to delete the bucket
+            this.deleteBucket(bucket);
+        } else {
+            PlatformDependent.putLong(bucket + BUCKET_VALUE_OFFSET, value & ~removed);
+        }
+        return removed;
+    }
+
+    /**
+     * Runs the given function on every position in this set which is inside of the given box. The cost depends on the size of the box, or on the number of
+     * used buckets if that is smaller, but not on the size of the table.
+     * <p>
+     * Positions are visited bucket by bucket in no particular order. The function must not modify this set.
+     *
+     * @param minX the box's lowest X coordinate (inclusive)
+     * @param minY the box's lowest Y coordinate (inclusive)
+     * @param minZ the box's lowest Z coordinate (inclusive)
+     * @param maxX the box's highest X coordinate (inclusive)
+     * @param maxY the box's highest Y coordinate (inclusive)
+     * @param maxZ the box's highest Z coordinate (inclusive)
+     * @param action the function to run
+     */
+    public void forEachInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, XYZConsumer action) {
+        this.forEachBucketInBox(minX, minY, minZ, maxX, maxY, maxZ, (bucketX, bucketY, bucketZ, flags) -> {
+            while (flags != 0L) {
+                int index = Long.numberOfTrailingZeros(flags);
+                flags &= ~(1L << index);
+
+                int dx = index >> (BUCKET_AXIS_BITS * 2);
+                int dy = (index >> BUCKET_AXIS_BITS) & BUCKET_AXIS_MASK;
+                int dz = index & BUCKET_AXIS_MASK;
+                action.accept((bucketX << BUCKET_AXIS_BITS) + dx, (bucketY << BUCKET_AXIS_BITS) + dy, (bucketZ << BUCKET_AXIS_BITS) + dz);
+            }
+            return true;
+        });
+    }
+
+    /**
+     * @return the number of positions in this set which are inside of the given box (inclusive)
+     *
+     * @see #forEachInBox(int, int, int, int, int, int, XYZConsumer)
+     */
+    public long countInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        long[] count = {0L};
+        this.forEachBucketInBox(minX, minY, minZ, maxX, maxY, maxZ, (bucketX, bucketY, bucketZ, flags) -> {
+            count[0] += Long.bitCount(flags);
+            return true;
+        });
+        return count[0];
+    }
+
+    /**
+     * @return whether or not any position in this set is inside of the given box (inclusive). Stops at the first bucket with such a position
+     *
+     * @see #forEachInBox(int, int, int, int, int, int, XYZConsumer)
+     */
+    public boolean containsAnyInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        boolean[] found = {false};
+        this.forEachBucketInBox(minX, minY, minZ, maxX, maxY, maxZ, (bucketX, bucketY, bucketZ, flags) -> {
+            found[0] = true;
+            return false;
+        });
+        return found[0];
+    }
+
+    /**
+     * Removes every position in this set which is inside of the given box (inclusive). This works on whole buckets at a time.
+     *
+     * @return the number of positions removed
+     *
+     * @see #forEachInBox(int, int, int, int, int, int, XYZConsumer)
+     */
+    public long removeInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        //buckets can't be deleted while visiting them because deleting shifts the other buckets around, so they are stored and deleted afterwards
+        IntArrayList keys = new IntArrayList();
+        LongArrayList removed = new LongArrayList();
+        this.forEachBucketInBox(minX, minY, minZ, maxX, maxY, maxZ, (bucketX, bucketY, bucketZ, flags) -> {
+            keys.add(bucketX);
+            keys.add(bucketY);
+            keys.add(bucketZ);
+            removed.add(flags);
+            return true;
+        });
+
+        if (removed.isEmpty()) {
+            return 0L;
+        }
+
+        long oldSize = this.size;
+        this.cachedIndex = -1;
+        for (int i = 0; i < removed.size(); i++) {
+            this.removeFlags(keys.getInt(i * 3), keys.getInt(i * 3 + 1), keys.getInt(i * 3 + 2), removed.getLong(i));
+        }
+        return oldSize - this.size;
+    }
+
+    /**
+     * Visits every bucket which has positions inside of the given box (inclusive), with its flags masked to only those positions. If the box covers fewer
+     * buckets than are used, each of them is looked up, otherwise the whole list is walked. The visitor must not modify this set.
+     */
+    protected void forEachBucketInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BucketVisitor visitor) {
+        if (this.tableAddr == 0L || this.isEmpty() || minX > maxX || minY > maxY || minZ > maxZ) {
+            return;
+        }
+
+        int minBucketX = minX >> BUCKET_AXIS_BITS;
+        int minBucketY = minY >> BUCKET_AXIS_BITS;
+        int minBucketZ = minZ >> BUCKET_AXIS_BITS;
+        int maxBucketX = maxX >> BUCKET_AXIS_BITS;
+        int maxBucketY = maxY >> BUCKET_AXIS_BITS;
+        int maxBucketZ = maxZ >> BUCKET_AXIS_BITS;
+
+        if (isSmallBox(minX, minY, minZ, maxX, maxY, maxZ, this.usedBuckets)) {
+            for (int bucketX = minBucketX; bucketX <= maxBucketX; bucketX++) {
+                for (int bucketY = minBucketY; bucketY <= maxBucketY; bucketY++) {
+                    for (int bucketZ = minBucketZ; bucketZ <= maxBucketZ; bucketZ++) {
+                        long bucket = this.findBucket(bucketX, bucketY, bucketZ, false);
+                        if (bucket == 0L) {
+                            continue;
+                        }
+
+                        long flags = PlatformDependent.getLong(bucket + BUCKET_VALUE_OFFSET) & boxFlags(bucketX, bucketY, bucketZ, minX, minY, minZ, maxX, maxY, maxZ);
+                        if (flags != 0L && !visitor.visit(bucketX, bucketY, bucketZ, flags)) {
+                            return;
+                        }
+                    }
+                }
+            }
+        } else {
+            for (long bucket = this.first; bucket != 0L; bucket = PlatformDependent.getLong(bucket + NEXT_VALUE_OFFSET)) {
+                int bucketX = PlatformDependent.getInt(bucket + BUCKET_KEY_OFFSET + KEY_X_OFFSET);
+                int bucketY = PlatformDependent.getInt(bucket + BUCKET_KEY_OFFSET + KEY_Y_OFFSET);
+                int bucketZ = PlatformDependent.getInt(bucket + BUCKET_KEY_OFFSET + KEY_Z_OFFSET);
+                if (bucketX < minBucketX || bucketX > maxBucketX || bucketY < minBucketY || bucketY > maxBucketY || bucketZ < minBucketZ || bucketZ > maxBucketZ) {
+                    continue;
+                }
+
+                long flags = PlatformDependent.getLong(bucket + BUCKET_VALUE_OFFSET) & boxFlags(bucketX, bucketY, bucketZ, minX, minY, minZ, maxX, maxY, maxZ);
+                if (flags != 0L && !visitor.visit(bucketX, bucketY, bucketZ, flags)) {
+                    return;
+                }
+            }
+        }
+    }
+
     /**
      * Removes every position from this set.
      *
      * @see java.util.Set#clear()
      */
     public void clear() {
-        if (this.isEmpty()) { //if the set is empty, there's nothing to clear
-            return;
+        if (this.nextTableAddr != 0L) { //the next table of an incremental resize which hasn't started moving buckets isn't needed anymore
+            this.memory.restorePrevious();
+            this.nextTableAddr = 0L;
+            this.clearedSlots = 0L;
+            this.setTableSize(this.tableSize); //undo the raised resize threshold
+        }
+        if (this.oldTableAddr != 0L) { //the old table of an unfinished incremental resize isn't needed anymore
+            this.memory.freePrevious();
+            this.oldTableAddr = 0L;
+            this.oldTableSize = 0L;
         }
 
-        //fill the entire table with zeroes
-        // (since the table isn't empty, we can be sure that the table has been allocated so there's no reason to check for it)
-        PlatformDependent.setMemory(this.tableAddr, this.tableSize * BUCKET_BYTES, (byte) 0);
+        if (this.tableAddr != 0L && this.usedBuckets < (this.tableSize >> 3L) && this.tableSize > this.minTableSize) {
+            //the table was mostly empty even before clearing it, so replace it with a smaller one instead of zeroing all of it. otherwise a set which is
+            // filled and cleared over and over would keep the table from its largest fill forever
+            long oldTableAddr = this.tableAddr;
+            long oldTableSize = this.tableSize;
+            long newTableSize = this.shrunkTableSize();
+            this.setTableSize(newTableSize);
+            this.resizeCount++;
+            Int3CollectionStats.recordResize(LinkedInt3HashSet.class);
+            this.tableAddr = allocateTable(newTableSize);
+            this.memory.free(oldTableAddr, oldTableSize * BUCKET_BYTES);
+        } else if (this.isEmpty()) { //if the set is empty, there's nothing to clear
+            return;
+        } else {
+            //fill the entire table with zeroes
+            // (since the table isn't empty, we can be sure that the table has been allocated so there's no reason to check for it)
+            PlatformDependent.setMemory(this.tableAddr, this.tableSize * BUCKET_BYTES, (byte) 0);
+        }
 
         //reset all size counters
         this.usedBuckets = 0L;
@@ -518,9 +1414,7 @@ public class LinkedInt3HashSet implements AutoCloseable{
         this.size--;
 
         if(value == 0){
-            long pos = (this.first - tableAddr) / BUCKET_BYTES;
-            removeBucket(this.first);
-            this.shiftBuckets(tableAddr, pos, tableSize - 1L);
+            this.deleteBucket(this.first);
 
             cachedIndex = -1;
         }else{
@@ -529,6 +1423,59 @@ public class LinkedInt3HashSet implements AutoCloseable{
         }
     }
 
+    /**
+     * Removes up to {@code max} positions from the front of this set and writes their coordinates into the given arrays, starting at index 0.
+     * <p>
+     * Positions are removed in the same order as repeated calls to {@link #getFirstX()} and {@link #removeFirstValue()} would remove them, but
+     * each bucket is only read once and is emptied in a single write.
+     *
+     * @param xs the array to write the X coordinates into
+     * @param ys the array to write the Y coordinates into
+     * @param zs the array to write the Z coordinates into
+     * @param max the maximum number of positions to remove. Must not be greater than the length of any of the arrays
+     *
+     * @return the number of positions which were removed. A return value of {@code 0} indicates that the set was empty (or that {@code max} was 0)
+     */
+    public int drainTo(int[] xs, int[] ys, int[] zs, int max) {
+        checkDrainArgs(xs, ys, zs, max);
+
+        int count = 0;
+        while (count < max && this.first != 0L) {
+            long bucketAddr = this.first;
+
+            int baseX = PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_X_OFFSET) << BUCKET_AXIS_BITS;
+            int baseY = PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_Y_OFFSET) << BUCKET_AXIS_BITS;
+            int baseZ = PlatformDependent.getInt(bucketAddr + BUCKET_KEY_OFFSET + KEY_Z_OFFSET) << BUCKET_AXIS_BITS;
+            long value = PlatformDependent.getLong(bucketAddr + BUCKET_VALUE_OFFSET);
+
+            do {
+                int index = Long.numberOfTrailingZeros(value);
+                xs[count] = baseX + (index >> (BUCKET_AXIS_BITS * 2));
+                ys[count] = baseY + ((index >> BUCKET_AXIS_BITS) & BUCKET_AXIS_MASK);
+                zs[count] = baseZ + (index & BUCKET_AXIS_MASK);
+                count++;
+
+                value &= value - 1L; //clear the lowest set bit
+            } while (value != 0L && count < max);
+
+            if (value == 0L) { //every position in the bucket was removed, so we need to delete the bucket
+                this.deleteBucket(bucketAddr);
+            } else {
+                PlatformDependent.putLong(bucketAddr + BUCKET_VALUE_OFFSET, value);
+            }
+        }
+
+        this.size -= count;
+        cachedIndex = -1;
+        return count;
+    }
+
+    protected static void checkDrainArgs(int[] xs, int[] ys, int[] zs, int max) {
+        if (max < 0 || max > xs.length || max > ys.length || max > zs.length) {
+            throw new IllegalArgumentException("Cannot drain " + max + " positions into arrays of length " + xs.length + ", " + ys.length + " and " + zs.length);
+        }
+    }
+
     protected void getFirstSetBitInFirstBucket(){
         getFirstSetBitInFirstBucket(0);
     }
@@ -571,16 +1518,162 @@ public class LinkedInt3HashSet implements AutoCloseable{
         this.closed = true;
 
         //actually release memory
-        if (this.tableAddr != 0L) {
-            PlatformDependent.freeMemory(this.tableAddr);
+        this.memory.release();
+        this.tableAddr = 0L;
+        this.nextTableAddr = 0L;
+        this.oldTableAddr = 0L;
+
+        if (Int3CollectionStats.ENABLED) {
+            Int3CollectionStats.untrack(this, LinkedInt3HashSet.class, this.peakSize);
         }
     }
 
+    /**
+     * @return the statistics of this set's table
+     */
     @Override
-    protected void finalize() throws Throwable {
-        //using a finalizer is bad, i know. however, there's no other reasonable way for me to clean up the memory without pulling in PorkLib:unsafe or
-        // using sun.misc.Cleaner directly...
-        this.close();
+    public Int3CollectionStats getStats() {
+        return new Int3CollectionStats(LinkedInt3HashSet.class.getSimpleName(), 1L, this.memory.getBytes(), this.tableAddr == 0L ? 0L : this.tableSize, this.usedBuckets, this.size,
+            this.resizeCount, Int3CollectionStats.ENABLED ? Math.max(this.peakSize, this.size) : -1L);
+    }
+
+    protected void updatePeakSize() {
+        if (Int3CollectionStats.ENABLED && this.size > this.peakSize) {
+            this.peakSize = this.size;
+        }
+    }
+
+    /**
+     * @return the number of bytes {@link #writeTo(ByteBuffer)} writes
+     */
+    public long serializedBytes() {
+        return Int3Serialization.HEADER_BYTES + this.serializationHeader().dataBytes();
+    }
+
+    /**
+     * Writes this set to the given buffer. The table is copied as it is, so this is a single bulk copy, and so is loading it again with {@link #readFrom(ByteBuffer)}.
+     *
+     * @param buffer the buffer to write to. Its position is advanced by {@link #serializedBytes()}
+     *
+     * @throws java.nio.BufferOverflowException if the buffer doesn't have enough space left. Nothing is written in that case
+     */
+    public void writeTo(ByteBuffer buffer) {
+        Int3Serialization.write(buffer, this.serializationHeader(), this.tableAddr);
+    }
+
+    /**
+     * Writes this set to the given channel at its current position.
+     *
+     * @see #writeTo(ByteBuffer)
+     */
+    public void writeTo(FileChannel channel) throws IOException {
+        Int3Serialization.write(channel, this.serializationHeader(), this.tableAddr);
+    }
+
+    protected Int3Serialization.Header serializationHeader() {
+        //the table is written as it is, so every bucket must be in it. while the next table is still being cleared the resize threshold is raised,
+        // so the whole resize is finished: otherwise the written table could hold more buckets than load() accepts for its size
+        this.finishResize();
+
+        long tableAddr = this.tableAddr;
+        long tableSize = tableAddr == 0L ? 0L : this.tableSize;
+        return new Int3Serialization.Header(Int3Serialization.TYPE_SET, BUCKET_BYTES, tableSize, this.size, this.usedBuckets,
+            this.first == 0L ? -1L : (this.first - tableAddr) / BUCKET_BYTES, this.last == 0L ? -1L : (this.last - tableAddr) / BUCKET_BYTES, tableAddr,
+            tableSize * BUCKET_BYTES);
+    }
+
+    /**
+     * Reads a set written by {@link #writeTo(ByteBuffer)}. The table is copied out of the buffer in one go, only the links between buckets are
+     * updated afterwards.
+     *
+     * @param buffer the buffer to read from. Its position is advanced past the set
+     *
+     * @return a new set with the same positions in the same order
+     *
+     * @throws IllegalArgumentException if the buffer doesn't contain a valid set
+     */
+    public static LinkedInt3HashSet readFrom(ByteBuffer buffer) {
+        LinkedInt3HashSet set = new LinkedInt3HashSet();
+        try {
+            set.load(buffer);
+        } catch (RuntimeException e) {
+            set.close();
+            throw e;
+        }
+        return set;
+    }
+
+    /**
+     * Reads a set written by {@link #writeTo(FileChannel)} from the channel's current position. The file is memory-mapped and the table is copied
+     * straight out of the mapping.
+     *
+     * @see #readFrom(ByteBuffer)
+     */
+    public static LinkedInt3HashSet readFrom(FileChannel channel) throws IOException {
+        return Int3Serialization.read(channel, LinkedInt3HashSet::readFrom);
+    }
+
+    /**
+     * Replaces this set's contents, which must be empty, with the set in the given buffer
+     */
+    protected void load(ByteBuffer buffer) {
+        Int3Serialization.Header header = Int3Serialization.readHeader(buffer, Int3Serialization.TYPE_SET, BUCKET_BYTES);
+        if (header.dataBytes() == 0L) { //the table was never allocated, so the set was empty
+            return;
+        }
+
+        long tableSize = header.tableSize();
+        if (tableSize < DEFAULT_TABLE_SIZE || (tableSize & (tableSize - 1L)) != 0L) {
+            throw new IllegalArgumentException("Corrupt LinkedInt3HashSet: table size " + tableSize + " isn't a power of two");
+        }
+        this.setTableSize(tableSize);
+        if (header.usedBuckets() > this.resizeThreshold) {
+            throw new IllegalArgumentException("Corrupt LinkedInt3HashSet: too many buckets");
+        }
+
+        long tableAddr = this.tableAddr = this.memory.allocate(header.dataBytes());
+        Int3Serialization.copyFromBuffer(buffer, tableAddr, header.dataBytes());
+
+        //the buckets are linked by their addresses in the table that was written, so they have to be moved to this table.
+        // walking the list also checks it, a broken link would crash the JVM later
+        long buckets = 0L;
+        long size = 0L;
+        long prev = 0L;
+        long bucket = header.first() < 0L ? 0L : tableAddr + header.first() * BUCKET_BYTES;
+        while (bucket != 0L) {
+            if (++buckets > header.usedBuckets() || bucket < tableAddr || bucket >= tableAddr + header.dataBytes()) {
+                throw new IllegalArgumentException("Corrupt LinkedInt3HashSet: broken bucket list");
+            }
+            if (header.swapped()) {
+                Int3Serialization.swapInts(bucket + BUCKET_KEY_OFFSET, 3);
+                Int3Serialization.swapLongs(bucket + BUCKET_VALUE_OFFSET, 3); //the value and both links
+            }
+
+            long value = PlatformDependent.getLong(bucket + BUCKET_VALUE_OFFSET);
+            long next = PlatformDependent.getLong(bucket + NEXT_VALUE_OFFSET);
+            if (value == 0L || (next != 0L && (next - header.base()) % BUCKET_BYTES != 0L)) {
+                throw new IllegalArgumentException("Corrupt LinkedInt3HashSet: broken bucket list");
+            }
+            size += Long.bitCount(value);
+
+            next = next == 0L ? 0L : tableAddr + (next - header.base());
+            PlatformDependent.putLong(bucket + NEXT_VALUE_OFFSET, next);
+            PlatformDependent.putLong(bucket + PREV_VALUE_OFFSET, prev);
+
+            prev = bucket;
+            bucket = next;
+        }
+
+        if (buckets != header.usedBuckets() || size != header.size() || prev != (header.last() < 0L ? 0L : tableAddr + header.last() * BUCKET_BYTES)) {
+            throw new IllegalArgumentException("Corrupt LinkedInt3HashSet: the bucket list doesn't match the header");
+        }
+
+        this.first = header.first() < 0L ? 0L : tableAddr + header.first() * BUCKET_BYTES;
+        this.last = prev;
+        this.usedBuckets = buckets;
+        this.size = size;
+        this.cachedIndex = -1;
+        this.updatePeakSize();
     }
 
     //These methods probably won't be used by any CC code but should help ensure some compatibility if other mods access the light engine
@@ -609,14 +1702,14 @@ public class LinkedInt3HashSet implements AutoCloseable{
     //Should only be used during tests
 
     public XYZTriple[] toArray(){
-        XYZTriple[] arr = new XYZTriple[(int) size];
+        XYZTriple[] arr = new XYZTriple[(int) size()];
 
         MutableInt i = new MutableInt(0);
         forEach((x, y, z) -> {
             arr[i.getAndIncrement()] = new XYZTriple(x, y, z);
         });
 
-        if(i.getValue() != size){
+        if(i.getValue() != size()){
             throw new IllegalStateException("Size mismatch");
         }
 
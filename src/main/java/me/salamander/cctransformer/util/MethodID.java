@@ -64,7 +64,11 @@ public class MethodID implements Ancestralizable<MethodID>{
 
     @Override
     public int hashCode() {
-        return Objects.hash(owner, name, descriptor);
+        //Not using Objects.hash since this is called for every lookup in AncestorHashMap and it allocates
+        int result = Objects.hashCode(owner);
+        result = 31 * result + Objects.hashCode(name);
+        result = 31 * result + Objects.hashCode(descriptor);
+        return result;
     }
 
     @Override
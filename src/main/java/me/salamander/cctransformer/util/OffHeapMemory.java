@@ -0,0 +1,306 @@
+package me.salamander.cctransformer.util;
+
+import io.netty.util.internal.PlatformDependent;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.ref.Cleaner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The off-heap memory of a single collection ({@link LinkedInt3HashSet}, {@link Int3UByteLinkedHashMap}, {@link Int3List}). All native
+ * allocations of the collection go through this so that
+ * <ul>
+ *     <li>the memory is freed by a {@link Cleaner} if the collection is garbage collected without being closed</li>
+ *     <li>the live off-heap bytes of every collection type are counted, see {@link #getLiveBytes(Class)}</li>
+ *     <li>collections that are never closed can be reported along with where they were created, see {@link #setLeakDetection(boolean)}</li>
+ * </ul>
+ * A collection owns at most one block at a time: the block returned by the last {@link #allocate(long)} or {@link #reallocate(long)}. That is the
+ * block freed by {@link #release()} or the cleaner. Any previously owned block, such as the old table during a resize, must be freed with
+ * {@link #free(long, long)}. The only exception is {@link #allocateKeepingPrevious(long)}, which is for incremental resizes that keep reading the
+ * old table for a while: the previous block stays owned until {@link #freePrevious()}, or becomes the owned block again
+ * with {@link #restorePrevious()}.
+ * <br><br>
+ * Like the collections themselves this isn't thread-safe, except for the counters and the cleaner.
+ */
+public final class OffHeapMemory implements Runnable {
+    /**
+     * Set this system property to true to enable leak detection from startup
+     */
+    public static final String LEAK_DETECTION_PROPERTY = "cctransformer.leakDetection";
+
+    //How many leaks are kept by getLeaks. Any more are only counted
+    private static final int MAX_RECORDED_LEAKS = 256;
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final Map<Class<?>, Counters> COUNTERS = new ConcurrentHashMap<>();
+    private static final List<Leak> LEAKS = new ArrayList<>();
+
+    private static volatile boolean leakDetection = Boolean.getBoolean(LEAK_DETECTION_PROPERTY);
+
+    private final Class<?> type;
+    private final Counters counters;
+    //Where the owner was created. Only recorded while leak detection is enabled
+    private final Throwable allocationSite;
+
+    //Volatile since the cleaner reads them from its own thread
+    private volatile long address = 0L;
+    private volatile long bytes = 0L;
+    private volatile long previousAddress = 0L; //kept by allocateKeepingPrevious
+    private volatile long previousBytes = 0L;
+    private volatile boolean released = false;
+
+    private OffHeapMemory(Class<?> type) {
+        this.type = type;
+        this.counters = COUNTERS.computeIfAbsent(type, k -> new Counters());
+        this.allocationSite = leakDetection ? new Throwable(type.getSimpleName() + " created here") : null;
+    }
+
+    /**
+     * Creates the memory of a collection. This must not be stored anywhere other than in the collection, otherwise the collection can never become unreachable
+     * @param owner The collection. Its memory is freed once it becomes phantom reachable
+     * @param type The type the memory is counted under. This is usually the owner's class but subclasses may count themselves under their parent
+     */
+    public static OffHeapMemory create(Object owner, Class<?> type) {
+        OffHeapMemory memory = new OffHeapMemory(type);
+        CLEANER.register(owner, memory);
+        return memory;
+    }
+
+    /**
+     * Allocates a new block which becomes the owned block. The previous owned block, if any, isn't freed
+     * @param bytes The size of the block
+     * @return The address of the block. The memory isn't cleared
+     */
+    public long allocate(long bytes) {
+        long address = PlatformDependent.allocateMemory(bytes);
+        counters.add(bytes);
+
+        this.address = address;
+        this.bytes = bytes;
+        return address;
+    }
+
+    /**
+     * Allocates a new block which becomes the owned block, but keeps owning the previous owned block as well until {@link #freePrevious()} is called
+     * @param bytes The size of the block
+     * @return The address of the block. The memory isn't cleared
+     */
+    public long allocateKeepingPrevious(long bytes) {
+        if(previousAddress != 0L){
+            throw new IllegalStateException("A previous block is already kept");
+        }
+
+        long previousAddress = this.address;
+        long previousBytes = this.bytes;
+        long address = allocate(bytes);
+        this.previousAddress = previousAddress;
+        this.previousBytes = previousBytes;
+        return address;
+    }
+
+    /**
+     * Frees the block kept by {@link #allocateKeepingPrevious(long)}, if any
+     */
+    public void freePrevious() {
+        long address = this.previousAddress;
+        if(address != 0L){
+            this.previousAddress = 0L;
+            PlatformDependent.freeMemory(address);
+            counters.add(-previousBytes);
+            this.previousBytes = 0L;
+        }
+    }
+
+    /**
+     * Frees the owned block and makes the block kept by {@link #allocateKeepingPrevious(long)} the owned block again. This is for incremental resizes
+     * which are abandoned before the new block is used
+     */
+    public void restorePrevious() {
+        if(previousAddress == 0L){
+            throw new IllegalStateException("No previous block is kept");
+        }
+
+        PlatformDependent.freeMemory(address);
+        counters.add(-bytes);
+        this.address = previousAddress;
+        this.bytes = previousBytes;
+        this.previousAddress = 0L;
+        this.previousBytes = 0L;
+    }
+
+    /**
+     * Resizes the owned block, allocating it if there is none
+     * @param bytes The new size of the block
+     * @return The new address of the block
+     */
+    public long reallocate(long bytes) {
+        long address = PlatformDependent.reallocateMemory(this.address, bytes);
+        counters.add(bytes - this.bytes);
+
+        this.address = address;
+        this.bytes = bytes;
+        return address;
+    }
+
+    /**
+     * Frees a block which is no longer owned
+     * @param address The address of the block
+     * @param bytes The size the block was allocated with
+     */
+    public void free(long address, long bytes) {
+        if(address == this.address || address == this.previousAddress){
+            throw new IllegalArgumentException("Can't free the owned block, use release()");
+        }
+
+        PlatformDependent.freeMemory(address);
+        counters.add(-bytes);
+    }
+
+    /**
+     * Frees the owned block. This is what the owner's {@code close()} should call. The owner is no longer reported as a leak after this
+     */
+    public void release() {
+        released = true;
+        freeOwned();
+    }
+
+    /**
+     * @return The size of the owned block, plus the size of the previous block if it is kept
+     */
+    public long getBytes() {
+        return bytes + previousBytes;
+    }
+
+    /**
+     * Called by the cleaner once the owner is unreachable
+     */
+    @Override
+    public void run() {
+        if(address == 0L && previousAddress == 0L){
+            return;
+        }
+
+        long leaked = bytes + previousBytes;
+        freeOwned();
+
+        if(released){
+            //Closed but used again afterwards, that isn't a leak
+            return;
+        }
+
+        counters.leaks.incrementAndGet();
+        counters.leakedBytes.addAndGet(leaked);
+
+        if(allocationSite != null){
+            Leak leak = new Leak(type, leaked, allocationSite);
+            synchronized (LEAKS) {
+                if(LEAKS.size() < MAX_RECORDED_LEAKS){
+                    LEAKS.add(leak);
+                }
+            }
+
+            LOGGER.warn("LEAK: " + type.getSimpleName() + " was garbage collected without being closed, freed " + leaked + " bytes. Created at:", allocationSite);
+        }
+    }
+
+    private void freeOwned() {
+        freePrevious();
+
+        long address = this.address;
+        if(address != 0L){
+            this.address = 0L;
+            PlatformDependent.freeMemory(address);
+            counters.add(-bytes);
+            this.bytes = 0L;
+        }
+    }
+
+    /**
+     * Enables or disables leak detection. While it is enabled, creating a collection records a stack trace, which is slow. Only collections
+     * created while it is enabled are reported.
+     */
+    public static void setLeakDetection(boolean enabled) {
+        leakDetection = enabled;
+    }
+
+    public static boolean isLeakDetectionEnabled() {
+        return leakDetection;
+    }
+
+    /**
+     * @return The off-heap bytes currently allocated by all collections of a type
+     */
+    public static long getLiveBytes(Class<?> type) {
+        Counters counters = COUNTERS.get(type);
+        return counters == null ? 0L : counters.liveBytes.get();
+    }
+
+    /**
+     * @return The off-heap bytes currently allocated by every collection type, sorted by type name
+     */
+    public static Map<String, Long> getLiveBytes() {
+        Map<String, Long> result = new TreeMap<>();
+        COUNTERS.forEach((type, counters) -> result.put(type.getName(), counters.liveBytes.get()));
+        return result;
+    }
+
+    public static long getTotalLiveBytes() {
+        long total = 0L;
+        for(Counters counters: COUNTERS.values()){
+            total += counters.liveBytes.get();
+        }
+        return total;
+    }
+
+    /**
+     * @return How many collections of a type were freed by the cleaner instead of being closed. This is counted even when leak detection is disabled
+     */
+    public static long getLeakCount(Class<?> type) {
+        Counters counters = COUNTERS.get(type);
+        return counters == null ? 0L : counters.leaks.get();
+    }
+
+    /**
+     * @return The total bytes freed by the cleaner for collections of a type which were never closed
+     */
+    public static long getLeakedBytes(Class<?> type) {
+        Counters counters = COUNTERS.get(type);
+        return counters == null ? 0L : counters.leakedBytes.get();
+    }
+
+    /**
+     * @return The leaks of collections created while leak detection was enabled. At most the first {@value #MAX_RECORDED_LEAKS} are kept
+     */
+    public static List<Leak> getLeaks() {
+        synchronized (LEAKS) {
+            return List.copyOf(LEAKS);
+        }
+    }
+
+    /**
+     * A collection which was garbage collected without being closed
+     * @param type The type the collection's memory was counted under
+     * @param bytes How many bytes were still allocated
+     * @param allocationSite Where the collection was created
+     */
+    public record Leak(Class<?> type, long bytes, Throwable allocationSite) {
+    }
+
+    private static class Counters {
+        private final AtomicLong liveBytes = new AtomicLong();
+        private final AtomicLong leaks = new AtomicLong();
+        private final AtomicLong leakedBytes = new AtomicLong();
+
+        private void add(long bytes) {
+            liveBytes.addAndGet(bytes);
+        }
+    }
+}
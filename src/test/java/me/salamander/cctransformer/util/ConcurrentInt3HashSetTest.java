@@ -0,0 +1,121 @@
+package me.salamander.cctransformer.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static me.salamander.cctransformer.util.LinkedInt3HashSetTest.key;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares {@link ConcurrentInt3HashSet} against a {@link HashSet} of packed positions, and checks that concurrent adds and polls see
+ * every position exactly once
+ */
+public class ConcurrentInt3HashSetTest {
+    private static final int THREADS = 4;
+
+    static Set<Long> contents(ConcurrentInt3HashSet set) {
+        Set<Long> contents = new HashSet<>();
+        set.forEach((x, y, z) -> assertTrue(contents.add(key(x, y, z)), "visited twice"));
+        return contents;
+    }
+
+    @Test
+    public void matchesReference() {
+        Random random = new Random(11235);
+        Set<Long> reference = new HashSet<>();
+        try (ConcurrentInt3HashSet set = new ConcurrentInt3HashSet(8)) {
+            for (int i = 0; i < 100000; i++) {
+                int x = random.nextInt(100) - 50, y = random.nextInt(100) - 50, z = random.nextInt(100) - 50;
+                int op = random.nextInt(100);
+                if (op < 55) {
+                    assertEquals(reference.add(key(x, y, z)), set.add(x, y, z), "add");
+                } else if (op < 85) {
+                    assertEquals(reference.remove(key(x, y, z)), set.remove(x, y, z), "remove");
+                } else if (op < 98) {
+                    assertEquals(reference.contains(key(x, y, z)), set.contains(x, y, z), "contains");
+                } else {
+                    int[] xs = new int[32], ys = new int[32], zs = new int[32];
+                    int count = set.drainTo(xs, ys, zs, 32);
+                    for (int j = 0; j < count; j++) {
+                        assertTrue(reference.remove(key(xs[j], ys[j], zs[j])), "drainTo returned an absent position");
+                    }
+                }
+                assertEquals(reference.size(), set.size(), "size");
+            }
+            assertEquals(reference, contents(set));
+        }
+    }
+
+    @Test
+    public void concurrentAddsAndPolls() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try (ConcurrentInt3HashSet set = new ConcurrentInt3HashSet(THREADS)) {
+            //every thread adds its own positions and some which are shared with the other threads
+            List<Future<Integer>> adds = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                int id = thread;
+                adds.add(executor.submit(() -> {
+                    int added = 0;
+                    for (int i = 0; i < 50000; i++) {
+                        if (set.add(i % 97, i / 97, id * 1000)) {
+                            added++;
+                        }
+                        if (set.add(i % 50, i % 31, -1)) {
+                            added++;
+                        }
+                    }
+                    return added;
+                }));
+            }
+
+            int added = 0;
+            for (Future<Integer> future : adds) {
+                added += future.get();
+            }
+
+            Set<Long> expected = new HashSet<>();
+            for (int i = 0; i < 50000; i++) {
+                for (int thread = 0; thread < THREADS; thread++) {
+                    expected.add(key(i % 97, i / 97, thread * 1000));
+                }
+                expected.add(key(i % 50, i % 31, -1));
+            }
+            assertEquals(expected.size(), added, "a position was added more than once");
+            assertEquals(expected.size(), set.size());
+            assertEquals(expected, contents(set));
+
+            //every position is polled by exactly one thread
+            List<Future<Set<Long>>> polls = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                polls.add(executor.submit(() -> {
+                    Set<Long> polled = new HashSet<>();
+                    while (!set.isEmpty()) {
+                        set.poll((x, y, z) -> assertTrue(polled.add(key(x, y, z))));
+                    }
+                    return polled;
+                }));
+            }
+
+            Set<Long> polled = new HashSet<>();
+            int polledCount = 0;
+            for (Future<Set<Long>> future : polls) {
+                polled.addAll(future.get());
+                polledCount += future.get().size();
+            }
+            assertEquals(expected.size(), polledCount, "a position was polled more than once");
+            assertEquals(expected, polled);
+            assertTrue(set.isEmpty());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
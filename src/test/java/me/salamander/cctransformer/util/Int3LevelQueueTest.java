@@ -0,0 +1,125 @@
+package me.salamander.cctransformer.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static me.salamander.cctransformer.util.LinkedInt3HashSetTest.key;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares {@link Int3LevelQueue} against one {@link HashSet} of packed positions per level, and against the array of {@link LinkedInt3HashSet}s it
+ * replaces
+ */
+public class Int3LevelQueueTest {
+    @Test
+    public void matchesReference() {
+        Random random = new Random(97531);
+        for (int round = 0; round < 10; round++) {
+            int levelCount = 1 + random.nextInt(130); //more than 64 levels needs more than one word of the level bitmap
+            int range = 4 + random.nextInt(64);
+
+            List<Set<Long>> reference = new ArrayList<>();
+            for (int level = 0; level < levelCount; level++) {
+                reference.add(new HashSet<>());
+            }
+
+            try (Int3LevelQueue queue = new Int3LevelQueue(levelCount)) {
+                for (int i = 0, ops = 20000 + random.nextInt(20000); i < ops; i++) {
+                    int x = random.nextInt(range) - range / 2;
+                    int y = random.nextInt(range) - range / 2;
+                    int z = random.nextInt(range) - range / 2;
+                    int level = random.nextInt(levelCount);
+
+                    int op = random.nextInt(100);
+                    if (op < 45) {
+                        assertEquals(reference.get(level).add(key(x, y, z)), queue.enqueue(x, y, z, level), "enqueue");
+                    } else if (op < 65) {
+                        assertEquals(reference.get(level).remove(key(x, y, z)), queue.dequeue(x, y, z, level), "dequeue");
+                    } else if (op < 75) {
+                        int newLevel = random.nextInt(levelCount);
+                        boolean queued = reference.get(level).remove(key(x, y, z));
+                        if (queued) {
+                            reference.get(newLevel).add(key(x, y, z));
+                        }
+                        assertEquals(queued, queue.changeLevel(x, y, z, level, newLevel), "changeLevel");
+                    } else if (op < 85) {
+                        assertEquals(reference.get(level).contains(key(x, y, z)), queue.contains(x, y, z, level), "contains");
+                    } else if (op < 90) {
+                        boolean[] polled = { false };
+                        boolean result = queue.poll(level, (px, py, pz) -> {
+                            assertTrue(reference.get(level).remove(key(px, py, pz)), "poll returned an absent position");
+                            polled[0] = true;
+                        });
+                        assertEquals(polled[0], result, "poll level");
+                    } else if (op < 95) {
+                        int expectedLevel = firstQueuedLevel(reference, 0);
+                        assertEquals(expectedLevel, queue.firstQueuedLevel(), "firstQueuedLevel");
+                        assertEquals(firstQueuedLevel(reference, level), queue.nextQueuedLevel(level), "nextQueuedLevel");
+
+                        boolean[] polled = { false };
+                        boolean result = queue.poll((px, py, pz, polledLevel) -> {
+                            assertEquals(expectedLevel, polledLevel, "poll didn't use the lowest level");
+                            assertTrue(reference.get(polledLevel).remove(key(px, py, pz)), "poll returned an absent position");
+                            polled[0] = true;
+                        });
+                        assertEquals(polled[0], result, "poll");
+                    } else if (op < 99) {
+                        Set<Long> visited = new HashSet<>();
+                        queue.forEach(level, (px, py, pz) -> assertTrue(visited.add(key(px, py, pz)), "visited twice"));
+                        assertEquals(reference.get(level), visited, "forEach");
+                        assertEquals(reference.get(level).size(), queue.levelSize(level), "levelSize");
+                    } else if (random.nextInt(20) == 0) {
+                        queue.clear();
+                        reference.forEach(Set::clear);
+                    }
+
+                    assertEquals(reference.stream().mapToLong(Set::size).sum(), queue.size(), "size");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void pollsInTheSameOrderAsLinkedInt3HashSet() {
+        Random random = new Random(86420);
+        try (Int3LevelQueue queue = new Int3LevelQueue(4); LinkedInt3HashSet set = new LinkedInt3HashSet()) {
+            for (int i = 0; i < 5000; i++) {
+                int x = random.nextInt(40), y = random.nextInt(40), z = random.nextInt(40);
+                queue.enqueue(x, y, z, 2);
+                set.add(x, y, z);
+            }
+
+            while (!set.isEmpty()) {
+                int x = set.getFirstX(), y = set.getFirstY(), z = set.getFirstZ();
+                set.removeFirstValue();
+                assertTrue(queue.poll(2, (px, py, pz) -> assertEquals(key(x, y, z), key(px, py, pz))));
+            }
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    public void rejectsLevelsOutOfRange() {
+        try (Int3LevelQueue queue = new Int3LevelQueue(3)) {
+            assertThrows(IllegalArgumentException.class, () -> queue.enqueue(0, 0, 0, 3));
+            assertThrows(IllegalArgumentException.class, () -> queue.enqueue(0, 0, 0, -1));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new Int3LevelQueue(0));
+    }
+
+    static int firstQueuedLevel(List<Set<Long>> reference, int fromLevel) {
+        for (int level = fromLevel; level < reference.size(); level++) {
+            if (!reference.get(level).isEmpty()) {
+                return level;
+            }
+        }
+        return reference.size();
+    }
+}
@@ -0,0 +1,119 @@
+package me.salamander.cctransformer.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the ordering and capacity of {@link Int3MpscQueue}, with one producer and with several
+ */
+public class Int3MpscQueueTest {
+    @Test
+    public void singleThreadedFifo() {
+        try (Int3MpscQueue queue = new Int3MpscQueue(10)) {
+            assertEquals(16, queue.capacity());
+            assertTrue(queue.isEmpty());
+
+            for (int round = 0; round < 5; round++) { //wraps around the ring a few times
+                for (int i = 0; i < 16; i++) {
+                    assertTrue(queue.offer(i, -i, round, i * 7));
+                }
+                assertFalse(queue.offer(0, 0, 0), "the queue is full");
+                assertEquals(16, queue.size());
+
+                for (int i = 0; i < 16; i++) {
+                    int expected = i;
+                    int finalRound = round;
+                    assertTrue(queue.poll((x, y, z, value) -> {
+                        assertEquals(expected, x);
+                        assertEquals(-expected, y);
+                        assertEquals(finalRound, z);
+                        assertEquals(expected * 7, value);
+                    }));
+                }
+                assertFalse(queue.poll((x, y, z, value) -> {
+                    throw new AssertionError("the queue is empty");
+                }));
+            }
+        }
+    }
+
+    @Test
+    public void singleSlotIsRoundedUp() {
+        try (Int3MpscQueue queue = new Int3MpscQueue(1)) {
+            assertEquals(2, queue.capacity());
+            assertTrue(queue.offer(1, 2, 3));
+            assertTrue(queue.offer(4, 5, 6));
+            assertFalse(queue.offer(7, 8, 9), "the queue is full");
+
+            List<Integer> polled = new ArrayList<>();
+            while (queue.poll((x, y, z, value) -> polled.add(x))) {
+            }
+            assertEquals(List.of(1, 4), polled);
+        }
+    }
+
+    @Test
+    public void rejectsInvalidCapacities() {
+        assertThrows(IllegalArgumentException.class, () -> new Int3MpscQueue(0));
+        assertThrows(IllegalArgumentException.class, () -> new Int3MpscQueue((1 << 30) + 1));
+    }
+
+    /**
+     * Every position from every producer is polled exactly once, in the order its producer offered it
+     */
+    @Test
+    public void multipleProducers() throws Exception {
+        int producers = 4;
+        int perProducer = 50000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        try (Int3MpscQueue queue = new Int3MpscQueue(64)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int producer = 0; producer < producers; producer++) {
+                int id = producer;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < perProducer; i++) {
+                        while (!queue.offer(id, i, -i, i & 0xFF)) {
+                            Thread.yield(); //spinning would starve the consumer on a machine with few cores
+                        }
+                    }
+                }));
+            }
+
+            int[] next = new int[producers];
+            long polled = 0L;
+            while (polled < (long) producers * perProducer) {
+                if (queue.poll((x, y, z, value) -> {
+                    assertEquals(next[x], y, "out of order");
+                    assertEquals(-y, z);
+                    assertEquals(y & 0xFF, value);
+                    next[x]++;
+                })) {
+                    polled++;
+                } else {
+                    Thread.yield();
+                }
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            assertTrue(queue.isEmpty());
+            for (int count : next) {
+                assertEquals(perProducer, count);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
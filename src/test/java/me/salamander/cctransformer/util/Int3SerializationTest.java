@@ -0,0 +1,313 @@
+package me.salamander.cctransformer.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Round trips of {@link LinkedInt3HashSet} and {@link Int3UByteLinkedHashMap} through {@code writeTo} and {@code readFrom}
+ */
+public class Int3SerializationTest {
+    //Positions which are all in different buckets, so that every one of them uses up a new bucket
+    private static int bucketX(int i) {
+        return (i % 37) << 2;
+    }
+
+    private static int bucketY(int i) {
+        return ((i / 37) % 41) << 2;
+    }
+
+    private static int bucketZ(int i) {
+        return -((i / (37 * 41)) << 2);
+    }
+
+    private static List<int[]> entries(LinkedInt3HashSet set) {
+        List<int[]> entries = new ArrayList<>();
+        set.forEach((x, y, z) -> entries.add(new int[]{ x, y, z }));
+        return entries;
+    }
+
+    private static List<int[]> entries(Int3UByteLinkedHashMap map) {
+        List<int[]> entries = new ArrayList<>();
+        map.forEach((x, y, z, value) -> entries.add(new int[]{ x, y, z, value }));
+        return entries;
+    }
+
+    private static List<int[]> entries(Int3List list) {
+        List<int[]> entries = new ArrayList<>();
+        list.forEach((int x, int y, int z) -> entries.add(new int[]{ x, y, z }));
+        return entries;
+    }
+
+    private static void assertSameEntries(List<int[]> expected, List<int[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue(Arrays.equals(expected.get(i), actual.get(i)), "entry " + i);
+        }
+    }
+
+    private static LinkedInt3HashSet roundTrip(LinkedInt3HashSet set) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) set.serializedBytes());
+        set.writeTo(buffer);
+        assertEquals(buffer.capacity(), buffer.position());
+        buffer.flip();
+        return LinkedInt3HashSet.readFrom(buffer);
+    }
+
+    private static Int3UByteLinkedHashMap roundTrip(Int3UByteLinkedHashMap map) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) map.serializedBytes());
+        map.writeTo(buffer);
+        assertEquals(buffer.capacity(), buffer.position());
+        buffer.flip();
+        return Int3UByteLinkedHashMap.readFrom(buffer);
+    }
+
+    /**
+     * While an incremental resize is clearing its next table, the resize threshold is raised above what a table of the current size may hold
+     * when it is loaded again. The entries are compared after writing, since finishing the resize may change the iteration order of a map
+     */
+    @Test
+    public void setRoundTripDuringIncrementalResize() {
+        int checked = 0;
+        try (LinkedInt3HashSet set = new LinkedInt3HashSet(0, true)) {
+            for (int i = 0; i < 20000; i++) {
+                set.add(bucketX(i), bucketY(i), bucketZ(i));
+                if (set.nextTableAddr == 0L && set.oldTableAddr == 0L) {
+                    continue;
+                }
+
+                checked++;
+                try (LinkedInt3HashSet copy = roundTrip(set)) {
+                    assertSameEntries(entries(set), entries(copy));
+                }
+            }
+        }
+        assertTrue(checked > 0, "no incremental resize was in progress");
+    }
+
+    @Test
+    public void mapRoundTripDuringIncrementalResize() {
+        int checked = 0;
+        try (Int3UByteLinkedHashMap map = new Int3UByteLinkedHashMap(0, true)) {
+            for (int i = 0; i < 20000; i++) {
+                map.put(bucketX(i), bucketY(i), bucketZ(i), i & 0xFF);
+                if (map.nextTableAddr == 0L && map.oldTableAddr == 0L) {
+                    continue;
+                }
+
+                checked++;
+                try (Int3UByteLinkedHashMap copy = roundTrip(map)) {
+                    assertSameEntries(entries(map), entries(copy));
+                }
+            }
+        }
+        assertTrue(checked > 0, "no incremental resize was in progress");
+    }
+
+    private static LinkedInt3HashSet randomSet(Random random, boolean incremental) {
+        LinkedInt3HashSet set = new LinkedInt3HashSet(0, incremental);
+        for (int i = 0, count = random.nextInt(20000); i < count; i++) {
+            int x = random.nextInt(100) - 50, y = random.nextInt(100) - 50, z = random.nextInt(100) - 50;
+            if (random.nextInt(4) == 0) {
+                set.remove(x, y, z);
+            } else {
+                set.add(x, y, z);
+            }
+        }
+        return set;
+    }
+
+    private static Int3UByteLinkedHashMap randomMap(Random random, boolean incremental) {
+        Int3UByteLinkedHashMap map = new Int3UByteLinkedHashMap(0, incremental);
+        for (int i = 0, count = random.nextInt(20000); i < count; i++) {
+            int x = random.nextInt(100) - 50, y = random.nextInt(100) - 50, z = random.nextInt(100) - 50;
+            if (random.nextInt(4) == 0) {
+                map.remove(x, y, z);
+            } else {
+                map.put(x, y, z, random.nextInt(256));
+            }
+        }
+        return map;
+    }
+
+    private static Int3List randomList(Random random) {
+        Int3List list = new Int3List();
+        for (int i = 0, count = random.nextInt(5000); i < count; i++) {
+            list.add(random.nextInt(), random.nextInt(), random.nextInt());
+        }
+        return list;
+    }
+
+    /**
+     * Writes a set, a map and a list one after another into the same buffer and reads them back
+     */
+    @ParameterizedTest
+    @ValueSource(booleans = { false, true })
+    public void roundTripThroughBuffers(boolean incremental) {
+        Random random = new Random(incremental ? 1L : 2L);
+        for (int round = 0; round < 20; round++) {
+            try (LinkedInt3HashSet set = randomSet(random, incremental); Int3UByteLinkedHashMap map = randomMap(random, incremental);
+                 Int3List list = randomList(random)) {
+                long bytes = set.serializedBytes() + map.serializedBytes() + list.serializedBytes();
+                ByteBuffer buffer = random.nextBoolean() ? ByteBuffer.allocate((int) bytes) : ByteBuffer.allocateDirect((int) bytes);
+                buffer.order(random.nextBoolean() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN); //the format doesn't depend on the buffer's order
+
+                set.writeTo(buffer);
+                map.writeTo(buffer);
+                list.writeTo(buffer);
+                assertEquals(0, buffer.remaining());
+                buffer.flip();
+
+                try (LinkedInt3HashSet setCopy = LinkedInt3HashSet.readFrom(buffer); Int3UByteLinkedHashMap mapCopy = Int3UByteLinkedHashMap.readFrom(buffer);
+                     Int3List listCopy = Int3List.readFrom(buffer)) {
+                    assertEquals(0, buffer.remaining());
+
+                    assertEquals(set.size(), setCopy.size());
+                    assertSameEntries(entries(set), entries(setCopy));
+                    assertEquals(map.longSize(), mapCopy.longSize());
+                    assertSameEntries(entries(map), entries(mapCopy));
+                    assertSameEntries(entries(list), entries(listCopy));
+
+                    //the copies are fully usable
+                    setCopy.add(1000, 1000, 1000);
+                    assertTrue(setCopy.contains(1000, 1000, 1000));
+                    mapCopy.put(1000, 1000, 1000, 7);
+                    assertEquals(7, mapCopy.get(1000, 1000, 1000));
+                    assertEquals(set.size() + 1, setCopy.size());
+                    assertEquals(map.longSize() + 1, mapCopy.longSize());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void roundTripThroughFiles(@TempDir Path dir) throws IOException {
+        Random random = new Random(3L);
+        Path file = dir.resolve("collections.bin");
+        try (LinkedInt3HashSet set = randomSet(random, true); Int3UByteLinkedHashMap map = randomMap(random, true); Int3List list = randomList(random)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                set.writeTo(channel);
+                map.writeTo(channel);
+                list.writeTo(channel);
+            }
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+                 LinkedInt3HashSet setCopy = LinkedInt3HashSet.readFrom(channel); Int3UByteLinkedHashMap mapCopy = Int3UByteLinkedHashMap.readFrom(channel);
+                 Int3List listCopy = Int3List.readFrom(channel)) {
+                assertEquals(channel.size(), channel.position());
+                assertSameEntries(entries(set), entries(setCopy));
+                assertSameEntries(entries(map), entries(mapCopy));
+                assertSameEntries(entries(list), entries(listCopy));
+            }
+        }
+    }
+
+    @Test
+    public void emptyCollections() {
+        try (LinkedInt3HashSet set = new LinkedInt3HashSet(); Int3UByteLinkedHashMap map = new Int3UByteLinkedHashMap(); Int3List list = new Int3List()) {
+            set.add(1, 2, 3);
+            set.remove(1, 2, 3); //allocated but empty
+            try (LinkedInt3HashSet copy = roundTrip(set)) {
+                assertTrue(copy.isEmpty());
+            }
+            try (Int3UByteLinkedHashMap copy = roundTrip(map)) { //never allocated
+                assertTrue(copy.isEmpty());
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) list.serializedBytes());
+            list.writeTo(buffer);
+            buffer.flip();
+            try (Int3List copy = Int3List.readFrom(buffer)) {
+                assertEquals(0, copy.size());
+            }
+        }
+    }
+
+    /**
+     * A list written on a machine with the other byte order
+     */
+    @Test
+    public void swappedByteOrder() {
+        try (Int3List list = randomList(new Random(4L))) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) list.serializedBytes()).order(ByteOrder.nativeOrder());
+            list.writeTo(buffer);
+
+            //the header is 4 ints and 7 longs, the positions are all ints
+            ByteBuffer swapped = ByteBuffer.allocate(buffer.capacity()).order(ByteOrder.nativeOrder());
+            buffer.flip();
+            for (int i = 0; i < 4; i++) {
+                swapped.putInt(Integer.reverseBytes(buffer.getInt()));
+            }
+            for (int i = 0; i < 7; i++) {
+                swapped.putLong(Long.reverseBytes(buffer.getLong()));
+            }
+            while (buffer.hasRemaining()) {
+                swapped.putInt(Integer.reverseBytes(buffer.getInt()));
+            }
+            swapped.flip();
+
+            try (Int3List copy = Int3List.readFrom(swapped)) {
+                assertSameEntries(entries(list), entries(copy));
+            }
+        }
+    }
+
+    @Test
+    public void rejectsInvalidData() {
+        try (LinkedInt3HashSet set = randomSet(new Random(5L), false)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) set.serializedBytes());
+            set.writeTo(buffer);
+            buffer.flip();
+
+            //a set isn't a map
+            assertThrows(IllegalArgumentException.class, () -> Int3UByteLinkedHashMap.readFrom(buffer.duplicate().order(buffer.order())));
+
+            //broken magic
+            ByteBuffer corrupt = ByteBuffer.allocate(buffer.capacity());
+            corrupt.put(buffer.duplicate()).flip();
+            corrupt.put(0, (byte) (corrupt.get(0) ^ 0x55));
+            assertThrows(IllegalArgumentException.class, () -> LinkedInt3HashSet.readFrom(corrupt));
+
+            //broken bucket list
+            ByteBuffer broken = ByteBuffer.allocate(buffer.capacity());
+            broken.put(buffer.duplicate()).flip();
+            for (int i = Int3Serialization.HEADER_BYTES; i < broken.capacity(); i++) {
+                broken.put(i, (byte) 0xFF);
+            }
+            assertThrows(IllegalArgumentException.class, () -> LinkedInt3HashSet.readFrom(broken));
+
+            //truncated
+            assertThrows(RuntimeException.class, () -> LinkedInt3HashSet.readFrom(buffer.duplicate().limit(buffer.limit() - 1)));
+        }
+    }
+
+    @Test
+    public void writeFailsWithoutSideEffects() {
+        try (Int3UByteLinkedHashMap map = randomMap(new Random(6L), false)) {
+            ByteBuffer small = ByteBuffer.allocate((int) map.serializedBytes() - 1);
+            assertThrows(BufferOverflowException.class, () -> map.writeTo(small));
+            assertEquals(0, small.position());
+
+            ByteBuffer readOnly = ByteBuffer.allocate((int) map.serializedBytes()).asReadOnlyBuffer();
+            assertThrows(ReadOnlyBufferException.class, () -> map.writeTo(readOnly));
+        }
+    }
+}
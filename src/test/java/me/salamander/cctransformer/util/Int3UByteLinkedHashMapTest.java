@@ -0,0 +1,181 @@
+package me.salamander.cctransformer.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static me.salamander.cctransformer.util.LinkedInt3HashSetTest.inBox;
+import static me.salamander.cctransformer.util.LinkedInt3HashSetTest.key;
+import static me.salamander.cctransformer.util.LinkedInt3HashSetTest.randomBox;
+import static me.salamander.cctransformer.util.LinkedInt3HashSetTest.unpackX;
+import static me.salamander.cctransformer.util.LinkedInt3HashSetTest.unpackY;
+import static me.salamander.cctransformer.util.LinkedInt3HashSetTest.unpackZ;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares {@link Int3UByteLinkedHashMap} against a {@link HashMap} of packed positions
+ */
+public class Int3UByteLinkedHashMapTest {
+    static Map<Long, Integer> contents(Int3UByteLinkedHashMap map) {
+        Map<Long, Integer> contents = new HashMap<>();
+        map.forEach((x, y, z, value) -> assertNull(contents.put(key(x, y, z), value), "visited twice"));
+        return contents;
+    }
+
+    static int orDefault(Integer value) {
+        return value == null ? Int3UByteLinkedHashMap.DEFAULT_RETURN_VALUE : value;
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = { false, true })
+    public void matchesReference(boolean incremental) {
+        Random random = new Random(4321);
+        for (int round = 0; round < 20; round++) {
+            int range = 8 + random.nextInt(200);
+            Map<Long, Integer> reference = new HashMap<>();
+            try (Int3UByteLinkedHashMap map = new Int3UByteLinkedHashMap(0, incremental)) {
+                for (int i = 0, ops = 20000 + random.nextInt(20000); i < ops; i++) {
+                    int x = random.nextInt(range) - range / 2;
+                    int y = random.nextInt(range) - range / 2;
+                    int z = random.nextInt(range) - range / 2;
+                    int value = random.nextInt(256);
+
+                    int op = random.nextInt(1000);
+                    if (op < 500) {
+                        assertEquals(orDefault(reference.put(key(x, y, z), value)), map.put(x, y, z, value), "put");
+                    } else if (op < 600) {
+                        assertEquals(orDefault(reference.putIfAbsent(key(x, y, z), value)), map.putIfAbsent(x, y, z, value), "putIfAbsent");
+                    } else if (op < 880) {
+                        assertEquals(orDefault(reference.remove(key(x, y, z))), map.remove(x, y, z), "remove");
+                    } else if (op < 970) {
+                        assertEquals(orDefault(reference.get(key(x, y, z))), map.get(x, y, z), "get");
+                        assertEquals(reference.containsKey(key(x, y, z)), map.containsKey(x, y, z), "containsKey");
+                    } else if (op < 975) {
+                        int[] box = randomBox(random, range);
+                        Map<Long, Integer> expected = new HashMap<>(reference);
+                        expected.keySet().removeIf(k -> !inBox(unpackX(k), unpackY(k), unpackZ(k), box));
+                        assertEquals(expected.size(), map.countInBox(box[0], box[1], box[2], box[3], box[4], box[5]), "countInBox");
+                        assertEquals(!expected.isEmpty(), map.containsAnyInBox(box[0], box[1], box[2], box[3], box[4], box[5]), "containsAnyInBox");
+
+                        Map<Long, Integer> visited = new HashMap<>();
+                        map.forEachInBox(box[0], box[1], box[2], box[3], box[4], box[5], (px, py, pz, v) -> {
+                            assertTrue(inBox(px, py, pz, box), "forEachInBox outside of the box");
+                            assertNull(visited.put(key(px, py, pz), v), "forEachInBox visited twice");
+                        });
+                        assertEquals(expected, visited, "forEachInBox");
+                    } else if (op < 978) {
+                        int[] box = randomBox(random, range);
+                        long expected = reference.keySet().stream().filter(k -> inBox(unpackX(k), unpackY(k), unpackZ(k), box)).count();
+                        reference.keySet().removeIf(k -> inBox(unpackX(k), unpackY(k), unpackZ(k), box));
+                        assertEquals(expected, map.removeInBox(box[0], box[1], box[2], box[3], box[4], box[5]), "removeInBox");
+                    } else if (op < 983) {
+                        boolean[] polled = { false };
+                        boolean result = map.poll((px, py, pz, v) -> {
+                            assertEquals(orDefault(reference.remove(key(px, py, pz))), v, "poll returned a wrong entry");
+                            polled[0] = true;
+                        });
+                        assertEquals(polled[0], result, "poll");
+                    } else if (op < 988) {
+                        int[] xs = new int[64], ys = new int[64], zs = new int[64];
+                        byte[] values = new byte[64];
+                        int count = map.drainTo(xs, ys, zs, values, 1 + random.nextInt(64));
+                        for (int j = 0; j < count; j++) {
+                            assertEquals(orDefault(reference.remove(key(xs[j], ys[j], zs[j]))), values[j] & 0xFF, "drainTo returned a wrong entry");
+                        }
+                    } else if (op < 991) {
+                        try (Int3UByteLinkedHashMap clone = map.clone()) {
+                            assertEquals(reference, contents(clone), "clone");
+                            clone.put(x, y, z, value);
+                            clone.remove(-x, -y, -z);
+                        }
+                    } else if (op < 995) {
+                        map.trim();
+                    } else if (op < 998) {
+                        map.finishResize();
+                    } else if (random.nextInt(20) == 0) {
+                        map.clear();
+                        reference.clear();
+                    }
+
+                    assertEquals(reference.size(), map.longSize(), "size");
+                }
+
+                assertEquals(reference, contents(map));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = { false, true })
+    public void snapshotsDontChange(boolean incremental) {
+        Random random = new Random(8765);
+        try (Int3UByteLinkedHashMap map = new Int3UByteLinkedHashMap(0, incremental)) {
+            Map<Long, Integer> reference = new HashMap<>();
+            for (int round = 0; round < 30; round++) {
+                try (Int3UByteLinkedHashMap.Snapshot snapshot = map.snapshot()) {
+                    Map<Long, Integer> expected = new HashMap<>(reference);
+
+                    //enough changes to resize the table while the snapshot is open
+                    for (int i = 0, ops = random.nextInt(5000); i < ops; i++) {
+                        int x = random.nextInt(64), y = random.nextInt(64), z = random.nextInt(64);
+                        if (random.nextInt(3) == 0) {
+                            map.remove(x, y, z);
+                            reference.remove(key(x, y, z));
+                        } else {
+                            int value = random.nextInt(256);
+                            map.put(x, y, z, value);
+                            reference.put(key(x, y, z), value);
+                        }
+                    }
+
+                    assertEquals(expected.size(), snapshot.size(), "size");
+                    Map<Long, Integer> visited = new HashMap<>();
+                    snapshot.forEach((x, y, z, value) -> assertNull(visited.put(key(x, y, z), value), "visited twice"));
+                    assertEquals(expected, visited);
+                    for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+                        long k = entry.getKey();
+                        assertEquals((int) entry.getValue(), snapshot.get(unpackX(k), unpackY(k), unpackZ(k)));
+                    }
+                    assertEquals(expected.containsKey(key(70, 70, 70)), snapshot.containsKey(70, 70, 70));
+                }
+                assertEquals(reference, contents(map));
+            }
+        }
+    }
+
+    @Test
+    public void keySetIsALiveView() {
+        try (Int3UByteLinkedHashMap map = new Int3UByteLinkedHashMap()) {
+            Int3Set keys = map.keySet();
+            assertTrue(keys.isEmpty());
+
+            for (int i = 0; i < 1000; i++) {
+                map.put(i, i * 3 % 17, -i, 1);
+            }
+            assertEquals(1000L, keys.size());
+            assertTrue(keys.contains(5, 15, -5));
+            assertEquals(map.countInBox(0, 0, -10, 10, 20, 0), keys.countInBox(0, 0, -10, 10, 20, 0));
+
+            map.remove(5, 15, -5);
+            assertFalse(keys.contains(5, 15, -5));
+            assertEquals(999L, keys.size());
+
+            long[] visited = { 0L };
+            keys.forEach((x, y, z) -> {
+                assertTrue(map.containsKey(x, y, z));
+                visited[0]++;
+            });
+            assertEquals(999L, visited[0]);
+
+            map.clear();
+            assertTrue(keys.isEmpty());
+        }
+    }
+}
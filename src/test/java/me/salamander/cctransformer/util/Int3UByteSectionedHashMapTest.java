@@ -0,0 +1,122 @@
+package me.salamander.cctransformer.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static me.salamander.cctransformer.util.LinkedInt3HashSetTest.inBox;
+import static me.salamander.cctransformer.util.LinkedInt3HashSetTest.key;
+import static me.salamander.cctransformer.util.LinkedInt3HashSetTest.randomBox;
+import static me.salamander.cctransformer.util.LinkedInt3HashSetTest.unpackX;
+import static me.salamander.cctransformer.util.LinkedInt3HashSetTest.unpackY;
+import static me.salamander.cctransformer.util.LinkedInt3HashSetTest.unpackZ;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares {@link Int3UByteSectionedHashMap} against a {@link HashMap} of packed positions
+ */
+public class Int3UByteSectionedHashMapTest {
+    static Map<Long, Integer> contents(Int3UByteSectionedHashMap map) {
+        Map<Long, Integer> contents = new HashMap<>();
+        map.forEach((x, y, z, value) -> assertNull(contents.put(key(x, y, z), value), "visited twice"));
+        return contents;
+    }
+
+    static int orDefault(Integer value) {
+        return value == null ? Int3UByteSectionedHashMap.DEFAULT_RETURN_VALUE : value;
+    }
+
+    static boolean inSection(long key, int sectionX, int sectionY, int sectionZ) {
+        return unpackX(key) >> 4 == sectionX && unpackY(key) >> 4 == sectionY && unpackZ(key) >> 4 == sectionZ;
+    }
+
+    @Test
+    public void matchesReference() {
+        Random random = new Random(2468);
+        for (int round = 0; round < 20; round++) {
+            int range = 8 + random.nextInt(200);
+            Map<Long, Integer> reference = new HashMap<>();
+            try (Int3UByteSectionedHashMap map = new Int3UByteSectionedHashMap()) {
+                for (int i = 0, ops = 20000 + random.nextInt(20000); i < ops; i++) {
+                    int x = random.nextInt(range) - range / 2;
+                    int y = random.nextInt(range) - range / 2;
+                    int z = random.nextInt(range) - range / 2;
+                    int value = random.nextInt(256);
+
+                    int op = random.nextInt(1000);
+                    if (op < 500) {
+                        assertEquals(orDefault(reference.put(key(x, y, z), value)), map.put(x, y, z, value), "put");
+                    } else if (op < 600) {
+                        assertEquals(orDefault(reference.putIfAbsent(key(x, y, z), value)), map.putIfAbsent(x, y, z, value), "putIfAbsent");
+                    } else if (op < 880) {
+                        assertEquals(orDefault(reference.remove(key(x, y, z))), map.remove(x, y, z), "remove");
+                    } else if (op < 970) {
+                        assertEquals(orDefault(reference.get(key(x, y, z))), map.get(x, y, z), "get");
+                        assertEquals(reference.containsKey(key(x, y, z)), map.containsKey(x, y, z), "containsKey");
+                    } else if (op < 975) {
+                        int[] box = randomBox(random, range);
+                        Map<Long, Integer> expected = new HashMap<>(reference);
+                        expected.keySet().removeIf(k -> !inBox(unpackX(k), unpackY(k), unpackZ(k), box));
+                        assertEquals(expected.size(), map.countInBox(box[0], box[1], box[2], box[3], box[4], box[5]), "countInBox");
+                        assertEquals(!expected.isEmpty(), map.containsAnyInBox(box[0], box[1], box[2], box[3], box[4], box[5]), "containsAnyInBox");
+
+                        Map<Long, Integer> visited = new HashMap<>();
+                        map.forEachInBox(box[0], box[1], box[2], box[3], box[4], box[5], (px, py, pz, v) -> {
+                            assertTrue(inBox(px, py, pz, box), "forEachInBox outside of the box");
+                            assertNull(visited.put(key(px, py, pz), v), "forEachInBox visited twice");
+                        });
+                        assertEquals(expected, visited, "forEachInBox");
+                    } else if (op < 978) {
+                        int[] box = randomBox(random, range);
+                        long expected = reference.keySet().stream().filter(k -> inBox(unpackX(k), unpackY(k), unpackZ(k), box)).count();
+                        reference.keySet().removeIf(k -> inBox(unpackX(k), unpackY(k), unpackZ(k), box));
+                        assertEquals(expected, map.removeInBox(box[0], box[1], box[2], box[3], box[4], box[5]), "removeInBox");
+                    } else if (op < 983) {
+                        int sectionX = x >> 4, sectionY = y >> 4, sectionZ = z >> 4;
+                        long expected = reference.keySet().stream().filter(k -> inSection(k, sectionX, sectionY, sectionZ)).count();
+                        assertEquals(expected, map.sectionSize(sectionX, sectionY, sectionZ), "sectionSize");
+                        if (random.nextBoolean()) {
+                            reference.keySet().removeIf(k -> inSection(k, sectionX, sectionY, sectionZ));
+                            assertEquals(expected, map.removeSection(sectionX, sectionY, sectionZ), "removeSection");
+                        }
+                    } else if (op < 990) {
+                        boolean[] polled = { false };
+                        boolean result = map.poll((px, py, pz, v) -> {
+                            assertEquals(orDefault(reference.remove(key(px, py, pz))), v, "poll returned a wrong entry");
+                            polled[0] = true;
+                        });
+                        assertEquals(polled[0], result, "poll");
+                    } else if (random.nextInt(20) == 0) {
+                        map.clear();
+                        reference.clear();
+                    }
+
+                    assertEquals(reference.size(), map.longSize(), "size");
+                }
+
+                assertEquals(reference, contents(map));
+            }
+        }
+    }
+
+    @Test
+    public void sameEntriesAsFlatMap() {
+        Random random = new Random(1357);
+        try (Int3UByteSectionedHashMap sectioned = new Int3UByteSectionedHashMap(); Int3UByteLinkedHashMap flat = new Int3UByteLinkedHashMap()) {
+            for (int i = 0; i < 50000; i++) {
+                int x = random.nextInt(256) - 128, y = random.nextInt(64), z = random.nextInt(256) - 128;
+                if (random.nextInt(4) == 0) {
+                    assertEquals(flat.remove(x, y, z), sectioned.remove(x, y, z));
+                } else {
+                    int value = random.nextInt(256);
+                    assertEquals(flat.put(x, y, z, value), sectioned.put(x, y, z, value));
+                }
+            }
+            assertEquals(Int3UByteLinkedHashMapTest.contents(flat), contents(sectioned));
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package me.salamander.cctransformer.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares {@link LinkedInt3HashSet} against a {@link HashSet} of packed positions
+ */
+public class LinkedInt3HashSetTest {
+    static long key(int x, int y, int z) {
+        return ((long) x & 0x1FFFFFL) << 42 | ((long) y & 0x1FFFFFL) << 21 | ((long) z & 0x1FFFFFL);
+    }
+
+    static Set<Long> contents(LinkedInt3HashSet set) {
+        Set<Long> contents = new HashSet<>();
+        set.forEach((x, y, z) -> assertTrue(contents.add(key(x, y, z)), "visited twice"));
+        return contents;
+    }
+
+    static boolean inBox(int x, int y, int z, int[] box) {
+        return x >= box[0] && y >= box[1] && z >= box[2] && x <= box[3] && y <= box[4] && z <= box[5];
+    }
+
+    static int[] randomBox(Random random, int range) {
+        int[] box = new int[6];
+        for (int axis = 0; axis < 3; axis++) {
+            int a = random.nextInt(range) - range / 2;
+            int b = random.nextInt(range) - range / 2;
+            box[axis] = Math.min(a, b);
+            box[axis + 3] = Math.max(a, b);
+        }
+        return box;
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = { false, true })
+    public void matchesReference(boolean incremental) {
+        Random random = new Random(1234);
+        for (int round = 0; round < 20; round++) {
+            int range = 8 + random.nextInt(200);
+            Set<Long> reference = new HashSet<>();
+            try (LinkedInt3HashSet set = new LinkedInt3HashSet(0, incremental)) {
+                for (int i = 0, ops = 20000 + random.nextInt(20000); i < ops; i++) {
+                    int x = random.nextInt(range) - range / 2;
+                    int y = random.nextInt(range) - range / 2;
+                    int z = random.nextInt(range) - range / 2;
+
+                    int op = random.nextInt(1000);
+                    if (op < 600) {
+                        assertEquals(reference.add(key(x, y, z)), set.add(x, y, z), "add");
+                    } else if (op < 900) {
+                        assertEquals(reference.remove(key(x, y, z)), set.remove(x, y, z), "remove");
+                    } else if (op < 980) {
+                        assertEquals(reference.contains(key(x, y, z)), set.contains(x, y, z), "contains");
+                    } else if (op < 985) {
+                        int[] box = randomBox(random, range);
+                        long expected = reference.stream().filter(k -> inBox(unpackX(k), unpackY(k), unpackZ(k), box)).count();
+                        assertEquals(expected, set.countInBox(box[0], box[1], box[2], box[3], box[4], box[5]), "countInBox");
+                        assertEquals(expected != 0L, set.containsAnyInBox(box[0], box[1], box[2], box[3], box[4], box[5]), "containsAnyInBox");
+
+                        Set<Long> visited = new HashSet<>();
+                        set.forEachInBox(box[0], box[1], box[2], box[3], box[4], box[5], (px, py, pz) -> {
+                            assertTrue(inBox(px, py, pz, box), "forEachInBox outside of the box");
+                            assertTrue(visited.add(key(px, py, pz)), "forEachInBox visited twice");
+                        });
+                        assertEquals(expected, visited.size(), "forEachInBox");
+                    } else if (op < 988) {
+                        int[] box = randomBox(random, range);
+                        long expected = reference.stream().filter(k -> inBox(unpackX(k), unpackY(k), unpackZ(k), box)).count();
+                        reference.removeIf(k -> inBox(unpackX(k), unpackY(k), unpackZ(k), box));
+                        assertEquals(expected, set.removeInBox(box[0], box[1], box[2], box[3], box[4], box[5]), "removeInBox");
+                    } else if (op < 993) {
+                        int[] xs = new int[64], ys = new int[64], zs = new int[64];
+                        int count = set.drainTo(xs, ys, zs, 1 + random.nextInt(64));
+                        for (int j = 0; j < count; j++) {
+                            assertTrue(reference.remove(key(xs[j], ys[j], zs[j])), "drainTo returned an absent position");
+                        }
+                    } else if (op < 996) {
+                        set.trim();
+                    } else if (op < 998) {
+                        set.finishResize();
+                    } else if (random.nextInt(20) == 0) {
+                        set.clear();
+                        reference.clear();
+                    }
+
+                    assertEquals(reference.size(), set.size(), "size");
+                }
+
+                assertEquals(reference, contents(set));
+            }
+        }
+    }
+
+    @Test
+    public void bulkOperationsMatchReference() {
+        Random random = new Random(5678);
+        for (int round = 0; round < 50; round++) {
+            int range = 4 + random.nextInt(64);
+            try (LinkedInt3HashSet a = randomSet(random, range); LinkedInt3HashSet b = randomSet(random, range);
+                 Int3UByteLinkedHashMap map = new Int3UByteLinkedHashMap()) {
+                Set<Long> referenceA = contents(a);
+                Set<Long> referenceB = contents(b);
+                b.forEach((x, y, z) -> map.put(x, y, z, 1));
+
+                assertEquals(referenceA.containsAll(referenceB), a.containsAll(b), "containsAll");
+                assertEquals(referenceA.containsAll(referenceB), a.containsAll(map.keySet()), "containsAll key set");
+
+                switch (random.nextInt(3)) {
+                    case 0 -> {
+                        assertEquals(referenceA.addAll(referenceB), random.nextBoolean() ? a.addAll(b) : a.addAll(map.keySet()), "addAll");
+                    }
+                    case 1 -> {
+                        assertEquals(referenceA.removeAll(referenceB), random.nextBoolean() ? a.removeAll(b) : a.removeAll(map.keySet()), "removeAll");
+                    }
+                    default -> {
+                        assertEquals(referenceA.retainAll(referenceB), random.nextBoolean() ? a.retainAll(b) : a.retainAll(map.keySet()), "retainAll");
+                    }
+                }
+
+                assertEquals(referenceA.size(), a.size(), "size");
+                assertEquals(referenceA, contents(a));
+                assertEquals(referenceB, contents(b), "the other set was modified");
+            }
+        }
+    }
+
+    @Test
+    public void drainToEmptiesInIterationOrder() {
+        try (LinkedInt3HashSet set = new LinkedInt3HashSet(); LinkedInt3HashSet copy = new LinkedInt3HashSet()) {
+            Random random = new Random(91011);
+            for (int i = 0; i < 5000; i++) {
+                int x = random.nextInt(100), y = random.nextInt(100), z = random.nextInt(100);
+                set.add(x, y, z);
+                copy.add(x, y, z);
+            }
+
+            int[] xs = new int[100], ys = new int[100], zs = new int[100];
+            while (!copy.isEmpty()) {
+                int count = set.drainTo(xs, ys, zs, xs.length);
+                for (int i = 0; i < count; i++) {
+                    assertEquals(copy.getFirstX(), xs[i]);
+                    assertEquals(copy.getFirstY(), ys[i]);
+                    assertEquals(copy.getFirstZ(), zs[i]);
+                    copy.removeFirstValue();
+                }
+            }
+            assertTrue(set.isEmpty());
+            assertEquals(0, set.drainTo(xs, ys, zs, xs.length));
+        }
+    }
+
+    @Test
+    public void emptySet() {
+        try (LinkedInt3HashSet set = new LinkedInt3HashSet()) {
+            assertTrue(set.isEmpty());
+            assertFalse(set.contains(0, 0, 0));
+            assertFalse(set.remove(0, 0, 0));
+            assertFalse(set.containsAnyInBox(-10, -10, -10, 10, 10, 10));
+            assertEquals(0L, set.removeInBox(-10, -10, -10, 10, 10, 10));
+            set.forEach((x, y, z) -> {
+                throw new AssertionError("the set is empty");
+            });
+        }
+    }
+
+    static LinkedInt3HashSet randomSet(Random random, int range) {
+        LinkedInt3HashSet set = new LinkedInt3HashSet();
+        for (int i = 0, count = random.nextInt(range * range); i < count; i++) {
+            set.add(random.nextInt(range) - range / 2, random.nextInt(range) - range / 2, random.nextInt(range) - range / 2);
+        }
+        return set;
+    }
+
+    static int unpackX(long key) {
+        return (int) (key << 1 >> 43);
+    }
+
+    static int unpackY(long key) {
+        return (int) (key << 22 >> 43);
+    }
+
+    static int unpackZ(long key) {
+        return (int) (key << 43 >> 43);
+    }
+}